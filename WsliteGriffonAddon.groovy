@@ -15,20 +15,129 @@
  */
 
 import griffon.core.GriffonClass
+import griffon.plugins.wslite.DefaultWsliteProvider
+import griffon.plugins.wslite.VirtualThreadWsliteProvider
+import griffon.plugins.wslite.WsliteAsyncExecutor
+import griffon.plugins.wslite.WsliteClientHolder
+import griffon.plugins.wslite.WsliteConnector
 import griffon.plugins.wslite.WsliteEnhancer
+import griffon.plugins.wslite.WsliteMetrics
 import griffon.plugins.wslite.WsliteContributionHandler
+import griffon.plugins.wslite.WsliteProvider
+import griffon.plugins.wslite.WsliteResilienceListener
+import griffon.plugins.wslite.WsliteSSLContextCache
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * @author Andres Almiray
  */
 class WsliteGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteGriffonAddon)
+
+    private WsliteProvider provider = DefaultWsliteProvider.instance
+    // artifacts waiting for their first instance when injectionMode = 'instantiation'
+    private final Map<Class, GriffonClass> pendingEnhancement = new ConcurrentHashMap<Class, GriffonClass>()
+
+    void addonInit(GriffonApplication app) {
+        provider = resolveProvider(app.config.griffon?.wslite?.provider ?: null)
+        VirtualThreadWsliteProvider.instance.configure(
+            (app.config.griffon?.wslite?.virtualThreads?.fallbackThreads ?: 0) as int,
+            (app.config.griffon?.wslite?.virtualThreads?.fallbackQueueSize ?: 0) as int)
+        WsliteClientHolder.instance.configureClientCaches(app.config.griffon?.wslite?.cache ?: [:])
+        WsliteConnector.instance.configureConnectionPools(app.config.griffon?.wslite?.pools ?: [:])
+        WsliteConnector.instance.configureResponseCaches(app.config.griffon?.wslite?.responseCaches ?: [:])
+        WsliteClientHolder.instance.configureStreaming(app.config.griffon?.wslite?.streaming ?: [:])
+        WsliteConnector.instance.configureCompression(app.config.griffon?.wslite?.compression ?: [:])
+        WsliteConnector.instance.configureCoalescing(app.config.griffon?.wslite?.coalescing ?: [:])
+        WsliteConnector.instance.configureHttp2(app.config.griffon?.wslite?.http2 ?: [:])
+        WsliteConnector.instance.configureHedging(app.config.griffon?.wslite?.hedging ?: [:])
+        WsliteConnector.instance.configureResilience(app.config.griffon?.wslite?.resilience ?: [:])
+        WsliteConnector.instance.addResilienceListener({ String id, from, to ->
+            app.event('WsliteCircuitStateChanged', [id, from, to])
+        } as WsliteResilienceListener)
+        def metrics = app.config.griffon?.wslite?.metrics ?: [:]
+        WsliteMetrics.instance.configure(metrics.enabled != false, metrics.jmx != false)
+        def async = app.config.griffon?.wslite?.async ?: [:]
+        WsliteAsyncExecutor.instance.configure(
+            (async.threads ?: 0) as int,
+            (async.queueSize ?: 0) as int,
+            (async.timeout ?: 0L) as long)
+        def ssl = app.config.griffon?.wslite?.ssl ?: [:]
+        WsliteSSLContextCache.instance.configure(
+            ssl.shareContexts != false,
+            ssl.protocol ?: 'TLS',
+            (ssl.sessionCacheSize ?: 0) as int,
+            (ssl.sessionTimeout ?: 86400) as int,
+            (ssl.reloadInterval != null ? ssl.reloadInterval : 5000L) as long)
+        // declared clients may rely on any of the settings above
+        WsliteClientHolder.instance.configureClients(app.config.griffon?.wslite?.clients ?: [:])
+    }
+
+    Map events = [
+        NewInstance: { klass, type, instance ->
+            GriffonClass gc = pendingEnhancement ? pendingEnhancement[klass] : null
+            if (gc) {
+                // other instances of the same class wait here until its metaClass is enhanced
+                synchronized (gc) {
+                    if (pendingEnhancement.containsKey(klass)) {
+                        WsliteEnhancer.enhance(gc.metaClass, provider)
+                        pendingEnhancement.remove(klass)
+                    }
+                }
+            }
+            if (provider.is(DefaultWsliteProvider.instance)) return
+            if (instance instanceof WsliteContributionHandler && instance.wsliteProvider.is(DefaultWsliteProvider.instance)) {
+                instance.wsliteProvider = provider
+            }
+        },
+        ShutdownStart: { app ->
+            WsliteAsyncExecutor.instance.shutdown()
+            VirtualThreadWsliteProvider.instance.shutdown()
+            WsliteConnector.instance.shutdownConnectionPools()
+            WsliteConnector.instance.shutdownHedging()
+            WsliteConnector.instance.shutdownLoadBalancers()
+            WsliteMetrics.instance.shutdown()
+            WsliteClientHolder.instance.prewarmer.shutdown()
+            WsliteClientHolder.instance.shutdown()
+        }
+    ]
+
     void addonPostInit(GriffonApplication app) {
         def types = app.config.griffon?.wslite?.injectInto ?: ['controller']
+        String mode = app.config.griffon?.wslite?.injectionMode ?: 'eager'
+        if (!(mode in ['eager', 'instantiation', 'methodMissing'])) {
+            throw new IllegalArgumentException("Unknown griffon.wslite.injectionMode '$mode', expected one of eager, instantiation or methodMissing")
+        }
+        long started = System.nanoTime()
+        int count = 0
         for(String type : types) {
             for(GriffonClass gc : app.artifactManager.getClassesOfType(type)) {
                 if (WsliteContributionHandler.isAssignableFrom(gc.clazz)) continue
-                WsliteEnhancer.enhance(gc.metaClass)
+                count++
+                switch (mode) {
+                    case 'instantiation': pendingEnhancement[gc.clazz] = gc; break
+                    case 'methodMissing': WsliteEnhancer.enhanceOnFirstUse(gc.metaClass, provider); break
+                    default: WsliteEnhancer.enhance(gc.metaClass, provider)
+                }
             }
         }
+        if (LOG.infoEnabled) {
+            LOG.info("Prepared $count artifacts for wslite method injection ($mode) in ${(System.nanoTime() - started) / 1000000.0d} ms")
+        }
+    }
+
+    private static WsliteProvider resolveProvider(value) {
+        if (value instanceof WsliteProvider) return value
+        switch (value?.toString()) {
+            case null:
+            case '':
+            case 'default': return DefaultWsliteProvider.instance
+            case 'virtual': return VirtualThreadWsliteProvider.instance
+        }
+        Class providerClass = Class.forName(value.toString(), true, WsliteGriffonAddon.classLoader)
+        providerClass.metaClass.respondsTo(providerClass, 'getInstance') ? providerClass.getInstance() : providerClass.newInstance()
     }
 }
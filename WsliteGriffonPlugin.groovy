@@ -62,6 +62,28 @@ The plugin will inject the following dynamic methods:
  * `<R> R withRest(Map<String, Object> params, CallableWithArgs<R> stmts)` - executes stmts using a RESTClient
  * `<R> R withHttp(Map<String, Object> params, CallableWithArgs<R> stmts)` - executes stmts using an HTTPClient
  * `<R> R withSoap(Map<String, Object> params, CallableWithArgs<R> stmts)` - executes stmts using a SOAPClient
+ * `<R> Future<R> withRestAsync(Map<String, Object> params, Closure<R> stmts)` - executes stmts using a RESTClient in a background thread
+ * `<R> Future<R> withHttpAsync(Map<String, Object> params, Closure<R> stmts)` - executes stmts using an HTTPClient in a background thread
+ * `<R> Future<R> withSoapAsync(Map<String, Object> params, Closure<R> stmts)` - executes stmts using a SOAPClient in a background thread
+ * `<R> Future<R> withRestAsync(Map<String, Object> params, CallableWithArgs<R> stmts)` - executes stmts using a RESTClient in a background thread
+ * `<R> Future<R> withHttpAsync(Map<String, Object> params, CallableWithArgs<R> stmts)` - executes stmts using an HTTPClient in a background thread
+ * `<R> Future<R> withSoapAsync(Map<String, Object> params, CallableWithArgs<R> stmts)` - executes stmts using a SOAPClient in a background thread
+ * `<R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, Closure<R> stmts)` - executes stmts once per request using a shared RESTClient
+ * `<R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, CallableWithArgs<R> stmts)` - executes stmts once per request using a shared RESTClient
+
+The asynchronous and batch methods come from `griffon.plugins.wslite.WsliteAsyncProvider`
+and are only injected when the provider implements it, as all providers shipped
+with the plugin do. The plugin runs on Java 6, which is why these methods return a
+plain `java.util.concurrent.Future`. Features of newer JVMs, namely virtual threads
+(Java 21) and HTTP/2 (Java 11), are looked up at runtime and fall back to platform
+threads and HTTP/1.1 on older JVMs.
+
+Closures run as a copy whose delegate is the client, so the closure you pass in
+is never modified. The same closure may be used by several threads at once.
+`CallableWithArgs` instances are never modified either: the client is handed to
+`call(Object[] args)` as `args[0]`, in an array of its own for every call, and
+`setArgs()` is not used. Sharing one array between calls would let any callable
+change the arguments seen by the others.
 
 The following properties will be set on the implicit HTTPClient when using either
 `withRest` or `withSoap`:
@@ -96,6 +118,15 @@ The preferred way to mark a class for method injection is by annotating it with
 `griffon.plugins.wslite.WsliteContributionHandler` interface and default behavior
 that fulfills the contract.
 
+The annotation may also inject client handles (see Client Handles) as private
+final fields. Each field is named after its client id and type:
+
+    @WsliteAware(rest = 'github-api', soap = 'weather')
+    class SearchController {
+        // injects githubApiRest = WsliteRestHandle.forId('github-api')
+        // and weatherSoap = WsliteSoapHandle.forId('weather')
+    }
+
 ### Dynamic Method Injection
 
 Dynamic methods will be added to controllers by default. You can
@@ -106,6 +137,502 @@ change this setting by adding a configuration flag in `griffon-app/conf/Config.g
 Dynamic method injection will be skipped for classes implementing
 `griffon.plugins.wslite.WsliteContributionHandler`.
 
+By default every matching artifact is enhanced at startup. With many artifacts,
+injection can be deferred so that only classes that are actually used pay for it:
+
+    griffon.wslite.injectionMode = 'instantiation'  // 'eager' (default), 'instantiation' or 'methodMissing'
+
+`instantiation` enhances an artifact when its first instance is created.
+`methodMissing` installs a single `methodMissing` handler per artifact and
+injects the methods on the first call to one of them. Startup logs how long
+preparing the artifacts took. `WsliteEnhancer.enhancedClasses` and
+`WsliteEnhancer.enhancementTime` (in milliseconds) report the cumulative cost of
+enhancement.
+
+### Client Cache
+
+Clients stored by `id:` are kept in a cache per client type (`http`, `rest` and
+`soap`). These caches are unbounded by default. You may bound their size and
+expire entries by adding the following settings to `griffon-app/conf/Config.groovy`
+
+    griffon.wslite.cache.rest.maxSize = 50        // 0 means unbounded
+    griffon.wslite.cache.rest.policy = 'lfu'      // either 'lru' (default) or 'lfu'
+    griffon.wslite.cache.rest.ttl = 3600000       // max lifetime in milliseconds
+    griffon.wslite.cache.rest.idleTimeout = 600000 // max idle time in milliseconds
+
+Clients that leave a cache release their resources, whether they were evicted,
+expired, removed with `remove*Client(id)` or replaced with `set*Client(id, client)`.
+The client and its `HTTPClient` are closed if they implement `java.io.Closeable`.
+A client still running calls on other threads is closed once the last of them
+ends. Connection factories are never closed, since they may be shared with other
+clients. When `ttl` or `idleTimeout` is set, expired clients are swept in the
+background as well, every shortest of those periods (one second at least). This
+way an unused cache does not keep them open. You
+can be notified of removals by registering a `griffon.plugins.wslite.WsliteClientCacheListener`
+with `WsliteClientHolder.instance.addClientCacheListener(listener)`.
+
+Concurrent calls that share a missing `id:` wait for a single client to be
+created. Clients requested without an `id:` may also be cached by enabling
+
+    griffon.wslite.cache.fingerprint = true
+
+in which case the client is keyed by a fingerprint of its parameters (url,
+timeouts, proxy, SSL settings and so on); calls with identical parameters will
+reuse the same client. Calls passing objects that can't be compared by value,
+such as an `authorization:` or a connection factory, always get a new client.
+These clients share the policy and expiration settings above, and their number
+is bounded per client type (100 by default)
+
+    griffon.wslite.cache.rest.anonymousMaxSize = 200
+
+### Connection Pools
+
+Clients may lease their connections from a named pool that keeps connections
+alive and bounds how many of them may be open per host and in total. Pools are
+defined in `griffon-app/conf/Config.groovy`
+
+    griffon.wslite.pools.backend.maxPerHost = 10          // defaults to 5
+    griffon.wslite.pools.backend.maxTotal = 50            // defaults to 20
+    griffon.wslite.pools.backend.leaseTimeout = 5000      // defaults to 30000, 0 waits forever
+    griffon.wslite.pools.backend.idleTimeout = 60000      // idle hosts are evicted
+    griffon.wslite.pools.backend.validateOnLease = true   // no reuse after a failure
+    griffon.wslite.pools.backend.clients = ['orders', 'customers']
+
+Clients whose `id:` is listed in `clients` use the pool automatically. Any other
+call may select a pool with the `connectionPool:` attribute, for example
+`withRest(url: '...', connectionPool: 'backend') { ... }`. An explicit
+`httpConnectionFactory:` takes precedence. A lease is returned to its pool when
+the connection is disconnected, when its response stream is closed or as soon as
+the exchange fails. HTTPS connections keep exposing `HttpsURLConnection`. Lease, wait, timeout and failure
+counts are available from `WsliteConnector.instance.getConnectionPool('backend')`.
+
+### Response Cache
+
+GET responses may be cached according to their `Cache-Control`, `Expires`,
+`ETag` and `Last-Modified` headers. Fresh responses are served without a round
+trip; stale ones are revalidated with `If-None-Match`/`If-Modified-Since` and a
+`304` answer is served from the cached body. POST, PUT, PATCH and DELETE calls
+invalidate the cached entries of their URL. Caches are defined in
+`griffon-app/conf/Config.groovy`
+
+    griffon.wslite.responseCaches.catalog.maxEntries = 500          // defaults to 1000
+    griffon.wslite.responseCaches.catalog.maxBytes = 10485760       // defaults to 10MB
+    griffon.wslite.responseCaches.catalog.directory = "${System.getProperty('user.home')}/.myapp/catalog" // optional disk tier
+    griffon.wslite.responseCaches.catalog.maxDiskBytes = 104857600
+    griffon.wslite.responseCaches.catalog.clients = ['catalog']
+
+Clients whose `id:` is listed in `clients` use the cache automatically; any
+other call may select one with the `responseCache:` attribute. Entries evicted
+from memory move to `directory` when one is set, in files ending with `.wslc`;
+other files in the directory are left alone. Pick a directory only your
+application can write to, rather than a shared one such as `/tmp`. A cache may
+be shared by clients with different credentials: entries are kept apart per
+`authorization:` and per `Authorization` header, and responses marked
+`Cache-Control: private` are never stored. Clients whose authorization has no
+`username` and `password` bypass the cache. Hit, miss, revalidation and
+eviction counts are available from `WsliteConnector.instance.getResponseCache('catalog')`.
+
+### Streaming SOAP Responses
+
+Large SOAP responses may be read with a StAX pull parser instead of being parsed
+into a tree. A `withSoap` call streams its response when it sets `streaming: true`
+or when its `id:` is listed in
+
+    griffon.wslite.streaming.clients = ['reports']
+
+In streaming mode `send()` takes the same arguments as usual but returns a
+`griffon.plugins.wslite.WsliteSOAPStream`. Its `reader` is an `XMLStreamReader`
+positioned on the first element inside `Body`; alternatively `eachElement`
+hands over one element at a time as a `GPathResult`, so memory stays bounded by
+the size of a single record. SOAP faults are available from `fault`. Streams are
+closed when the call completes.
+
+    withSoap(url: 'http://localhost:8080/reports', id: 'reports', streaming: true) {
+        def stream = send(SOAPAction: 'urn:Report') {
+            body { getReport(xmlns: 'urn:reports') { year(2013) } }
+        }
+        stream.eachElement('row') { row -> export(row.@id.text(), row.total.text()) }
+    }
+
+### Streaming JSON Responses
+
+`withRest` calls support the same streaming mode. `get()` then returns a
+`griffon.plugins.wslite.WsliteJsonStream`, an `Iterator` over the elements of a
+JSON array that parses each element off the socket only when it is requested.
+The array is located with a dotted `root:` path (`root: 'data.items'`); without
+one the first array in the document is streamed. Stop early by breaking out of
+the loop, calling `close()`, or returning `false` from `eachElement`; the
+connection is closed either way.
+
+    withRest(url: 'http://localhost:8080/exports', streaming: true) {
+        def events = get(path: '/events', query: [since: lastSync], root: 'events')
+        for (event in events) {
+            if (!store(event)) break
+        }
+    }
+
+### Streaming Uploads
+
+HTTP clients created by this plugin are `griffon.plugins.wslite.WsliteHTTPClient`
+instances. Their `upload()` method sends a body read from an `InputStream`, a
+`File` or a `java.nio.file.Path` without loading it in memory. Bodies of known
+length are sent in fixed-length streaming mode, other streams are sent in
+chunks. Inside `withRest` and `withSoap` the same method is reachable through
+`httpClient`.
+
+    withHttp(id: 'storage', uploadBufferSize: 16384) {
+        upload(url: 'http://localhost:8080/files/backup.tar', method: 'PUT',
+               body: new File('backup.tar'), contentType: 'application/x-tar')
+    }
+
+`streamingChunkSize` and `uploadBufferSize` (both 8192 bytes by default) may be
+set like any other client setting. Requests may also be built directly as
+`WsliteHTTPRequest` instances and passed to `execute()`.
+
+### Downloads
+
+`download()` writes a response body straight to a `File` or a
+`java.nio.file.Path` through a `FileChannel`. The body is never held in memory,
+so heap use is the same whatever the size of the file.
+
+    withHttp(id: 'artifacts') {
+        WsliteDownload result = download(
+            url: 'http://localhost:8080/artifacts/app.zip',
+            to: new File('app.zip'),
+            resume: true,
+            checksum: 'SHA-256',
+            progress: { long received, long length -> println "$received of $length bytes" })
+        println result.checksum
+    }
+
+With `resume: true` an existing file is completed with a Range request. If the
+server ignores the range, the file is downloaded again. If the file is already
+complete, nothing is transferred. `checksum` names any `MessageDigest`
+algorithm, and the digest always covers the whole file. `progress` is called
+after every chunk of `chunkSize` bytes (64 KB by default). A connection that
+closes early fails the download and leaves the partial file ready to be
+resumed. Interceptors, such as the response cache or compression, do not apply
+to downloads. Inside `withRest` the method is reachable through `httpClient`.
+
+### Compression
+
+Clients may negotiate gzip/deflate compression. They then send
+`Accept-Encoding: gzip, deflate` and decode compressed responses, including
+streamed ones and error responses carried by an `HTTPClientException`, before
+handing them over. wslite gunzips successful responses by itself whether or
+not compression is enabled; the plugin decodes deflate and gzipped error
+bodies, and records the sizes.
+Request bodies larger than a threshold
+are gzipped as well. Enable it per call with `compression: true` (and optionally
+`compressRequestsAbove: 4096`), or per client id with
+
+    griffon.wslite.compression.clients = ['orders', 'reports']
+    griffon.wslite.compression.requestThreshold = 4096   // -1 (default) never compresses requests
+
+Compression ratio and bytes saved are reported per client id by
+`WsliteConnector.instance.getCompressionStats('orders')`. Clients without an
+`id:` are reported together under `(anonymous)`.
+
+### Metrics
+
+Every `withSoap`, `withRest` and `withHttp` call is recorded per client id and
+operation: call and error counts, calls in flight, bytes sent and received, and
+a latency histogram with about 3% precision. Recording is lock-free. Metrics are
+published as JMX MBeans named
+`griffon.plugins.wslite:type=ClientMetrics,client="<id>",operation=<soap|rest|http>`
+(latencies in milliseconds, including p50, p90, p99 and p99.9), and are also
+available from `WsliteMetrics.instance.snapshot()`. Calls made without an `id:`
+are grouped under `(anonymous)`. The metrics of a client, and its MBean, are
+dropped once the client is evicted from or removed out of the client cache.
+
+    griffon.wslite.metrics.enabled = true   // set to false to stop recording
+    griffon.wslite.metrics.jmx = true       // set to false to skip MBean registration
+
+### Asynchronous Calls
+
+The `withXxxAsync` methods return a `java.util.concurrent.Future` right away and
+run their statements on a bounded thread pool. Calls may define a `timeout:`
+attribute (in milliseconds); a call that takes longer fails with a
+`TimeoutException` and its thread is interrupted. Cancelling the `Future` has
+the same effect. The pool is configured with
+
+    griffon.wslite.async.threads = 8       // defaults to the number of processors (at least 2)
+    griffon.wslite.async.queueSize = 1000  // further calls are rejected
+    griffon.wslite.async.timeout = 30000   // default timeout, 0 disables it
+
+### Batches
+
+`withRestBatch` resolves a single RESTClient from its parameters and runs its
+statements once per element of `requests`, passing the element as argument
+(`CallableWithArgs` receives the client and the element). At most
+`parallelism:` requests run at the same time (4 by default). The returned
+`griffon.plugins.wslite.WsliteBatch` is an `Iterable` of `WsliteBatchResult`
+that blocks until the next result is available. Results arrive in input order,
+or in completion order when `ordered: false` is given. A failing request does
+not affect the others; its error is available from `WsliteBatchResult.error`.
+A `timeout:` attribute (in milliseconds) bounds the whole batch. Requests still
+without a result when it elapses fail with a `TimeoutException` and their
+workers are interrupted. Requests left behind when the executor shuts down fail
+as well, so iterating a batch never blocks forever.
+
+    def batch = withRestBatch(url: 'http://localhost:8080/exporter', id: 'rows',
+                              parallelism: 8, ordered: false, rows) { row ->
+        get(path: "/rows/${row.id}").json
+    }
+    batch.each { result ->
+        if (result.success) update(result.request, result.value)
+    }
+
+### Virtual Threads
+
+`griffon.plugins.wslite.VirtualThreadWsliteProvider` runs asynchronous calls
+and batches on virtual threads when the JVM supports them (Java 21 or later) and
+on a bounded pool of platform threads otherwise. Blocking calls stay on the
+caller's thread. Asynchronous calls become cheap enough to fan out thousands of
+blocking requests at once. Select it for a single instance
+with `setWsliteProvider(VirtualThreadWsliteProvider.instance)` or for the whole
+application with
+
+    griffon.wslite.provider = 'virtual'               // 'default', 'virtual' or a WsliteProvider class name
+    griffon.wslite.virtualThreads.fallbackThreads = 64
+    griffon.wslite.virtualThreads.fallbackQueueSize = 1000 // further calls are rejected
+
+The global setting applies to injected methods and to artifacts annotated with
+`@WsliteAware` that still use the default provider.
+
+### Load Testing
+
+`griffon wslite-load-test` drives `withRest`, `withSoap` or `withHttp` through
+`DefaultWsliteProvider` from several threads, then reports throughput, error
+counts, latency percentiles and the allocation rate of the calling threads.
+By default it targets `griffon.plugins.wslite.benchmark.WsliteStubServer`, an embedded
+server answering with canned REST and SOAP responses. The stub server can add
+latency, pad responses and inject errors, so you can size connection pools and
+timeouts offline.
+
+    griffon wslite-load-test --operation=soap --threads=32 --warmup=5 --duration=30 \
+        --latency=20 --jitter=10 --size=16384 --errorRate=0.01 --readTimeout=2000
+
+Use `--url=` to target a real service instead. Any argument that the harness
+does not recognize, such as `--readTimeout`, is handed over to the client.
+The same test can be run from code with `griffon.plugins.wslite.benchmark.WsliteLoadTest`.
+The harness lives under `src/benchmark` next to the JMH suite, so it is only available
+from the plugin's sources and is not packaged in the plugin's jar.
+
+### Client Handles
+
+A handle resolves its client once. Calls made through it skip the parameter map
+and the lookup by id. `WsliteRestHandle`, `WsliteSoapHandle` and
+`WsliteHttpHandle` are created either from the parameters that `withRest`,
+`withSoap` and `withHttp` accept, or for the id of a client that already exists.
+Handles are immutable and may be shared across threads.
+
+    def github = WsliteRestHandle.create(url: 'https://api.github.com', id: 'github')
+    github.rest { get(path: '/users/aalmiray').json }
+
+    def weather = WsliteSoapHandle.forId('weather')   // resolved on first use
+    weather.soap { send { body { GetWeather(xmlns: 'urn:weather') } } }
+
+A handle resolves its client again after the client cache evicts, replaces or
+removes a client. Calls through a handle do not reset the client's idle timer.
+Calls are recorded in metrics and honor streaming settings, just like the
+`withXxx` methods.
+
+### Declared Clients
+
+Clients may be declared by id in `griffon-app/conf/Config.groovy`. A declared
+client is created from its settings on the first call that uses its id. Later
+calls then only need the id, and `WsliteXxxHandle.forId()` works without prior
+setup. Settings given at the call site take precedence over declared ones.
+
+    griffon.wslite.clients = [
+        github:  [type: 'rest', url: 'https://api.github.com', readTimeout: 5000, prewarm: true],
+        weather: [type: 'soap', url: 'http://localhost:8080/weather',
+                  prewarm: [connections: 4, method: 'GET', path: '?wsdl', timeout: 5000]]
+    ]
+
+`type` is one of `rest` (the default), `soap` or `http`. Clients with `prewarm`
+are created at startup on a background thread. The pre-warm then resolves the
+client's host and sends `connections` concurrent requests (`GET` by default)
+to its URL. This leaves open connections in the keep-alive cache or connection
+pool, with their TLS handshakes done, so the first user action runs at
+steady-state latency. Pre-warm failures are logged and otherwise ignored.
+`WsliteClientHolder.instance.prewarmer.await(millis)` waits for pending pre-warms.
+
+### SSL Contexts
+
+Clients with the same `sslTrustStoreFile` and `sslTrustStorePassword`, or with
+`sslTrustAllCerts`, share a single `SSLContext`. Truststores are loaded once
+instead of on every connection. Kept-alive HTTPS connections can be reused, and
+reconnects resume cached TLS sessions with an abbreviated handshake. A changed
+truststore file is detected and the context is rebuilt.
+
+    griffon.wslite.ssl.shareContexts = true      // false builds a context per connection
+    griffon.wslite.ssl.protocol = 'TLS'
+    griffon.wslite.ssl.sessionCacheSize = 0      // cached TLS sessions per context, 0 means no limit
+    griffon.wslite.ssl.sessionTimeout = 86400    // seconds a cached session may be resumed
+    griffon.wslite.ssl.reloadInterval = 5000     // milliseconds between truststore change checks
+
+A truststore that changed but cannot be loaded, for example while it is being
+rewritten, is logged as a warning; the previous context stays in use and loading
+is attempted again after the next interval. `WsliteSSLContextCache.instance`
+reports how many truststores were loaded and reloaded.
+
+### Request Coalescing
+
+Clients listed below share a single network call among concurrent identical
+GET requests. Requests are identical when they have the same URL, query string
+and request headers. The first request is sent. Any identical request that
+arrives while it is in flight waits for it and gets its own copy
+of the response. If the call fails, every waiting caller gets its own
+`HTTPClientException` caused by that error. A waiting request gives up with a
+read timeout once its `readTimeout` (or that of its client) elapses, and when
+its thread is interrupted. Nothing is kept after the call completes. Coalescing sits behind the
+response cache, so cache hits never wait.
+
+    griffon.wslite.coalescing.clients = ['dashboard']
+
+A single call may also opt in or out with `coalesce: true` or `coalesce: false`.
+`WsliteConnector.instance.getRequestCoalescer(id)` reports how many requests
+were sent and how many were coalesced.
+
+### Resilience
+
+A resilience policy protects a backend from clients that keep calling it while
+it struggles. Policies are named, and each client listed in a policy gets its
+own concurrency limit, circuit breaker and retry budget.
+
+    griffon.wslite.resilience.backend.initialConcurrency = 20
+    griffon.wslite.resilience.backend.minConcurrency = 1
+    griffon.wslite.resilience.backend.maxConcurrency = 200
+    griffon.wslite.resilience.backend.latencyTolerance = 2.0     // slowdown that shrinks the limit
+    griffon.wslite.resilience.backend.failureRateThreshold = 0.5
+    griffon.wslite.resilience.backend.slidingWindow = 20         // calls the failure rate is computed from
+    griffon.wslite.resilience.backend.minimumCalls = 10
+    griffon.wslite.resilience.backend.openTimeout = 30000        // milliseconds before trial calls
+    griffon.wslite.resilience.backend.halfOpenCalls = 3
+    griffon.wslite.resilience.backend.maxRetries = 2
+    griffon.wslite.resilience.backend.retryBackoff = 100         // milliseconds, doubled on every retry
+    griffon.wslite.resilience.backend.maxRetryBackoff = 2000
+    griffon.wslite.resilience.backend.retryRatio = 0.2           // retries earned per request
+    griffon.wslite.resilience.backend.retryBudget = 20           // retries that can be saved up
+    griffon.wslite.resilience.backend.retryMethods = ['GET', 'HEAD', 'PUT', 'DELETE', 'OPTIONS', 'TRACE']
+    griffon.wslite.resilience.backend.clients = ['orders', 'customers']
+
+The concurrency limit follows the latency of the client. It grows while
+responses arrive as fast as usual and shrinks once they get slower than
+`latencyTolerance` times the usual, or when calls fail. The circuit opens when
+the share of failed calls reaches `failureRateThreshold`. Requests beyond the
+limit, or sent while the circuit is open, fail at once with a
+`RejectedExecutionException` instead of waiting on the backend. Network
+errors, 5xx and 429 responses count as failures. Other client errors don't.
+
+Failed requests whose method is listed in `retryMethods` are retried after a
+random delay. Every retry is paid from the retry budget, which each request
+replenishes by `retryRatio`. During an outage, retries add at most that share of
+extra load. SOAP calls are POST requests, so they are retried only when POST is
+added to `retryMethods`.
+
+Every circuit change triggers a `WsliteCircuitStateChanged` event with the id of
+the client, the previous state and the new state (`CLOSED`, `OPEN` or
+`HALF_OPEN`):
+
+    onWsliteCircuitStateChanged = { String id, from, to ->
+        if (to.name() == 'OPEN') log.warn("Backend behind '$id' is failing")
+    }
+
+A single call may pick a policy with `resilience: 'backend'`.
+`WsliteConnector.instance.getResilience(id)` reports the current limit,
+circuit state and retries of a client.
+
+### Hedged Requests
+
+A client that hedges sends a second copy of any request that takes longer than
+usual, and answers with whichever copy responds first. The request itself is sent
+from the calling thread; the copy is sent from a shared pool of at most
+`maxThreads` threads, and is not sent when the pool has no thread to spare. The
+connection of the copy that lost is disconnected, and its response discarded. A
+copy that fails doesn't win; the error is reported only when both copies fail.
+
+    griffon.wslite.hedging.clients = ['catalog']
+    griffon.wslite.hedging.percentile = 95      // latency percentile that triggers a hedge
+    griffon.wslite.hedging.delay = 100          // milliseconds, used until enough latencies were observed
+    griffon.wslite.hedging.minDelay = 10
+    griffon.wslite.hedging.maxDelay = 1000
+    griffon.wslite.hedging.budgetRatio = 0.1    // hedges earned per request
+    griffon.wslite.hedging.budget = 10          // hedges that can be saved up
+    griffon.wslite.hedging.methods = ['GET', 'HEAD']
+    griffon.wslite.hedging.maxThreads = 16      // threads sending hedged copies, shared by all clients
+
+The hedging budget caps the extra load at `budgetRatio` of the requests. Only
+requests whose method is listed in `methods` are hedged. SOAP calls are POST
+requests; add POST for clients whose SOAP operations are read only. Both copies
+count against the resilience policy of the client, if any. Disconnecting aborts
+a copy that is still waiting for its response headers; a copy that is already
+reading its body, that was sent over HTTP/2 or through an `httpConnectionFactory`
+of your own finishes first, and the caller waits for it when it is the request
+sent from its own thread.
+
+A single call may opt in or out with `hedge: true` or `hedge: false`.
+`WsliteConnector.instance.getHedging(id)` reports the current delay and how
+many requests were hedged, won by the hedge, or not hedged for lack of budget
+or threads.
+
+### Load Balancing
+
+A client given `urls` instead of `url` spreads its requests over all of them.
+The client is bound to the first url. Each request aimed at it is sent to the
+endpoint picked by `balancing`:
+
+ * `roundRobin` (the default) - endpoints take turns
+ * `leastOutstanding` - the endpoint with the fewest requests in flight
+ * `latency` - a random endpoint, favoring the fastest ones and the least busy
+
+An endpoint that fails `ejectAfter` requests in a row is left out for
+`ejectFor` milliseconds. Network errors and 5xx responses count as failures.
+Clients with an id may also run active health checks. Each endpoint gets a GET
+to `healthCheck.path` every `interval` milliseconds, and an endpoint that fails
+it is left out until it passes again. If every endpoint is left out, requests
+are spread over all of them.
+
+    griffon.wslite.clients = [
+        catalog: [type: 'rest',
+                  urls: ['http://catalog-1:8080', 'http://catalog-2:8080', 'http://catalog-3:8080'],
+                  balancing: 'leastOutstanding',
+                  ejectAfter: 3,
+                  ejectFor: 30000,
+                  healthCheck: [path: '/health', interval: 10000, timeout: 2000]]
+    ]
+
+Calls keep their usual shape, `withRest(id: 'catalog') { get(path: '/items') }`.
+Retries and hedged copies pick an endpoint of their own.
+`WsliteConnector.instance.getLoadBalancer(id)` reports the requests, ejections,
+health and average latency of each endpoint.
+
+### HTTP/2
+
+On Java 11 and later, clients listed below send their requests through
+`java.net.http.HttpClient`. Concurrent requests to the same host then share a
+single HTTP/2 connection instead of opening one socket each. The protocol is
+negotiated with every server, and servers that only speak HTTP/1.1 are answered
+over HTTP/1.1. `RESTClient`, `SOAPClient` and `HTTPClient` responses look exactly
+as before.
+
+    griffon.wslite.http2.clients = ['catalog']
+
+A single call may opt in or out with `http2: true` or `http2: false`. Clients
+with the same truststore, proxy, connect timeout and redirect policy share
+their connections. At most 32 such connection groups are kept, and the least
+recently used one is dropped first. A truststore that is reloaded gets a new
+group. `readTimeout` bounds the whole exchange. Some requests
+still go over `HttpURLConnection`:
+
+ * streamed uploads
+ * streamed responses
+ * SOCKS proxies
+ * clients with `sslTrustAllCerts`, because java.net.http always verifies host names
+ * any request on older runtimes
+
 ### Example
 
 This example relies on [Grails][2] as the service provider. Follow these steps
@@ -294,6 +821,9 @@ The contract for this interface looks like this
         <R> R withRest(Map<String, Object> params, CallableWithArgs<R> callable);
     }
 
+Implement `griffon.plugins.wslite.WsliteAsyncProvider` instead when your tests
+need the `withXxxAsync` and `withRestBatch` methods as well.
+
 It's up to you define how these methods need to be implemented for your tests.
 For example, here's an implementation that never fails regardless of the
 arguments it receives
@@ -11,6 +11,10 @@ griffon.project.dependency.resolution = {
         build('org.eclipse.jdt:org.eclipse.jdt.core:3.6.0.v_A58') {
             export = false
         }
+        build('org.openjdk.jmh:jmh-core:1.37',
+              'org.openjdk.jmh:jmh-generator-annprocess:1.37') {
+            export = false
+        }
         String lombokIdea = '0.5'
         build("de.plushnikov.lombok-intellij-plugin:processor-api:$lombokIdea",
               "de.plushnikov.lombok-intellij-plugin:processor-core:$lombokIdea",
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Compiles the benchmarks found in src/benchmark and runs them with JMH.
+ * Any argument is handed over to JMH, for example
+ * {@code griffon wslite-benchmark Dispatch -f 2 -prof gc}.
+ *
+ * @author Andres Almiray
+ */
+
+includeTargets << griffonScript('_GriffonCompile')
+includeTargets << new File("${basedir}/scripts/_WsliteBenchmarkCompile.groovy")
+
+target(name: 'wsliteBenchmark', description: 'Runs the JMH benchmark suite', prehook: null, posthook: null) {
+    depends(wsliteBenchmarkCompile)
+    if (!new File(benchmarkClassesDir).exists()) return
+
+    ant.java(classname: 'org.openjdk.jmh.Main', fork: true, failonerror: true) {
+        classpath {
+            pathelement(location: benchmarkClassesDir)
+            path(refid: 'wslite.benchmark.classpath')
+        }
+        argsMap.params.each { arg(value: it) }
+    }
+}
+
+setDefaultTarget(wsliteBenchmark)
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs the specs found in test/benchmark, which check the stub server and load-test
+ * harness compiled from src/benchmark. These classes are not part of the plugin's jar,
+ * so the unit tests can't see them.
+ *
+ * @author Andres Almiray
+ */
+
+includeTargets << griffonScript('_GriffonCompile')
+includeTargets << new File("${basedir}/scripts/_WsliteBenchmarkCompile.groovy")
+
+benchmarkTestClassesDir = "${projectWorkDir}/benchmark-test-classes"
+
+target(name: 'wsliteBenchmarkTest', description: 'Runs the specs of the benchmark sources', prehook: null, posthook: null) {
+    depends(wsliteBenchmarkCompile)
+    File testSrc = new File("${basedir}/test/benchmark")
+    if (!new File(benchmarkClassesDir).exists() || !testSrc.exists()) return
+
+    ant.path(id: 'wslite.benchmark.test.classpath') {
+        pathelement(location: benchmarkClassesDir)
+        path(refid: 'wslite.benchmark.classpath')
+        griffonSettings.testDependencies.each { pathelement(location: it.absolutePath) }
+    }
+    ant.delete(dir: benchmarkTestClassesDir, quiet: true)
+    ant.mkdir(dir: benchmarkTestClassesDir)
+    ant.wsliteGroovyc(destdir: benchmarkTestClassesDir, srcdir: testSrc, classpathref: 'wslite.benchmark.test.classpath',
+        encoding: 'UTF-8') {
+        include(name: '**/*Spec.groovy')
+    }
+
+    List<String> specs = []
+    testSrc.eachFileRecurse { File file ->
+        if (file.name.endsWith('Spec.groovy')) {
+            specs << (file.absolutePath - testSrc.absolutePath - '.groovy').substring(1).replace(File.separator, '.')
+        }
+    }
+    ant.java(classname: 'org.junit.runner.JUnitCore', fork: true, failonerror: true) {
+        classpath {
+            pathelement(location: benchmarkTestClassesDir)
+            path(refid: 'wslite.benchmark.test.classpath')
+        }
+        specs.each { arg(value: it) }
+    }
+}
+
+setDefaultTarget(wsliteBenchmarkTest)
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs a load test through DefaultWsliteProvider, against an embedded stub server
+ * unless a --url is given. See griffon.plugins.wslite.benchmark.WsliteLoadTest for the
+ * recognized arguments, for example
+ * {@code griffon wslite-load-test --operation=soap --threads=32 --latency=20}.
+ *
+ * @author Andres Almiray
+ */
+
+includeTargets << griffonScript('_GriffonCompile')
+includeTargets << new File("${basedir}/scripts/_WsliteBenchmarkCompile.groovy")
+
+target(name: 'wsliteLoadTest', description: 'Runs a load test against a stub or real service', prehook: null, posthook: null) {
+    depends(wsliteBenchmarkCompile)
+    if (!new File(benchmarkClassesDir).exists()) return
+
+    ant.java(classname: 'griffon.plugins.wslite.benchmark.WsliteLoadTest', fork: true, failonerror: true) {
+        classpath {
+            pathelement(location: benchmarkClassesDir)
+            path(refid: 'wslite.benchmark.classpath')
+        }
+        argsMap.each { name, value ->
+            if (name == 'params') return
+            arg(value: value instanceof Boolean ? "--${name}" : "--${name}=${value}")
+        }
+        argsMap.params.each { arg(value: it) }
+    }
+}
+
+setDefaultTarget(wsliteLoadTest)
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Compiles the sources found in src/benchmark, which are kept out of the plugin's jar.
+ * The resulting classes are found at {@code benchmarkClassesDir} and the classpath
+ * needed to run them is registered as {@code wslite.benchmark.classpath}.
+ *
+ * @author Andres Almiray
+ */
+
+includeTargets << griffonScript('_GriffonCompile')
+
+benchmarkClassesDir = "${projectWorkDir}/benchmark-classes"
+
+target(name: 'wsliteBenchmarkCompile', description: 'Compiles the benchmark sources', prehook: null, posthook: null) {
+    depends(compile)
+
+    File benchmarkSrc = new File("${basedir}/src/benchmark")
+    if (!benchmarkSrc.exists()) {
+        println "No benchmarks found at ${benchmarkSrc}"
+        return
+    }
+    ant.delete(dir: benchmarkClassesDir, quiet: true)
+    ant.mkdir(dir: benchmarkClassesDir)
+
+    ant.path(id: 'wslite.benchmark.classpath') {
+        path(refid: 'griffon.compile.classpath')
+        pathelement(location: classesDirPath)
+        // @WsliteAware and its AST transformation live in src/cli
+        pathelement(location: "${projectWorkDir}/cli-classes")
+        griffonSettings.buildDependencies.each { pathelement(location: it.absolutePath) }
+    }
+
+    ant.taskdef(name: 'wsliteGroovyc', classname: 'org.codehaus.groovy.ant.Groovyc')
+    ant.wsliteGroovyc(destdir: benchmarkClassesDir, srcdir: benchmarkSrc, classpathref: 'wslite.benchmark.classpath',
+        encoding: 'UTF-8') {
+        include(name: '**/*.groovy')
+    }
+    // JMH generates its harness through an annotation processor, javac must see the Groovy classes
+    ant.javac(destdir: benchmarkClassesDir, srcdir: benchmarkSrc, includeantruntime: false, encoding: 'UTF-8',
+        source: '1.8', target: '1.8', debug: true) {
+        include(name: '**/*.java')
+        classpath {
+            path(refid: 'wslite.benchmark.classpath')
+            pathelement(location: benchmarkClassesDir)
+        }
+    }
+    ant.copy(todir: benchmarkClassesDir) {
+        fileset(dir: benchmarkSrc, excludes: '**/*.java, **/*.groovy')
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite.benchmark
+
+import griffon.plugins.wslite.WsliteAware
+import griffon.plugins.wslite.WsliteEnhancer
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+
+/**
+ * Groovy sides of the dispatch benchmarks. Calls are made from Groovy code so that
+ * they go through regular call site caching, as they would in an application.
+ *
+ * @author Andres Almiray
+ */
+final class BenchmarkTargets {
+    private BenchmarkTargets() {}
+
+    /**
+     * @return a closure that returns its delegate, the client handed over by the provider
+     */
+    static Closure delegateClosure() {
+        return { -> delegate }
+    }
+
+    static Closure restGet() {
+        return { -> get().statusCode }
+    }
+
+    static Closure soapSend() {
+        return { -> send(SOAPAction: 'urn:wslite#Echo') { body { Echo(xmlns: 'urn:wslite') } }.httpResponse.statusCode }
+    }
+
+    static Closure httpGet(String url) {
+        URL target = new URL(url)
+        return { -> execute(new HTTPRequest(url: target, method: HTTPMethod.GET)).statusCode }
+    }
+
+    static EnhancedTarget enhancedTarget() {
+        EnhancedTarget target = new EnhancedTarget()
+        WsliteEnhancer.enhance(target.metaClass)
+        target
+    }
+}
+
+/**
+ * Reaches the provider through metaClass closures added by {@code WsliteEnhancer}.
+ */
+class EnhancedTarget {
+    def rest(Map params, Closure closure) {
+        withRest(params, closure)
+    }
+}
+
+/**
+ * Reaches the provider through delegates injected by {@code @WsliteAware}.
+ */
+@WsliteAware
+class AstTarget {
+    def rest(Map params, Closure closure) {
+        withRest(params, closure)
+    }
+}
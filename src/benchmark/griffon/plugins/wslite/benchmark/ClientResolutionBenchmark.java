@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite.benchmark;
+
+import griffon.plugins.wslite.WsliteClientHolder;
+import griffon.plugins.wslite.WsliteConnector;
+import org.openjdk.jmh.annotations.*;
+import wslite.rest.RESTClient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving a client: cached lookups by id, anonymous lookups with and
+ * without fingerprinting, and raw creation through {@code WsliteConnector}.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientResolutionBenchmark {
+    @Param({"false", "true"})
+    public boolean fingerprint;
+
+    private WsliteStubServer server;
+    private String url;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new WsliteStubServer().start();
+        url = server.getUrl() + WsliteStubServer.REST_PATH;
+        WsliteClientHolder.getInstance().setFingerprintAnonymousClients(fingerprint);
+    }
+
+    @TearDown
+    public void tearDown() {
+        WsliteClientHolder.getInstance().setFingerprintAnonymousClients(false);
+        server.stop();
+    }
+
+    private Map<String, Object> params() {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("url", url);
+        params.put("connectTimeout", 1000);
+        params.put("readTimeout", 5000);
+        return params;
+    }
+
+    @Benchmark
+    public RESTClient holderLookupById() {
+        Map<String, Object> params = params();
+        params.put("id", "lookup");
+        return WsliteClientHolder.getInstance().fetchRestClient(params);
+    }
+
+    @Benchmark
+    public RESTClient holderAnonymous() {
+        return WsliteClientHolder.getInstance().fetchRestClient(params());
+    }
+
+    @Benchmark
+    public Object connectorCreateClient() {
+        return WsliteConnector.getInstance().createClient(RESTClient.class, params(), null);
+    }
+}
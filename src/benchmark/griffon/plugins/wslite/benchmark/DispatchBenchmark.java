@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite.benchmark;
+
+import griffon.plugins.wslite.DefaultWsliteProvider;
+import griffon.plugins.wslite.WsliteContributionAdapter;
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reaching a cached client through each dispatch path, with a body that
+ * does nothing but return the client it was handed.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    private WsliteStubServer server;
+    private String url;
+    private Closure<Object> closure;
+    private CallableWithArgs<Object> callable;
+    private EnhancedTarget enhanced;
+    private AstTarget ast;
+    private WsliteContributionAdapter adapter;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        server = new WsliteStubServer().start();
+        url = server.getUrl() + WsliteStubServer.REST_PATH;
+        closure = BenchmarkTargets.delegateClosure();
+        callable = new CallableWithArgs<Object>() {
+            public Object call(Object[] args) {
+                return args[0];
+            }
+        };
+        enhanced = BenchmarkTargets.enhancedTarget();
+        ast = new AstTarget();
+        adapter = new WsliteContributionAdapter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    private Map<String, Object> params() {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("url", url);
+        params.put("id", "dispatch");
+        return params;
+    }
+
+    @Benchmark
+    public Object metaClassClosure() {
+        return enhanced.rest(params(), closure);
+    }
+
+    @Benchmark
+    public Object astInjected() {
+        return ast.rest(params(), closure);
+    }
+
+    @Benchmark
+    public Object contributionAdapter() {
+        return adapter.withRest(params(), closure);
+    }
+
+    @Benchmark
+    public Object providerClosure() {
+        return DefaultWsliteProvider.getInstance().withRest(params(), closure);
+    }
+
+    @Benchmark
+    public Object providerCallableWithArgs() {
+        return DefaultWsliteProvider.getInstance().withRest(params(), callable);
+    }
+}
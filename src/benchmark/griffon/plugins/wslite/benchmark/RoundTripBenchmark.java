@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite.benchmark;
+
+import griffon.plugins.wslite.DefaultWsliteProvider;
+import groovy.lang.Closure;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full round trips to the in-process stub server through {@code DefaultWsliteProvider},
+ * putting the dispatch numbers in perspective.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+    private WsliteStubServer server;
+    private Closure<Object> restGet;
+    private Closure<Object> soapSend;
+    private Closure<Object> httpGet;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        server = new WsliteStubServer().start();
+        restGet = BenchmarkTargets.restGet();
+        soapSend = BenchmarkTargets.soapSend();
+        httpGet = BenchmarkTargets.httpGet(server.getUrl() + WsliteStubServer.HTTP_PATH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    private Map<String, Object> params(String id, String path) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("url", server.getUrl() + path);
+        params.put("id", id);
+        return params;
+    }
+
+    @Benchmark
+    public Object rest() {
+        return DefaultWsliteProvider.getInstance().withRest(params("bench-rest", WsliteStubServer.REST_PATH), restGet);
+    }
+
+    @Benchmark
+    public Object soap() {
+        return DefaultWsliteProvider.getInstance().withSoap(params("bench-soap", WsliteStubServer.SOAP_PATH), soapSend);
+    }
+
+    @Benchmark
+    public Object http() {
+        return DefaultWsliteProvider.getInstance().withHttp(params("bench-http", WsliteStubServer.HTTP_PATH), httpGet);
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite.benchmark;
+
+import griffon.plugins.wslite.DefaultWsliteProvider;
+import griffon.plugins.wslite.WsliteHistogram;
+import griffon.plugins.wslite.WsliteMetrics;
+import griffon.plugins.wslite.WsliteProvider;
+import griffon.util.CallableWithArgs;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import wslite.http.HTTPMethod;
+import wslite.http.HTTPRequest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives {@code withRest}, {@code withSoap} or {@code withHttp} through
+ * {@link DefaultWsliteProvider} from a number of threads and reports throughput,
+ * latency percentiles and allocation rate.<p>
+ * Every thread issues requests back to back, first during a warmup period whose
+ * results are discarded, then during the measured period. Each call receives a copy
+ * of the configured parameters, the same way an application would hand them over.
+ * Paired with {@link WsliteStubServer} it sizes pools and timeouts without touching
+ * real backends; {@link #main(String[])} does exactly that unless given a {@code --url}.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteLoadTest {
+    private static final String SOAP_ENVELOPE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>" +
+        "<Echo xmlns=\"urn:wslite\"><value>wslite</value></Echo></soap:Body></soap:Envelope>";
+
+    private String operation = WsliteMetrics.REST;
+    private int threads = 8;
+    private long warmup = 5000L;
+    private long duration = 30000L;
+    private final Map<String, Object> params = new LinkedHashMap<String, Object>();
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param operation one of {@code rest}, {@code soap} or {@code http}
+     */
+    public WsliteLoadTest setOperation(String operation) {
+        if (!WsliteMetrics.REST.equals(operation) && !WsliteMetrics.SOAP.equals(operation) && !WsliteMetrics.HTTP.equals(operation)) {
+            throw new IllegalArgumentException("Unknown operation '" + operation + "', expected one of rest, soap or http");
+        }
+        this.operation = operation;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public WsliteLoadTest setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("At least one thread is required");
+        this.threads = threads;
+        return this;
+    }
+
+    public long getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * @param warmup milliseconds to run before measuring
+     */
+    public WsliteLoadTest setWarmup(long warmup) {
+        this.warmup = Math.max(0L, warmup);
+        return this;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param duration milliseconds to measure
+     */
+    public WsliteLoadTest setDuration(long duration) {
+        if (duration < 1L) throw new IllegalArgumentException("Duration must be positive");
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * @return parameters handed over to each call, {@code url} is required and {@code id} is advised
+     */
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    public WsliteLoadTest param(String name, Object value) {
+        params.put(name, value);
+        return this;
+    }
+
+    public WsliteLoadTestReport run() throws InterruptedException {
+        if (params.get("url") == null) throw new IllegalArgumentException("A url parameter is required");
+        final URL url = toURL(String.valueOf(params.get("url")));
+        final CallableWithArgs<Object> call = callFor(url);
+        final WsliteHistogram latencies = new WsliteHistogram();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong allocated = new AtomicLong();
+        final Map<String, AtomicLong> errorsByType = new ConcurrentHashMap<String, AtomicLong>();
+        final CountDownLatch started = new CountDownLatch(threads);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final Phase phase = new Phase();
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    long allocatedAtStart = -1L;
+                    boolean measuring = false;
+                    started.countDown();
+                    try {
+                        while (!phase.stopped) {
+                            if (!measuring && phase.measuring) {
+                                measuring = true;
+                                allocatedAtStart = allocatedBytes();
+                            }
+                            long start = System.nanoTime();
+                            Throwable failure = null;
+                            try {
+                                invoke(call);
+                            } catch (Throwable t) {
+                                failure = t;
+                            }
+                            if (!measuring) continue;
+                            latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                            requests.incrementAndGet();
+                            if (failure != null) {
+                                errors.incrementAndGet();
+                                countError(errorsByType, failure);
+                            }
+                        }
+                        if (allocatedAtStart >= 0L) {
+                            long allocatedAtEnd = allocatedBytes();
+                            if (allocatedAtEnd >= 0L) allocated.addAndGet(allocatedAtEnd - allocatedAtStart);
+                        }
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "wslite-load-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        started.await();
+        Thread.sleep(warmup);
+        phase.measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep(duration);
+        phase.stopped = true;
+        long elapsed = System.nanoTime() - start;
+        finished.await();
+
+        Map<String, Long> errorCounts = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : errorsByType.entrySet()) {
+            errorCounts.put(entry.getKey(), entry.getValue().get());
+        }
+        long allocatedTotal = ALLOCATED_BYTES != null ? allocated.get() : -1L;
+        return new WsliteLoadTestReport(operation, threads, requests.get(), errors.get(), elapsed, latencies,
+            allocatedTotal, errorCounts);
+    }
+
+    private void invoke(CallableWithArgs<Object> call) {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(params);
+        WsliteProvider provider = DefaultWsliteProvider.getInstance();
+        if (WsliteMetrics.REST.equals(operation)) {
+            provider.withRest(copy, call);
+        } else if (WsliteMetrics.SOAP.equals(operation)) {
+            provider.withSoap(copy, call);
+        } else {
+            provider.withHttp(copy, call);
+        }
+    }
+
+    private CallableWithArgs<Object> callFor(final URL url) {
+        if (WsliteMetrics.REST.equals(operation)) {
+            return new CallableWithArgs<Object>() {
+                public Object call(Object[] args) {
+                    return InvokerHelper.invokeMethod(args[0], "get", new Object[0]);
+                }
+            };
+        } else if (WsliteMetrics.SOAP.equals(operation)) {
+            return new CallableWithArgs<Object>() {
+                public Object call(Object[] args) {
+                    return InvokerHelper.invokeMethod(args[0], "send", new Object[]{SOAP_ENVELOPE});
+                }
+            };
+        }
+        return new CallableWithArgs<Object>() {
+            public Object call(Object[] args) {
+                HTTPRequest request = new HTTPRequest();
+                request.setUrl(url);
+                request.setMethod(HTTPMethod.GET);
+                return InvokerHelper.invokeMethod(args[0], "execute", new Object[]{request});
+            }
+        };
+    }
+
+    private static void countError(Map<String, AtomicLong> errorsByType, Throwable failure) {
+        String type = failure.getClass().getName();
+        AtomicLong count = errorsByType.get(type);
+        if (count == null) {
+            synchronized (errorsByType) {
+                count = errorsByType.get(type);
+                if (count == null) {
+                    count = new AtomicLong();
+                    errorsByType.put(type, count);
+                }
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private static URL toURL(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid url " + url, e);
+        }
+    }
+
+    private static class Phase {
+        private volatile boolean measuring;
+        private volatile boolean stopped;
+    }
+
+    // com.sun.management.ThreadMXBean is not available on every JVM, hence reflection
+    private static final Method ALLOCATED_BYTES = resolveAllocatedBytes();
+
+    private static Method resolveAllocatedBytes() {
+        try {
+            Object bean = ManagementFactory.getThreadMXBean();
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            if (!type.isInstance(bean)) return null;
+            Method supported = type.getMethod("isThreadAllocatedMemorySupported");
+            if (!Boolean.TRUE.equals(supported.invoke(bean))) return null;
+            type.getMethod("setThreadAllocatedMemoryEnabled", Boolean.TYPE).invoke(bean, Boolean.TRUE);
+            return type.getMethod("getThreadAllocatedBytes", Long.TYPE);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, negative when unknown
+     */
+    private static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) return -1L;
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Runs a load test from the command line. Recognized arguments, all optional:
+     * <ul>
+     * <li>{@code --operation=rest|soap|http}, defaults to rest</li>
+     * <li>{@code --threads=N}, defaults to 8</li>
+     * <li>{@code --warmup=S} and {@code --duration=S}, in seconds, default to 5 and 30</li>
+     * <li>{@code --url=URL}, targets a real service instead of a local stub server</li>
+     * <li>{@code --latency=MS}, {@code --jitter=MS}, {@code --size=BYTES}, {@code --errorRate=0..1}
+     * and {@code --errorStatus=CODE} configure the stub server</li>
+     * <li>{@code --serverThreads=N} sets the number of threads of the stub server, defaults to 64</li>
+     * </ul>
+     * Any other {@code --name=value} pair is handed over to the client, for example
+     * {@code --readTimeout=2000}.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Unrecognized argument " + arg);
+            int eq = arg.indexOf('=');
+            options.put(eq > 0 ? arg.substring(2, eq) : arg.substring(2), eq > 0 ? arg.substring(eq + 1) : "true");
+        }
+
+        WsliteLoadTest test = new WsliteLoadTest()
+            .setOperation(take(options, "operation", WsliteMetrics.REST))
+            .setThreads(Integer.parseInt(take(options, "threads", "8")))
+            .setWarmup(TimeUnit.SECONDS.toMillis(Long.parseLong(take(options, "warmup", "5"))))
+            .setDuration(TimeUnit.SECONDS.toMillis(Long.parseLong(take(options, "duration", "30"))));
+
+        String url = take(options, "url", null);
+        WsliteStubServer server = null;
+        if (url == null) {
+            server = new WsliteStubServer(0, Integer.parseInt(take(options, "serverThreads", "64")))
+                .setLatency(Long.parseLong(take(options, "latency", "0")))
+                .setLatencyJitter(Long.parseLong(take(options, "jitter", "0")))
+                .setResponseSize(Integer.parseInt(take(options, "size", "0")))
+                .setErrorRate(Double.parseDouble(take(options, "errorRate", "0")))
+                .setErrorStatus(Integer.parseInt(take(options, "errorStatus", "500")))
+                .start();
+            String path = WsliteMetrics.SOAP.equals(test.getOperation()) ? WsliteStubServer.SOAP_PATH :
+                WsliteMetrics.HTTP.equals(test.getOperation()) ? WsliteStubServer.HTTP_PATH : WsliteStubServer.REST_PATH;
+            url = server.getUrl() + path;
+        }
+        test.param("url", url);
+        test.param("id", take(options, "id", "wslite-load-test"));
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            test.param(option.getKey(), convert(option.getValue()));
+        }
+
+        try {
+            System.out.println("Running " + test.getOperation() + " load test against " + url);
+            System.out.print(test.run());
+        } finally {
+            if (server != null) server.stop();
+        }
+    }
+
+    private static String take(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static Object convert(String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) return Boolean.valueOf(value);
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+}
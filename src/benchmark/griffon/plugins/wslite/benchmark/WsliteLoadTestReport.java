@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite.benchmark;
+
+import griffon.plugins.wslite.WsliteHistogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link WsliteLoadTest} run. Latencies are in milliseconds.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteLoadTestReport {
+    private final String operation;
+    private final int threads;
+    private final long requests;
+    private final long errors;
+    private final long elapsedNanos;
+    private final WsliteHistogram latencies;
+    private final long allocatedBytes;
+    private final Map<String, Long> errorsByType;
+
+    /**
+     * @param latencies      latencies of measured requests, in microseconds
+     * @param allocatedBytes bytes allocated by the worker threads while measuring, negative when unknown
+     */
+    public WsliteLoadTestReport(String operation, int threads, long requests, long errors, long elapsedNanos,
+                                WsliteHistogram latencies, long allocatedBytes, Map<String, Long> errorsByType) {
+        this.operation = operation;
+        this.threads = threads;
+        this.requests = requests;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+        this.latencies = latencies;
+        this.allocatedBytes = allocatedBytes;
+        this.errorsByType = Collections.unmodifiableMap(new TreeMap<String, Long>(errorsByType));
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return number of errors keyed by exception class name
+     */
+    public Map<String, Long> getErrorsByType() {
+        return errorsByType;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1L);
+    }
+
+    /**
+     * @return completed requests per second, failed ones included
+     */
+    public double getThroughput() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0.0d ? requests / seconds : 0.0d;
+    }
+
+    public double getErrorRate() {
+        return requests > 0L ? (double) errors / requests : 0.0d;
+    }
+
+    public double getLatencyMean() {
+        return latencies.getMean() / 1000.0d;
+    }
+
+    public double getLatencyMax() {
+        return latencies.getMax() / 1000.0d;
+    }
+
+    /**
+     * @param percentile a value between 0 and 100
+     */
+    public double getLatencyAtPercentile(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0d;
+    }
+
+    /**
+     * @return bytes allocated by the worker threads, negative when the JVM cannot tell
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return bytes allocated per second, negative when the JVM cannot tell
+     */
+    public double getAllocationRate() {
+        double seconds = getElapsedSeconds();
+        if (allocatedBytes < 0L) return -1.0d;
+        return seconds > 0.0d ? allocatedBytes / seconds : 0.0d;
+    }
+
+    /**
+     * @return bytes allocated per request, negative when the JVM cannot tell
+     */
+    public double getAllocatedBytesPerRequest() {
+        if (allocatedBytes < 0L) return -1.0d;
+        return requests > 0L ? (double) allocatedBytes / requests : 0.0d;
+    }
+
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("%s with %d threads for %.1f s%n", operation, threads, getElapsedSeconds()));
+        b.append(String.format("  requests    %d (%.1f/s)%n", requests, getThroughput()));
+        b.append(String.format("  errors      %d (%.2f%%)%n", errors, getErrorRate() * 100.0d));
+        for (Map.Entry<String, Long> entry : errorsByType.entrySet()) {
+            b.append(String.format("    %-40s %d%n", entry.getKey(), entry.getValue()));
+        }
+        b.append(String.format("  latency ms  mean=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n",
+            getLatencyMean(), getLatencyAtPercentile(50.0d), getLatencyAtPercentile(90.0d),
+            getLatencyAtPercentile(99.0d), getLatencyAtPercentile(99.9d), getLatencyMax()));
+        if (allocatedBytes >= 0L) {
+            b.append(String.format("  allocation  %.1f MB/s, %.0f bytes/request%n",
+                getAllocationRate() / (1024.0d * 1024.0d), getAllocatedBytesPerRequest()));
+        } else {
+            b.append(String.format("  allocation  not available on this JVM%n"));
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process HTTP server answering with canned responses, meant for benchmarks and
+ * load tests that should not depend on real backends.<p>
+ * Serves a JSON document at {@code /rest}, a SOAP envelope at {@code /soap} and plain
+ * text at {@code /http}. Request bodies are read and discarded.<p>
+ * Responses may be delayed by a fixed latency plus random jitter, padded to a given
+ * size, and a fraction of them may be answered with an error status instead. These
+ * settings can be changed while the server is running.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteStubServer {
+    public static final String REST_PATH = "/rest";
+    public static final String SOAP_PATH = "/soap";
+    public static final String HTTP_PATH = "/http";
+
+    private static final String REST_HEAD = "{\"id\":1,\"name\":\"wslite\",\"tags\":[\"griffon\",\"rest\"],\"padding\":\"";
+    private static final String REST_TAIL = "\"}";
+    private static final String SOAP_HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>" +
+        "<EchoResponse xmlns=\"urn:wslite\"><result>wslite</result><padding>";
+    private static final String SOAP_TAIL = "</padding></EchoResponse></soap:Body></soap:Envelope>";
+    private static final String HTTP_HEAD = "wslite";
+    private static final String HTTP_TAIL = "";
+
+    private final int port;
+    private final int threads;
+    private final Random random = new Random();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private volatile long latency;
+    private volatile long latencyJitter;
+    private volatile double errorRate;
+    private volatile int errorStatus = 500;
+    private volatile int responseSize;
+    private volatile byte[][] bodies = bodies(0);
+
+    /**
+     * @param port    port to listen on, zero picks a free one
+     * @param threads number of threads serving requests
+     */
+    public WsliteStubServer(int port, int threads) {
+        this.port = port;
+        this.threads = threads > 0 ? threads : 16;
+    }
+
+    public WsliteStubServer() {
+        this(0, 16);
+    }
+
+    public synchronized WsliteStubServer start() throws IOException {
+        if (server != null) return this;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+        executor = Executors.newFixedThreadPool(threads, new StubThreadFactory());
+        server.setExecutor(executor);
+        server.createContext(REST_PATH, new CannedHandler("application/json; charset=UTF-8", 0));
+        server.createContext(SOAP_PATH, new CannedHandler("text/xml; charset=UTF-8", 1));
+        server.createContext(HTTP_PATH, new CannedHandler("text/plain; charset=UTF-8", 2));
+        server.start();
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (server == null) return;
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    public synchronized int getPort() {
+        if (server == null) throw new IllegalStateException("Server is not running");
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the base URL of this server, for example {@code http://127.0.0.1:54321}
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * @param latency milliseconds to wait before answering each request
+     */
+    public WsliteStubServer setLatency(long latency) {
+        this.latency = Math.max(0L, latency);
+        return this;
+    }
+
+    public long getLatencyJitter() {
+        return latencyJitter;
+    }
+
+    /**
+     * @param latencyJitter upper bound in milliseconds of a random delay added to the latency
+     */
+    public WsliteStubServer setLatencyJitter(long latencyJitter) {
+        this.latencyJitter = Math.max(0L, latencyJitter);
+        return this;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @param errorRate fraction of requests, between 0 and 1, answered with the error status
+     */
+    public WsliteStubServer setErrorRate(double errorRate) {
+        this.errorRate = Math.min(1.0d, Math.max(0.0d, errorRate));
+        return this;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public WsliteStubServer setErrorStatus(int errorStatus) {
+        if (errorStatus < 400 || errorStatus > 599) {
+            throw new IllegalArgumentException("Error status must be a 4xx or 5xx code, got " + errorStatus);
+        }
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    public int getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * @param responseSize minimum size in bytes of each response body, canned bodies are padded up to it
+     */
+    public WsliteStubServer setResponseSize(int responseSize) {
+        this.responseSize = Math.max(0, responseSize);
+        this.bodies = bodies(this.responseSize);
+        return this;
+    }
+
+    private long nextDelay() {
+        long delay = latency;
+        long jitter = latencyJitter;
+        if (jitter > 0L) {
+            synchronized (random) {
+                delay += (long) (random.nextDouble() * jitter);
+            }
+        }
+        return delay;
+    }
+
+    private boolean nextIsError() {
+        double rate = errorRate;
+        if (rate <= 0.0d) return false;
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private static byte[][] bodies(int size) {
+        return new byte[][]{
+            pad(REST_HEAD, REST_TAIL, size),
+            pad(SOAP_HEAD, SOAP_TAIL, size),
+            pad(HTTP_HEAD, HTTP_TAIL, size)
+        };
+    }
+
+    private static byte[] pad(String head, String tail, int size) {
+        int padding = Math.max(0, size - head.length() - tail.length());
+        char[] filler = new char[padding];
+        Arrays.fill(filler, 'x');
+        return utf8(head + new String(filler) + tail);
+    }
+
+    private static byte[] utf8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void discard(InputStream input) throws IOException {
+        byte[] buffer = new byte[4096];
+        try {
+            while (input.read(buffer) != -1) {
+                // discard
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private class CannedHandler implements HttpHandler {
+        private final String contentType;
+        private final int index;
+
+        private CannedHandler(String contentType, int index) {
+            this.contentType = contentType;
+            this.index = index;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                discard(exchange.getRequestBody());
+                long delay = nextDelay();
+                if (delay > 0L) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (nextIsError()) {
+                    byte[] error = utf8("Injected error");
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+                    exchange.sendResponseHeaders(errorStatus, error.length);
+                    OutputStream output = exchange.getResponseBody();
+                    output.write(error);
+                    output.close();
+                    return;
+                }
+                byte[] body = bodies[index];
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static class StubThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "wslite-stub-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -25,6 +25,10 @@ import java.lang.annotation.Target;
 
 /**
  * <p>Annotates a class.</p>
+ * <p>Client ids listed in {@code rest}, {@code soap} and {@code http} are injected as
+ * {@link WsliteClientHandle} fields named after the id and the client type, for example
+ * {@code @WsliteAware(rest = "github")} adds a field {@code githubRest} holding
+ * {@code WsliteRestHandle.forId("github")}.</p>
  *
  * @author Andres Almiray
  * @see org.codehaus.griffon.ast.WsliteAwareASTTransformation
@@ -33,4 +37,18 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @GroovyASTTransformationClass("org.codehaus.griffon.ast.WsliteAwareASTTransformation")
 public @interface WsliteAware {
+    /**
+     * Ids of REST clients injected as {@code WsliteRestHandle} fields.
+     */
+    String[] rest() default {};
+
+    /**
+     * Ids of SOAP clients injected as {@code WsliteSoapHandle} fields.
+     */
+    String[] soap() default {};
+
+    /**
+     * Ids of HTTP clients injected as {@code WsliteHttpHandle} fields.
+     */
+    String[] http() default {};
 }
\ No newline at end of file
@@ -30,12 +30,29 @@ public interface WsliteAwareConstants extends BaseConstants {
     String WSLITE_PROVIDER_TYPE = "griffon.plugins.wslite.WsliteProvider";
     String DEFAULT_WSLITE_PROVIDER_TYPE = "griffon.plugins.wslite.DefaultWsliteProvider";
     String WSLITE_CONTRIBUTION_HANDLER_TYPE = "griffon.plugins.wslite.WsliteContributionHandler";
+    String WSLITE_ASYNC_PROVIDER_TYPE = "griffon.plugins.wslite.WsliteAsyncProvider";
+    String WSLITE_ASYNC_CONTRIBUTION_HANDLER_TYPE = "griffon.plugins.wslite.WsliteAsyncContributionHandler";
     String WSLITE_PROVIDER_FIELD_NAME = "this$wsliteProvider";
     String METHOD_GET_WSLITE_PROVIDER = "getWsliteProvider";
     String METHOD_SET_WSLITE_PROVIDER = "setWsliteProvider";
     String METHOD_WITH_SOAP = "withSoap";
     String METHOD_WITH_REST = "withRest";
     String METHOD_WITH_HTTP = "withHttp";
+    String METHOD_WITH_SOAP_ASYNC = "withSoapAsync";
+    String METHOD_WITH_REST_ASYNC = "withRestAsync";
+    String METHOD_WITH_HTTP_ASYNC = "withHttpAsync";
+    String METHOD_WITH_REST_BATCH = "withRestBatch";
+    String JAVA_UTIL_CONCURRENT_FUTURE = "java.util.concurrent.Future";
+    String JAVA_UTIL_COLLECTION = "java.util.Collection";
+    String WSLITE_BATCH_TYPE = "griffon.plugins.wslite.WsliteBatch";
+    String WSLITE_REST_HANDLE_TYPE = "griffon.plugins.wslite.WsliteRestHandle";
+    String WSLITE_SOAP_HANDLE_TYPE = "griffon.plugins.wslite.WsliteSoapHandle";
+    String WSLITE_HTTP_HANDLE_TYPE = "griffon.plugins.wslite.WsliteHttpHandle";
+    String METHOD_FOR_ID = "forId";
+    String REST_HANDLE_SUFFIX = "Rest";
+    String SOAP_HANDLE_SUFFIX = "Soap";
+    String HTTP_HANDLE_SUFFIX = "Http";
+    String T = "T";
     String PROVIDER = "provider";
 
     MethodDescriptor[] METHODS = new MethodDescriptor[]{
@@ -88,4 +105,73 @@ public interface WsliteAwareConstants extends BaseConstants {
                 type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
         )
     };
+
+    MethodDescriptor[] ASYNC_METHODS = new MethodDescriptor[]{
+        MethodDescriptor.method(
+            type(JAVA_UTIL_CONCURRENT_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_HTTP_ASYNC,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(JAVA_UTIL_CONCURRENT_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_REST_ASYNC,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(JAVA_UTIL_CONCURRENT_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SOAP_ASYNC,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(JAVA_UTIL_CONCURRENT_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_HTTP_ASYNC,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(JAVA_UTIL_CONCURRENT_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_REST_ASYNC,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(JAVA_UTIL_CONCURRENT_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SOAP_ASYNC,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(WSLITE_BATCH_TYPE, R),
+            typeParams(R, T),
+            METHOD_WITH_REST_BATCH,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(JAVA_UTIL_COLLECTION, T),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(WSLITE_BATCH_TYPE, R),
+            typeParams(R, T),
+            METHOD_WITH_REST_BATCH,
+            args(
+                type(JAVA_UTIL_MAP, JAVA_LANG_STRING, JAVA_LANG_OBJECT),
+                type(JAVA_UTIL_COLLECTION, T),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        )
+    };
 }
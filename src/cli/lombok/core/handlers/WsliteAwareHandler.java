@@ -56,5 +56,30 @@ public abstract class WsliteAwareHandler<TYPE_TYPE extends IType<? extends IMeth
 
     public void addWsliteContributionMethods(final TYPE_TYPE type) {
         delegateMethodsTo(type, METHODS, Field(WSLITE_PROVIDER_FIELD_NAME));
+        delegateMethodsTo(type, ASYNC_METHODS, Cast(Type(WSLITE_ASYNC_PROVIDER_TYPE), Field(WSLITE_PROVIDER_FIELD_NAME)));
+    }
+
+    public void addClientHandleFields(final TYPE_TYPE type, final String[] ids, final String handleType, final String suffix) {
+        for (String id : ids) {
+            addField(type, handleType, handleFieldName(id, suffix), Call(Name(handleType), METHOD_FOR_ID).withArgument(String(id)));
+        }
+    }
+
+    /**
+     * Turns a client id into a field name, {@code github-api} becomes {@code githubApiRest}
+     * for a REST client.
+     */
+    public static String handleFieldName(String id, String suffix) {
+        StringBuilder name = new StringBuilder();
+        for (String part : id.split("[^A-Za-z0-9]+")) {
+            if (part.length() == 0) continue;
+            if (name.length() == 0) {
+                name.append(Character.toLowerCase(part.charAt(0))).append(part.substring(1));
+            } else {
+                name.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+            }
+        }
+        if (name.length() == 0 || Character.isDigit(name.charAt(0))) name.insert(0, '_');
+        return name.append(suffix).toString();
     }
 }
@@ -41,10 +41,14 @@ public class HandleWsliteAware extends EclipseAnnotationHandler<WsliteAware> {
             return;
         }
 
-        EclipseUtil.addInterface(type.get(), WsliteAwareConstants.WSLITE_CONTRIBUTION_HANDLER_TYPE, source);
+        EclipseUtil.addInterface(type.get(), WsliteAwareConstants.WSLITE_ASYNC_CONTRIBUTION_HANDLER_TYPE, source);
         handler.addWsliteProviderField(type);
         handler.addWsliteProviderAccessors(type);
         handler.addWsliteContributionMethods(type);
+        WsliteAware settings = annotation.getInstance();
+        handler.addClientHandleFields(type, settings.rest(), WsliteAwareConstants.WSLITE_REST_HANDLE_TYPE, WsliteAwareConstants.REST_HANDLE_SUFFIX);
+        handler.addClientHandleFields(type, settings.soap(), WsliteAwareConstants.WSLITE_SOAP_HANDLE_TYPE, WsliteAwareConstants.SOAP_HANDLE_SUFFIX);
+        handler.addClientHandleFields(type, settings.http(), WsliteAwareConstants.WSLITE_HTTP_HANDLE_TYPE, WsliteAwareConstants.HTTP_HANDLE_SUFFIX);
         type.editor().rebuild();
     }
 
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lombok.intellij.processor.clazz;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.*;
+import de.plushnikov.intellij.lombok.psi.LombokLightFieldBuilder;
+import de.plushnikov.intellij.lombok.psi.LombokPsiElementFactory;
+import de.plushnikov.intellij.lombok.util.PsiAnnotationUtil;
+import griffon.plugins.wslite.WsliteAware;
+import lombok.core.handlers.WsliteAwareConstants;
+import lombok.core.handlers.WsliteAwareHandler;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Contributes the client handle fields declared by {@code @WsliteAware(rest = ..., soap = ..., http = ...)}.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteAwareFieldProcessor extends AbstractGriffonLombokClassProcessor implements WsliteAwareConstants {
+    public WsliteAwareFieldProcessor() {
+        super(WsliteAware.class, PsiField.class);
+    }
+
+    protected <Psi extends PsiElement> void processIntern(@NotNull PsiClass psiClass, @NotNull PsiAnnotation psiAnnotation, @NotNull List<Psi> target) {
+        addClientHandleFields(psiClass, psiAnnotation, target, "rest", WSLITE_REST_HANDLE_TYPE, REST_HANDLE_SUFFIX);
+        addClientHandleFields(psiClass, psiAnnotation, target, "soap", WSLITE_SOAP_HANDLE_TYPE, SOAP_HANDLE_SUFFIX);
+        addClientHandleFields(psiClass, psiAnnotation, target, "http", WSLITE_HTTP_HANDLE_TYPE, HTTP_HANDLE_SUFFIX);
+    }
+
+    private <Psi extends PsiElement> void addClientHandleFields(PsiClass psiClass, PsiAnnotation psiAnnotation, List<Psi> target,
+                                                                String parameter, String handleType, String suffix) {
+        Collection<String> ids = PsiAnnotationUtil.getAnnotationValues(psiAnnotation, parameter, String.class);
+        if (ids.isEmpty()) return;
+
+        PsiElementFactory psiElementFactory = psiElementFactory(psiClass);
+        PsiManager manager = psiClass.getContainingFile().getManager();
+        PsiType psiHandleType = psiElementFactory.createTypeFromText(handleType, psiClass);
+        for (String id : ids) {
+            LombokLightFieldBuilder field = LombokPsiElementFactory.getInstance().createLightField(manager, WsliteAwareHandler.handleFieldName(id, suffix), psiHandleType)
+                .withContainingClass(psiClass)
+                .withModifier(PsiModifier.PRIVATE)
+                .withModifier(PsiModifier.FINAL)
+                .withNavigationElement(psiAnnotation);
+            PsiExpression initializer = psiElementFactory.createExpressionFromText(handleType + "." + METHOD_FOR_ID + "(\"" + StringUtil.escapeStringCharacters(id) + "\")", psiClass);
+            field.setInitializer(initializer);
+            target.add((Psi) field);
+        }
+    }
+}
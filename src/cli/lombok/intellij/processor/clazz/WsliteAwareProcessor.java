@@ -69,5 +69,8 @@ public class WsliteAwareProcessor extends AbstractGriffonLombokClassProcessor im
         for (MethodDescriptor methodDesc : METHODS) {
             target.add((Psi) PsiMethodUtil.createMethod(psiClass, methodDesc.signature, psiAnnotation));
         }
+        for (MethodDescriptor methodDesc : ASYNC_METHODS) {
+            target.add((Psi) PsiMethodUtil.createMethod(psiClass, methodDesc.signature, psiAnnotation));
+        }
     }
 }
@@ -44,10 +44,14 @@ public class HandleWsliteAware extends JavacAnnotationHandler<WsliteAware> {
             return;
         }
 
-        JavacUtil.addInterface(type.node(), WsliteAwareConstants.WSLITE_CONTRIBUTION_HANDLER_TYPE);
+        JavacUtil.addInterface(type.node(), WsliteAwareConstants.WSLITE_ASYNC_CONTRIBUTION_HANDLER_TYPE);
         handler.addWsliteProviderField(type);
         handler.addWsliteProviderAccessors(type);
         handler.addWsliteContributionMethods(type);
+        WsliteAware settings = annotation.getInstance();
+        handler.addClientHandleFields(type, settings.rest(), WsliteAwareConstants.WSLITE_REST_HANDLE_TYPE, WsliteAwareConstants.REST_HANDLE_SUFFIX);
+        handler.addClientHandleFields(type, settings.soap(), WsliteAwareConstants.WSLITE_SOAP_HANDLE_TYPE, WsliteAwareConstants.SOAP_HANDLE_SUFFIX);
+        handler.addClientHandleFields(type, settings.http(), WsliteAwareConstants.WSLITE_HTTP_HANDLE_TYPE, WsliteAwareConstants.HTTP_HANDLE_SUFFIX);
         type.editor().rebuild();
     }
 
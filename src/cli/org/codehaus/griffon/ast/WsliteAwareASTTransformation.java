@@ -18,15 +18,31 @@ package org.codehaus.griffon.ast;
 
 import griffon.plugins.wslite.DefaultWsliteProvider;
 import griffon.plugins.wslite.WsliteAware;
+import griffon.plugins.wslite.WsliteAsyncContributionHandler;
+import griffon.plugins.wslite.WsliteAsyncProvider;
 import griffon.plugins.wslite.WsliteContributionHandler;
+import griffon.plugins.wslite.WsliteHttpHandle;
 import griffon.plugins.wslite.WsliteProvider;
+import griffon.plugins.wslite.WsliteRestHandle;
+import griffon.plugins.wslite.WsliteSoapHandle;
 import lombok.core.handlers.WsliteAwareConstants;
+import lombok.core.handlers.WsliteAwareHandler;
 import org.codehaus.groovy.ast.*;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.CastExpression;
+import org.codehaus.groovy.ast.expr.ClassExpression;
 import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.ConstructorCallExpression;
 import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.ListExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.ThrowStatement;
 import org.codehaus.groovy.control.CompilePhase;
 import org.codehaus.groovy.control.SourceUnit;
 import org.codehaus.groovy.control.messages.SimpleMessage;
+import org.codehaus.groovy.syntax.Token;
+import org.codehaus.groovy.syntax.Types;
 import org.codehaus.groovy.transform.GroovyASTTransformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,14 +63,24 @@ import static org.codehaus.griffon.ast.GriffonASTUtils.*;
 public class WsliteAwareASTTransformation extends AbstractASTTransformation implements WsliteAwareConstants {
     private static final Logger LOG = LoggerFactory.getLogger(WsliteAwareASTTransformation.class);
     private static final ClassNode WSLITE_CONTRIBUTION_HANDLER_CNODE = makeClassSafe(WsliteContributionHandler.class);
+    private static final ClassNode WSLITE_ASYNC_CONTRIBUTION_HANDLER_CNODE = makeClassSafe(WsliteAsyncContributionHandler.class);
     private static final ClassNode WSLITE_AWARE_CNODE = makeClassSafe(WsliteAware.class);
     private static final ClassNode WSLITE_PROVIDER_CNODE = makeClassSafe(WsliteProvider.class);
+    private static final ClassNode WSLITE_ASYNC_PROVIDER_CNODE = makeClassSafe(WsliteAsyncProvider.class);
+    private static final ClassNode UNSUPPORTED_OPERATION_EXCEPTION_CNODE = makeClassSafe(UnsupportedOperationException.class);
     private static final ClassNode DEFAULT_WSLITE_PROVIDER_CNODE = makeClassSafe(DefaultWsliteProvider.class);
+    private static final ClassNode WSLITE_REST_HANDLE_CNODE = makeClassSafe(WsliteRestHandle.class);
+    private static final ClassNode WSLITE_SOAP_HANDLE_CNODE = makeClassSafe(WsliteSoapHandle.class);
+    private static final ClassNode WSLITE_HTTP_HANDLE_CNODE = makeClassSafe(WsliteHttpHandle.class);
 
     private static final String[] DELEGATING_METHODS = new String[]{
-        METHOD_WITH_HTTP, METHOD_WITH_REST, METHOD_WITH_SOAP
+        METHOD_WITH_HTTP, METHOD_WITH_REST, METHOD_WITH_SOAP,
+        METHOD_WITH_HTTP_ASYNC, METHOD_WITH_REST_ASYNC, METHOD_WITH_SOAP_ASYNC,
+        METHOD_WITH_REST_BATCH
     };
 
+    private static final String METHOD_WSLITE_ASYNC_PROVIDER = "this$wsliteAsyncProvider";
+
     static {
         Arrays.sort(DELEGATING_METHODS);
     }
@@ -83,6 +109,50 @@ public class WsliteAwareASTTransformation extends AbstractASTTransformation impl
     public void visit(ASTNode[] nodes, SourceUnit source) {
         checkNodesForAnnotationAndType(nodes[0], nodes[1]);
         addWsliteContributionIfNeeded(source, (ClassNode) nodes[1]);
+        addClientHandles(source, (AnnotationNode) nodes[0], (ClassNode) nodes[1]);
+    }
+
+    public static void addClientHandles(SourceUnit source, AnnotationNode annotation, ClassNode classNode) {
+        addClientHandles(source, classNode, memberValues(annotation, "rest"), WSLITE_REST_HANDLE_CNODE, REST_HANDLE_SUFFIX);
+        addClientHandles(source, classNode, memberValues(annotation, "soap"), WSLITE_SOAP_HANDLE_CNODE, SOAP_HANDLE_SUFFIX);
+        addClientHandles(source, classNode, memberValues(annotation, "http"), WSLITE_HTTP_HANDLE_CNODE, HTTP_HANDLE_SUFFIX);
+    }
+
+    private static void addClientHandles(SourceUnit source, ClassNode classNode, List<String> ids, ClassNode handleType, String suffix) {
+        for (String id : ids) {
+            String name = WsliteAwareHandler.handleFieldName(id, suffix);
+            if (classNode.getField(name) != null) {
+                source.getErrorCollector().addErrorAndContinue(
+                    new SimpleMessage("@WsliteAware cannot inject a handle for client '" + id + "' into "
+                        + classNode.getName() + " because a field named " + name + " already exists.",
+                        source)
+                );
+                continue;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Injecting " + handleType.getName() + " " + name + " into " + classNode.getName());
+            }
+            // add field:
+            // private final WsliteRestHandle githubRest = WsliteRestHandle.forId('github')
+            classNode.addField(
+                name,
+                ACC_PRIVATE | ACC_FINAL,
+                handleType,
+                call(handleType, METHOD_FOR_ID, new ArgumentListExpression(new ConstantExpression(id))));
+        }
+    }
+
+    private static List<String> memberValues(AnnotationNode annotation, String name) {
+        List<String> values = new ArrayList<String>();
+        Expression member = annotation.getMember(name);
+        if (member instanceof ListExpression) {
+            for (Expression expression : ((ListExpression) member).getExpressions()) {
+                if (expression instanceof ConstantExpression) values.add(String.valueOf(((ConstantExpression) expression).getValue()));
+            }
+        } else if (member instanceof ConstantExpression) {
+            values.add(String.valueOf(((ConstantExpression) member).getValue()));
+        }
+        return values;
     }
 
     public static void addWsliteContributionIfNeeded(SourceUnit source, ClassNode classNode) {
@@ -124,7 +194,7 @@ public class WsliteAwareASTTransformation extends AbstractASTTransformation impl
     }
 
     public static void apply(ClassNode declaringClass) {
-        injectInterface(declaringClass, WSLITE_CONTRIBUTION_HANDLER_CNODE);
+        injectInterface(declaringClass, WSLITE_ASYNC_CONTRIBUTION_HANDLER_CNODE);
 
         // add field:
         // protected WsliteProvider this$wsliteProvider = DefaultWsliteProvider.instance
@@ -167,7 +237,38 @@ public class WsliteAwareASTTransformation extends AbstractASTTransformation impl
             )
         ));
 
-        for (MethodNode method : WSLITE_CONTRIBUTION_HANDLER_CNODE.getMethods()) {
+        // add method:
+        // private WsliteAsyncProvider this$wsliteAsyncProvider() {
+        //     if (this$wsliteProvider instanceof WsliteAsyncProvider) return (WsliteAsyncProvider) this$wsliteProvider
+        //     throw new UnsupportedOperationException(this$wsliteProvider + ' does not implement griffon.plugins.wslite.WsliteAsyncProvider')
+        // }
+        injectMethod(declaringClass, new MethodNode(
+            METHOD_WSLITE_ASYNC_PROVIDER,
+            ACC_PRIVATE,
+            WSLITE_ASYNC_PROVIDER_CNODE,
+            Parameter.EMPTY_ARRAY,
+            NO_EXCEPTIONS,
+            block(
+                ifs_no_return(
+                    new BinaryExpression(
+                        field(providerField),
+                        Token.newSymbol(Types.KEYWORD_INSTANCEOF, -1, -1),
+                        new ClassExpression(WSLITE_ASYNC_PROVIDER_CNODE)),
+                    returns(new CastExpression(WSLITE_ASYNC_PROVIDER_CNODE, field(providerField))),
+                    new ThrowStatement(new ConstructorCallExpression(
+                        UNSUPPORTED_OPERATION_EXCEPTION_CNODE,
+                        args(new BinaryExpression(
+                            field(providerField),
+                            Token.newSymbol(Types.PLUS, -1, -1),
+                            new ConstantExpression(" does not implement " + WsliteAsyncProvider.class.getName())))))
+                )
+            )
+        ));
+
+        List<MethodNode> methods = new ArrayList<MethodNode>(WSLITE_CONTRIBUTION_HANDLER_CNODE.getMethods());
+        List<MethodNode> asyncMethods = WSLITE_ASYNC_CONTRIBUTION_HANDLER_CNODE.getMethods();
+        methods.addAll(asyncMethods);
+        for (MethodNode method : methods) {
             if (Arrays.binarySearch(DELEGATING_METHODS, method.getName()) < 0) continue;
             List<Expression> variables = new ArrayList<Expression>();
             Parameter[] parameters = new Parameter[method.getParameters().length];
@@ -181,6 +282,10 @@ public class WsliteAwareASTTransformation extends AbstractASTTransformation impl
             returnType.setGenericsTypes(method.getReturnType().getGenericsTypes());
             returnType.setGenericsPlaceHolder(method.getReturnType().isGenericsPlaceHolder());
 
+            Expression receiver = asyncMethods.contains(method) ?
+                call(VariableExpression.THIS_EXPRESSION, METHOD_WSLITE_ASYNC_PROVIDER, NO_ARGS) :
+                field(providerField);
+
             MethodNode newMethod = new MethodNode(
                 method.getName(),
                 ACC_PUBLIC,
@@ -188,7 +293,7 @@ public class WsliteAwareASTTransformation extends AbstractASTTransformation impl
                 parameters,
                 NO_EXCEPTIONS,
                 returns(call(
-                    field(providerField),
+                    receiver,
                     method.getName(),
                     args(variables)))
             );
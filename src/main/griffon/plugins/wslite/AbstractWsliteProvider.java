@@ -22,61 +22,447 @@ import wslite.http.HTTPClient;
 import wslite.rest.RESTClient;
 import wslite.soap.SOAPClient;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Andres Almiray
  */
-public abstract class AbstractWsliteProvider implements WsliteProvider {
+public abstract class AbstractWsliteProvider implements WsliteAsyncProvider {
+
     public <R> R withSoap(Map<String, Object> params, Closure<R> closure) {
-        if (closure != null) {
-            closure.setDelegate(getSoapClient(params));
-            closure.setResolveStrategy(Closure.DELEGATE_FIRST);
-            return closure.call();
+        if (closure == null) return null;
+        WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.SOAP);
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(metrics);
+        long started = metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result = runSoap(params, closure);
+            failed = false;
+            return result;
+        } finally {
+            metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+        }
+    }
+
+    private <R> R runSoap(Map<String, Object> params, Closure<R> closure) {
+        boolean streaming = streamingOf(params);
+        SOAPClient client = acquireSoapClient(params);
+        try {
+            if (streaming) {
+                WsliteStreamingSOAPClient streamingClient = new WsliteStreamingSOAPClient(client);
+                try {
+                    return callWith(closure, streamingClient);
+                } finally {
+                    streamingClient.close();
+                }
+            }
+            return callWith(closure, client);
+        } finally {
+            WsliteClientHolder.getInstance().release(client);
         }
-        return null;
     }
 
     public <R> R withHttp(Map<String, Object> params, Closure<R> closure) {
-        if (closure != null) {
-            closure.setDelegate(getHttpClient(params));
-            closure.setResolveStrategy(Closure.DELEGATE_FIRST);
-            return closure.call();
+        if (closure == null) return null;
+        WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.HTTP);
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(metrics);
+        long started = metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result = runHttp(params, closure);
+            failed = false;
+            return result;
+        } finally {
+            metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+        }
+    }
+
+    private <R> R runHttp(Map<String, Object> params, Closure<R> closure) {
+        HTTPClient client = acquireHttpClient(params);
+        try {
+            return callWith(closure, client);
+        } finally {
+            WsliteClientHolder.getInstance().release(client);
         }
-        return null;
     }
 
     public <R> R withRest(Map<String, Object> params, Closure<R> closure) {
-        if (closure != null) {
-            closure.setDelegate(getRestClient(params));
-            closure.setResolveStrategy(Closure.DELEGATE_FIRST);
-            return closure.call();
+        if (closure == null) return null;
+        WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.REST);
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(metrics);
+        long started = metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result = runRest(params, closure);
+            failed = false;
+            return result;
+        } finally {
+            metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+        }
+    }
+
+    private <R> R runRest(Map<String, Object> params, Closure<R> closure) {
+        boolean streaming = streamingOf(params);
+        RESTClient client = acquireRestClient(params);
+        try {
+            if (streaming) {
+                WsliteStreamingRESTClient streamingClient = new WsliteStreamingRESTClient(client);
+                try {
+                    return callWith(closure, streamingClient);
+                } finally {
+                    streamingClient.close();
+                }
+            }
+            return callWith(closure, client);
+        } finally {
+            WsliteClientHolder.getInstance().release(client);
         }
-        return null;
     }
 
     public <R> R withSoap(Map<String, Object> params, CallableWithArgs<R> callable) {
-        if (callable != null) {
-            callable.setArgs(new Object[]{getSoapClient(params)});
-            return callable.call();
+        if (callable == null) return null;
+        WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.SOAP);
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(metrics);
+        long started = metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result = runSoap(params, callable);
+            failed = false;
+            return result;
+        } finally {
+            metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+        }
+    }
+
+    private <R> R runSoap(Map<String, Object> params, CallableWithArgs<R> callable) {
+        boolean streaming = streamingOf(params);
+        SOAPClient client = acquireSoapClient(params);
+        try {
+            if (streaming) {
+                WsliteStreamingSOAPClient streamingClient = new WsliteStreamingSOAPClient(client);
+                try {
+                    return callable.call(new Object[]{streamingClient});
+                } finally {
+                    streamingClient.close();
+                }
+            }
+            return callable.call(new Object[]{client});
+        } finally {
+            WsliteClientHolder.getInstance().release(client);
         }
-        return null;
     }
 
     public <R> R withHttp(Map<String, Object> params, CallableWithArgs<R> callable) {
-        if (callable != null) {
-            callable.setArgs(new Object[]{getHttpClient(params)});
-            return callable.call();
+        if (callable == null) return null;
+        WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.HTTP);
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(metrics);
+        long started = metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result = runHttp(params, callable);
+            failed = false;
+            return result;
+        } finally {
+            metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+        }
+    }
+
+    private <R> R runHttp(Map<String, Object> params, CallableWithArgs<R> callable) {
+        HTTPClient client = acquireHttpClient(params);
+        try {
+            return callable.call(new Object[]{client});
+        } finally {
+            WsliteClientHolder.getInstance().release(client);
         }
-        return null;
     }
 
     public <R> R withRest(Map<String, Object> params, CallableWithArgs<R> callable) {
-        if (callable != null) {
-            callable.setArgs(new Object[]{getRestClient(params)});
-            return callable.call();
+        if (callable == null) return null;
+        WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.REST);
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(metrics);
+        long started = metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result = runRest(params, callable);
+            failed = false;
+            return result;
+        } finally {
+            metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+        }
+    }
+
+    private <R> R runRest(Map<String, Object> params, CallableWithArgs<R> callable) {
+        boolean streaming = streamingOf(params);
+        RESTClient client = acquireRestClient(params);
+        try {
+            if (streaming) {
+                WsliteStreamingRESTClient streamingClient = new WsliteStreamingRESTClient(client);
+                try {
+                    return callable.call(new Object[]{streamingClient});
+                } finally {
+                    streamingClient.close();
+                }
+            }
+            return callable.call(new Object[]{client});
+        } finally {
+            WsliteClientHolder.getInstance().release(client);
+        }
+    }
+
+    public <R> Future<R> withSoapAsync(Map<String, Object> params, final Closure<R> closure) {
+        final Map<String, Object> copy = copyOf(params);
+        long timeout = timeoutOf(copy);
+        return submit(new Callable<R>() {
+            public R call() {
+                return withSoap(copy, closure);
+            }
+        }, timeout);
+    }
+
+    public <R> Future<R> withHttpAsync(Map<String, Object> params, final Closure<R> closure) {
+        final Map<String, Object> copy = copyOf(params);
+        long timeout = timeoutOf(copy);
+        return submit(new Callable<R>() {
+            public R call() {
+                return withHttp(copy, closure);
+            }
+        }, timeout);
+    }
+
+    public <R> Future<R> withRestAsync(Map<String, Object> params, final Closure<R> closure) {
+        final Map<String, Object> copy = copyOf(params);
+        long timeout = timeoutOf(copy);
+        return submit(new Callable<R>() {
+            public R call() {
+                return withRest(copy, closure);
+            }
+        }, timeout);
+    }
+
+    public <R> Future<R> withSoapAsync(Map<String, Object> params, final CallableWithArgs<R> callable) {
+        final Map<String, Object> copy = copyOf(params);
+        long timeout = timeoutOf(copy);
+        return submit(new Callable<R>() {
+            public R call() {
+                return withSoap(copy, callable);
+            }
+        }, timeout);
+    }
+
+    public <R> Future<R> withHttpAsync(Map<String, Object> params, final CallableWithArgs<R> callable) {
+        final Map<String, Object> copy = copyOf(params);
+        long timeout = timeoutOf(copy);
+        return submit(new Callable<R>() {
+            public R call() {
+                return withHttp(copy, callable);
+            }
+        }, timeout);
+    }
+
+    public <R> Future<R> withRestAsync(Map<String, Object> params, final CallableWithArgs<R> callable) {
+        final Map<String, Object> copy = copyOf(params);
+        long timeout = timeoutOf(copy);
+        return submit(new Callable<R>() {
+            public R call() {
+                return withRest(copy, callable);
+            }
+        }, timeout);
+    }
+
+    public <R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, final Closure<R> closure) {
+        if (closure == null) return null;
+        params = copyOf(params);
+        WsliteBatch<R> batch = new WsliteBatch<R>(requests, orderedOf(params), timeoutOf(params));
+        int parallelism = parallelismOf(params);
+        final WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.REST);
+        final RESTClient client = acquireRestClient(params);
+        return startBatch(batch, parallelism, client, new Callable<WsliteBatch.Worker<R>>() {
+            @SuppressWarnings("unchecked")
+            public WsliteBatch.Worker<R> call() {
+                // each worker owns a copy, workers never share closure state
+                final Closure<R> copy = (Closure<R>) closure.rehydrate(client, closure.getOwner(), closure.getThisObject());
+                copy.setResolveStrategy(Closure.DELEGATE_FIRST);
+                return measured(metrics, new WsliteBatch.Worker<R>() {
+                    public R process(Object request) {
+                        return copy.call(request);
+                    }
+                });
+            }
+        });
+    }
+
+    public <R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, final CallableWithArgs<R> callable) {
+        if (callable == null) return null;
+        params = copyOf(params);
+        WsliteBatch<R> batch = new WsliteBatch<R>(requests, orderedOf(params), timeoutOf(params));
+        int parallelism = parallelismOf(params);
+        final WsliteClientMetrics metrics = metricsOf(params, WsliteMetrics.REST);
+        final RESTClient client = acquireRestClient(params);
+        return startBatch(batch, parallelism, client, new Callable<WsliteBatch.Worker<R>>() {
+            public WsliteBatch.Worker<R> call() {
+                return measured(metrics, new WsliteBatch.Worker<R>() {
+                    public R process(Object request) {
+                        return callable.call(new Object[]{client, request});
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Calls a copy of the closure whose delegate is the given client. The caller's closure
+     * is never modified, so the same closure may be used by several threads at once.
+     */
+    @SuppressWarnings("unchecked")
+    static <R> R callWith(Closure<R> closure, Object client) {
+        Closure<R> copy = (Closure<R>) closure.rehydrate(client, closure.getOwner(), closure.getThisObject());
+        copy.setResolveStrategy(Closure.DELEGATE_FIRST);
+        return copy.call();
+    }
+
+    private static <R> WsliteBatch.Worker<R> measured(final WsliteClientMetrics metrics, final WsliteBatch.Worker<R> worker) {
+        return new WsliteBatch.Worker<R>() {
+            public R process(Object request) throws Exception {
+                WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(metrics);
+                long started = metrics.callStarted();
+                boolean failed = true;
+                try {
+                    R result = worker.process(request);
+                    failed = false;
+                    return result;
+                } finally {
+                    metrics.callEnded(started, failed);
+                    WsliteMetrics.getInstance().exit(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param client acquired by the caller, released once every worker holds the client on its own
+     */
+    private <R> WsliteBatch<R> startBatch(WsliteBatch<R> batch, int parallelism, Object client, Callable<WsliteBatch.Worker<R>> workers) {
+        WsliteClientHolder holder = WsliteClientHolder.getInstance();
+        int started = 0;
+        try {
+            for (int i = 0; i < Math.min(parallelism, batch.size()); i++) {
+                holder.acquire(client);
+                try {
+                    batch.track(submit(releasing(batch.worker(workers.call()), client), -1L));
+                } catch (Exception e) {
+                    holder.release(client);
+                    throw e;
+                }
+                started++;
+            }
+        } catch (RejectedExecutionException e) {
+            if (started == 0) batch.abandon(e);
+        } catch (Exception e) {
+            batch.abandon(e);
+        } finally {
+            holder.release(client);
         }
-        return null;
+        return batch;
+    }
+
+    private static <V> Callable<V> releasing(final Callable<V> task, final Object client) {
+        return new Callable<V>() {
+            public V call() throws Exception {
+                try {
+                    return task.call();
+                } finally {
+                    WsliteClientHolder.getInstance().release(client);
+                }
+            }
+        };
+    }
+
+    // a client closed right after it was fetched has left its cache, fetching again yields another one
+    private HTTPClient acquireHttpClient(Map<String, Object> params) {
+        HTTPClient client = getHttpClient(params);
+        if (WsliteClientHolder.getInstance().acquire(client)) return client;
+        client = getHttpClient(params);
+        WsliteClientHolder.getInstance().acquire(client);
+        return client;
+    }
+
+    private RESTClient acquireRestClient(Map<String, Object> params) {
+        RESTClient client = getRestClient(params);
+        if (WsliteClientHolder.getInstance().acquire(client)) return client;
+        client = getRestClient(params);
+        WsliteClientHolder.getInstance().acquire(client);
+        return client;
+    }
+
+    private SOAPClient acquireSoapClient(Map<String, Object> params) {
+        SOAPClient client = getSoapClient(params);
+        if (WsliteClientHolder.getInstance().acquire(client)) return client;
+        client = getSoapClient(params);
+        WsliteClientHolder.getInstance().acquire(client);
+        return client;
+    }
+
+    private static boolean orderedOf(Map<String, Object> params) {
+        Object ordered = params != null ? params.remove("ordered") : null;
+        return ordered == null || Boolean.valueOf(ordered.toString());
+    }
+
+    private static int parallelismOf(Map<String, Object> params) {
+        Object parallelism = params != null ? params.remove("parallelism") : null;
+        if (parallelism == null) return WsliteBatch.DEFAULT_PARALLELISM;
+        int value = parallelism instanceof Number ? ((Number) parallelism).intValue() : Integer.parseInt(parallelism.toString());
+        return Math.max(1, value);
+    }
+
+    /**
+     * Schedules an asynchronous call. Subclasses may override this method to run calls elsewhere.
+     *
+     * @param task    the call to be executed
+     * @param timeout max time in milliseconds the call may take, zero applies the default timeout
+     *                and a negative value disables it
+     */
+    protected <R> Future<R> submit(Callable<R> task, long timeout) {
+        return WsliteAsyncExecutor.getInstance().submit(task, timeout);
+    }
+
+    private static WsliteClientMetrics metricsOf(Map<String, Object> params, String operation) {
+        Object id = params != null ? params.get("id") : null;
+        return WsliteMetrics.getInstance().metricsFor(id != null ? id.toString() : null, operation);
+    }
+
+    /**
+     * A call streams its response when it sets {@code streaming: true}, or when its
+     * {@code id:} is listed in {@code griffon.wslite.streaming.clients}.
+     */
+    private static boolean streamingOf(Map<String, Object> params) {
+        if (params == null) return false;
+        Object streaming = params.remove("streaming");
+        if (streaming != null) return Boolean.valueOf(streaming.toString());
+        Object id = params.get("id");
+        return id != null && WsliteClientHolder.getInstance().isStreamingClient(id.toString());
+    }
+
+    // asynchronous calls read their parameters on another thread, after the caller may have
+    // changed the map, so they work on a copy and the caller's map is never modified
+    private static Map<String, Object> copyOf(Map<String, Object> params) {
+        return params != null ? new LinkedHashMap<String, Object>(params) : new LinkedHashMap<String, Object>();
+    }
+
+    private static long timeoutOf(Map<String, Object> params) {
+        Object timeout = params != null ? params.remove("timeout") : null;
+        if (timeout instanceof Number) return ((Number) timeout).longValue();
+        return timeout != null ? Long.parseLong(timeout.toString()) : 0L;
     }
 
     protected abstract HTTPClient getHttpClient(Map<String, Object> params);
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wslite.http.HTTPClient;
+import wslite.rest.RESTClient;
+import wslite.soap.SOAPClient;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Provider that runs asynchronous calls on virtual threads when the JVM supports them
+ * (Java 21 or later), falling back to a bounded pool of platform threads otherwise.<p>
+ * Blocking calls run on the caller's thread, as with {@link DefaultWsliteProvider}.
+ * Asynchronous calls are cheap enough to fan out thousands of them at once when
+ * virtual threads are available; the fallback pool rejects calls once its queue is full.
+ *
+ * @author Andres Almiray
+ */
+public class VirtualThreadWsliteProvider extends AbstractWsliteProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadWsliteProvider.class);
+    private static final VirtualThreadWsliteProvider INSTANCE;
+
+    static {
+        INSTANCE = new VirtualThreadWsliteProvider();
+    }
+
+    public static VirtualThreadWsliteProvider getInstance() {
+        return INSTANCE;
+    }
+
+    private final Object lock = new Object();
+    private int fallbackThreads = 64;
+    private int fallbackQueueSize = 1000;
+    private ExecutorService executorService;
+    private boolean virtual;
+
+    private VirtualThreadWsliteProvider() {}
+
+    /**
+     * @param fallbackThreads size of the platform thread pool used when virtual threads are not available
+     */
+    public void configure(int fallbackThreads) {
+        configure(fallbackThreads, 0);
+    }
+
+    /**
+     * @param fallbackThreads   size of the platform thread pool used when virtual threads are not available
+     * @param fallbackQueueSize calls that may wait for a platform thread before further calls are rejected
+     */
+    public void configure(int fallbackThreads, int fallbackQueueSize) {
+        synchronized (lock) {
+            if (fallbackThreads > 0) this.fallbackThreads = fallbackThreads;
+            if (fallbackQueueSize > 0) this.fallbackQueueSize = fallbackQueueSize;
+            shutdown();
+        }
+    }
+
+    public boolean isVirtual() {
+        getExecutorService();
+        return virtual;
+    }
+
+    public ExecutorService getExecutorService() {
+        synchronized (lock) {
+            if (executorService == null) {
+                executorService = createVirtualThreadExecutor();
+                virtual = executorService != null;
+                if (!virtual) {
+                    executorService = new ThreadPoolExecutor(fallbackThreads, fallbackThreads,
+                        60L, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(fallbackQueueSize),
+                        new WsliteAsyncExecutor.NamedThreadFactory("wslite-worker"));
+                    ((ThreadPoolExecutor) executorService).allowCoreThreadTimeOut(true);
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Running calls on " + (virtual ? "virtual threads" : fallbackThreads + " platform threads"));
+                }
+            }
+            return executorService;
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            if (executorService != null) WsliteAsyncExecutor.terminate(executorService);
+            executorService = null;
+        }
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            LOG.warn("Virtual threads are not available, falling back to platform threads", e);
+            return null;
+        }
+    }
+
+    @Override
+    protected <R> Future<R> submit(Callable<R> task, long timeout) {
+        return WsliteAsyncExecutor.getInstance().submit(getExecutorService(), task, timeout);
+    }
+
+    @Override
+    protected HTTPClient getHttpClient(Map<String, Object> params) {
+        return WsliteClientHolder.getInstance().fetchHttpClient(params);
+    }
+
+    @Override
+    protected RESTClient getRestClient(Map<String, Object> params) {
+        return WsliteClientHolder.getInstance().fetchRestClient(params);
+    }
+
+    @Override
+    protected SOAPClient getSoapClient(Map<String, Object> params) {
+        return WsliteClientHolder.getInstance().fetchSoapClient(params);
+    }
+}
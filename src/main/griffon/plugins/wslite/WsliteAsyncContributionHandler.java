@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Contribution handler that may also run calls in the background. Kept apart from
+ * {@link WsliteContributionHandler} so that existing implementations need no changes.
+ *
+ * @author Andres Almiray
+ */
+public interface WsliteAsyncContributionHandler extends WsliteContributionHandler {
+    <R> Future<R> withSoapAsync(Map<String, Object> params, Closure<R> closure);
+
+    <R> Future<R> withHttpAsync(Map<String, Object> params, Closure<R> closure);
+
+    <R> Future<R> withRestAsync(Map<String, Object> params, Closure<R> closure);
+
+    <R> Future<R> withSoapAsync(Map<String, Object> params, CallableWithArgs<R> callable);
+
+    <R> Future<R> withHttpAsync(Map<String, Object> params, CallableWithArgs<R> callable);
+
+    <R> Future<R> withRestAsync(Map<String, Object> params, CallableWithArgs<R> callable);
+
+    <R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, Closure<R> closure);
+
+    <R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, CallableWithArgs<R> callable);
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor used by the {@code withXxxAsync} methods.<p>
+ * Tasks that do not finish within their timeout fail with a {@code TimeoutException}
+ * (wrapped in an {@code ExecutionException}) and the thread running them is interrupted.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteAsyncExecutor {
+    private static final WsliteAsyncExecutor INSTANCE;
+
+    static {
+        INSTANCE = new WsliteAsyncExecutor();
+    }
+
+    public static WsliteAsyncExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    private final Object lock = new Object();
+    private int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private int queueSize = 1000;
+    private long defaultTimeout;
+    private ExecutorService executorService;
+    private ScheduledExecutorService scheduler;
+
+    private WsliteAsyncExecutor() {}
+
+    /**
+     * @param threads        max number of threads running calls concurrently
+     * @param queueSize      max number of calls waiting for a thread; further calls are rejected
+     * @param defaultTimeout timeout in milliseconds applied when a call does not define one, zero disables it
+     */
+    public void configure(int threads, int queueSize, long defaultTimeout) {
+        synchronized (lock) {
+            this.threads = threads > 0 ? threads : this.threads;
+            this.queueSize = queueSize > 0 ? queueSize : this.queueSize;
+            this.defaultTimeout = defaultTimeout;
+            shutdown();
+        }
+    }
+
+    public long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    public ExecutorService getExecutorService() {
+        synchronized (lock) {
+            if (executorService == null) {
+                executorService = new ThreadPoolExecutor(threads, threads,
+                    60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize),
+                    new NamedThreadFactory("wslite-async"));
+                ((ThreadPoolExecutor) executorService).allowCoreThreadTimeOut(true);
+            }
+            return executorService;
+        }
+    }
+
+    public <R> Future<R> submit(Callable<R> task, long timeout) {
+        return submit(getExecutorService(), task, timeout);
+    }
+
+    /**
+     * Runs {@code task} on {@code executor}, failing it when it takes longer than
+     * {@code timeout} milliseconds. A timeout of zero applies the default timeout,
+     * a negative one disables it.
+     */
+    public <R> Future<R> submit(Executor executor, Callable<R> task, long timeout) {
+        final TimeLimitedTask<R> future = new TimeLimitedTask<R>(task);
+        long limit = timeout != 0 ? timeout : defaultTimeout;
+        if (limit > 0) {
+            final long millis = limit;
+            future.timer = getScheduler().schedule(new Runnable() {
+                public void run() {
+                    future.timeout(millis);
+                }
+            }, limit, TimeUnit.MILLISECONDS);
+        }
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.cancelTimer();
+            throw e;
+        }
+        return future;
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            if (executorService != null) terminate(executorService);
+            if (scheduler != null) scheduler.shutdownNow();
+            executorService = null;
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Shuts the executor down and cancels the calls it never started, so that
+     * whoever waits for them is released instead of blocking forever.
+     */
+    static void terminate(ExecutorService executorService) {
+        for (Runnable pending : executorService.shutdownNow()) {
+            if (pending instanceof Future) ((Future<?>) pending).cancel(false);
+        }
+    }
+
+    private ScheduledExecutorService getScheduler() {
+        synchronized (lock) {
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("wslite-timeout"));
+            }
+            return scheduler;
+        }
+    }
+
+    private static class TimeLimitedTask<R> extends FutureTask<R> {
+        // same protocol as FutureTask.cancel(true): the timeout may only interrupt the
+        // runner while it is RUNNING, and the runner waits for an interrupt in flight
+        // before going back to the pool, so a worker that moved on is never interrupted
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int INTERRUPTING = 2;
+        private static final int INTERRUPTED = 3;
+        private static final int FINISHED = 4;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private volatile Thread runner;
+        private volatile ScheduledFuture<?> timer;
+
+        private TimeLimitedTask(Callable<R> callable) {
+            super(callable);
+        }
+
+        public void run() {
+            runner = Thread.currentThread();
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                runner = null;
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                if (!state.compareAndSet(RUNNING, FINISHED)) {
+                    while (state.get() == INTERRUPTING) Thread.yield();
+                    // clear the interrupt delivered by the timeout
+                    Thread.interrupted();
+                }
+                runner = null;
+            }
+        }
+
+        private void timeout(long millis) {
+            if (isDone()) return;
+            setException(new TimeoutException("Call did not complete within " + millis + "ms"));
+            if (state.compareAndSet(RUNNING, INTERRUPTING)) {
+                try {
+                    runner.interrupt();
+                } finally {
+                    state.set(INTERRUPTED);
+                }
+            }
+        }
+
+        private void cancelTimer() {
+            ScheduledFuture<?> t = timer;
+            if (t != null) t.cancel(false);
+        }
+
+        protected void done() {
+            cancelTimer();
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
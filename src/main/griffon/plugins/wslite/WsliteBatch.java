@@ -0,0 +1,244 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Results of a batch of requests executed with bounded parallelism.<p>
+ * Iterating a batch blocks until the next result is available. Results are
+ * delivered in input order when the batch is {@code ordered}, or as soon as each
+ * request completes otherwise. Cancelling a batch prevents pending requests from
+ * being executed; they are reported as failed with a {@code CancellationException}.
+ * Requests still without a result once {@code timeout} milliseconds have elapsed fail
+ * with a {@code TimeoutException}, and requests left behind by workers that were
+ * terminated (for example by shutting down their executor) fail as well, so
+ * iterating a batch never blocks forever.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteBatch<R> implements Iterable<WsliteBatchResult<R>> {
+    public static final int DEFAULT_PARALLELISM = 4;
+    // how often waiting readers check whether the workers are still alive
+    private static final long CHECK_INTERVAL = 1000L;
+
+    /**
+     * Processes requests on behalf of a single worker thread.
+     */
+    public interface Worker<R> {
+        R process(Object request) throws Exception;
+    }
+
+    private final Object[] requests;
+    private final boolean ordered;
+    private final WsliteBatchResult<R>[] results;
+    private final List<WsliteBatchResult<R>> completed;
+    private final AtomicInteger next = new AtomicInteger();
+    private final List<Future<?>> workers = new CopyOnWriteArrayList<Future<?>>();
+    private final long timeout;
+    private final long deadline;
+    private volatile boolean cancelled;
+
+    public WsliteBatch(Collection<?> requests, boolean ordered) {
+        this(requests, ordered, 0L);
+    }
+
+    /**
+     * @param timeout max time in milliseconds the whole batch may take, zero or less waits forever
+     */
+    @SuppressWarnings("unchecked")
+    public WsliteBatch(Collection<?> requests, boolean ordered, long timeout) {
+        this.requests = requests != null ? requests.toArray() : new Object[0];
+        this.ordered = ordered;
+        this.results = new WsliteBatchResult[this.requests.length];
+        this.completed = new ArrayList<WsliteBatchResult<R>>(this.requests.length);
+        this.timeout = timeout;
+        this.deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0L;
+    }
+
+    public int size() {
+        return requests.length;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public boolean isDone() {
+        synchronized (completed) {
+            return completed.size() == requests.length;
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        abandon(new CancellationException("Batch was cancelled"));
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Registers the task running a worker, so that it may be interrupted when the
+     * batch times out and so that requests it leaves behind can be failed.
+     */
+    void track(Future<?> worker) {
+        workers.add(worker);
+    }
+
+    /**
+     * Returns a task that keeps taking requests from this batch until none are left.
+     */
+    public Callable<Void> worker(final Worker<R> worker) {
+        return new Callable<Void>() {
+            public Void call() {
+                int index;
+                // an interrupted worker stops taking requests, the ones it leaves behind are failed by readers
+                while (!expired() && !Thread.currentThread().isInterrupted() && (index = next.getAndIncrement()) < requests.length) {
+                    Object request = requests[index];
+                    try {
+                        complete(new WsliteBatchResult<R>(index, request, worker.process(request), null));
+                    } catch (Throwable t) {
+                        complete(new WsliteBatchResult<R>(index, request, null, t));
+                        if (t instanceof InterruptedException) Thread.currentThread().interrupt();
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Marks every request that no worker has taken yet as failed.
+     */
+    void abandon(Throwable cause) {
+        int index;
+        while ((index = next.getAndIncrement()) < requests.length) {
+            complete(new WsliteBatchResult<R>(index, requests[index], null, cause));
+        }
+    }
+
+    /**
+     * Marks every request without a result as failed, including those being processed.
+     */
+    private void fail(Throwable cause) {
+        abandon(cause);
+        synchronized (completed) {
+            for (int i = 0; i < requests.length; i++) {
+                if (results[i] == null) complete(new WsliteBatchResult<R>(i, requests[i], null, cause));
+            }
+        }
+    }
+
+    private boolean expired() {
+        return deadline != 0L && System.nanoTime() - deadline >= 0;
+    }
+
+    private void expire() {
+        fail(new TimeoutException("Batch did not complete within " + timeout + "ms"));
+        for (Future<?> worker : workers) {
+            worker.cancel(true);
+        }
+    }
+
+    private boolean workersTerminated() {
+        if (workers.isEmpty()) return false;
+        for (Future<?> worker : workers) {
+            if (!worker.isDone()) return false;
+        }
+        return true;
+    }
+
+    private void complete(WsliteBatchResult<R> result) {
+        synchronized (completed) {
+            // requests failed by a timeout or a terminated worker may still complete later
+            if (results[result.getIndex()] != null) return;
+            results[result.getIndex()] = result;
+            completed.add(result);
+            completed.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for all requests to complete.
+     *
+     * @return every result, in iteration order
+     */
+    public List<WsliteBatchResult<R>> getResults() {
+        List<WsliteBatchResult<R>> list = new ArrayList<WsliteBatchResult<R>>(requests.length);
+        for (WsliteBatchResult<R> result : this) {
+            list.add(result);
+        }
+        return list;
+    }
+
+    public Iterator<WsliteBatchResult<R>> iterator() {
+        return new Iterator<WsliteBatchResult<R>>() {
+            private int position;
+
+            public boolean hasNext() {
+                return position < requests.length;
+            }
+
+            public WsliteBatchResult<R> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return await(position++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private WsliteBatchResult<R> await(int position) {
+        synchronized (completed) {
+            while (true) {
+                if (ordered && results[position] != null) return results[position];
+                if (!ordered && completed.size() > position) return completed.get(position);
+                if (expired()) {
+                    expire();
+                    continue;
+                }
+                if (workersTerminated()) {
+                    fail(new IllegalStateException("Batch workers terminated before processing every request"));
+                    continue;
+                }
+                long wait = CHECK_INTERVAL;
+                if (deadline != 0L) wait = Math.min(wait, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + 1);
+                try {
+                    completed.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for batch results", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+/**
+ * Outcome of a single item of a {@link WsliteBatch}. Items fail independently;
+ * a failure is reported through {@link #getError()} instead of being thrown.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteBatchResult<R> {
+    private final int index;
+    private final Object request;
+    private final R value;
+    private final Throwable error;
+
+    public WsliteBatchResult(int index, Object request, R value, Throwable error) {
+        this.index = index;
+        this.request = request;
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * @return the position of the request in the submitted collection
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Object getRequest() {
+        return request;
+    }
+
+    public R getValue() {
+        return value;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String toString() {
+        return "WsliteBatchResult[" + index + (error == null ? ", value=" + value : ", error=" + error) + "]";
+    }
+}
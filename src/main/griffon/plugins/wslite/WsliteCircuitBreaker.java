@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Circuit breaker computing the failure rate over the most recent calls of a client.<p>
+ * The circuit opens once at least {@code minimumCalls} were recorded and the share of
+ * failures reaches the threshold; calls are then refused without touching the network.
+ * After {@code openTimeout} milliseconds up to {@code halfOpenCalls} trial calls are let
+ * through: the circuit closes when all of them succeed and opens again on the first failure.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteCircuitBreaker {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String id;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openTimeout;
+    private final int halfOpenCalls;
+    private final List<WsliteResilienceListener> listeners;
+    private final boolean[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trials;
+    private int trialSuccesses;
+
+    public WsliteCircuitBreaker(String id, WsliteResiliencePolicy policy, List<WsliteResilienceListener> listeners) {
+        this.id = id;
+        this.failureRateThreshold = policy.getFailureRateThreshold();
+        this.minimumCalls = policy.getMinimumCalls();
+        this.openTimeout = policy.getOpenTimeout();
+        this.halfOpenCalls = policy.getHalfOpenCalls();
+        this.listeners = listeners;
+        this.outcomes = new boolean[policy.getSlidingWindow()];
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return share of failures among the calls in the window, 0 when none was recorded
+     */
+    public synchronized double getFailureRate() {
+        return recorded > 0 ? (double) failures / recorded : 0.0d;
+    }
+
+    /**
+     * @return {@code false} when the call must be refused
+     */
+    public boolean tryAcquire() {
+        State from;
+        synchronized (this) {
+            from = state;
+            if (state == State.CLOSED) return true;
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openTimeout) return false;
+                transition(State.HALF_OPEN);
+            }
+            // a circuit that just went half open always has a trial left
+            if (trials >= halfOpenCalls) return false;
+            trials++;
+        }
+        if (from == State.OPEN) fire(State.OPEN, State.HALF_OPEN);
+        return true;
+    }
+
+    public void onSuccess() {
+        record(false);
+    }
+
+    public void onFailure() {
+        record(true);
+    }
+
+    private void record(boolean failed) {
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            if (state == State.HALF_OPEN) {
+                if (failed) {
+                    transition(State.OPEN);
+                } else if (++trialSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                if (recorded == outcomes.length) {
+                    if (outcomes[next]) failures--;
+                } else {
+                    recorded++;
+                }
+                outcomes[next] = failed;
+                if (failed) failures++;
+                next = (next + 1) % outcomes.length;
+                if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                    transition(State.OPEN);
+                }
+            }
+            to = state;
+        }
+        if (from != to) fire(from, to);
+    }
+
+    private void transition(State to) {
+        state = to;
+        trials = 0;
+        trialSuccesses = 0;
+        if (to == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        } else if (to == State.CLOSED) {
+            next = 0;
+            recorded = 0;
+            failures = 0;
+        }
+    }
+
+    private void fire(State from, State to) {
+        if (LOG.isInfoEnabled()) LOG.info("Circuit of client '" + id + "' went from " + from + " to " + to);
+        for (WsliteResilienceListener listener : listeners) {
+            try {
+                listener.circuitStateChanged(id, from, to);
+            } catch (RuntimeException e) {
+                LOG.warn("Listener " + listener + " failed while handling a circuit change of client '" + id + "'", e);
+            }
+        }
+    }
+
+    public String toString() {
+        return "WsliteCircuitBreaker[" + id + ", " + getState() + "]";
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size bounded store for cached clients.<p>
+ * Entries may be evicted when the cache grows beyond {@code maxSize} (using
+ * either LRU or LFU ordering), when they outlive {@code ttl} or when they have
+ * not been accessed for {@code idleTimeout} milliseconds. A value of zero (or
+ * less) disables the corresponding constraint. Registered listeners are notified
+ * of every removal outside of the cache's lock.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteClientCache<T> {
+    public enum Policy {
+        LRU, LFU
+    }
+
+    public enum RemovalCause {
+        EXPLICIT, REPLACED, SIZE, EXPIRED, IDLE
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteClientCache.class);
+
+    private final Map<String, Entry<T>> entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true);
+    private final ConcurrentMap<String, FutureTask<T>> pending = new ConcurrentHashMap<String, FutureTask<T>>();
+    private final List<WsliteClientCacheListener<? super T>> listeners = new CopyOnWriteArrayList<WsliteClientCacheListener<? super T>>();
+    private volatile int maxSize;
+    private volatile Policy policy = Policy.LRU;
+    private volatile long ttlNanos;
+    private volatile long idleNanos;
+
+    public WsliteClientCache() {
+        this(0, Policy.LRU, 0L, 0L);
+    }
+
+    public WsliteClientCache(int maxSize, Policy policy, long ttl, long idleTimeout) {
+        configure(maxSize, policy, ttl, idleTimeout);
+    }
+
+    public void configure(int maxSize, Policy policy, long ttl, long idleTimeout) {
+        this.maxSize = maxSize;
+        this.policy = policy != null ? policy : Policy.LRU;
+        this.ttlNanos = ttl > 0 ? TimeUnit.MILLISECONDS.toNanos(ttl) : 0L;
+        this.idleNanos = idleTimeout > 0 ? TimeUnit.MILLISECONDS.toNanos(idleTimeout) : 0L;
+        cleanUp();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public long getTtl() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    public long getIdleTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(idleNanos);
+    }
+
+    public void addListener(WsliteClientCacheListener<? super T> listener) {
+        if (listener != null) listeners.add(listener);
+    }
+
+    public void removeListener(WsliteClientCacheListener<? super T> listener) {
+        if (listener != null) listeners.remove(listener);
+    }
+
+    public T get(String id) {
+        if (id == null) return null;
+        List<Removal<T>> removals = new ArrayList<Removal<T>>(1);
+        T client = null;
+        synchronized (entries) {
+            Entry<T> entry = entries.get(id);
+            if (entry != null) {
+                long now = System.nanoTime();
+                RemovalCause cause = expirationOf(entry, now);
+                if (cause != null) {
+                    entries.remove(id);
+                    removals.add(new Removal<T>(id, entry.client, cause));
+                } else {
+                    entry.accessedAt = now;
+                    entry.hits++;
+                    client = entry.client;
+                }
+            }
+        }
+        notifyListeners(removals);
+        return client;
+    }
+
+    /**
+     * Returns the client stored under {@code id}, creating it with {@code factory} if needed.<p>
+     * Concurrent callers asking for the same missing id wait for a single invocation
+     * of the factory instead of each creating their own client.
+     */
+    public T get(final String id, final Callable<? extends T> factory) {
+        T client = get(id);
+        if (client != null) return client;
+
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                // another caller may have completed a creation between our lookup and registration
+                T current = get(id);
+                if (current != null) return current;
+                T created = factory.call();
+                put(id, created);
+                return created;
+            }
+        });
+        FutureTask<T> existing = pending.putIfAbsent(id, task);
+        if (existing == null) {
+            try {
+                task.run();
+                return await(task);
+            } finally {
+                pending.remove(id, task);
+            }
+        }
+        return await(existing);
+    }
+
+    private T await(FutureTask<T> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    public void put(String id, T client) {
+        if (id == null) return;
+        if (client == null) {
+            remove(id);
+            return;
+        }
+        List<Removal<T>> removals = new ArrayList<Removal<T>>(1);
+        synchronized (entries) {
+            long now = System.nanoTime();
+            Entry<T> previous = entries.put(id, new Entry<T>(client, now));
+            if (previous != null && previous.client != client) {
+                removals.add(new Removal<T>(id, previous.client, RemovalCause.REPLACED));
+            }
+            expireEntries(now, removals);
+            evictEntries(id, removals);
+        }
+        notifyListeners(removals);
+    }
+
+    public T remove(String id) {
+        if (id == null) return null;
+        Entry<T> entry;
+        synchronized (entries) {
+            entry = entries.remove(id);
+        }
+        if (entry == null) return null;
+        notifyListeners(Collections.singletonList(new Removal<T>(id, entry.client, RemovalCause.EXPLICIT)));
+        return entry.client;
+    }
+
+    public void clear() {
+        List<Removal<T>> removals = new ArrayList<Removal<T>>();
+        synchronized (entries) {
+            for (Map.Entry<String, Entry<T>> e : entries.entrySet()) {
+                removals.add(new Removal<T>(e.getKey(), e.getValue().client, RemovalCause.EXPLICIT));
+            }
+            entries.clear();
+        }
+        notifyListeners(removals);
+    }
+
+    /**
+     * Removes all expired and idle entries, then trims the cache down to its size bound.
+     */
+    public void cleanUp() {
+        List<Removal<T>> removals = new ArrayList<Removal<T>>();
+        synchronized (entries) {
+            expireEntries(System.nanoTime(), removals);
+            evictEntries(null, removals);
+        }
+        notifyListeners(removals);
+    }
+
+    public Set<String> keySet() {
+        cleanUp();
+        synchronized (entries) {
+            return new LinkedHashSet<String>(entries.keySet());
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private RemovalCause expirationOf(Entry<T> entry, long now) {
+        if (ttlNanos > 0 && now - entry.createdAt >= ttlNanos) return RemovalCause.EXPIRED;
+        if (idleNanos > 0 && now - entry.accessedAt >= idleNanos) return RemovalCause.IDLE;
+        return null;
+    }
+
+    private void expireEntries(long now, List<Removal<T>> removals) {
+        if (ttlNanos <= 0 && idleNanos <= 0) return;
+        for (Iterator<Map.Entry<String, Entry<T>>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Entry<T>> e = it.next();
+            RemovalCause cause = expirationOf(e.getValue(), now);
+            if (cause != null) {
+                it.remove();
+                removals.add(new Removal<T>(e.getKey(), e.getValue().client, cause));
+            }
+        }
+    }
+
+    private void evictEntries(String recent, List<Removal<T>> removals) {
+        if (maxSize <= 0) return;
+        while (entries.size() > maxSize) {
+            String victim = policy == Policy.LFU ? leastFrequentlyUsed(recent) : entries.keySet().iterator().next();
+            Entry<T> entry = entries.remove(victim);
+            removals.add(new Removal<T>(victim, entry.client, RemovalCause.SIZE));
+        }
+    }
+
+    private String leastFrequentlyUsed(String recent) {
+        // iteration order is access order, ties resolve to the least recently used entry.
+        // the entry that was just added is spared, otherwise it would always be the victim
+        String victim = null;
+        long hits = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry<T>> e : entries.entrySet()) {
+            if (e.getKey().equals(recent)) continue;
+            if (e.getValue().hits < hits) {
+                hits = e.getValue().hits;
+                victim = e.getKey();
+            }
+        }
+        return victim;
+    }
+
+    private void notifyListeners(List<Removal<T>> removals) {
+        if (removals.isEmpty() || listeners.isEmpty()) return;
+        for (Removal<T> removal : removals) {
+            for (WsliteClientCacheListener<? super T> listener : listeners) {
+                try {
+                    listener.clientRemoved(removal.id, removal.client, removal.cause);
+                } catch (RuntimeException e) {
+                    LOG.warn("Listener " + listener + " failed while handling removal of client '" + removal.id + "'", e);
+                }
+            }
+        }
+    }
+
+    private static class Entry<T> {
+        private final T client;
+        private final long createdAt;
+        private long accessedAt;
+        private long hits;
+
+        private Entry(T client, long now) {
+            this.client = client;
+            this.createdAt = now;
+            this.accessedAt = now;
+        }
+    }
+
+    private static class Removal<T> {
+        private final String id;
+        private final T client;
+        private final RemovalCause cause;
+
+        private Removal(String id, T client, RemovalCause cause) {
+            this.id = id;
+            this.client = client;
+            this.cause = cause;
+        }
+    }
+}
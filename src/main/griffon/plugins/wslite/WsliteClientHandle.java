@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A client resolved once and kept for repeated calls.<p>
+ * Calls made through a handle skip parameter parsing and client lookups; they only
+ * check that the client holder has not evicted or replaced any client since the
+ * handle last resolved its own. Handles created from parameters resolve their client
+ * through {@link WsliteClientHolder} the same way {@link DefaultWsliteProvider} does;
+ * handles created for an id use the client registered under that id, which must
+ * exist or be declared in {@code griffon.wslite.clients} by the time of the first call.
+ * Handles are immutable and may be shared by any number of threads.
+ *
+ * @author Andres Almiray
+ */
+public abstract class WsliteClientHandle<C> {
+    private final String id;
+    private final String operation;
+    private final Map<String, Object> params;
+    private final boolean streaming;
+    private volatile Resolved<C> resolved;
+
+    protected WsliteClientHandle(String operation, String id, Map<String, Object> params) {
+        this.operation = operation;
+        if (params != null) {
+            Map<String, Object> copy = new LinkedHashMap<String, Object>(params);
+            Object streamingParam = copy.remove("streaming");
+            Object idParam = copy.get("id");
+            this.id = idParam != null ? idParam.toString() : null;
+            this.streaming = streamingParam != null ? Boolean.valueOf(streamingParam.toString()) :
+                this.id != null && WsliteClientHolder.getInstance().isStreamingClient(this.id);
+            this.params = Collections.unmodifiableMap(copy);
+        } else {
+            if (id == null) throw new IllegalArgumentException("A client id is required");
+            this.id = id;
+            this.streaming = WsliteClientHolder.getInstance().isStreamingClient(id);
+            this.params = null;
+        }
+    }
+
+    /**
+     * @return the client id, {@code null} for anonymous clients
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public C getClient() {
+        return resolve().client;
+    }
+
+    /**
+     * Creates a client from a copy of the parameters this handle was created with.
+     */
+    protected abstract C fetch(Map<String, Object> params);
+
+    /**
+     * @return the client registered with the given id, {@code null} if there is none
+     */
+    protected abstract C lookup(String id);
+
+    /**
+     * @return a streaming stand-in for the client, or {@code null} when streaming is not supported
+     */
+    protected abstract Closeable streamingClientOf(C client);
+
+    protected <R> R call(Closure<R> closure) {
+        if (closure == null) return null;
+        Resolved<C> current = acquire();
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(current.metrics);
+        long started = current.metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result;
+            Closeable streamingClient = streaming ? streamingClientOf(current.client) : null;
+            if (streamingClient != null) {
+                try {
+                    result = AbstractWsliteProvider.callWith(closure, streamingClient);
+                } finally {
+                    closeQuietly(streamingClient);
+                }
+            } else {
+                result = AbstractWsliteProvider.callWith(closure, current.client);
+            }
+            failed = false;
+            return result;
+        } finally {
+            current.metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+            WsliteClientHolder.getInstance().release(current.client);
+        }
+    }
+
+    protected <R> R call(CallableWithArgs<R> callable) {
+        if (callable == null) return null;
+        Resolved<C> current = acquire();
+        WsliteClientMetrics previous = WsliteMetrics.getInstance().enter(current.metrics);
+        long started = current.metrics.callStarted();
+        boolean failed = true;
+        try {
+            R result;
+            Closeable streamingClient = streaming ? streamingClientOf(current.client) : null;
+            if (streamingClient != null) {
+                try {
+                    result = callable.call(new Object[]{streamingClient});
+                } finally {
+                    closeQuietly(streamingClient);
+                }
+            } else {
+                result = callable.call(new Object[]{current.client});
+            }
+            failed = false;
+            return result;
+        } finally {
+            current.metrics.callEnded(started, failed);
+            WsliteMetrics.getInstance().exit(previous);
+            WsliteClientHolder.getInstance().release(current.client);
+        }
+    }
+
+    /**
+     * Resolves the client and keeps it from being closed until the call releases it.
+     */
+    private Resolved<C> acquire() {
+        Resolved<C> current = resolve();
+        if (WsliteClientHolder.getInstance().acquire(current.client)) return current;
+        // the client was closed after leaving its cache, anonymous handles must fetch another one
+        synchronized (this) {
+            if (resolved == current) resolved = null;
+        }
+        current = resolve();
+        WsliteClientHolder.getInstance().acquire(current.client);
+        return current;
+    }
+
+    private Resolved<C> resolve() {
+        Resolved<C> current = resolved;
+        if (current != null && (id == null || current.generation == WsliteClientHolder.getInstance().getGeneration())) {
+            return current;
+        }
+        synchronized (this) {
+            current = resolved;
+            long generation = WsliteClientHolder.getInstance().getGeneration();
+            if (current != null && (id == null || current.generation == generation)) return current;
+            C client = params != null ? fetch(new LinkedHashMap<String, Object>(params)) : lookup(id);
+            if (client == null) {
+                throw new IllegalStateException("No " + operation + " client with id '" + id + "' has been created");
+            }
+            current = new Resolved<C>(client, generation, WsliteMetrics.getInstance().metricsFor(id, operation));
+            resolved = current;
+            return current;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public String toString() {
+        return getClass().getSimpleName() + "[" + (id != null ? id : WsliteMetrics.ANONYMOUS) + "]";
+    }
+
+    private static final class Resolved<C> {
+        private final C client;
+        private final long generation;
+        private final WsliteClientMetrics metrics;
+
+        private Resolved(C client, long generation, WsliteClientMetrics metrics) {
+            this.client = client;
+            this.generation = generation;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -16,16 +16,29 @@
 
 package griffon.plugins.wslite
 
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
 import wslite.http.HTTPClient
 import wslite.rest.RESTClient
 import wslite.soap.SOAPClient
 
+import java.security.MessageDigest
+import java.util.concurrent.Callable
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArraySet
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt
+import static griffon.util.ConfigUtils.getConfigValueAsString
 
 /**
  * @author Andres Almiray
  */
 class WsliteClientHolder {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteClientHolder)
     private static final WsliteClientHolder INSTANCE
 
     static {
@@ -36,11 +49,278 @@ class WsliteClientHolder {
         INSTANCE
     }
 
-    private WsliteClientHolder() {}
+    private WsliteClientHolder() {
+        [HTTP, REST, SOAP, ANONYMOUS_HTTP, ANONYMOUS_REST, ANONYMOUS_SOAP]*.addListener(RESOURCE_RELEASER)
+        [HTTP, REST, SOAP]*.addListener(GENERATION_TRACKER)
+        HTTP.addListener(metricsReleaser(WsliteMetrics.HTTP))
+        REST.addListener(metricsReleaser(WsliteMetrics.REST))
+        SOAP.addListener(metricsReleaser(WsliteMetrics.SOAP))
+    }
+
+    private final WsliteClientCache<HTTPClient> HTTP = new WsliteClientCache<HTTPClient>()
+    private final WsliteClientCache<RESTClient> REST = new WsliteClientCache<RESTClient>()
+    private final WsliteClientCache<SOAPClient> SOAP = new WsliteClientCache<SOAPClient>()
+    private final WsliteClientCache<HTTPClient> ANONYMOUS_HTTP = new WsliteClientCache<HTTPClient>(DEFAULT_ANONYMOUS_MAX_SIZE, WsliteClientCache.Policy.LRU, 0L, 0L)
+    private final WsliteClientCache<RESTClient> ANONYMOUS_REST = new WsliteClientCache<RESTClient>(DEFAULT_ANONYMOUS_MAX_SIZE, WsliteClientCache.Policy.LRU, 0L, 0L)
+    private final WsliteClientCache<SOAPClient> ANONYMOUS_SOAP = new WsliteClientCache<SOAPClient>(DEFAULT_ANONYMOUS_MAX_SIZE, WsliteClientCache.Policy.LRU, 0L, 0L)
+
+    // anonymous clients are keyed by their parameters, which callers may vary freely
+    private static final int DEFAULT_ANONYMOUS_MAX_SIZE = 100
+    private static final long MIN_SWEEP_INTERVAL = 1000L
+
+    /**
+     * When enabled, clients requested without an {@code id:} are cached using a
+     * fingerprint of their construction parameters as key.
+     */
+    boolean fingerprintAnonymousClients
+
+    private final Set<String> streamingClientIds = new CopyOnWriteArraySet<String>()
+
+    private final AtomicLong clientGeneration = new AtomicLong()
+
+    // parameters of clients declared under griffon.wslite.clients, keyed by client type and id
+    private final Map<Class, Map<String, Map<String, Object>>> definitions = [
+        (HTTPClient): new ConcurrentHashMap<String, Map<String, Object>>(),
+        (RESTClient): new ConcurrentHashMap<String, Map<String, Object>>(),
+        (SOAPClient): new ConcurrentHashMap<String, Map<String, Object>>()
+    ]
+
+    final WsliteClientPrewarmer prewarmer = new WsliteClientPrewarmer()
+
+    // calls in progress per client owning resources, by identity; guarded by itself
+    private final Map<Object, Usage> usages = new IdentityHashMap<Object, Usage>()
+    // clients already closed, a call that fetched one right before must fetch another; guarded by usages
+    private final Map<Object, Boolean> closedClients = new WeakHashMap<Object, Boolean>()
+
+    private ScheduledExecutorService sweeper
+
+    private final WsliteClientCacheListener GENERATION_TRACKER = { String id, client, WsliteClientCache.RemovalCause cause ->
+        clientGeneration.incrementAndGet()
+    } as WsliteClientCacheListener
+
+    private static WsliteClientCacheListener metricsReleaser(String operation) {
+        // a replaced client keeps its id, and its metrics with it
+        { String id, client, WsliteClientCache.RemovalCause cause ->
+            if (cause != WsliteClientCache.RemovalCause.REPLACED) WsliteMetrics.instance.remove(id, operation)
+        } as WsliteClientCacheListener
+    }
+
+    // a removed client may still be running calls on other threads, it is closed once the last
+    // of them ends. Connection factories may be shared with other clients (pools), so only the
+    // parts a client owns are closed: the client itself and its HTTPClient
+    private final WsliteClientCacheListener RESOURCE_RELEASER = { String id, client, WsliteClientCache.RemovalCause cause ->
+        if (LOG.debugEnabled) LOG.debug("Client '$id' removed from cache ($cause)")
+        if (ownsResources(client)) closeWhenUnused(id, client)
+    } as WsliteClientCacheListener
 
-    private final Map<String, HTTPClient> HTTP = new ConcurrentHashMap<String, HTTPClient>()
-    private final Map<String, RESTClient> REST = new ConcurrentHashMap<String, RESTClient>()
-    private final Map<String, SOAPClient> SOAP = new ConcurrentHashMap<String, SOAPClient>()
+    /**
+     * Marks the start of a call made with the given client, which is then not closed before
+     * the matching {@link #release(Object)}, even if it leaves its cache in the meantime.
+     *
+     * @return {@code false} when the client has already been closed and another one must be fetched
+     */
+    boolean acquire(client) {
+        if (!ownsResources(client)) return true
+        synchronized (usages) {
+            if (closedClients.containsKey(client)) return false
+            Usage usage = usages.get(client)
+            if (usage == null) {
+                usage = new Usage()
+                usages.put(client, usage)
+            }
+            usage.calls++
+        }
+        true
+    }
+
+    /**
+     * Marks the end of a call started with {@link #acquire(Object)}, closing the client if it
+     * was removed from its cache and this was its last call.
+     */
+    void release(client) {
+        if (!ownsResources(client)) return
+        String closeAs
+        synchronized (usages) {
+            Usage usage = usages.get(client)
+            if (usage == null || --usage.calls > 0) return
+            usages.remove(client)
+            closeAs = usage.closeAs
+            if (closeAs == null) return
+            closedClients.put(client, Boolean.TRUE)
+        }
+        close(closeAs, client)
+    }
+
+    private void closeWhenUnused(String id, client) {
+        synchronized (usages) {
+            Usage usage = usages.get(client)
+            if (usage != null) {
+                usage.closeAs = id
+                return
+            }
+            closedClients.put(client, Boolean.TRUE)
+        }
+        close(id, client)
+    }
+
+    private static boolean ownsResources(client) {
+        if (client instanceof Closeable) return true
+        (client instanceof RESTClient || client instanceof SOAPClient) && client.httpClient instanceof Closeable
+    }
+
+    private static void close(String id, client) {
+        def httpClient = client instanceof HTTPClient ? client : client.httpClient
+        [client, httpClient].unique { System.identityHashCode(it) }.each { resource ->
+            if (resource instanceof Closeable) {
+                try {
+                    resource.close()
+                } catch (IOException e) {
+                    LOG.warn("Could not release $resource held by client '$id'", e)
+                }
+            }
+        }
+    }
+
+    private static class Usage {
+        int calls
+        // id the client was removed under, set once it must be closed
+        String closeAs
+    }
+
+    /**
+     * Applies size, policy, TTL and idle settings to each client cache.<p>
+     * Settings are read per client type ({@code http}, {@code rest}, {@code soap}), for example
+     * <pre>
+     * griffon.wslite.cache.rest.maxSize = 50
+     * griffon.wslite.cache.rest.policy = 'lfu'
+     * griffon.wslite.cache.rest.ttl = 3600000
+     * griffon.wslite.cache.rest.idleTimeout = 600000
+     * </pre>
+     * Setting {@code griffon.wslite.cache.fingerprint = true} enables caching of anonymous
+     * clients, sharing the same policy and expiration settings. Their size is always bounded,
+     * by {@code anonymousMaxSize} (defaults to 100).<p>
+     * When a TTL or idle timeout is set, expired clients are also swept in the background, every
+     * shortest of those periods (one second at least), so that an unused cache releases them too.
+     */
+    void configureClientCaches(Map config) {
+        fingerprintAnonymousClients = config?.fingerprint as boolean
+        long sweepInterval = 0L
+        [http: [HTTP, ANONYMOUS_HTTP], rest: [REST, ANONYMOUS_REST], soap: [SOAP, ANONYMOUS_SOAP]].each { String type, List<WsliteClientCache> caches ->
+            Map settings = config?.get(type) ?: [:]
+            WsliteClientCache.Policy policy = policyOf(getConfigValueAsString(settings, 'policy', 'lru'), "griffon.wslite.cache.${type}.policy")
+            long ttl = (settings.ttl ?: 0L) as long
+            long idleTimeout = (settings.idleTimeout ?: 0L) as long
+            caches[0].configure(getConfigValueAsInt(settings, 'maxSize', 0), policy, ttl, idleTimeout)
+            int anonymousMaxSize = getConfigValueAsInt(settings, 'anonymousMaxSize', DEFAULT_ANONYMOUS_MAX_SIZE)
+            caches[1].configure(anonymousMaxSize > 0 ? anonymousMaxSize : DEFAULT_ANONYMOUS_MAX_SIZE, policy, ttl, idleTimeout)
+            [ttl, idleTimeout].findAll { it > 0L }.each { sweepInterval = sweepInterval > 0L ? Math.min(sweepInterval, it) : it }
+        }
+        scheduleSweep(sweepInterval)
+    }
+
+    private synchronized void scheduleSweep(long interval) {
+        sweeper?.shutdownNow()
+        sweeper = null
+        if (interval <= 0L) return
+        interval = Math.max(MIN_SWEEP_INTERVAL, interval)
+        sweeper = Executors.newSingleThreadScheduledExecutor(new WsliteAsyncExecutor.NamedThreadFactory('wslite-cache-sweeper'))
+        sweeper.scheduleWithFixedDelay({
+            try {
+                [HTTP, REST, SOAP, ANONYMOUS_HTTP, ANONYMOUS_REST, ANONYMOUS_SOAP]*.cleanUp()
+            } catch (RuntimeException e) {
+                LOG.warn('Could not sweep expired clients', e)
+            }
+        } as Runnable, interval, interval, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Stops sweeping expired clients in the background.
+     */
+    synchronized void shutdown() {
+        sweeper?.shutdownNow()
+        sweeper = null
+    }
+
+    private static WsliteClientCache.Policy policyOf(String value, String key) {
+        WsliteClientCache.Policy policy = WsliteClientCache.Policy.values().find { it.name().equalsIgnoreCase(value?.trim()) }
+        if (policy == null) throw new IllegalArgumentException("Unknown $key '$value', expected one of lru or lfu")
+        policy
+    }
+
+    /**
+     * Reads the ids of clients whose responses are always streamed, for example
+     * <pre>
+     * griffon.wslite.streaming.clients = ['reports']
+     * </pre>
+     */
+    void configureStreaming(Map config) {
+        streamingClientIds.clear()
+        config?.clients?.each { id -> streamingClientIds << id.toString() }
+    }
+
+    boolean isStreamingClient(String id) {
+        id in streamingClientIds
+    }
+
+    /**
+     * Registers named clients, optionally pre-warming them in the background, for example
+     * <pre>
+     * griffon.wslite.clients = [
+     *     github:  [type: 'rest', url: 'https://api.github.com', readTimeout: 5000, prewarm: true],
+     *     weather: [type: 'soap', url: 'http://localhost:8080/weather', prewarm: [connections: 4, method: 'GET']]
+     * ]
+     * </pre>
+     * {@code type} is one of {@code rest} (the default), {@code soap} or {@code http}; every
+     * other setting except {@code prewarm} is handed over to the client. Declared clients
+     * are created on first use or when pre-warmed, and again after being evicted.
+     */
+    void configureClients(Map config) {
+        definitions.values()*.clear()
+        config?.each { String id, Map settings ->
+            Map<String, Object> params = new LinkedHashMap<String, Object>(settings ?: [:])
+            Class klass = clientTypeOf(params.remove('type'), id)
+            def prewarm = params.remove('prewarm')
+            params.remove('id')
+            definitions[klass][id] = params.asImmutable()
+            if (prewarm) {
+                Map prewarmSettings = prewarm instanceof Map ? prewarm : [:]
+                String url = (params.url ?: params.urls?.getAt(0))?.toString()
+                prewarmer.prewarm(id, { fetchClient(klass, [id: id]) }, url, prewarmSettings)
+            }
+        }
+    }
+
+    String[] getDeclaredClientIds() {
+        Set<String> ids = new TreeSet<String>()
+        definitions.values().each { ids.addAll(it.keySet()) }
+        ids.toArray(new String[ids.size()])
+    }
+
+    private static Class clientTypeOf(type, String id) {
+        switch (type?.toString()?.toLowerCase()) {
+            case null:
+            case 'rest': return RESTClient
+            case 'soap': return SOAPClient
+            case 'http': return HTTPClient
+        }
+        throw new IllegalArgumentException("Unknown type '$type' for client '$id', expected one of rest, soap or http")
+    }
+
+    /**
+     * Increases every time a client registered with an id is evicted, replaced or removed.
+     * {@link WsliteClientHandle}s compare it to resolve their client again.
+     */
+    long getGeneration() {
+        clientGeneration.get()
+    }
+
+    void addClientCacheListener(WsliteClientCacheListener listener) {
+        [HTTP, REST, SOAP, ANONYMOUS_HTTP, ANONYMOUS_REST, ANONYMOUS_SOAP]*.addListener(listener)
+    }
+
+    void removeClientCacheListener(WsliteClientCacheListener listener) {
+        [HTTP, REST, SOAP, ANONYMOUS_HTTP, ANONYMOUS_REST, ANONYMOUS_SOAP]*.removeListener(listener)
+    }
 
     String[] getHttpClientIds() {
         List<String> ids = []
@@ -49,11 +329,25 @@ class WsliteClientHolder {
     }
 
     HTTPClient getHttpClient(String id) {
-        HTTP[id]
+        HTTP.get(id)
+    }
+
+    /**
+     * @return the client registered with the given id, creating it when it was declared
+     * in configuration, {@code null} otherwise
+     */
+    HTTPClient lookupHttpClient(String id) {
+        HTTPClient client = getHttpClient(id)
+        if (client != null || !definitions[HTTPClient].containsKey(id)) return client
+        fetchHttpClient([id: id])
     }
 
     void setHttpClient(String id, HTTPClient client) {
-        HTTP[id] = client
+        HTTP.put(id, client)
+    }
+
+    HTTPClient removeHttpClient(String id) {
+        HTTP.remove(id)
     }
 
     String[] getRestClientIds() {
@@ -63,11 +357,25 @@ class WsliteClientHolder {
     }
 
     RESTClient getRestClient(String id) {
-        REST[id]
+        REST.get(id)
+    }
+
+    /**
+     * @return the client registered with the given id, creating it when it was declared
+     * in configuration, {@code null} otherwise
+     */
+    RESTClient lookupRestClient(String id) {
+        RESTClient client = getRestClient(id)
+        if (client != null || !definitions[RESTClient].containsKey(id)) return client
+        fetchRestClient([id: id])
     }
 
     void setRestClient(String id, RESTClient client) {
-        REST[id] = client
+        REST.put(id, client)
+    }
+
+    RESTClient removeRestClient(String id) {
+        REST.remove(id)
     }
 
     String[] getSoapClientIds() {
@@ -77,34 +385,121 @@ class WsliteClientHolder {
     }
 
     SOAPClient getSoapClient(String id) {
-        SOAP[id]
+        SOAP.get(id)
+    }
+
+    /**
+     * @return the client registered with the given id, creating it when it was declared
+     * in configuration, {@code null} otherwise
+     */
+    SOAPClient lookupSoapClient(String id) {
+        SOAPClient client = getSoapClient(id)
+        if (client != null || !definitions[SOAPClient].containsKey(id)) return client
+        fetchSoapClient([id: id])
     }
 
     void setSoapClient(String id, SOAPClient client) {
-        SOAP[id] = client
+        SOAP.put(id, client)
+    }
+
+    SOAPClient removeSoapClient(String id) {
+        SOAP.remove(id)
     }
 
     // ======================================================
 
     HTTPClient fetchHttpClient(Map<String, Object> params) {
-        (HTTPClient) fetchClient(HTTP, HTTPClient, params)
+        (HTTPClient) fetchClient(HTTP, ANONYMOUS_HTTP, HTTPClient, params)
     }
 
     RESTClient fetchRestClient(Map<String, Object> params) {
-        (RESTClient) fetchClient(REST, RESTClient, params)
+        (RESTClient) fetchClient(REST, ANONYMOUS_REST, RESTClient, params)
     }
 
     SOAPClient fetchSoapClient(Map<String, Object> params) {
-        (SOAPClient) fetchClient(SOAP, SOAPClient, params)
+        (SOAPClient) fetchClient(SOAP, ANONYMOUS_SOAP, SOAPClient, params)
     }
 
-    private fetchClient(Map clientStore, Class klass, Map<String, Object> params) {
-        def client = clientStore[(params.id).toString()]
-        if (client == null) {
-            String id = params.id ? params.remove('id').toString() : '<EMPTY>'
-            client = WsliteConnector.instance.createClient(klass, params)
-            if (id != '<EMPTY>') clientStore[id] = client
+    private fetchClient(Class klass, Map<String, Object> params) {
+        switch (klass) {
+            case HTTPClient: return fetchHttpClient(params)
+            case SOAPClient: return fetchSoapClient(params)
+            default: return fetchRestClient(params)
+        }
+    }
+
+    private fetchClient(WsliteClientCache clientStore, WsliteClientCache anonymousStore, Class klass, Map<String, Object> params) {
+        // callers may reuse their map, the id is dropped from a copy
+        params = new LinkedHashMap<String, Object>(params ?: [:])
+        def clientId = params.remove('id')
+        if (clientId) {
+            String id = clientId.toString()
+            def client = clientStore.get(id)
+            if (client != null) return client
+            Map<String, Object> declared = definitions[klass][id]
+            if (declared) {
+                // call parameters take precedence over declared ones
+                Map<String, Object> merged = new LinkedHashMap<String, Object>(declared)
+                merged.putAll(params)
+                params = merged
+            }
+            return clientStore.get(id, { WsliteConnector.instance.createClient(klass, params, id) } as Callable)
+        }
+
+        String key = fingerprintAnonymousClients ? fingerprint(klass, params) : null
+        if (key != null) {
+            return anonymousStore.get(key, { WsliteConnector.instance.createClient(klass, params) } as Callable)
+        }
+        WsliteConnector.instance.createClient(klass, params)
+    }
+
+    /**
+     * Computes a canonical key for the given construction parameters. Values are
+     * sorted by name and secrets are only included as digests. Returns {@code null}
+     * when a parameter has no value semantics (authorization, connection factories,
+     * closures), as such clients can't be told apart safely and are not cached.
+     */
+    private static String fingerprint(Class klass, Map<String, Object> params) {
+        StringBuilder canonical = new StringBuilder(klass.name)
+        for (String key : params.keySet().sort()) {
+            String value = canonicalValue(key, params[key])
+            if (value == null) return null
+            canonical.append('|').append(key).append('=').append(value)
+        }
+        MessageDigest.getInstance('SHA-1').digest(canonical.toString().getBytes('UTF-8')).encodeHex().toString()
+    }
+
+    private static String canonicalValue(String key, value) {
+        if (value == null) return ''
+        if (key == 'sslTrustStorePassword') {
+            return MessageDigest.getInstance('SHA-1').digest(value.toString().getBytes('UTF-8')).encodeHex().toString()
+        }
+        if (key == 'sslTrustStoreFile') {
+            File file = new File(value.toString())
+            return file.absolutePath + '@' + file.lastModified()
+        }
+        if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean ||
+            value instanceof Enum || value instanceof Proxy || value instanceof URL || value instanceof URI) {
+            return value.toString()
+        }
+        if (value instanceof Map) {
+            List<String> entries = []
+            for (String k : value.keySet().collect { String.valueOf(it) }.sort()) {
+                String v = canonicalValue(k, value.find { String.valueOf(it.key) == k }?.value)
+                if (v == null) return null
+                entries << k + ':' + v
+            }
+            return '{' + entries.join(',') + '}'
+        }
+        if (value instanceof Collection || value instanceof Object[]) {
+            List<String> elements = []
+            for (element in value) {
+                String v = canonicalValue('', element)
+                if (v == null) return null
+                elements << v
+            }
+            return '[' + elements.join(',') + ']'
         }
-        client
+        null
     }
 }
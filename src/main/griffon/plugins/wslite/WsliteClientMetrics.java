@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls, errors, bytes and latencies recorded for one operation of one client.<p>
+ * Recording only touches atomic counters and a {@link WsliteHistogram}, so it may be
+ * done on every call.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteClientMetrics implements WsliteClientMetricsMBean {
+    private static final double MICROS_PER_MILLI = 1000.0d;
+
+    private final String clientId;
+    private final String operation;
+    private final boolean recording;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final WsliteHistogram latency = new WsliteHistogram();
+
+    WsliteClientMetrics(String clientId, String operation, boolean recording) {
+        this.clientId = clientId;
+        this.operation = operation;
+        this.recording = recording;
+    }
+
+    /**
+     * @return a timestamp to be handed back to {@link #callEnded(long, boolean)}
+     */
+    public long callStarted() {
+        if (!recording) return 0L;
+        calls.incrementAndGet();
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void callEnded(long started, boolean failed) {
+        if (!recording) return;
+        inFlight.decrementAndGet();
+        if (failed) errors.incrementAndGet();
+        latency.record((System.nanoTime() - started) / 1000L);
+    }
+
+    public void bytesSent(long bytes) {
+        if (recording && bytes > 0) bytesOut.addAndGet(bytes);
+    }
+
+    public void bytesReceived(long bytes) {
+        if (recording && bytes > 0) bytesIn.addAndGet(bytes);
+    }
+
+    /**
+     * @return a stream recording every byte read from {@code in} as received
+     */
+    public InputStream countReceived(InputStream in) {
+        if (!recording) return in;
+        return new FilterInputStream(in) {
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) bytesIn.incrementAndGet();
+                return b;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) bytesIn.addAndGet(read);
+                return read;
+            }
+        };
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * @return latencies in microseconds
+     */
+    public WsliteHistogram getLatency() {
+        return latency;
+    }
+
+    public double getLatencyMean() {
+        return latency.getMean() / MICROS_PER_MILLI;
+    }
+
+    public double getLatencyP50() {
+        return latency.getValueAtPercentile(50.0d) / MICROS_PER_MILLI;
+    }
+
+    public double getLatencyP90() {
+        return latency.getValueAtPercentile(90.0d) / MICROS_PER_MILLI;
+    }
+
+    public double getLatencyP99() {
+        return latency.getValueAtPercentile(99.0d) / MICROS_PER_MILLI;
+    }
+
+    public double getLatencyP999() {
+        return latency.getValueAtPercentile(99.9d) / MICROS_PER_MILLI;
+    }
+
+    public double getLatencyMax() {
+        return latency.getMax() / MICROS_PER_MILLI;
+    }
+
+    public void reset() {
+        calls.set(0L);
+        errors.set(0L);
+        bytesIn.set(0L);
+        bytesOut.set(0L);
+        latency.reset();
+    }
+
+    public WsliteMetricsSnapshot snapshot() {
+        return new WsliteMetricsSnapshot(clientId, operation, getCalls(), getErrors(), getInFlight(),
+            getBytesIn(), getBytesOut(), getLatencyMean(), getLatencyP50(), getLatencyP90(),
+            getLatencyP99(), getLatencyP999(), getLatencyMax());
+    }
+
+    public String toString() {
+        return "WsliteClientMetrics[" + clientId + ", " + operation + ", calls=" + getCalls() + ", errors=" + getErrors() + "]";
+    }
+}
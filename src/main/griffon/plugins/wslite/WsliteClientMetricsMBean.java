@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+/**
+ * Management interface of {@link WsliteClientMetrics}. Latencies are reported in milliseconds.
+ *
+ * @author Andres Almiray
+ */
+public interface WsliteClientMetricsMBean {
+    String getClientId();
+
+    String getOperation();
+
+    long getCalls();
+
+    long getErrors();
+
+    int getInFlight();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    double getLatencyMean();
+
+    double getLatencyP50();
+
+    double getLatencyP90();
+
+    double getLatencyP99();
+
+    double getLatencyP999();
+
+    double getLatencyMax();
+
+    void reset();
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import wslite.http.HTTPClient
+import wslite.http.HTTPClientException
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+
+import java.util.concurrent.*
+
+/**
+ * Prepares declared clients in the background so that their first call does not pay
+ * for construction, name resolution, connection setup or TLS handshakes.<p>
+ * Pre-warming a client creates it, resolves its host and then sends {@code connections}
+ * concurrent requests ({@code GET} by default) to its URL, leaving that many
+ * connections open in the keep-alive cache or connection pool. Any response counts,
+ * whatever its status. Failures are logged and otherwise ignored.
+ *
+ * @author Andres Almiray
+ */
+class WsliteClientPrewarmer {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteClientPrewarmer)
+    private static final int DEFAULT_TIMEOUT = 10000
+
+    private final Map<String, Future> tasks = new ConcurrentHashMap<String, Future>()
+    private ExecutorService executor
+
+    /**
+     * @param id       client id, used for logging
+     * @param factory  creates or fetches the client
+     * @param url      base URL of the client
+     * @param settings {@code connections}, {@code path}, {@code method} and {@code timeout}
+     */
+    synchronized Future prewarm(String id, Closure factory, String url, Map settings) {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new WsliteAsyncExecutor.NamedThreadFactory('wslite-prewarm'))
+        }
+        Future task = executor.submit({ run(id, factory, url, settings) } as Callable)
+        tasks[id] = task
+        task
+    }
+
+    /**
+     * Waits for pending pre-warm tasks.
+     *
+     * @return {@code true} when every task completed within the given time
+     */
+    boolean await(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+        for (Future task : tasks.values()) {
+            try {
+                task.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+            } catch (TimeoutException e) {
+                return false
+            } catch (ExecutionException e) {
+                // already logged
+            }
+        }
+        true
+    }
+
+    boolean isPrewarmed(String id) {
+        Future task = tasks[id]
+        task != null && task.done
+    }
+
+    synchronized void shutdown() {
+        executor?.shutdownNow()
+        executor = null
+        tasks.clear()
+    }
+
+    private void run(String id, Closure factory, String url, Map settings) {
+        long started = System.nanoTime()
+        try {
+            def client = factory.call()
+            if (!url) return
+            HTTPClient httpClient = client instanceof HTTPClient ? client : client.httpClient
+            URL target = new URL(url + (settings.path ?: ''))
+            InetAddress.getAllByName(target.host)
+
+            int connections = Math.max(1, (settings.connections ?: 1) as int)
+            HTTPMethod method = HTTPMethod.valueOf((settings.method ?: 'GET').toString().toUpperCase())
+            int timeout = (settings.timeout ?: DEFAULT_TIMEOUT) as int
+            // concurrent requests, sequential ones would keep reusing the same connection
+            List<Future> requests = (1..connections).collect {
+                executor.submit({ open(httpClient, target, method, timeout) } as Callable)
+            }
+            int opened = requests.count { it.get() }
+            if (LOG.infoEnabled) {
+                LOG.info("Pre-warmed client '$id' with $opened/$connections connections in ${(System.nanoTime() - started) / 1000000L} ms")
+            }
+        } catch (Exception e) {
+            LOG.warn("Could not pre-warm client '$id'", e)
+        }
+    }
+
+    private static boolean open(HTTPClient httpClient, URL url, HTTPMethod method, int timeout) {
+        HTTPRequest request = new HTTPRequest(url: url, method: method, connectTimeout: timeout, readTimeout: timeout)
+        try {
+            httpClient.execute(request)
+            true
+        } catch (HTTPClientException e) {
+            // an error status still leaves a warm connection behind
+            if (e.response != null) return true
+            if (LOG.debugEnabled) LOG.debug("Pre-warm request to $url failed", e)
+            false
+        } catch (Exception e) {
+            if (LOG.debugEnabled) LOG.debug("Pre-warm request to $url failed", e)
+            false
+        }
+    }
+}
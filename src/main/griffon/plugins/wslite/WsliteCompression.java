@@ -0,0 +1,254 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import wslite.http.HTTPClientException;
+import wslite.http.HTTPRequest;
+import wslite.http.HTTPResponse;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Negotiates gzip/deflate compression on behalf of a client.<p>
+ * Requests advertise {@code Accept-Encoding: gzip, deflate}; compressed responses are
+ * decoded before the client sees them, including those carried by an
+ * {@code HTTPClientException}. {@code HTTPClient} gunzips the bodies of successful
+ * responses by itself, so only other encodings and error bodies are decoded here.
+ * Request bodies larger than the configured threshold are sent gzipped. Byte counts
+ * before and after compression are recorded in a {@link WsliteCompressionStats}.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteCompression implements WsliteHTTPInterceptor {
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    // the encoding HTTPClient decodes by itself, other spellings reach this class encoded
+    private static final String GZIP = "gzip";
+    private static final int GZIP_MAGIC = 0x8b1f;
+    // initial size of the buffer receiving a decoded body, it grows past this as needed
+    private static final int MAX_INITIAL_BUFFER = 1024 * 1024;
+
+    private final WsliteCompressionStats stats;
+    private final int requestThreshold;
+
+    /**
+     * @param stats            where transferred bytes are recorded
+     * @param requestThreshold request bodies larger than this many bytes are compressed, a negative value disables it
+     */
+    public WsliteCompression(WsliteCompressionStats stats, int requestThreshold) {
+        this.stats = stats;
+        this.requestThreshold = requestThreshold;
+    }
+
+    public WsliteCompressionStats getStats() {
+        return stats;
+    }
+
+    public int getRequestThreshold() {
+        return requestThreshold;
+    }
+
+    @SuppressWarnings("unchecked")
+    public HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain) {
+        Map<Object, Object> headers = request.getHeaders();
+        prepare(headers);
+        byte[] data = request.getData();
+        if (data != null && requestThreshold >= 0 && data.length > requestThreshold && header(headers, "Content-Encoding") == null) {
+            byte[] compressed = gzip(data);
+            request.setData(compressed);
+            headers.put("Content-Encoding", "gzip");
+            stats.requestSent(data.length, compressed.length, true);
+        } else if (data != null) {
+            stats.requestSent(data.length, data.length, false);
+        }
+
+        HTTPResponse response;
+        try {
+            response = chain.proceed(request);
+        } catch (Throwable t) {
+            // error responses are compressed as well, and HTTPClient leaves their bodies gzipped
+            if (t instanceof HTTPClientException && ((HTTPClientException) t).getResponse() != null) {
+                HTTPResponse error = ((HTTPClientException) t).getResponse();
+                decodeResponse(error, !isGzipped(error.getData()));
+            }
+            throw WsliteCompression.<RuntimeException>rethrow(t);
+        }
+        return decodeResponse(response, true);
+    }
+
+    /**
+     * @param gunzipped whether the transport gunzipped the body already
+     */
+    private HTTPResponse decodeResponse(HTTPResponse response, boolean gunzipped) {
+        byte[] body = response.getData();
+        String encoding = response.getContentEncoding();
+        if (body == null || body.length == 0 || !isCompressed(encoding)) {
+            if (body != null) stats.responseReceived(body.length, body.length, false);
+            return response;
+        }
+        if (gunzipped && GZIP.equals(encoding)) {
+            // the transport gunzipped the body already, only the wire size is left to record
+            int wire = response.getContentLength();
+            stats.responseReceived(body.length, wire > 0 ? wire : body.length, true);
+            markDecoded(response, body.length);
+            return response;
+        }
+        try {
+            InputStream input = decode(new ByteArrayInputStream(body), encoding);
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream((int) Math.min(body.length * 4L, MAX_INITIAL_BUFFER));
+            copy(input, decoded);
+            response.setData(decoded.toByteArray());
+            markDecoded(response, decoded.size());
+            stats.responseReceived(decoded.size(), body.length, true);
+            return response;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not decode " + encoding + " response from " + response.getUrl(), e);
+        }
+    }
+
+    /**
+     * Marks a decoded response as such. {@code HTTPResponse.getHeaders()} is a read-only
+     * view and {@code setHeaders()} merges into the existing (case-insensitive) headers,
+     * so {@code Content-Encoding} is overwritten with {@code identity} rather than removed.
+     */
+    private static void markDecoded(HTTPResponse response, int length) {
+        response.setContentEncoding(null);
+        response.setContentLength(length);
+        Map<String, Object> headers = new LinkedHashMap<String, Object>();
+        headers.put("Content-Encoding", "identity");
+        headers.put("Content-Length", String.valueOf(length));
+        response.setHeaders(headers);
+    }
+
+    /**
+     * Advertises the supported encodings, unless the request already defines its own.
+     */
+    @SuppressWarnings("unchecked")
+    public void prepare(Map headers) {
+        if (header(headers, "Accept-Encoding") == null) headers.put("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    /**
+     * Wraps a response body so that it is decoded while being read, recording
+     * byte counts once the stream is closed.
+     */
+    public InputStream decodeStream(InputStream input, String encoding) throws IOException {
+        final CountingInputStream wire = new CountingInputStream(input);
+        final boolean compressed = isCompressed(encoding);
+        InputStream decoded = compressed ? decode(wire, encoding) : wire;
+        return new CountingInputStream(decoded) {
+            private boolean recorded;
+
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!recorded) {
+                        recorded = true;
+                        stats.responseReceived(count, wire.count, compressed);
+                    }
+                }
+            }
+        };
+    }
+
+    public static boolean isCompressed(String encoding) {
+        return "gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding) || "deflate".equalsIgnoreCase(encoding);
+    }
+
+    private static boolean isGzipped(byte[] body) {
+        return body != null && body.length > 1 && ((body[0] & 0xff) | (body[1] & 0xff) << 8) == GZIP_MAGIC;
+    }
+
+    private static InputStream decode(InputStream input, String encoding) throws IOException {
+        if (!"deflate".equalsIgnoreCase(encoding)) return new GZIPInputStream(input, 8192);
+        // deflate should be zlib wrapped, but some servers send a raw stream
+        BufferedInputStream buffered = new BufferedInputStream(input, 8192);
+        buffered.mark(1);
+        int first = buffered.read();
+        buffered.reset();
+        boolean zlib = first != -1 && (first & 0x0F) == 8;
+        return new InflaterInputStream(buffered, new Inflater(!zlib), 8192);
+    }
+
+    private static byte[] gzip(byte[] data) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            GZIPOutputStream output = new GZIPOutputStream(bytes);
+            output.write(data);
+            output.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not compress request body", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T rethrow(Throwable t) throws T {
+        throw (T) t;
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private static Object header(Map headers, String name) {
+        for (Object key : headers.keySet()) {
+            if (key != null && name.equalsIgnoreCase(key.toString())) return headers.get(key);
+        }
+        return null;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        protected long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes sent and received by a client, before and after compression.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteCompressionStats {
+    private final String id;
+    private final AtomicLong compressedRequests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong requestWireBytes = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong responseWireBytes = new AtomicLong();
+
+    public WsliteCompressionStats(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    void requestSent(long bytes, long wireBytes, boolean compressed) {
+        if (compressed) compressedRequests.incrementAndGet();
+        requestBytes.addAndGet(bytes);
+        requestWireBytes.addAndGet(wireBytes);
+    }
+
+    void responseReceived(long bytes, long wireBytes, boolean compressed) {
+        if (compressed) compressedResponses.incrementAndGet();
+        responseBytes.addAndGet(bytes);
+        responseWireBytes.addAndGet(wireBytes);
+    }
+
+    public long getCompressedRequests() {
+        return compressedRequests.get();
+    }
+
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * @return size of request bodies before compression
+     */
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    /**
+     * @return size of request bodies as sent over the wire
+     */
+    public long getRequestWireBytes() {
+        return requestWireBytes.get();
+    }
+
+    /**
+     * @return size of response bodies after decompression
+     */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    /**
+     * @return size of response bodies as received over the wire
+     */
+    public long getResponseWireBytes() {
+        return responseWireBytes.get();
+    }
+
+    public long getBytesSaved() {
+        return getRequestBytes() + getResponseBytes() - getRequestWireBytes() - getResponseWireBytes();
+    }
+
+    /**
+     * @return uncompressed bytes per byte on the wire, 1.0 when nothing was transferred
+     */
+    public double getRatio() {
+        long wire = getRequestWireBytes() + getResponseWireBytes();
+        return wire > 0 ? (double) (getRequestBytes() + getResponseBytes()) / wire : 1.0d;
+    }
+
+    public String toString() {
+        return "WsliteCompressionStats[" + id + ", ratio=" + getRatio() + ", saved=" + getBytesSaved() + "]";
+    }
+}
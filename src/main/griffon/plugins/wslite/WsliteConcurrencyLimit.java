@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adapts to the latency observed by a client.<p>
+ * The limit follows the ratio between the long term and the recent round trip time:
+ * while responses are about as fast as usual it grows by roughly its square root,
+ * once they become slower than {@code tolerance} times the usual it shrinks, down
+ * to half its size per update. Failed calls shrink it by 10%. Samples taken while
+ * fewer than half the permits are in use are ignored for growth, as they say
+ * nothing about how much more load the server can take.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private double estimatedLimit;
+    private double shortRtt;
+    private double longRtt;
+
+    public WsliteConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = tolerance;
+        this.estimatedLimit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return {@code true} when a permit was taken, {@code false} when the limit is reached
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * Returns a permit, updating the limit with the outcome of the call.
+     *
+     * @param rttNanos time the call took
+     * @param dropped  whether the call failed because of the server or the network
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        update(rttNanos, current, dropped);
+    }
+
+    /**
+     * Returns a permit for a call that was never sent.
+     */
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtEnd, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * 0.9d);
+            limit = (int) estimatedLimit;
+            return;
+        }
+        double rtt = Math.max(1L, rttNanos);
+        shortRtt = shortRtt == 0.0d ? rtt : shortRtt * 0.8d + rtt * 0.2d;
+        longRtt = longRtt == 0.0d ? rtt : longRtt * 0.998d + rtt * 0.002d;
+        // recover quickly once a slow period is over
+        if (longRtt / shortRtt > 2.0d) longRtt *= 0.95d;
+        if (inFlightAtEnd < estimatedLimit / 2.0d) return;
+
+        double gradient = Math.max(0.5d, Math.min(1.0d, tolerance * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.min(maxLimit, Math.max(minLimit, estimatedLimit * 0.8d + newLimit * 0.2d));
+        limit = (int) estimatedLimit;
+    }
+
+    public String toString() {
+        return "WsliteConcurrencyLimit[limit=" + limit + ", inFlight=" + inFlight.get() + "]";
+    }
+}
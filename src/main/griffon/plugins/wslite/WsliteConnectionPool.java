@@ -0,0 +1,309 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of connections leased per host and in total, keeping
+ * released connections alive so that the JVM's keep-alive cache can reuse
+ * the underlying sockets.<p>
+ * Routes (one per scheme, host and port) that have been idle for longer than
+ * {@code idleTimeout} milliseconds are evicted. When {@code validateOnLease}
+ * is enabled a route whose previous exchange failed hands out its next
+ * connection without keep-alive, so that a broken socket is not reused.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteConnectionPool {
+    public static final long DEFAULT_LEASE_TIMEOUT = 30000L;
+
+    private final String name;
+    private final int maxPerHost;
+    private final int maxTotal;
+    private final long leaseTimeout;
+    private final long idleTimeout;
+    private final boolean validateOnLease;
+    private final Semaphore total;
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long lastEviction = System.nanoTime();
+    private volatile boolean shutdown;
+
+    public WsliteConnectionPool(String name, int maxPerHost, int maxTotal, long leaseTimeout, long idleTimeout, boolean validateOnLease) {
+        this.name = name;
+        this.maxPerHost = maxPerHost > 0 ? maxPerHost : Integer.MAX_VALUE;
+        this.maxTotal = maxTotal > 0 ? maxTotal : Integer.MAX_VALUE;
+        this.leaseTimeout = leaseTimeout;
+        this.idleTimeout = idleTimeout;
+        this.validateOnLease = validateOnLease;
+        this.total = new Semaphore(this.maxTotal, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public boolean isValidateOnLease() {
+        return validateOnLease;
+    }
+
+    public long getLeaseCount() {
+        return leases.get();
+    }
+
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    /**
+     * @return accumulated time spent by callers waiting for a lease, in milliseconds
+     */
+    public long getWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int getLeasedCount() {
+        return maxTotal == Integer.MAX_VALUE ? leasedPerHost() : maxTotal - total.availablePermits();
+    }
+
+    public Map<String, Integer> getLeasedPerHost() {
+        Map<String, Integer> leased = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, Route> e : routes.entrySet()) {
+            leased.put(e.getKey(), e.getValue().leasedCount());
+        }
+        return Collections.unmodifiableMap(leased);
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        routes.clear();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Leases a slot for {@code connection}, blocking up to {@code leaseTimeout}
+     * milliseconds (forever if zero or less) when the host or the pool is exhausted.
+     * HTTPS connections are returned as {@code HttpsURLConnection}.
+     */
+    public HttpURLConnection lease(HttpURLConnection connection) throws IOException {
+        if (shutdown) {
+            connection.disconnect();
+            throw new IOException("Connection pool '" + name + "' has been shut down");
+        }
+        evictIdleRoutes();
+
+        String key = routeKey(connection.getURL());
+        Route route = retainRoute(key);
+        long start = System.nanoTime();
+        boolean waited = false;
+        boolean acquiredTotal = false;
+        boolean leased = false;
+        try {
+            if (!total.tryAcquire()) {
+                waited = true;
+                if (!acquire(total, start)) throw leaseTimeout(key, connection);
+            }
+            acquiredTotal = true;
+            if (!route.permits.tryAcquire()) {
+                waited = true;
+                if (!acquire(route.permits, start)) throw leaseTimeout(key, connection);
+            }
+            leased = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connection.disconnect();
+            throw new IOException("Interrupted while waiting for a connection to " + key);
+        } finally {
+            if (waited) {
+                waits.incrementAndGet();
+                waitTime.addAndGet(System.nanoTime() - start);
+            }
+            if (!leased) {
+                route.leased.decrementAndGet();
+                if (acquiredTotal) total.release();
+            }
+        }
+
+        leases.incrementAndGet();
+        boolean keepAlive = !(validateOnLease && route.failed);
+        WslitePooledConnection pooled = new WslitePooledConnection(connection, this, route, keepAlive);
+        if (connection instanceof HttpsURLConnection) {
+            return new WslitePooledHttpsConnection(pooled, (HttpsURLConnection) connection);
+        }
+        return pooled;
+    }
+
+    void release(Route route, boolean failed) {
+        route.failed = failed;
+        route.lastReleased = System.nanoTime();
+        route.leased.decrementAndGet();
+        route.permits.release();
+        if (failed) failures.incrementAndGet();
+        total.release();
+    }
+
+    private boolean acquire(Semaphore semaphore, long start) throws InterruptedException {
+        if (leaseTimeout <= 0) {
+            semaphore.acquire();
+            return true;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(leaseTimeout) - (System.nanoTime() - start);
+        return remaining > 0 && semaphore.tryAcquire(remaining, TimeUnit.NANOSECONDS);
+    }
+
+    private IOException leaseTimeout(String key, HttpURLConnection connection) {
+        timeouts.incrementAndGet();
+        connection.disconnect();
+        return new IOException("Timed out after " + leaseTimeout + "ms waiting for a connection to " + key + " from pool '" + name + "'");
+    }
+
+    /**
+     * @return the route to the given host, counted as leased so that idle eviction leaves it alone
+     */
+    private Route retainRoute(String key) {
+        while (true) {
+            Route route = route(key);
+            // a route evicted since its lookup is about to leave the map, the next lookup creates another
+            if (route.retain()) return route;
+        }
+    }
+
+    private Route route(String key) {
+        Route route = routes.get(key);
+        if (route == null) {
+            Route created = new Route(maxPerHost);
+            route = routes.putIfAbsent(key, created);
+            if (route == null) route = created;
+        }
+        return route;
+    }
+
+    private void evictIdleRoutes() {
+        if (idleTimeout <= 0) return;
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        // scan at most once per idle period
+        if (now - lastEviction < idleNanos) return;
+        lastEviction = now;
+        for (Map.Entry<String, Route> e : routes.entrySet()) {
+            Route route = e.getValue();
+            if (now - route.lastReleased >= idleNanos && route.evict()) {
+                routes.remove(e.getKey(), route);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private int leasedPerHost() {
+        int count = 0;
+        for (Route route : routes.values()) {
+            count += route.leasedCount();
+        }
+        return count;
+    }
+
+    private static String routeKey(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return url.getProtocol() + "://" + url.getHost() + ":" + port;
+    }
+
+    public String toString() {
+        return "WsliteConnectionPool[" + name + ", maxPerHost=" + maxPerHost + ", maxTotal=" + maxTotal + "]";
+    }
+
+    static class Route {
+        // value of leased once a route was evicted, it can no longer be leased
+        private static final int EVICTED = -1;
+
+        private final Semaphore permits;
+        private final AtomicInteger leased = new AtomicInteger();
+        private volatile long lastReleased = System.nanoTime();
+        private volatile boolean failed;
+
+        private Route(int maxPerHost) {
+            this.permits = new Semaphore(maxPerHost, true);
+        }
+
+        private boolean retain() {
+            while (true) {
+                int count = leased.get();
+                if (count == EVICTED) return false;
+                if (leased.compareAndSet(count, count + 1)) return true;
+            }
+        }
+
+        /**
+         * @return {@code true} when the route was not leased and may no longer be
+         */
+        private boolean evict() {
+            return leased.compareAndSet(0, EVICTED);
+        }
+
+        private int leasedCount() {
+            return Math.max(0, leased.get());
+        }
+    }
+}
@@ -17,6 +17,21 @@
 package griffon.plugins.wslite
 
 import wslite.http.HTTPClient
+import wslite.soap.SOAPClient
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.SynchronousQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CopyOnWriteArraySet
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean
+import static griffon.util.ConfigUtils.getConfigValueAsInt
 
 /**
  * @author Andres Almiray
@@ -28,23 +43,455 @@ class WsliteConnector {
         'followRedirects', 'useCaches',
         'sslTrustAllCerts', 'sslTrustStoreFile',
         'sslTrustStorePassword', 'proxy',
-        'httpConnectionFactory', 'authorization'
+        'httpConnectionFactory', 'authorization',
+        'streamingChunkSize', 'uploadBufferSize',
+        'http2'
     ]
+    private static final int DEFAULT_HEDGING_MAX_THREADS = 16
+
+    private final Map<String, WsliteConnectionPool> pools = new ConcurrentHashMap<String, WsliteConnectionPool>()
+    private final Map<String, String> poolsByClientId = new ConcurrentHashMap<String, String>()
+    private final Map<String, WsliteResponseCache> responseCaches = new ConcurrentHashMap<String, WsliteResponseCache>()
+    private final Map<String, String> responseCachesByClientId = new ConcurrentHashMap<String, String>()
+    private final ConcurrentMap<String, WsliteCompressionStats> compressionStats = new ConcurrentHashMap<String, WsliteCompressionStats>()
+    private final Set<String> compressedClientIds = new CopyOnWriteArraySet<String>()
+    private int compressionThreshold = -1
+    private final Map<String, WsliteRequestCoalescer> coalescers = new ConcurrentHashMap<String, WsliteRequestCoalescer>()
+    private final Set<String> coalescedClientIds = new CopyOnWriteArraySet<String>()
+    private final Map<String, WsliteResiliencePolicy> resiliencePolicies = new ConcurrentHashMap<String, WsliteResiliencePolicy>()
+    private final Map<String, String> resiliencePoliciesByClientId = new ConcurrentHashMap<String, String>()
+    private final Map<String, WsliteResilience> resilience = new ConcurrentHashMap<String, WsliteResilience>()
+    private final List<WsliteResilienceListener> resilienceListeners = new CopyOnWriteArrayList<WsliteResilienceListener>()
+    private final Map<String, WsliteHedging> hedging = new ConcurrentHashMap<String, WsliteHedging>()
+    private final Set<String> hedgedClientIds = new CopyOnWriteArraySet<String>()
+    private Map hedgingSettings = [:]
+    private int hedgingMaxThreads = DEFAULT_HEDGING_MAX_THREADS
+    private ExecutorService hedgingExecutor
+    private ScheduledExecutorService hedgingTimer
+    private final Set<String> http2ClientIds = new CopyOnWriteArraySet<String>()
+    private final Map<String, WsliteLoadBalancer> loadBalancers = new ConcurrentHashMap<String, WsliteLoadBalancer>()
+    private ScheduledExecutorService healthCheckScheduler
+
+    /**
+     * Creates a named connection pool for each entry found in {@code griffon.wslite.pools}, for example
+     * <pre>
+     * griffon.wslite.pools.backend.maxPerHost = 10
+     * griffon.wslite.pools.backend.maxTotal = 50
+     * griffon.wslite.pools.backend.leaseTimeout = 5000
+     * griffon.wslite.pools.backend.idleTimeout = 60000
+     * griffon.wslite.pools.backend.validateOnLease = true
+     * griffon.wslite.pools.backend.clients = ['orders', 'customers']
+     * </pre>
+     */
+    void configureConnectionPools(Map config) {
+        config?.each { String name, Map settings ->
+            pools[name] = new WsliteConnectionPool(name,
+                getConfigValueAsInt(settings, 'maxPerHost', 5),
+                getConfigValueAsInt(settings, 'maxTotal', 20),
+                settings.containsKey('leaseTimeout') ? settings.leaseTimeout as long : WsliteConnectionPool.DEFAULT_LEASE_TIMEOUT,
+                (settings.idleTimeout ?: 60000L) as long,
+                getConfigValueAsBoolean(settings, 'validateOnLease', true))
+            settings.clients?.each { id -> poolsByClientId[id.toString()] = name }
+        }
+    }
+
+    WsliteConnectionPool getConnectionPool(String name) {
+        pools[name]
+    }
+
+    String[] getConnectionPoolNames() {
+        List<String> names = []
+        names.addAll(pools.keySet())
+        names.toArray(new String[names.size()])
+    }
+
+    void shutdownConnectionPools() {
+        pools.values()*.shutdown()
+        pools.clear()
+        poolsByClientId.clear()
+    }
+
+    /**
+     * Creates a named response cache for each entry found in {@code griffon.wslite.responseCaches}, for example
+     * <pre>
+     * griffon.wslite.responseCaches.catalog.maxEntries = 500
+     * griffon.wslite.responseCaches.catalog.maxBytes = 10485760
+     * griffon.wslite.responseCaches.catalog.directory = "${System.getProperty('user.home')}/.myapp/catalog-cache"
+     * griffon.wslite.responseCaches.catalog.maxDiskBytes = 104857600
+     * griffon.wslite.responseCaches.catalog.clients = ['catalog']
+     * </pre>
+     */
+    void configureResponseCaches(Map config) {
+        config?.each { String name, Map settings ->
+            String directory = settings.directory ?: null
+            responseCaches[name] = new WsliteResponseCache(name,
+                getConfigValueAsInt(settings, 'maxEntries', 1000),
+                (settings.maxBytes ?: 10L * 1024L * 1024L) as long,
+                directory ? new File(directory) : null,
+                (settings.maxDiskBytes ?: 0L) as long)
+            settings.clients?.each { id -> responseCachesByClientId[id.toString()] = name }
+        }
+    }
+
+    WsliteResponseCache getResponseCache(String name) {
+        responseCaches[name]
+    }
+
+    String[] getResponseCacheNames() {
+        List<String> names = []
+        names.addAll(responseCaches.keySet())
+        names.toArray(new String[names.size()])
+    }
+
+    /**
+     * Reads the ids of clients that negotiate compression, for example
+     * <pre>
+     * griffon.wslite.compression.clients = ['orders']
+     * griffon.wslite.compression.requestThreshold = 4096
+     * </pre>
+     */
+    void configureCompression(Map config) {
+        compressedClientIds.clear()
+        config?.clients?.each { id -> compressedClientIds << id.toString() }
+        compressionThreshold = config?.requestThreshold != null ? config.requestThreshold as int : -1
+    }
+
+    /**
+     * @return bytes transferred by the client identified by {@code id} before and after compression,
+     * {@code null} when that client does not use compression
+     */
+    WsliteCompressionStats getCompressionStats(String id) {
+        compressionStats[id]
+    }
+
+    String[] getCompressionStatsIds() {
+        List<String> ids = []
+        ids.addAll(compressionStats.keySet())
+        ids.toArray(new String[ids.size()])
+    }
+
+    /**
+     * Reads the ids of clients whose concurrent identical GET requests share a single call, for example
+     * <pre>
+     * griffon.wslite.coalescing.clients = ['dashboard']
+     * </pre>
+     */
+    void configureCoalescing(Map config) {
+        coalescedClientIds.clear()
+        config?.clients?.each { id -> coalescedClientIds << id.toString() }
+    }
+
+    /**
+     * @return the coalescer used by the client identified by {@code id},
+     * {@code null} when that client does not coalesce requests
+     */
+    WsliteRequestCoalescer getRequestCoalescer(String id) {
+        coalescers[id]
+    }
+
+    String[] getRequestCoalescerIds() {
+        List<String> ids = []
+        ids.addAll(coalescers.keySet())
+        ids.toArray(new String[ids.size()])
+    }
+
+    /**
+     * Creates a named resilience policy for each entry found in {@code griffon.wslite.resilience}, for example
+     * <pre>
+     * griffon.wslite.resilience.backend.initialConcurrency = 20
+     * griffon.wslite.resilience.backend.maxConcurrency = 200
+     * griffon.wslite.resilience.backend.latencyTolerance = 2.0
+     * griffon.wslite.resilience.backend.failureRateThreshold = 0.5
+     * griffon.wslite.resilience.backend.openTimeout = 30000
+     * griffon.wslite.resilience.backend.maxRetries = 2
+     * griffon.wslite.resilience.backend.retryRatio = 0.2
+     * griffon.wslite.resilience.backend.clients = ['orders', 'customers']
+     * </pre>
+     */
+    void configureResilience(Map config) {
+        config?.each { String name, Map settings ->
+            WsliteResiliencePolicy policy = new WsliteResiliencePolicy(name)
+            ['initialConcurrency', 'minConcurrency', 'maxConcurrency', 'slidingWindow',
+             'minimumCalls', 'halfOpenCalls', 'maxRetries', 'retryBudget'].each { key ->
+                if (settings.containsKey(key)) policy."set${key.capitalize()}"(settings[key] as int)
+            }
+            ['openTimeout', 'retryBackoff', 'maxRetryBackoff'].each { key ->
+                if (settings.containsKey(key)) policy."set${key.capitalize()}"(settings[key] as long)
+            }
+            ['latencyTolerance', 'failureRateThreshold', 'retryRatio'].each { key ->
+                if (settings.containsKey(key)) policy."set${key.capitalize()}"(settings[key] as double)
+            }
+            if (settings.containsKey('retryMethods')) policy.setRetryMethods(settings.retryMethods.collect { it.toString() } as Set)
+            resiliencePolicies[name] = policy
+            settings.clients?.each { id -> resiliencePoliciesByClientId[id.toString()] = name }
+        }
+    }
+
+    WsliteResiliencePolicy getResiliencePolicy(String name) {
+        resiliencePolicies[name]
+    }
+
+    /**
+     * @return limit, circuit and retry state of the client identified by {@code id},
+     * {@code null} when that client has no resilience policy
+     */
+    WsliteResilience getResilience(String id) {
+        resilience[id]
+    }
+
+    String[] getResilienceIds() {
+        List<String> ids = []
+        ids.addAll(resilience.keySet())
+        ids.toArray(new String[ids.size()])
+    }
+
+    void addResilienceListener(WsliteResilienceListener listener) {
+        resilienceListeners << listener
+    }
+
+    void removeResilienceListener(WsliteResilienceListener listener) {
+        resilienceListeners.remove(listener)
+    }
+
+    /**
+     * Reads the ids of clients that hedge slow requests, for example
+     * <pre>
+     * griffon.wslite.hedging.clients = ['catalog']
+     * griffon.wslite.hedging.percentile = 95
+     * griffon.wslite.hedging.minDelay = 10
+     * griffon.wslite.hedging.maxDelay = 1000
+     * griffon.wslite.hedging.budgetRatio = 0.1
+     * griffon.wslite.hedging.maxThreads = 16
+     * </pre>
+     * Hedged copies are sent from a shared executor of at most {@code maxThreads} threads.
+     */
+    void configureHedging(Map config) {
+        hedgedClientIds.clear()
+        config?.clients?.each { id -> hedgedClientIds << id.toString() }
+        Map settings = [:]
+        ['percentile', 'delay', 'minDelay', 'maxDelay', 'budgetRatio', 'budget', 'methods'].each { key ->
+            if (config?.containsKey(key)) settings[key] = config[key]
+        }
+        hedgingSettings = settings
+        hedgingMaxThreads = config?.maxThreads ? config.maxThreads as int : DEFAULT_HEDGING_MAX_THREADS
+        synchronized (hedging) {
+            if (hedgingExecutor != null) ((ThreadPoolExecutor) hedgingExecutor).maximumPoolSize = hedgingMaxThreads
+        }
+    }
+
+    /**
+     * @return hedging statistics of the client identified by {@code id},
+     * {@code null} when that client does not hedge requests
+     */
+    WsliteHedging getHedging(String id) {
+        hedging[id]
+    }
+
+    String[] getHedgingIds() {
+        List<String> ids = []
+        ids.addAll(hedging.keySet())
+        ids.toArray(new String[ids.size()])
+    }
+
+    void shutdownHedging() {
+        synchronized (hedging) {
+            hedgingTimer?.shutdownNow()
+            hedgingTimer = null
+            hedgingExecutor?.shutdownNow()
+            hedgingExecutor = null
+        }
+        hedging.clear()
+    }
+
+    private ExecutorService hedgingExecutor() {
+        synchronized (hedging) {
+            if (hedgingExecutor == null) {
+                // hedges that find no idle thread are not sent, see WsliteHedging.getRejected()
+                hedgingExecutor = new ThreadPoolExecutor(0, hedgingMaxThreads, 30L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new WsliteAsyncExecutor.NamedThreadFactory('wslite-hedge'))
+            }
+            hedgingExecutor
+        }
+    }
+
+    private ScheduledExecutorService hedgingTimer() {
+        synchronized (hedging) {
+            if (hedgingTimer == null) {
+                hedgingTimer = Executors.newSingleThreadScheduledExecutor(new WsliteAsyncExecutor.NamedThreadFactory('wslite-hedge-timer'))
+                // most triggers are cancelled, drop them right away where the JVM allows it (Java 7)
+                if (hedgingTimer.respondsTo('setRemoveOnCancelPolicy', Boolean.TYPE)) hedgingTimer.removeOnCancelPolicy = true
+            }
+            hedgingTimer
+        }
+    }
+
+    /**
+     * Reads the ids of clients that send their requests through {@link WsliteHttp2Transport}, for example
+     * <pre>
+     * griffon.wslite.http2.clients = ['catalog']
+     * </pre>
+     */
+    void configureHttp2(Map config) {
+        http2ClientIds.clear()
+        config?.clients?.each { id -> http2ClientIds << id.toString() }
+    }
+
+    /**
+     * @return endpoints and balancing state of the client identified by {@code id},
+     * {@code null} when that client is bound to a single url
+     */
+    WsliteLoadBalancer getLoadBalancer(String id) {
+        loadBalancers[id]
+    }
+
+    String[] getLoadBalancerIds() {
+        List<String> ids = []
+        ids.addAll(loadBalancers.keySet())
+        ids.toArray(new String[ids.size()])
+    }
+
+    void shutdownLoadBalancers() {
+        synchronized (loadBalancers) {
+            loadBalancers.values()*.stopHealthChecks()
+            loadBalancers.clear()
+            healthCheckScheduler?.shutdownNow()
+            healthCheckScheduler = null
+        }
+    }
+
+    private WsliteLoadBalancer loadBalancerOf(String id, List<String> urls, Map settings) {
+        WsliteLoadBalancer.Strategy strategy = WsliteLoadBalancer.Strategy.of(settings.balancing?.toString())
+        int ejectAfter = settings.ejectAfter != null ? settings.ejectAfter as int : 3
+        long ejectFor = settings.ejectFor != null ? settings.ejectFor as long : 30000L
+        // ejections and latencies outlive the client, as long as the endpoints stay the same
+        WsliteLoadBalancer balancer = id ? loadBalancers[id] : null
+        if (balancer == null || balancer.endpoints*.url != urls.collect { it.endsWith('/') ? it[0..-2] : it } || balancer.strategy != strategy) {
+            balancer?.stopHealthChecks()
+            balancer = new WsliteLoadBalancer(id, urls, strategy, ejectAfter, ejectFor)
+            if (id) loadBalancers[id] = balancer
+        }
+        balancer
+    }
 
-    public createClient(Class klass, Map params) {
+    private ScheduledExecutorService healthCheckScheduler() {
+        synchronized (loadBalancers) {
+            if (healthCheckScheduler == null) {
+                healthCheckScheduler = Executors.newSingleThreadScheduledExecutor(new WsliteAsyncExecutor.NamedThreadFactory('wslite-health'))
+            }
+            healthCheckScheduler
+        }
+    }
+
+    public createClient(Class klass, Map params, String id = null) {
         Map httpParams = [:]
         HTTP_PROPERTIES.each { name ->
             def value = params.remove(name)
             if (value != null) httpParams[name] = value
         }
 
-        def client = klass.newInstance(params)
+        if (id && id in http2ClientIds && !httpParams.containsKey('http2')) httpParams.http2 = true
+
+        String poolName = params.remove('connectionPool') ?: (id ? poolsByClientId[id] : null)
+        if (poolName && !httpParams.httpConnectionFactory) {
+            WsliteConnectionPool pool = pools[poolName]
+            if (pool == null) throw new IllegalArgumentException("Unknown connection pool '$poolName'")
+            httpParams.httpConnectionFactory = new WslitePooledConnectionFactory(pool)
+        }
+        if (!httpParams.httpConnectionFactory) {
+            httpParams.httpConnectionFactory = new WsliteSSLConnectionFactory()
+        }
+
+        String cacheName = params.remove('responseCache') ?: (id ? responseCachesByClientId[id] : null)
+        WsliteResponseCache responseCache = null
+        if (cacheName) {
+            responseCache = responseCaches[cacheName]
+            if (responseCache == null) throw new IllegalArgumentException("Unknown response cache '$cacheName'")
+        }
+
+        String policyName = params.remove('resilience') ?: (id ? resiliencePoliciesByClientId[id] : null)
+        WsliteResilience clientResilience = null
+        if (policyName) {
+            WsliteResiliencePolicy policy = resiliencePolicies[policyName]
+            if (policy == null) throw new IllegalArgumentException("Unknown resilience policy '$policyName'")
+            // limits and circuit state outlive the client, a client created again after eviction resumes them
+            clientResilience = id ? resilience[id] : null
+            if (clientResilience?.policy != policy) {
+                clientResilience = new WsliteResilience(id, policy, resilienceListeners)
+                if (id) resilience[id] = clientResilience
+            }
+        }
+
+        List<String> urls = params.remove('urls')?.collect { it.toString() }
+        Map balancing = [:]
+        ['balancing', 'healthCheck', 'ejectAfter', 'ejectFor'].each { name ->
+            def value = params.remove(name)
+            if (value != null) balancing[name] = value
+        }
+        WsliteLoadBalancer loadBalancer = null
+        if (urls) {
+            // the client is bound to the first url, the balancer moves each request to the endpoint it picks
+            String urlProperty = SOAPClient.isAssignableFrom(klass) ? 'serviceURL' : 'url'
+            if (klass != HTTPClient && !params[urlProperty]) params[urlProperty] = urls[0]
+            loadBalancer = loadBalancerOf(id, urls, balancing)
+        }
+
+        def hedge = params.remove('hedge')
+        boolean hedged = hedge != null ? Boolean.valueOf(hedge.toString()) : (id && id in hedgedClientIds)
 
-        if (!(client instanceof HTTPClient)) {
-            httpParams.each { k, v ->
-                client.httpClient[k] = v
+        def compression = params.remove('compression')
+        def requestThreshold = params.remove('compressRequestsAbove')
+        boolean compressed = compression != null ? Boolean.valueOf(compression.toString()) : (id && id in compressedClientIds)
+        def coalesce = params.remove('coalesce')
+        boolean coalesced = coalesce != null ? Boolean.valueOf(coalesce.toString()) : (id && id in coalescedClientIds)
+
+        def client = klass == HTTPClient ? new WsliteHTTPClient(params) : klass.newInstance(params)
+
+        HTTPClient httpClient = client instanceof HTTPClient ? client : client.httpClient
+        if (!(httpClient instanceof WsliteHTTPClient)) {
+            // keeps the settings of an httpClient: given by the caller
+            httpClient = WsliteHTTPClient.of(httpClient)
+            client.httpClient = httpClient
+        }
+        if (responseCache) httpClient.interceptors << responseCache.forClient(httpClient)
+        // after the cache so that hits never wait, before compression so that bodies are shared decoded
+        if (coalesced) {
+            WsliteRequestCoalescer coalescer = new WsliteRequestCoalescer(id, httpClient)
+            if (id) coalescers[id] = coalescer
+            httpClient.interceptors << coalescer
+        }
+        if (hedged) {
+            // observed latencies outlive the client, a client created again after eviction keeps its delay
+            WsliteHedging clientHedging = id ? hedging[id] : null
+            if (clientHedging == null) {
+                clientHedging = new WsliteHedging(id, hedgingSettings, hedgingTimer(), hedgingExecutor())
+                if (id) hedging[id] = clientHedging
+            }
+            httpClient.interceptors << clientHedging
+        }
+        // every copy of a hedged request is subject to the limit and circuit of the client
+        if (clientResilience) httpClient.interceptors << clientResilience
+        // after retries and hedges, so that each attempt may go to a different endpoint
+        if (loadBalancer) {
+            httpClient.interceptors << loadBalancer
+            Map healthCheck = balancing.healthCheck instanceof Map ? balancing.healthCheck : [:]
+            if (id && healthCheck.path) {
+                loadBalancer.startHealthChecks(healthCheckScheduler(), httpClient, healthCheck.path.toString(),
+                    (healthCheck.interval ?: 10000L) as long, (healthCheck.timeout ?: 2000) as int)
             }
         }
+        if (compressed) {
+            // anonymous clients share the stats reported under WsliteMetrics.ANONYMOUS
+            String statsId = id ?: WsliteMetrics.ANONYMOUS
+            WsliteCompressionStats stats = compressionStats[statsId]
+            if (stats == null) {
+                WsliteCompressionStats created = new WsliteCompressionStats(statsId)
+                stats = compressionStats.putIfAbsent(statsId, created) ?: created
+            }
+            httpClient.interceptors << new WsliteCompression(stats, requestThreshold != null ? requestThreshold as int : compressionThreshold)
+        }
+        httpParams.each { k, v ->
+            httpClient[k] = v
+        }
 
         client
     }
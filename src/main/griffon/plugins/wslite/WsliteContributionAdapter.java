@@ -19,12 +19,14 @@ package griffon.plugins.wslite;
 import griffon.util.CallableWithArgs;
 import groovy.lang.Closure;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * @author Andres Almiray
  */
-public class WsliteContributionAdapter implements WsliteContributionHandler {
+public class WsliteContributionAdapter implements WsliteAsyncContributionHandler {
     private WsliteProvider provider = DefaultWsliteProvider.getInstance();
 
     public void setWsliteProvider(WsliteProvider provider) {
@@ -58,4 +60,41 @@ public class WsliteContributionAdapter implements WsliteContributionHandler {
     public <R> R withRest(Map<String, Object> params, CallableWithArgs<R> callable) {
         return provider.withRest(params, callable);
     }
+
+    public <R> Future<R> withSoapAsync(Map<String, Object> params, Closure<R> closure) {
+        return asyncProvider().withSoapAsync(params, closure);
+    }
+
+    public <R> Future<R> withHttpAsync(Map<String, Object> params, Closure<R> closure) {
+        return asyncProvider().withHttpAsync(params, closure);
+    }
+
+    public <R> Future<R> withRestAsync(Map<String, Object> params, Closure<R> closure) {
+        return asyncProvider().withRestAsync(params, closure);
+    }
+
+    public <R> Future<R> withSoapAsync(Map<String, Object> params, CallableWithArgs<R> callable) {
+        return asyncProvider().withSoapAsync(params, callable);
+    }
+
+    public <R> Future<R> withHttpAsync(Map<String, Object> params, CallableWithArgs<R> callable) {
+        return asyncProvider().withHttpAsync(params, callable);
+    }
+
+    public <R> Future<R> withRestAsync(Map<String, Object> params, CallableWithArgs<R> callable) {
+        return asyncProvider().withRestAsync(params, callable);
+    }
+
+    public <R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, Closure<R> closure) {
+        return asyncProvider().withRestBatch(params, requests, closure);
+    }
+
+    public <R, T> WsliteBatch<R> withRestBatch(Map<String, Object> params, Collection<T> requests, CallableWithArgs<R> callable) {
+        return asyncProvider().withRestBatch(params, requests, callable);
+    }
+
+    private WsliteAsyncProvider asyncProvider() {
+        if (provider instanceof WsliteAsyncProvider) return (WsliteAsyncProvider) provider;
+        throw new UnsupportedOperationException(provider + " does not implement " + WsliteAsyncProvider.class.getName());
+    }
 }
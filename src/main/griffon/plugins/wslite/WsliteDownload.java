@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import java.io.File;
+
+/**
+ * Outcome of {@link WsliteHTTPClient#download(java.util.Map)}.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteDownload {
+    private final File file;
+    private final int statusCode;
+    private final String contentType;
+    private final long offset;
+    private final long bytesTransferred;
+    private final String algorithm;
+    private final String checksum;
+
+    public WsliteDownload(File file, int statusCode, String contentType, long offset, long bytesTransferred, String algorithm, String checksum) {
+        this.file = file;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.offset = offset;
+        this.bytesTransferred = bytesTransferred;
+        this.algorithm = algorithm;
+        this.checksum = checksum;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return 200 for a full download, 206 for a resumed one, 416 when the file was already complete
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return bytes already on disk that the download resumed from, 0 for a full download
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return bytes received over the network
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * @return size of the downloaded file
+     */
+    public long getLength() {
+        return offset + bytesTransferred;
+    }
+
+    public boolean isResumed() {
+        return offset > 0;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return hex encoded digest of the whole file, {@code null} unless a checksum was requested
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public String toString() {
+        return "WsliteDownload[" + file + ", " + getLength() + " bytes" + (checksum != null ? ", " + algorithm + "=" + checksum : "") + "]";
+    }
+}
@@ -20,16 +20,75 @@ import griffon.util.CallableWithArgs
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
 /**
  * @author Andres Almiray
  */
 final class WsliteEnhancer {
     private static final Logger LOG = LoggerFactory.getLogger(WsliteEnhancer)
+    private static final Set<String> METHOD_NAMES = [
+        'withRest', 'withSoap', 'withHttp',
+        'withRestAsync', 'withSoapAsync', 'withHttpAsync',
+        'withRestBatch'
+    ] as Set
+    private static final AtomicLong ENHANCED_CLASSES = new AtomicLong()
+    private static final AtomicLong ENHANCEMENT_NANOS = new AtomicLong()
 
     private WsliteEnhancer() {}
-    
+
+    /**
+     * @return number of metaClasses enhanced so far
+     */
+    static long getEnhancedClasses() {
+        ENHANCED_CLASSES.get()
+    }
+
+    /**
+     * @return time spent enhancing metaClasses so far, in milliseconds
+     */
+    static double getEnhancementTime() {
+        ENHANCEMENT_NANOS.get() / 1000000.0d
+    }
+
+    /**
+     * Installs a single {@code methodMissing} handler that enhances the metaClass the first
+     * time one of the injected methods is called. MetaClasses that already define
+     * {@code methodMissing} are enhanced right away.
+     */
+    static void enhanceOnFirstUse(MetaClass mc, WsliteProvider provider = DefaultWsliteProvider.instance) {
+        if (mc.getMetaMethod('methodMissing', [String, Object] as Object[])) {
+            enhance(mc, provider)
+            return
+        }
+        if (LOG.debugEnabled) LOG.debug("Deferring enhancement of $mc until first use")
+        AtomicBoolean enhanced = new AtomicBoolean()
+        mc.methodMissing = { String name, args ->
+            if (!(name in METHOD_NAMES)) throw new MissingMethodException(name, delegate.getClass(), args as Object[])
+            synchronized (enhanced) {
+                if (!enhanced.get()) {
+                    enhance(mc, provider)
+                    enhanced.set(true)
+                }
+            }
+            delegate.invokeMethod(name, args)
+        }
+    }
+
     static void enhance(MetaClass mc, WsliteProvider provider = DefaultWsliteProvider.instance) {
-        if(LOG.debugEnabled) LOG.debug("Enhancing $mc with $provider")
+        long started = System.nanoTime()
+        try {
+            doEnhance(mc, provider)
+        } finally {
+            long elapsed = System.nanoTime() - started
+            ENHANCED_CLASSES.incrementAndGet()
+            ENHANCEMENT_NANOS.addAndGet(elapsed)
+            if (LOG.debugEnabled) LOG.debug("Enhanced $mc with $provider in ${elapsed / 1000000.0d} ms")
+        }
+    }
+
+    private static void doEnhance(MetaClass mc, WsliteProvider provider) {
         mc.withRest = {Map params, Closure closure ->
             provider.withRest(params, closure)
         }
@@ -48,5 +107,34 @@ final class WsliteEnhancer {
         mc.withHttp = {Map params, CallableWithArgs callable ->
             provider.withHttp(params, callable)
         }
+        // background calls are only available from providers that support them
+        if (provider instanceof WsliteAsyncProvider) doEnhanceAsync(mc, (WsliteAsyncProvider) provider)
+    }
+
+    private static void doEnhanceAsync(MetaClass mc, WsliteAsyncProvider provider) {
+        mc.withRestAsync = {Map params, Closure closure ->
+            provider.withRestAsync(params, closure)
+        }
+        mc.withRestAsync = {Map params, CallableWithArgs callable ->
+            provider.withRestAsync(params, callable)
+        }
+        mc.withSoapAsync = {Map params, Closure closure ->
+            provider.withSoapAsync(params, closure)
+        }
+        mc.withSoapAsync = {Map params, CallableWithArgs callable ->
+            provider.withSoapAsync(params, callable)
+        }
+        mc.withHttpAsync = {Map params, Closure closure ->
+            provider.withHttpAsync(params, closure)
+        }
+        mc.withHttpAsync = {Map params, CallableWithArgs callable ->
+            provider.withHttpAsync(params, callable)
+        }
+        mc.withRestBatch = {Map params, Collection requests, Closure closure ->
+            provider.withRestBatch(params, requests, closure)
+        }
+        mc.withRestBatch = {Map params, Collection requests, CallableWithArgs callable ->
+            provider.withRestBatch(params, requests, callable)
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import wslite.http.HTTPClient
+import wslite.http.HTTPClientException
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+import java.lang.reflect.InvocationTargetException
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+import java.security.DigestInputStream
+import java.security.MessageDigest
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * HTTPClient that runs every request through a chain of {@link WsliteHTTPInterceptor}s
+ * before handing it to the regular wslite transport.
+ *
+ * @author Andres Almiray
+ */
+class WsliteHTTPClient extends HTTPClient {
+    final List<WsliteHTTPInterceptor> interceptors = new CopyOnWriteArrayList<WsliteHTTPInterceptor>()
+
+    /**
+     * Size of the chunks used when streaming a request body of unknown length.
+     */
+    int streamingChunkSize = 8192
+
+    /**
+     * Size of the buffer used to copy a streamed request body to the connection.
+     */
+    int uploadBufferSize = 8192
+
+    /**
+     * Whether requests are sent through {@link WsliteHttp2Transport}, multiplexed over HTTP/2
+     * when the server supports it. Ignored on runtimes older than Java 11.
+     */
+    boolean http2
+
+    /**
+     * Returns {@code client} itself when it already is a WsliteHTTPClient, otherwise a
+     * WsliteHTTPClient sharing its settings and connection factory.
+     */
+    static WsliteHTTPClient of(HTTPClient client) {
+        if (client instanceof WsliteHTTPClient) return (WsliteHTTPClient) client
+        WsliteHTTPClient copy = new WsliteHTTPClient()
+        ['httpConnectionFactory', 'connectTimeout', 'readTimeout', 'followRedirects', 'useCaches',
+         'sslTrustAllCerts', 'sslTrustStoreFile', 'sslTrustStorePassword', 'proxy',
+         'defaultHeaders', 'authorization'].each { copy[it] = client[it] }
+        copy
+    }
+
+    @Override
+    HTTPResponse execute(HTTPRequest request) {
+        Object[] chain = interceptors.toArray()
+        chain.length ? new Link(this, chain, 0).proceed(request) : transmit(request)
+    }
+
+    // a plain class rather than a coerced closure, so that an HTTPClientException
+    // reaches the caller as is instead of wrapped in an UndeclaredThrowableException
+    private static class Link implements WsliteHTTPChain {
+        private final WsliteHTTPClient client
+        private final Object[] chain
+        private final int index
+
+        Link(WsliteHTTPClient client, Object[] chain, int index) {
+            this.client = client
+            this.chain = chain
+            this.index = index
+        }
+
+        HTTPResponse proceed(HTTPRequest request) {
+            if (index == chain.length) return client.transmit(request)
+            ((WsliteHTTPInterceptor) chain[index]).intercept(request, new Link(client, chain, index + 1))
+        }
+    }
+
+    /**
+     * Sends the request over the wire, once all interceptors have been applied.
+     */
+    protected HTTPResponse transmit(HTTPRequest request) {
+        WsliteClientMetrics metrics = WsliteMetrics.instance.current()
+        if (request instanceof WsliteHTTPRequest && request.streaming) return transmitStreaming((WsliteHTTPRequest) request, metrics)
+        metrics.bytesSent(request.data?.length ?: 0)
+        HTTPResponse response
+        try {
+            response = http2 ? transmitHttp2(request) : super.execute(request)
+        } catch (HTTPClientException e) {
+            metrics.bytesReceived(e.response?.data?.length ?: 0)
+            throw e
+        }
+        metrics.bytesReceived(response?.data?.length ?: 0)
+        response
+    }
+
+    /**
+     * Sends a request whose body is an {@code InputStream}, a {@code File} or a {@code Path},
+     * copying it to the connection through a buffer of {@code uploadBufferSize} bytes, for example
+     * <pre>
+     * upload(url: 'http://localhost:8080/files/report.csv', method: 'PUT', body: new File('report.csv'))
+     * </pre>
+     * Accepted parameters are {@code url}, {@code method} (defaults to POST), {@code body},
+     * {@code contentType}, {@code contentLength} and {@code headers}, plus the usual
+     * timeout, redirect, cache, SSL and proxy settings.
+     */
+    HTTPResponse upload(Map params) {
+        if (params.body == null) throw new IllegalArgumentException('An upload requires a body')
+        WsliteHTTPRequest request = new WsliteHTTPRequest(
+            url: params.url instanceof URL ? params.url : new URL(params.url.toString()),
+            method: params.method ? HTTPMethod.valueOf(params.method.toString().toUpperCase()) : HTTPMethod.POST,
+            body: params.body)
+        if (params.contentLength != null) request.contentLength = params.contentLength as long
+        ['connectTimeout', 'readTimeout', 'followRedirects', 'useCaches',
+         'sslTrustAllCerts', 'sslTrustStoreFile', 'sslTrustStorePassword', 'proxy'].each { name ->
+            if (params.containsKey(name)) request[name] = params[name]
+        }
+        request.headers['Content-Type'] = params.contentType?.toString() ?: 'application/octet-stream'
+        params.headers?.each { k, v -> request.headers[k] = v }
+        execute(request)
+    }
+
+    /**
+     * Writes a response body straight to a {@code File} or a {@code java.nio.file.Path}, for example
+     * <pre>
+     * download(url: 'http://localhost:8080/artifacts/app.zip', to: new File('app.zip'), resume: true,
+     *          checksum: 'SHA-256', progress: { long received, long length -> println "$received/$length" })
+     * </pre>
+     * The body is moved to the file through a {@code FileChannel} in chunks of {@code chunkSize}
+     * bytes (64 KB by default), so heap use does not depend on its size. With {@code resume}
+     * an existing file is completed with a Range request; it is downloaded again when the
+     * server ignores the range. {@code checksum} names a {@code MessageDigest} algorithm
+     * computed over the whole file, {@code progress} is called after every chunk with the
+     * bytes on disk and the expected length, -1 when unknown. Accepted parameters also include
+     * {@code headers}, {@code ifRange} and the usual timeout, redirect, cache, SSL and proxy
+     * settings. Interceptors do not apply to downloads.
+     */
+    WsliteDownload download(Map params) {
+        if (params.url == null) throw new IllegalArgumentException('A download requires a url')
+        if (params.to == null) throw new IllegalArgumentException('A download requires a target file or path')
+        File target = params.to instanceof File ? (File) params.to : params.to instanceof CharSequence ? new File(params.to.toString()) : params.to.toFile()
+        HTTPRequest request = new HTTPRequest(
+            url: params.url instanceof URL ? params.url : new URL(params.url.toString()),
+            method: HTTPMethod.GET)
+        ['connectTimeout', 'readTimeout', 'followRedirects', 'useCaches',
+         'sslTrustAllCerts', 'sslTrustStoreFile', 'sslTrustStorePassword', 'proxy'].each { name ->
+            if (params.containsKey(name)) request[name] = params[name]
+        }
+        // ranges apply to the encoded representation, ask for the bytes as stored
+        request.headers['Accept-Encoding'] = 'identity'
+        params.headers?.each { k, v -> request.headers[k] = v }
+        long offset = params.resume && target.file ? target.length() : 0L
+        if (offset > 0L) {
+            request.headers['Range'] = "bytes=${offset}-".toString()
+            if (params.ifRange) request.headers['If-Range'] = params.ifRange.toString()
+        }
+        String algorithm = params.checksum?.toString()
+        MessageDigest digest = algorithm ? MessageDigest.getInstance(algorithm) : null
+        Closure progress = params.progress instanceof Closure ? (Closure) params.progress : null
+        int chunkSize = params.chunkSize ? params.chunkSize as int : 65536
+
+        WsliteClientMetrics metrics = WsliteMetrics.instance.current()
+        HttpURLConnection conn = null
+        try {
+            conn = openConnection(request)
+            int statusCode = conn.responseCode
+            if (statusCode == 416 && offset > 0L && lengthOf(conn.getHeaderField('Content-Range')) == offset) {
+                // the file on disk is already complete
+                if (digest) update(digest, target, offset)
+                return new WsliteDownload(target, statusCode, conn.contentType, offset, 0L, algorithm, hex(digest))
+            }
+            if (statusCode >= 400) {
+                InputStream error = conn.errorStream
+                byte[] data = error != null ? readAtMost(error, 64 * 1024) : new byte[0]
+                HTTPResponse response = new HTTPResponse(url: conn.URL, statusCode: statusCode, statusMessage: conn.responseMessage,
+                    contentType: conn.contentType, data: data)
+                throw new HTTPClientException("${statusCode} ${conn.responseMessage}", request, response)
+            }
+
+            String contentRange = conn.getHeaderField('Content-Range')
+            if (statusCode != 206 || contentRange == null || !contentRange.startsWith("bytes ${offset}-".toString())) offset = 0L
+            if (digest && offset > 0L) update(digest, target, offset)
+            String contentLength = conn.getHeaderField('Content-Length')
+            long length = contentLength ? offset + contentLength.trim().toLong() : -1L
+
+            InputStream input = metrics.countReceived(conn.inputStream)
+            if (digest) input = new DigestInputStream(input, digest)
+            long position = offset
+            RandomAccessFile file = new RandomAccessFile(target, 'rw')
+            try {
+                FileChannel channel = file.channel
+                channel.truncate(offset)
+                ReadableByteChannel source = Channels.newChannel(input)
+                long transferred
+                while ((transferred = channel.transferFrom(source, position, chunkSize)) > 0L) {
+                    position += transferred
+                    progress?.call(position, length)
+                }
+            } finally {
+                file.close()
+                input.close()
+            }
+            if (length >= 0L && position != length) {
+                throw new IOException("Connection closed after ${position} of ${length} bytes, the download may be resumed")
+            }
+            new WsliteDownload(target, statusCode, conn.contentType, offset, position - offset, algorithm, hex(digest))
+        } catch (HTTPClientException e) {
+            throw e
+        } catch (Exception e) {
+            throw new HTTPClientException(e.message, e, request, null)
+        } finally {
+            conn?.disconnect()
+        }
+    }
+
+    // total length announced by a 'bytes */length' or 'bytes first-last/length' header
+    private static long lengthOf(String contentRange) {
+        int slash = contentRange?.lastIndexOf('/') ?: -1
+        if (slash < 0 || contentRange.endsWith('*')) return -1L
+        contentRange.substring(slash + 1).trim().toLong()
+    }
+
+    private static void update(MessageDigest digest, File file, long length) {
+        InputStream input = new FileInputStream(file)
+        try {
+            byte[] buffer = new byte[65536]
+            long remaining = length
+            int read
+            while (remaining > 0L && (read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                digest.update(buffer, 0, read)
+                remaining -= read
+            }
+        } finally {
+            input.close()
+        }
+    }
+
+    private static String hex(MessageDigest digest) {
+        if (digest == null) return null
+        digest.digest().collect { String.format('%02x', it & 0xff) }.join('')
+    }
+
+    private static byte[] readAtMost(InputStream input, int max) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+            byte[] buffer = new byte[8192]
+            int read
+            while (bytes.size() < max && (read = input.read(buffer, 0, Math.min(buffer.length, max - bytes.size()))) != -1) {
+                bytes.write(buffer, 0, read)
+            }
+            bytes.toByteArray()
+        } finally {
+            input.close()
+        }
+    }
+
+    private HTTPResponse transmitStreaming(WsliteHTTPRequest request, WsliteClientMetrics metrics) {
+        HttpURLConnection conn = null
+        HTTPResponse response
+        try {
+            conn = openConnection(request)
+            conn.doOutput = true
+            long length = request.resolveContentLength()
+            if (length < 0L || !fixedLength(conn, length)) {
+                conn.setChunkedStreamingMode(streamingChunkSize > 0 ? streamingChunkSize : 8192)
+            }
+            InputStream input = request.openBody()
+            try {
+                OutputStream output = conn.outputStream
+                try {
+                    byte[] buffer = new byte[uploadBufferSize > 0 ? uploadBufferSize : 8192]
+                    int read
+                    while ((read = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, read)
+                        metrics.bytesSent(read)
+                    }
+                } finally {
+                    output.close()
+                }
+            } finally {
+                input.close()
+            }
+            response = readResponse(conn)
+            metrics.bytesReceived(response.data.length)
+        } catch (Exception e) {
+            throw new HTTPClientException(e.message, e, request, null)
+        } finally {
+            conn?.disconnect()
+        }
+        if (response.statusCode >= 400) {
+            throw new HTTPClientException("${response.statusCode} ${response.statusMessage}", request, response)
+        }
+        response
+    }
+
+    private HTTPResponse transmitHttp2(HTTPRequest request) {
+        if (!(request?.url && request?.method)) throw new IllegalArgumentException('HTTP Request must contain a url and method')
+        Proxy proxy = request.proxy ?: this.proxy
+        boolean https = request.url.protocol.equalsIgnoreCase('https')
+        boolean trustAll = https && (request.isSSLTrustAllCertsSet ? request.sslTrustAllCerts : sslTrustAllCerts)
+        WsliteHttp2Transport transport = WsliteHttp2Transport.instance
+        if (!transport.supports(request, trustAll, proxy)) return super.execute(request)
+
+        String trustStoreFile = request.sslTrustStoreFile ?: sslTrustStoreFile
+        String trustStorePassword = request.sslTrustStorePassword ?: sslTrustStorePassword
+        transport.send(request,
+            https && trustStoreFile ? trustStoreFile : null,
+            trustStorePassword,
+            proxy == Proxy.NO_PROXY ? null : proxy,
+            request.isConnectTimeoutSet ? request.connectTimeout : connectTimeout,
+            request.isReadTimeoutSet ? request.readTimeout : readTimeout,
+            request.isFollowRedirectsSet ? request.followRedirects : followRedirects,
+            defaultHeaders instanceof Map ? (Map) defaultHeaders : null,
+            authorization)
+    }
+
+    private static boolean fixedLength(HttpURLConnection conn, long length) {
+        if (length <= Integer.MAX_VALUE) {
+            conn.setFixedLengthStreamingMode((int) length)
+            return true
+        }
+        try {
+            // long lengths require Java 7
+            HttpURLConnection.getMethod('setFixedLengthStreamingMode', Long.TYPE).invoke(conn, length)
+            return true
+        } catch (NoSuchMethodException e) {
+            return false
+        } catch (InvocationTargetException e) {
+            // connections that can't stream that much at a fixed length fall back to chunks
+            if (e.cause instanceof UnsupportedOperationException) return false
+            throw e.cause
+        }
+    }
+
+    private static HTTPResponse readResponse(HttpURLConnection conn) {
+        int statusCode = conn.responseCode
+        InputStream body = statusCode >= 400 ? conn.errorStream : conn.inputStream
+        Map<String, Object> headers = new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER)
+        conn.headerFields.each { k, v -> if (k != null) headers[k] = v?.size() == 1 ? v[0] : v }
+        String contentType = conn.contentType
+        String charset = contentType?.split(';')?.collect { it.trim() }?.find { it.toLowerCase().startsWith('charset=') }?.substring(8)
+        new HTTPResponse(
+            url: conn.URL,
+            statusCode: statusCode,
+            statusMessage: conn.responseMessage,
+            contentType: contentType,
+            charset: charset,
+            contentEncoding: conn.contentEncoding,
+            contentLength: conn.contentLength,
+            date: conn.date ? new Date(conn.date) : null,
+            expiration: conn.expiration ? new Date(conn.expiration) : null,
+            lastModified: conn.lastModified ? new Date(conn.lastModified) : null,
+            headers: headers,
+            data: body != null ? body.bytes : new byte[0])
+    }
+
+    /**
+     * Sends the request and returns as soon as the response headers have been read.
+     * The body is left on the connection; callers must close the returned response.
+     * Interceptors do not apply to streamed responses.
+     */
+    WsliteStreamingResponse openStream(HTTPRequest request) {
+        if (!(request?.url && request?.method)) throw new IllegalArgumentException('HTTP Request must contain a url and method')
+        WsliteClientMetrics metrics = WsliteMetrics.instance.current()
+        metrics.bytesSent(request.data?.length ?: 0)
+        WsliteCompression compression = findInterceptor(WsliteCompression)
+        compression?.prepare(request.headers)
+        HttpURLConnection conn = null
+        try {
+            conn = openConnection(request)
+            if (request.data != null) {
+                conn.doOutput = true
+                conn.setFixedLengthStreamingMode(request.data.length)
+                OutputStream out = conn.outputStream
+                try {
+                    out.write(request.data)
+                } finally {
+                    out.close()
+                }
+            }
+            int statusCode = conn.responseCode
+            InputStream body = statusCode >= 400 ? conn.errorStream : conn.inputStream
+            if (body != null) body = metrics.countReceived(body)
+            if (body != null && compression != null) body = compression.decodeStream(body, conn.contentEncoding)
+            new WsliteStreamingResponse(conn, statusCode, conn.responseMessage, body ?: new ByteArrayInputStream(new byte[0]))
+        } catch (Exception e) {
+            conn?.disconnect()
+            throw new HTTPClientException(e.message, e, request, null)
+        }
+    }
+
+    /**
+     * Opens and configures a connection following the same rules as {@code execute()}:
+     * request settings take precedence over the settings of this client.
+     */
+    protected HttpURLConnection openConnection(HTTPRequest request) {
+        Proxy proxy = request.proxy ?: this.proxy ?: Proxy.NO_PROXY
+        boolean https = request.url.protocol.equalsIgnoreCase('https')
+        boolean trustAll = request.isSSLTrustAllCertsSet ? request.sslTrustAllCerts : sslTrustAllCerts
+        String trustStoreFile = request.sslTrustStoreFile ?: sslTrustStoreFile
+        String trustStorePassword = request.sslTrustStorePassword ?: sslTrustStorePassword
+
+        HttpURLConnection conn
+        if (https && trustAll) {
+            conn = httpConnectionFactory.getConnectionTrustAllSSLCerts(request.url, proxy)
+        } else if (https && trustStoreFile) {
+            conn = httpConnectionFactory.getConnectionUsingTrustStore(request.url, trustStoreFile, trustStorePassword, proxy)
+        } else {
+            conn = httpConnectionFactory.getConnection(request.url, proxy)
+        }
+
+        conn.requestMethod = request.method.toString()
+        conn.connectTimeout = request.isConnectTimeoutSet ? request.connectTimeout : connectTimeout
+        conn.readTimeout = request.isReadTimeoutSet ? request.readTimeout : readTimeout
+        conn.instanceFollowRedirects = request.isFollowRedirectsSet ? request.followRedirects : followRedirects
+        conn.useCaches = request.isUseCachesSet ? request.useCaches : useCaches
+        defaultHeaders?.each { k, v -> conn.setRequestProperty(k.toString(), v?.toString()) }
+        request.headers?.each { k, v -> conn.setRequestProperty(k.toString(), v?.toString()) }
+        authorization?.authorize(conn)
+        conn
+    }
+
+    def <T extends WsliteHTTPInterceptor> T findInterceptor(Class<T> type) {
+        (T) interceptors.find { type.isInstance(it) }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.wslite;
+
+import wslite.http.HTTPRequest;
+import wslite.http.HTTPResponse;
+
+/**
+ * Intercepts requests sent through a {@link WsliteHTTPClient}.<p>
+ * Implementations either answer a request by themselves or forward it, possibly
+ * modified, to the next interceptor in the chain by calling {@code chain.proceed(request)}.
+ *
+ * @author Andres Almiray
+ */
+public interface WsliteHTTPInterceptor {
+    HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain);
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import wslite.http.HTTPRequest
+
+/**
+ * HTTPRequest whose body is streamed from an {@code InputStream}, a {@code File} or a
+ * {@code java.nio.file.Path} instead of being held in memory as a byte array.<p>
+ * Bodies of known length (files, paths, or streams with an explicit {@code contentLength})
+ * are sent in fixed-length streaming mode, any other body is sent in chunks.
+ *
+ * @author Andres Almiray
+ */
+class WsliteHTTPRequest extends HTTPRequest {
+    private static final Class PATH_CLASS = loadPathClass()
+
+    /**
+     * The request body: an {@code InputStream}, a {@code File} or a {@code Path}.
+     */
+    def body
+
+    /**
+     * Length of the body in bytes, negative when unknown. Computed for files and paths.
+     */
+    long contentLength = -1L
+
+    boolean isStreaming() {
+        body != null
+    }
+
+    /**
+     * @return the length of the body, or a negative value when it is not known in advance
+     */
+    long resolveContentLength() {
+        if (contentLength >= 0L) return contentLength
+        File file = resolveFile()
+        file != null ? file.length() : -1L
+    }
+
+    /**
+     * Opens the body. The caller is responsible for closing the returned stream.
+     */
+    InputStream openBody() {
+        if (body instanceof InputStream) return (InputStream) body
+        File file = resolveFile()
+        if (file != null) return new FileInputStream(file)
+        throw new IllegalArgumentException("Unsupported request body type ${body?.getClass()?.name}")
+    }
+
+    private File resolveFile() {
+        if (body instanceof File) return (File) body
+        if (PATH_CLASS?.isInstance(body)) return body.toFile()
+        null
+    }
+
+    private static Class loadPathClass() {
+        try {
+            Class.forName('java.nio.file.Path')
+        } catch (ClassNotFoundException e) {
+            null
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Sends a second copy of a request that takes longer than usual, answering with
+ * whichever copy responds first.<p>
+ * The request itself is sent from the calling thread; once the delay elapses without a
+ * response, a copy is sent from a thread of the shared, bounded hedging executor. A copy
+ * that cannot get a thread is not sent. The delay before hedging is the configured percentile
+ * of the latencies observed by the client, bounded by {@code minDelay} and {@code maxDelay};
+ * {@code delay} is used until {@code minSamples} latencies were recorded. Every request earns
+ * {@code budgetRatio} hedges and every hedge spends one, which caps the extra load to that
+ * share of requests.<p>
+ * Once a copy answers, the connection of the other one is disconnected and its response
+ * discarded. Only connections opened through {@link WsliteSSLConnectionFactory} are tracked,
+ * so only those can be aborted. Disconnecting aborts a copy still waiting for its response
+ * headers; a copy already reading its body runs to completion, as does a copy sent over
+ * HTTP/2 or through another connection factory. A copy that fails does not win: the other
+ * one is awaited and the failure is reported only when both failed.
+ *
+ * @author Andres Almiray
+ */
+class WsliteHedging implements WsliteHTTPInterceptor {
+    private static final int MIN_SAMPLES = 20
+    private static final int MAX_SAMPLES = 10000
+    private static final int DELAY_REFRESH = 64
+    // the copy sent by the current thread, told about every connection the copy opens
+    private static final ThreadLocal<Attempt> CURRENT = new ThreadLocal<Attempt>()
+
+    final String id
+    final double percentile
+    final long delay
+    final long minDelay
+    final long maxDelay
+    final double budgetRatio
+    final int budget
+    final Set<String> methods
+
+    private final ScheduledExecutorService timer
+    private final ExecutorService executor
+    private final WsliteHistogram latencies = new WsliteHistogram()
+    private final AtomicLong samples = new AtomicLong()
+    private final AtomicLong requests = new AtomicLong()
+    private final AtomicLong hedged = new AtomicLong()
+    private final AtomicLong hedgesWon = new AtomicLong()
+    private final AtomicLong budgetDenied = new AtomicLong()
+    private final AtomicLong rejected = new AtomicLong()
+    private volatile long currentDelay
+    private double tokens
+
+    /**
+     * @param timer    triggers hedges once their delay elapses, its tasks must not block
+     * @param executor sends hedged copies, rejecting copies when it has no thread to spare
+     */
+    WsliteHedging(String id, Map settings, ScheduledExecutorService timer, ExecutorService executor) {
+        this.id = id
+        this.percentile = (settings.percentile ?: 95.0d) as double
+        this.delay = (settings.delay ?: 100L) as long
+        this.minDelay = (settings.minDelay ?: 10L) as long
+        this.maxDelay = (settings.maxDelay ?: 1000L) as long
+        this.budgetRatio = (settings.budgetRatio ?: 0.1d) as double
+        this.budget = (settings.budget ?: 10) as int
+        this.methods = ((settings.methods ?: ['GET', 'HEAD']).collect { it.toString().toUpperCase() } as Set).asImmutable()
+        this.timer = timer
+        this.executor = executor
+        this.currentDelay = Math.min(maxDelay, Math.max(minDelay, delay))
+        this.tokens = budget
+    }
+
+    /**
+     * Called by the plugin's connection factories with every connection they open, so that
+     * the connection of a hedged copy that lost can be disconnected.
+     */
+    static void connectionOpened(HttpURLConnection connection) {
+        CURRENT.get()?.opened(connection)
+    }
+
+    /**
+     * @return milliseconds a request waits before being hedged
+     */
+    long getCurrentDelay() {
+        currentDelay
+    }
+
+    long getRequests() {
+        requests.get()
+    }
+
+    long getHedged() {
+        hedged.get()
+    }
+
+    /**
+     * @return hedges that answered before the request they were copied from
+     */
+    long getHedgesWon() {
+        hedgesWon.get()
+    }
+
+    /**
+     * @return requests that were not hedged because the hedging budget was spent
+     */
+    long getBudgetDenied() {
+        budgetDenied.get()
+    }
+
+    /**
+     * @return requests that were not hedged because the hedging executor had no thread to spare
+     */
+    long getRejected() {
+        rejected.get()
+    }
+
+    HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain) {
+        if (!isHedgeable(request)) return chain.proceed(request)
+        requests.incrementAndGet()
+        earn()
+
+        Race race = new Race()
+        WsliteClientMetrics metrics = WsliteMetrics.instance.current()
+        ScheduledFuture<?> trigger = timer.schedule({
+            hedge(race, copyOf(request), chain, metrics)
+        } as Runnable, currentDelay, TimeUnit.MILLISECONDS)
+
+        Attempt previous = CURRENT.get()
+        CURRENT.set(race.primary)
+        long start = System.nanoTime()
+        HTTPResponse response
+        try {
+            response = chain.proceed(request)
+        } catch (Throwable t) {
+            // a primary that lost to the hedge fails here as well, once its connection is disconnected
+            HTTPResponse hedgeResponse = race.primaryFailed()
+            if (hedgeResponse != null) return hedgeResponse
+            throw t
+        } finally {
+            // an aborted copy says nothing about the latency of the backend
+            if (!race.primary.aborted) record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+            CURRENT.set(previous)
+            trigger.cancel(false)
+        }
+        race.primarySucceeded(response)
+    }
+
+    private void hedge(Race race, HTTPRequest copy, WsliteHTTPChain chain, WsliteClientMetrics metrics) {
+        if (!race.startHedge()) return
+        if (!spend()) {
+            race.hedgeNotStarted()
+            budgetDenied.incrementAndGet()
+            return
+        }
+        try {
+            executor.execute({ attempt(race, copy, chain, metrics) } as Runnable)
+            hedged.incrementAndGet()
+        } catch (RejectedExecutionException e) {
+            race.hedgeNotStarted()
+            rejected.incrementAndGet()
+        }
+    }
+
+    private void attempt(Race race, HTTPRequest copy, WsliteHTTPChain chain, WsliteClientMetrics metrics) {
+        WsliteClientMetrics previous = WsliteMetrics.instance.enter(metrics)
+        CURRENT.set(race.hedge)
+        long start = System.nanoTime()
+        try {
+            if (race.hedgeSucceeded(chain.proceed(copy))) hedgesWon.incrementAndGet()
+        } catch (Throwable t) {
+            race.hedgeFailed()
+        } finally {
+            if (!race.hedge.aborted) record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+            CURRENT.remove()
+            WsliteMetrics.instance.exit(previous)
+        }
+    }
+
+    private boolean isHedgeable(HTTPRequest request) {
+        if (request instanceof WsliteHTTPRequest && request.streaming) return false
+        (request.method?.name() ?: 'GET') in methods
+    }
+
+    private void record(long millis) {
+        latencies.record(millis)
+        long count = samples.incrementAndGet()
+        if (latencies.count >= MIN_SAMPLES && count % DELAY_REFRESH == 0) {
+            currentDelay = Math.min(maxDelay, Math.max(minDelay, latencies.getValueAtPercentile(percentile)))
+        }
+        // keep the delay close to the recent behavior of the backend
+        if (count % MAX_SAMPLES == 0) latencies.reset()
+    }
+
+    private synchronized void earn() {
+        tokens = Math.min((double) budget, tokens + budgetRatio)
+    }
+
+    private synchronized boolean spend() {
+        if (tokens < 1.0d) return false
+        tokens -= 1.0d
+        true
+    }
+
+    /**
+     * Both copies travel through the rest of the chain at the same time, each needs headers of its own.
+     */
+    static HTTPRequest copyOf(HTTPRequest request) {
+        HTTPRequest copy = new HTTPRequest(url: request.url, method: request.method, data: request.data)
+        copy.headers = new LinkedHashMap(request.headers ?: [:])
+        if (request.isConnectTimeoutSet) copy.connectTimeout = request.connectTimeout
+        if (request.isReadTimeoutSet) copy.readTimeout = request.readTimeout
+        if (request.isFollowRedirectsSet) copy.followRedirects = request.followRedirects
+        if (request.isUseCachesSet) copy.useCaches = request.useCaches
+        if (request.isSSLTrustAllCertsSet) copy.sslTrustAllCerts = request.sslTrustAllCerts
+        copy.sslTrustStoreFile = request.sslTrustStoreFile
+        copy.sslTrustStorePassword = request.sslTrustStorePassword
+        copy.proxy = request.proxy
+        copy
+    }
+
+    /**
+     * One copy of a request, disconnecting the connections it opens once it lost.
+     */
+    private static class Attempt {
+        private volatile HttpURLConnection connection
+        private volatile boolean aborted
+
+        boolean isAborted() {
+            aborted
+        }
+
+        void opened(HttpURLConnection connection) {
+            this.connection = connection
+            if (aborted) connection.disconnect()
+        }
+
+        void abort() {
+            aborted = true
+            connection?.disconnect()
+        }
+    }
+
+    /**
+     * Outcome of a request and its hedged copy; the first copy to succeed wins.
+     */
+    private static class Race {
+        final Attempt primary = new Attempt()
+        final Attempt hedge = new Attempt()
+        private boolean primaryDone
+        private boolean primaryAnswered
+        private boolean hedgeRunning
+        private HTTPResponse hedgeResponse
+
+        synchronized boolean startHedge() {
+            if (primaryDone) return false
+            hedgeRunning = true
+            true
+        }
+
+        synchronized void hedgeNotStarted() {
+            hedgeRunning = false
+            notifyAll()
+        }
+
+        /**
+         * @return the response of the primary, or that of the hedge when it answered first
+         */
+        HTTPResponse primarySucceeded(HTTPResponse response) {
+            synchronized (this) {
+                primaryDone = true
+                if (hedgeResponse != null) return hedgeResponse
+                primaryAnswered = true
+            }
+            hedge.abort()
+            response
+        }
+
+        /**
+         * Waits for a hedge that is still running.
+         * @return the response of the hedge, {@code null} when it failed or was never sent
+         */
+        synchronized HTTPResponse primaryFailed() {
+            primaryDone = true
+            try {
+                while (hedgeRunning) wait()
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt()
+                hedge.abort()
+            }
+            hedgeResponse
+        }
+
+        /**
+         * @return {@code true} when the response of the hedge is the one handed to the caller
+         */
+        boolean hedgeSucceeded(HTTPResponse response) {
+            boolean primaryRunning
+            synchronized (this) {
+                hedgeRunning = false
+                notifyAll()
+                if (primaryAnswered) return false
+                hedgeResponse = response
+                primaryRunning = !primaryDone
+            }
+            if (primaryRunning) primary.abort()
+            true
+        }
+
+        synchronized void hedgeFailed() {
+            hedgeRunning = false
+            notifyAll()
+        }
+    }
+
+    String toString() {
+        "WsliteHedging[$id, delay=$currentDelay, hedged=$hedged]"
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wslite.http.HTTPClientException;
+import wslite.http.HTTPRequest;
+import wslite.http.HTTPResponse;
+import wslite.http.auth.HTTPAuthorization;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sends requests with {@code java.net.http.HttpClient}, which multiplexes concurrent
+ * requests to the same host over a single HTTP/2 connection.<p>
+ * The version is negotiated with each server (ALPN over TLS, an upgrade over plain HTTP),
+ * servers that only speak HTTP/1.1 are answered over HTTP/1.1. One HttpClient is kept per
+ * combination of truststore, proxy, connect timeout and redirect policy, so that clients
+ * with the same settings share their connections. At most {@link #MAX_CLIENTS} HttpClients
+ * are kept, the least recently used one is dropped first; a truststore whose context was
+ * reloaded by {@link WsliteSSLContextCache} gets a new HttpClient. The API is reached through
+ * reflection, as it requires Java 11; on older runtimes {@link #isAvailable()} is {@code false}.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteHttp2Transport {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteHttp2Transport.class);
+    private static final WsliteHttp2Transport INSTANCE;
+    // headers java.net.http sets by itself and refuses to take from callers
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+        "connection", "content-length", "expect", "host", "upgrade"));
+    private static final String NO_TRUSTSTORE = "(none)";
+
+    public static final int MAX_CLIENTS = 32;
+
+    static {
+        INSTANCE = new WsliteHttp2Transport();
+    }
+
+    public static WsliteHttp2Transport getInstance() {
+        return INSTANCE;
+    }
+
+    // guarded by itself, in access order so that the least recently used client is dropped first
+    private final Map<String, Client> clients = new LinkedHashMap<String, Client>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Client> eldest) {
+            if (size() <= MAX_CLIENTS) return false;
+            shutdown(eldest.getValue());
+            return true;
+        }
+    };
+    private final AtomicLong http2Responses = new AtomicLong();
+    private final AtomicLong http1Responses = new AtomicLong();
+    private final Api api;
+
+    private WsliteHttp2Transport() {
+        Api resolved = null;
+        try {
+            resolved = new Api();
+        } catch (Exception e) {
+            LOG.debug("java.net.http is not available, HTTP/2 requests will be sent over HTTP/1.1");
+        }
+        api = resolved;
+    }
+
+    public boolean isAvailable() {
+        return api != null;
+    }
+
+    /**
+     * @return responses received over HTTP/2
+     */
+    public long getHttp2Responses() {
+        return http2Responses.get();
+    }
+
+    /**
+     * @return responses received over HTTP/1.1 after negotiation
+     */
+    public long getHttp1Responses() {
+        return http1Responses.get();
+    }
+
+    /**
+     * @return number of HttpClients, one per distinct combination of connection settings
+     */
+    public int size() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (clients) {
+            for (Client client : clients.values()) shutdown(client);
+            clients.clear();
+        }
+    }
+
+    /**
+     * @return whether {@link #send} can handle the request; streamed bodies, SOCKS proxies
+     * and clients trusting every certificate stay on HttpURLConnection
+     */
+    public boolean supports(HTTPRequest request, boolean trustAll, Proxy proxy) {
+        if (api == null || trustAll) return false;
+        if (request instanceof WsliteHTTPRequest && ((WsliteHTTPRequest) request).isStreaming()) return false;
+        return proxy == null || proxy.type() != Proxy.Type.SOCKS;
+    }
+
+    /**
+     * Sends the request, failing with an {@code HTTPClientException} on network errors
+     * and on responses with a status of 400 or above, as the wslite transport does.
+     */
+    @SuppressWarnings("unchecked")
+    public HTTPResponse send(HTTPRequest request, String trustStoreFile, String trustStorePassword, Proxy proxy, int connectTimeout,
+                             int readTimeout, boolean followRedirects, Map defaultHeaders, HTTPAuthorization authorization) throws HTTPClientException {
+        HTTPResponse response;
+        try {
+            Object client = clientFor(trustStoreFile, trustStorePassword, proxy, connectTimeout, followRedirects);
+            Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+            if (defaultHeaders != null) collect(headers, defaultHeaders);
+            if (request.getHeaders() != null) collect(headers, request.getHeaders());
+            if (authorization != null) collect(headers, authorize(request.getUrl(), authorization));
+
+            Object builder = api.newRequestBuilder.invoke(null, request.getUrl().toURI());
+            byte[] data = request.getData();
+            Object body = data != null ? api.ofByteArray.invoke(null, (Object) data) : api.noBody.invoke(null);
+            api.method.invoke(builder, request.getMethod().toString(), body);
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) continue;
+                for (String value : header.getValue()) api.header.invoke(builder, header.getKey(), value);
+            }
+            if (readTimeout > 0) api.timeout.invoke(builder, api.duration(readTimeout));
+            Object httpResponse = api.send.invoke(client, api.build.invoke(builder), api.ofByteArrayHandler.invoke(null));
+            response = toResponse(request.getUrl(), httpResponse);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw new HTTPClientException(cause.getMessage(), cause, request, null);
+        } catch (Exception e) {
+            throw new HTTPClientException(e.getMessage(), e, request, null);
+        }
+        if (response.getStatusCode() >= 400) {
+            throw new HTTPClientException(String.valueOf(response.getStatusCode()), request, response);
+        }
+        return response;
+    }
+
+    /**
+     * @param trustStoreFile the truststore to validate server certificates with, {@code null}
+     *                       for plain HTTP and for the JVM's default truststore
+     */
+    private Object clientFor(String trustStoreFile, String trustStorePassword, Proxy proxy, int connectTimeout, boolean followRedirects) throws Exception {
+        // keyed by truststore identity rather than by context, as every context of a truststore
+        // that is not shared, or was reloaded, is a new instance
+        String key = (trustStoreFile != null ? WsliteSSLContextCache.keyOf(trustStoreFile, trustStorePassword) : NO_TRUSTSTORE) +
+            "|" + proxy + "|" + connectTimeout + "|" + followRedirects;
+        WsliteSSLContextCache contexts = WsliteSSLContextCache.getInstance();
+        SSLContext sslContext = trustStoreFile != null ? contexts.getContext(trustStoreFile, trustStorePassword) : null;
+        synchronized (clients) {
+            Client client = clients.get(key);
+            if (client != null && (client.sslContext == sslContext || !contexts.isEnabled())) return client.httpClient;
+        }
+
+        Object builder = api.newClientBuilder.invoke(null);
+        api.version.invoke(builder, api.http2);
+        api.followRedirects.invoke(builder, followRedirects ? api.redirectNormal : api.redirectNever);
+        if (connectTimeout > 0) api.connectTimeout.invoke(builder, api.duration(connectTimeout));
+        if (sslContext != null) api.sslContext.invoke(builder, sslContext);
+        if (proxy != null && proxy.type() == Proxy.Type.HTTP) {
+            api.proxy.invoke(builder, api.proxySelectorOf.invoke(null, proxy.address()));
+        }
+        Client client = new Client(api.buildClient.invoke(builder), sslContext);
+        synchronized (clients) {
+            Client existing = clients.get(key);
+            if (existing != null && (existing.sslContext == sslContext || !contexts.isEnabled())) return existing.httpClient;
+            clients.put(key, client);
+            if (existing != null) shutdown(existing);
+        }
+        return client.httpClient;
+    }
+
+    /**
+     * Lets a dropped HttpClient finish its requests and release its connections, on runtimes
+     * that support it (Java 21); on older ones it is released once unreachable.
+     */
+    private void shutdown(Client client) {
+        if (api.shutdown == null) return;
+        try {
+            api.shutdown.invoke(client.httpClient);
+        } catch (Exception e) {
+            LOG.debug("Could not shut down " + client.httpClient, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HTTPResponse toResponse(URL url, Object httpResponse) throws Exception {
+        int statusCode = (Integer) api.statusCode.invoke(httpResponse);
+        Map<String, List<String>> received = (Map<String, List<String>>) api.headersMap.invoke(api.headers.invoke(httpResponse));
+        Map<String, Object> headers = new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : received.entrySet()) {
+            if (header.getKey() == null || header.getKey().startsWith(":")) continue;
+            List<String> values = header.getValue();
+            headers.put(header.getKey(), values != null && values.size() == 1 ? values.get(0) : values);
+        }
+        if ("HTTP_2".equals(api.version(httpResponse))) {
+            http2Responses.incrementAndGet();
+        } else {
+            http1Responses.incrementAndGet();
+        }
+
+        byte[] data = (byte[]) api.body.invoke(httpResponse);
+        String encoding = headerOf(headers, "Content-Encoding");
+        // gunzip like HTTPClient does, so that responses look alike whatever the transport
+        if ("gzip".equals(encoding) && data != null && data.length > 0) data = gunzip(data);
+        String contentType = headerOf(headers, "Content-Type");
+        String length = headerOf(headers, "Content-Length");
+        HTTPResponse response = new HTTPResponse();
+        response.setUrl(url);
+        response.setStatusCode(statusCode);
+        // HTTP/2 carries no reason phrase
+        response.setStatusMessage("");
+        response.setContentType(contentType);
+        response.setCharset(charsetOf(contentType));
+        response.setContentEncoding(encoding);
+        response.setContentLength(length != null ? Integer.parseInt(length.trim()) : -1);
+        response.setDate(dateOf(headerOf(headers, "Date")));
+        response.setExpiration(dateOf(headerOf(headers, "Expires")));
+        response.setLastModified(dateOf(headerOf(headers, "Last-Modified")));
+        response.setHeaders(headers);
+        response.setData(data != null ? data : new byte[0]);
+        return response;
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        InputStream input = new GZIPInputStream(new ByteArrayInputStream(data), 8192);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) output.write(buffer, 0, read);
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * wslite authorizations decorate a connection; this one only records the headers they set.
+     */
+    private static Map<String, List<String>> authorize(URL url, HTTPAuthorization authorization) {
+        HttpURLConnection recorder = new HttpURLConnection(url) {
+            public void disconnect() {
+            }
+
+            public boolean usingProxy() {
+                return false;
+            }
+
+            public void connect() {
+            }
+        };
+        authorization.authorize(recorder);
+        return recorder.getRequestProperties();
+    }
+
+    private static void collect(Map<String, List<String>> headers, Map<?, ?> source) {
+        for (Map.Entry<?, ?> entry : source.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) continue;
+            String name = entry.getKey().toString();
+            for (Iterator<String> it = headers.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().equalsIgnoreCase(name)) it.remove();
+            }
+            List<String> values = new ArrayList<String>();
+            if (entry.getValue() instanceof Collection) {
+                for (Object value : (Collection<?>) entry.getValue()) values.add(String.valueOf(value));
+            } else {
+                values.add(entry.getValue().toString());
+            }
+            headers.put(name, values);
+        }
+    }
+
+    private static String headerOf(Map<String, Object> headers, String name) {
+        Object value = headers.get(name);
+        if (value instanceof List) return ((List<?>) value).isEmpty() ? null : String.valueOf(((List<?>) value).get(0));
+        return value != null ? value.toString() : null;
+    }
+
+    private static String charsetOf(String contentType) {
+        if (contentType == null) return null;
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.toLowerCase().startsWith("charset=")) return trimmed.substring(8);
+        }
+        return null;
+    }
+
+    private static Date dateOf(String value) {
+        if (value == null) return null;
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static class Client {
+        private final Object httpClient;
+        private final SSLContext sslContext;
+
+        private Client(Object httpClient, SSLContext sslContext) {
+            this.httpClient = httpClient;
+            this.sslContext = sslContext;
+        }
+    }
+
+    private static class Api {
+        private final Method newClientBuilder;
+        private final Method version;
+        private final Method followRedirects;
+        private final Method connectTimeout;
+        private final Method sslContext;
+        private final Method proxy;
+        private final Method proxySelectorOf;
+        private final Method buildClient;
+        private final Method send;
+        private final Method newRequestBuilder;
+        private final Method method;
+        private final Method header;
+        private final Method timeout;
+        private final Method build;
+        private final Method ofByteArray;
+        private final Method noBody;
+        private final Method ofByteArrayHandler;
+        private final Method statusCode;
+        private final Method headers;
+        private final Method headersMap;
+        private final Method body;
+        private final Method responseVersion;
+        private final Method ofMillis;
+        private final Method shutdown;
+        private final Object http2;
+        private final Object redirectNormal;
+        private final Object redirectNever;
+
+        @SuppressWarnings("unchecked")
+        private Api() throws Exception {
+            Class<?> httpClient = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+            Class versionType = Class.forName("java.net.http.HttpClient$Version");
+            Class redirectType = Class.forName("java.net.http.HttpClient$Redirect");
+            Class<?> httpRequest = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> bodyPublishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            Class<?> httpResponse = Class.forName("java.net.http.HttpResponse");
+            Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> bodyHandlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+            Class<?> duration = Class.forName("java.time.Duration");
+
+            newClientBuilder = httpClient.getMethod("newBuilder");
+            version = clientBuilder.getMethod("version", versionType);
+            followRedirects = clientBuilder.getMethod("followRedirects", redirectType);
+            connectTimeout = clientBuilder.getMethod("connectTimeout", duration);
+            sslContext = clientBuilder.getMethod("sslContext", SSLContext.class);
+            proxy = clientBuilder.getMethod("proxy", ProxySelector.class);
+            proxySelectorOf = ProxySelector.class.getMethod("of", InetSocketAddress.class);
+            buildClient = clientBuilder.getMethod("build");
+            send = httpClient.getMethod("send", httpRequest, bodyHandler);
+            newRequestBuilder = httpRequest.getMethod("newBuilder", URI.class);
+            method = requestBuilder.getMethod("method", String.class, bodyPublisher);
+            header = requestBuilder.getMethod("header", String.class, String.class);
+            timeout = requestBuilder.getMethod("timeout", duration);
+            build = requestBuilder.getMethod("build");
+            ofByteArray = bodyPublishers.getMethod("ofByteArray", byte[].class);
+            noBody = bodyPublishers.getMethod("noBody");
+            ofByteArrayHandler = bodyHandlers.getMethod("ofByteArray");
+            statusCode = httpResponse.getMethod("statusCode");
+            headers = httpResponse.getMethod("headers");
+            headersMap = httpHeaders.getMethod("map");
+            body = httpResponse.getMethod("body");
+            responseVersion = httpResponse.getMethod("version");
+            ofMillis = duration.getMethod("ofMillis", Long.TYPE);
+            shutdown = optionalMethod(httpClient, "shutdown");
+            http2 = Enum.valueOf(versionType, "HTTP_2");
+            redirectNormal = Enum.valueOf(redirectType, "NORMAL");
+            redirectNever = Enum.valueOf(redirectType, "NEVER");
+        }
+
+        private static Method optionalMethod(Class<?> type, String name) {
+            try {
+                return type.getMethod(name);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        private Object duration(long millis) throws Exception {
+            return ofMillis.invoke(null, millis);
+        }
+
+        private String version(Object response) throws Exception {
+            return String.valueOf(responseVersion.invoke(response));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import wslite.http.HTTPClient;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Handle on an HTTPClient, see {@link WsliteClientHandle}.
+ * <pre>
+ * def downloads = WsliteHttpHandle.create(url: 'http://localhost:8080', id: 'downloads')
+ * downloads.http { ... }
+ * </pre>
+ *
+ * @author Andres Almiray
+ */
+public class WsliteHttpHandle extends WsliteClientHandle<HTTPClient> {
+    /**
+     * Creates a handle from the same parameters {@code withHttp} accepts.
+     */
+    public static WsliteHttpHandle create(Map<String, Object> params) {
+        if (params == null) throw new IllegalArgumentException("Client parameters are required");
+        return new WsliteHttpHandle(null, params);
+    }
+
+    /**
+     * Creates a handle on the HTTPClient registered with the given id, or declared
+     * under that id in {@code griffon.wslite.clients}.
+     */
+    public static WsliteHttpHandle forId(String id) {
+        return new WsliteHttpHandle(id, null);
+    }
+
+    private WsliteHttpHandle(String id, Map<String, Object> params) {
+        super(WsliteMetrics.HTTP, id, params);
+    }
+
+    public <R> R http(Closure<R> closure) {
+        return call(closure);
+    }
+
+    public <R> R http(CallableWithArgs<R> callable) {
+        return call(callable);
+    }
+
+    protected HTTPClient fetch(Map<String, Object> params) {
+        return WsliteClientHolder.getInstance().fetchHttpClient(params);
+    }
+
+    protected HTTPClient lookup(String id) {
+        return WsliteClientHolder.getInstance().lookupHttpClient(id);
+    }
+
+    protected Closeable streamingClientOf(HTTPClient client) {
+        return null;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import groovy.lang.Closure;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Elements of a JSON array parsed one at a time, straight off the connection.<p>
+ * Only the element being returned is held in memory; objects become {@code Map}s and
+ * arrays become {@code List}s, as with {@code JsonSlurper}. Reading is driven by the
+ * consumer: nothing is read from the socket until the next element is requested,
+ * which lets TCP flow control slow the server down. Closing the stream before the
+ * end of the array aborts the transfer.<p>
+ * The array is located with a dotted path of object keys ({@code root: 'data.items'});
+ * without one, the first array found in the document is streamed.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteJsonStream implements Iterable<Object>, Iterator<Object>, Closeable {
+    private static final int EOF = -1;
+
+    private final WsliteStreamingResponse response;
+    private final Reader reader;
+    private final String[] root;
+    private final StringBuilder text = new StringBuilder();
+    private int peeked = -2;
+    private long offset;
+    private boolean started;
+    private boolean finished;
+    private boolean pending;
+    private int count;
+
+    public WsliteJsonStream(WsliteStreamingResponse response, String root) throws UnsupportedEncodingException {
+        this.response = response;
+        this.reader = new BufferedReader(new InputStreamReader(response.getInputStream(), response.getCharset("UTF-8")), 8192);
+        this.root = root != null && root.length() > 0 ? root.split("\\.") : null;
+    }
+
+    public WsliteStreamingResponse getResponse() {
+        return response;
+    }
+
+    public int getStatusCode() {
+        return response.getStatusCode();
+    }
+
+    /**
+     * @return how many elements have been returned so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public Iterator<Object> iterator() {
+        return this;
+    }
+
+    public boolean hasNext() {
+        if (pending) return true;
+        if (finished) return false;
+        try {
+            if (!started) {
+                started = true;
+                skipWhitespace();
+                if (!seek(0)) {
+                    if (root != null) throw malformed("no array found at '" + join(root) + "'");
+                    return end();
+                }
+                skipWhitespace();
+                if (peek() == ']') {
+                    read();
+                    return end();
+                }
+            } else {
+                skipWhitespace();
+                int c = read();
+                if (c == ']') return end();
+                if (c != ',') throw malformed("expected ',' or ']'");
+            }
+            pending = true;
+            return true;
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Could not read JSON from " + response.getUrl(), e);
+        }
+    }
+
+    public Object next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        try {
+            Object value = readValue();
+            pending = false;
+            count++;
+            return value;
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Could not read JSON from " + response.getUrl(), e);
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Calls {@code closure} with each element. Returning {@code false} from the closure
+     * stops the iteration and closes the stream.
+     */
+    public void eachElement(Closure<?> closure) {
+        while (hasNext()) {
+            if (Boolean.FALSE.equals(closure.call(next()))) {
+                close();
+                return;
+            }
+        }
+    }
+
+    public void close() {
+        finished = true;
+        pending = false;
+        response.close();
+    }
+
+    private boolean end() {
+        close();
+        return false;
+    }
+
+    // -- navigation
+
+    private boolean seek(int depth) throws IOException {
+        int c = peek();
+        if (c == '[') {
+            if (root == null || depth == root.length) {
+                read();
+                return true;
+            }
+            skipValue();
+            return false;
+        }
+        if (c != '{') {
+            skipValue();
+            return false;
+        }
+        read();
+        skipWhitespace();
+        if (peek() == '}') {
+            read();
+            return false;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (root == null) {
+                if (seek(depth + 1)) return true;
+            } else if (depth < root.length && root[depth].equals(key)) {
+                // the path is unambiguous, there is no need to look any further
+                return seek(depth + 1);
+            } else {
+                skipValue();
+            }
+            skipWhitespace();
+            int next = read();
+            if (next == '}') return false;
+            if (next != ',') throw malformed("expected ',' or '}'");
+        }
+    }
+
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            skipWhitespace();
+            int c = peek();
+            if (c == EOF) throw malformed("unexpected end of input");
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                read();
+                depth++;
+            } else if (c == '}' || c == ']') {
+                read();
+                depth--;
+            } else if (c == ',' || c == ':') {
+                read();
+            } else {
+                readLiteral();
+            }
+        } while (depth > 0);
+    }
+
+    // -- values
+
+    private Object readValue() throws IOException {
+        skipWhitespace();
+        int c = peek();
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case EOF:
+                throw malformed("unexpected end of input");
+            default:
+                return readLiteral();
+        }
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+        read();
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        skipWhitespace();
+        if (peek() == '}') {
+            read();
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            map.put(key, readValue());
+            skipWhitespace();
+            int c = read();
+            if (c == '}') return map;
+            if (c != ',') throw malformed("expected ',' or '}'");
+        }
+    }
+
+    private List<Object> readArray() throws IOException {
+        read();
+        List<Object> list = new ArrayList<Object>();
+        skipWhitespace();
+        if (peek() == ']') {
+            read();
+            return list;
+        }
+        while (true) {
+            list.add(readValue());
+            skipWhitespace();
+            int c = read();
+            if (c == ']') return list;
+            if (c != ',') throw malformed("expected ',' or ']'");
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == EOF) throw malformed("unterminated string");
+            if (c == '"') return text.toString();
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        text.append('\b');
+                        break;
+                    case 'f':
+                        text.append('\f');
+                        break;
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            int h = read();
+                            if (h == EOF) throw malformed("unterminated escape");
+                            hex[i] = (char) h;
+                        }
+                        try {
+                            text.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw malformed("invalid escape");
+                        }
+                        break;
+                    case EOF:
+                        throw malformed("unterminated escape");
+                    default:
+                        text.append((char) c);
+                }
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        expect('"');
+        while (true) {
+            int c = read();
+            if (c == EOF) throw malformed("unterminated string");
+            if (c == '"') return;
+            if (c == '\\') read();
+        }
+    }
+
+    private Object readLiteral() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = peek()) != EOF && c != ',' && c != ']' && c != '}' && c != ':' && !Character.isWhitespace(c)) {
+            text.append((char) read());
+        }
+        String literal = text.toString();
+        if ("true".equals(literal)) return Boolean.TRUE;
+        if ("false".equals(literal)) return Boolean.FALSE;
+        if ("null".equals(literal)) return null;
+        try {
+            if (literal.indexOf('.') > -1 || literal.indexOf('e') > -1 || literal.indexOf('E') > -1) {
+                return new BigDecimal(literal);
+            }
+            BigInteger value = new BigInteger(literal);
+            if (value.bitLength() < 32) return value.intValue();
+            if (value.bitLength() < 64) return value.longValue();
+            return value;
+        } catch (NumberFormatException e) {
+            throw malformed("unexpected '" + literal + "'");
+        }
+    }
+
+    // -- characters
+
+    private void skipWhitespace() throws IOException {
+        while (Character.isWhitespace(peek())) read();
+    }
+
+    private void expect(char expected) throws IOException {
+        if (read() != expected) throw malformed("expected '" + expected + "'");
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) peeked = reader.read();
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        peeked = -2;
+        if (c != EOF) offset++;
+        return c;
+    }
+
+    private IllegalStateException malformed(String message) {
+        close();
+        return new IllegalStateException("Malformed JSON from " + response.getUrl() + " at offset " + offset + ": " + message);
+    }
+
+    private static String join(String[] path) {
+        StringBuilder b = new StringBuilder();
+        for (String p : path) {
+            if (b.length() > 0) b.append('.');
+            b.append(p);
+        }
+        return b.toString();
+    }
+}
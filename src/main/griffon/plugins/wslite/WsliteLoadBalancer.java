@@ -0,0 +1,316 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wslite.http.HTTPMethod;
+import wslite.http.HTTPRequest;
+import wslite.http.HTTPResponse;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads the requests of a client over several base URLs.<p>
+ * Requests whose URL starts with the first base URL are sent to the endpoint picked by
+ * the strategy: {@code ROUND_ROBIN}, {@code LEAST_OUTSTANDING} (fewest requests in flight)
+ * or {@code LATENCY} (random, weighted by the inverse of each endpoint's average latency).
+ * An endpoint that fails {@code ejectAfter} requests in a row, with a network error or a
+ * 5xx response, is left out for {@code ejectFor} milliseconds. When health checks are
+ * enabled every endpoint is probed periodically; an endpoint failing its probe is left out
+ * until a probe succeeds. When every endpoint is left out requests go to all of them.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteLoadBalancer implements WsliteHTTPInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteLoadBalancer.class);
+    private static final Random RANDOM = new Random();
+
+    public enum Strategy {
+        ROUND_ROBIN, LEAST_OUTSTANDING, LATENCY;
+
+        /**
+         * @param name one of {@code roundRobin}, {@code leastOutstanding} or {@code latency}, case and dashes ignored
+         */
+        public static Strategy of(String name) {
+            if (name == null || name.length() == 0) return ROUND_ROBIN;
+            String normalized = name.replace("-", "").replace("_", "").toUpperCase();
+            for (Strategy strategy : values()) {
+                if (strategy.name().replace("_", "").equals(normalized)) return strategy;
+            }
+            throw new IllegalArgumentException("Unknown balancing strategy '" + name + "', expected one of roundRobin, leastOutstanding or latency");
+        }
+    }
+
+    private final String id;
+    private final Strategy strategy;
+    private final int ejectAfter;
+    private final long ejectFor;
+    private final List<Endpoint> endpoints;
+    private final String base;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile ScheduledFuture<?> healthChecks;
+
+    public WsliteLoadBalancer(String id, List<String> urls, Strategy strategy, int ejectAfter, long ejectFor) {
+        if (urls == null || urls.isEmpty()) throw new IllegalArgumentException("Client '" + id + "' needs at least one url to balance");
+        this.id = id;
+        this.strategy = strategy;
+        this.ejectAfter = ejectAfter;
+        this.ejectFor = ejectFor;
+        List<Endpoint> list = new ArrayList<Endpoint>(urls.size());
+        for (String url : urls) list.add(new Endpoint(trim(url)));
+        this.endpoints = Collections.unmodifiableList(list);
+        this.base = endpoints.get(0).getUrl();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain) {
+        URL original = request.getUrl();
+        String url = original != null ? original.toString() : null;
+        if (url == null || !url.startsWith(base) || !isBoundary(url, base.length())) return chain.proceed(request);
+
+        Endpoint endpoint = choose();
+        try {
+            request.setUrl(new URL(endpoint.getUrl() + url.substring(base.length())));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid url for endpoint " + endpoint.getUrl(), e);
+        }
+        endpoint.requests.incrementAndGet();
+        endpoint.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            HTTPResponse response = chain.proceed(request);
+            failed = false;
+            return response;
+        } catch (Throwable t) {
+            failed = WsliteResilience.isFailure(t);
+            throw WsliteLoadBalancer.<RuntimeException>rethrow(t);
+        } finally {
+            endpoint.outstanding.decrementAndGet();
+            if (failed) {
+                failed(endpoint);
+            } else {
+                endpoint.succeeded(System.nanoTime() - start);
+            }
+            // later interceptors and retries expect the url the caller asked for
+            request.setUrl(original);
+        }
+    }
+
+    Endpoint choose() {
+        long now = System.currentTimeMillis();
+        List<Endpoint> available = new ArrayList<Endpoint>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) available.add(endpoint);
+        }
+        if (available.isEmpty()) available = endpoints;
+        if (available.size() == 1) return available.get(0);
+
+        switch (strategy) {
+            case LEAST_OUTSTANDING:
+                // start at a rotating offset so that ties do not all land on the first endpoint
+                int offset = (next.getAndIncrement() & Integer.MAX_VALUE) % available.size();
+                Endpoint least = null;
+                for (int i = 0; i < available.size(); i++) {
+                    Endpoint candidate = available.get((offset + i) % available.size());
+                    if (least == null || candidate.getOutstanding() < least.getOutstanding()) least = candidate;
+                }
+                return least;
+            case LATENCY:
+                double fastest = Double.MAX_VALUE;
+                for (Endpoint endpoint : available) {
+                    if (endpoint.latency > 0.0d) fastest = Math.min(fastest, endpoint.latency);
+                }
+                if (fastest == Double.MAX_VALUE) fastest = 1.0d;
+                double[] weights = new double[available.size()];
+                double total = 0.0d;
+                for (int i = 0; i < weights.length; i++) {
+                    // endpoints without samples are weighted as the fastest one, so that they get measured
+                    double latency = available.get(i).latency > 0.0d ? available.get(i).latency : fastest;
+                    weights[i] = 1.0d / (latency * (available.get(i).getOutstanding() + 1));
+                    total += weights[i];
+                }
+                double pick = RANDOM.nextDouble() * total;
+                for (int i = 0; i < weights.length; i++) {
+                    pick -= weights[i];
+                    if (pick <= 0.0d) return available.get(i);
+                }
+                return available.get(weights.length - 1);
+            default:
+                return available.get((next.getAndIncrement() & Integer.MAX_VALUE) % available.size());
+        }
+    }
+
+    private void failed(Endpoint endpoint) {
+        if (ejectAfter > 0 && endpoint.consecutiveFailures.incrementAndGet() >= ejectAfter) {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.ejectedUntil = System.currentTimeMillis() + ejectFor;
+            endpoint.ejections.incrementAndGet();
+            LOG.warn("Endpoint " + endpoint.getUrl() + " of client '" + id + "' ejected for " + ejectFor + "ms after " + ejectAfter + " failures");
+        }
+    }
+
+    /**
+     * Probes every endpoint each {@code interval} milliseconds with a GET to {@code path},
+     * sent over the given client without going through its interceptors.
+     */
+    public synchronized void startHealthChecks(ScheduledExecutorService scheduler, final WsliteHTTPClient client,
+                                               final String path, long interval, final int timeout) {
+        stopHealthChecks();
+        healthChecks = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                for (Endpoint endpoint : endpoints) check(client, endpoint, path, timeout);
+            }
+        }, 0L, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopHealthChecks() {
+        if (healthChecks != null) {
+            healthChecks.cancel(false);
+            healthChecks = null;
+        }
+    }
+
+    private void check(WsliteHTTPClient client, Endpoint endpoint, String path, int timeout) {
+        boolean healthy;
+        try {
+            HTTPRequest request = new HTTPRequest();
+            request.setUrl(new URL(endpoint.getUrl() + (path.startsWith("/") ? path : "/" + path)));
+            request.setMethod(HTTPMethod.GET);
+            if (timeout > 0) {
+                request.setConnectTimeout(timeout);
+                request.setReadTimeout(timeout);
+            }
+            HTTPResponse response = client.transmit(request);
+            healthy = response == null || response.getStatusCode() < 400;
+        } catch (Throwable t) {
+            healthy = false;
+        }
+        if (healthy != endpoint.healthy) {
+            LOG.info("Endpoint " + endpoint.getUrl() + " of client '" + id + "' is " + (healthy ? "healthy again" : "failing its health check"));
+        }
+        endpoint.healthy = healthy;
+        if (healthy) {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.ejectedUntil = 0L;
+        }
+    }
+
+    private static String trim(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    // http://host:8080 must not match http://host:80801
+    private static boolean isBoundary(String url, int index) {
+        if (index == url.length()) return true;
+        char c = url.charAt(index);
+        return c == '/' || c == '?' || c == '#';
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T rethrow(Throwable t) throws T {
+        throw (T) t;
+    }
+
+    public String toString() {
+        return "WsliteLoadBalancer[" + id + ", " + strategy + ", " + endpoints + "]";
+    }
+
+    public static class Endpoint {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong ejections = new AtomicLong();
+        private volatile long ejectedUntil;
+        private volatile boolean healthy = true;
+        // average latency in nanoseconds, 0 until the first success
+        private volatile double latency;
+
+        private Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getEjections() {
+            return ejections.get();
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public boolean isEjected() {
+            return System.currentTimeMillis() < ejectedUntil;
+        }
+
+        /**
+         * @return average latency of successful requests in milliseconds
+         */
+        public double getLatency() {
+            return latency / 1000000.0d;
+        }
+
+        private boolean isAvailable(long now) {
+            return healthy && now >= ejectedUntil;
+        }
+
+        private void succeeded(long nanos) {
+            consecutiveFailures.set(0);
+            double current = latency;
+            latency = current == 0.0d ? nanos : current * 0.8d + nanos * 0.2d;
+        }
+
+        public String toString() {
+            return url + (isAvailable(System.currentTimeMillis()) ? "" : " (out)");
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the metrics recorded per client id and operation.<p>
+ * Metrics are created on first use and, when JMX is enabled, published as
+ * {@code griffon.plugins.wslite:type=ClientMetrics,client=<id>,operation=<operation>} MBeans.
+ * Calls made without an {@code id:} are recorded under {@link #ANONYMOUS}. Metrics of a client
+ * are dropped, and their MBean unregistered, once the client leaves the client cache.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteMetrics {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteMetrics.class);
+    private static final WsliteMetrics INSTANCE;
+
+    public static final String ANONYMOUS = "(anonymous)";
+    public static final String SOAP = "soap";
+    public static final String REST = "rest";
+    public static final String HTTP = "http";
+
+    private static final WsliteClientMetrics DISABLED = new WsliteClientMetrics(ANONYMOUS, "", false);
+
+    static {
+        INSTANCE = new WsliteMetrics();
+    }
+
+    public static WsliteMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<String, WsliteClientMetrics>> metrics = new ConcurrentHashMap<String, ConcurrentMap<String, WsliteClientMetrics>>();
+    private final ThreadLocal<WsliteClientMetrics> current = new ThreadLocal<WsliteClientMetrics>();
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private volatile boolean enabled = true;
+    private volatile boolean jmx = true;
+
+    private WsliteMetrics() {
+        for (String operation : new String[]{SOAP, REST, HTTP}) {
+            metrics.put(operation, new ConcurrentHashMap<String, WsliteClientMetrics>());
+        }
+    }
+
+    /**
+     * @param enabled whether calls are recorded at all
+     * @param jmx     whether metrics are published as MBeans
+     */
+    public void configure(boolean enabled, boolean jmx) {
+        this.enabled = enabled;
+        this.jmx = jmx;
+        if (!jmx) unregister();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the metrics of {@code operation} for the client identified by {@code clientId},
+     * a no-op instance when metrics are disabled
+     */
+    public WsliteClientMetrics metricsFor(String clientId, String operation) {
+        if (!enabled) return DISABLED;
+        String id = clientId != null ? clientId : ANONYMOUS;
+        ConcurrentMap<String, WsliteClientMetrics> byClient = metrics.get(operation);
+        WsliteClientMetrics m = byClient.get(id);
+        if (m == null) {
+            WsliteClientMetrics created = new WsliteClientMetrics(id, operation, true);
+            m = byClient.putIfAbsent(id, created);
+            if (m == null) {
+                m = created;
+                if (jmx) register(m);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Makes {@code m} the metrics of the call running on the current thread, so that
+     * the transport may record transferred bytes against it.
+     *
+     * @return the metrics previously bound to the current thread, to be handed back to {@link #exit}
+     */
+    public WsliteClientMetrics enter(WsliteClientMetrics m) {
+        WsliteClientMetrics previous = current.get();
+        current.set(m);
+        return previous;
+    }
+
+    public void exit(WsliteClientMetrics previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * @return the metrics of the call running on the current thread, a no-op instance when there is none
+     */
+    public WsliteClientMetrics current() {
+        WsliteClientMetrics m = current.get();
+        return m != null ? m : DISABLED;
+    }
+
+    public List<WsliteMetricsSnapshot> snapshot() {
+        List<WsliteMetricsSnapshot> snapshots = new ArrayList<WsliteMetricsSnapshot>();
+        for (ConcurrentMap<String, WsliteClientMetrics> byClient : metrics.values()) {
+            for (WsliteClientMetrics m : byClient.values()) {
+                snapshots.add(m.snapshot());
+            }
+        }
+        return snapshots;
+    }
+
+    public List<WsliteMetricsSnapshot> snapshot(String clientId) {
+        List<WsliteMetricsSnapshot> snapshots = new ArrayList<WsliteMetricsSnapshot>();
+        for (ConcurrentMap<String, WsliteClientMetrics> byClient : metrics.values()) {
+            WsliteClientMetrics m = byClient.get(clientId);
+            if (m != null) snapshots.add(m.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Drops the metrics of {@code operation} recorded for the client identified by {@code clientId}
+     * and unregisters their MBean. Calls still running keep recording against the dropped instance.
+     */
+    public void remove(String clientId, String operation) {
+        ConcurrentMap<String, WsliteClientMetrics> byClient = metrics.get(operation);
+        if (byClient == null || clientId == null) return;
+        WsliteClientMetrics m = byClient.remove(clientId);
+        if (m != null) unregister(m);
+    }
+
+    public void reset() {
+        for (ConcurrentMap<String, WsliteClientMetrics> byClient : metrics.values()) {
+            for (WsliteClientMetrics m : byClient.values()) {
+                m.reset();
+            }
+        }
+    }
+
+    public void shutdown() {
+        unregister();
+        for (ConcurrentMap<String, WsliteClientMetrics> byClient : metrics.values()) {
+            byClient.clear();
+        }
+    }
+
+    private static ObjectName nameOf(WsliteClientMetrics m) throws MalformedObjectNameException {
+        return new ObjectName("griffon.plugins.wslite:type=ClientMetrics,client=" +
+            ObjectName.quote(m.getClientId()) + ",operation=" + m.getOperation());
+    }
+
+    private void register(WsliteClientMetrics m) {
+        try {
+            ObjectName name = nameOf(m);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) server.registerMBean(m, name);
+            synchronized (registered) {
+                registered.add(name);
+            }
+        } catch (Exception e) {
+            LOG.warn("Could not register metrics of client '" + m.getClientId() + "' with JMX", e);
+        }
+    }
+
+    private void unregister(WsliteClientMetrics m) {
+        ObjectName name;
+        try {
+            name = nameOf(m);
+        } catch (MalformedObjectNameException e) {
+            return;
+        }
+        synchronized (registered) {
+            if (!registered.remove(name)) return;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+            } catch (Exception e) {
+                LOG.debug("Could not unregister " + name, e);
+            }
+        }
+    }
+
+    private void unregister() {
+        synchronized (registered) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName name : registered) {
+                try {
+                    if (server.isRegistered(name)) server.unregisterMBean(name);
+                } catch (Exception e) {
+                    LOG.debug("Could not unregister " + name, e);
+                }
+            }
+            registered.clear();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+/**
+ * Point-in-time copy of a {@link WsliteClientMetrics}. Latencies are in milliseconds.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteMetricsSnapshot {
+    private final String clientId;
+    private final String operation;
+    private final long calls;
+    private final long errors;
+    private final int inFlight;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final double latencyMean;
+    private final double latencyP50;
+    private final double latencyP90;
+    private final double latencyP99;
+    private final double latencyP999;
+    private final double latencyMax;
+
+    public WsliteMetricsSnapshot(String clientId, String operation, long calls, long errors, int inFlight,
+                                 long bytesIn, long bytesOut, double latencyMean, double latencyP50,
+                                 double latencyP90, double latencyP99, double latencyP999, double latencyMax) {
+        this.clientId = clientId;
+        this.operation = operation;
+        this.calls = calls;
+        this.errors = errors;
+        this.inFlight = inFlight;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.latencyMean = latencyMean;
+        this.latencyP50 = latencyP50;
+        this.latencyP90 = latencyP90;
+        this.latencyP99 = latencyP99;
+        this.latencyP999 = latencyP999;
+        this.latencyMax = latencyMax;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public double getLatencyMean() {
+        return latencyMean;
+    }
+
+    public double getLatencyP50() {
+        return latencyP50;
+    }
+
+    public double getLatencyP90() {
+        return latencyP90;
+    }
+
+    public double getLatencyP99() {
+        return latencyP99;
+    }
+
+    public double getLatencyP999() {
+        return latencyP999;
+    }
+
+    public double getLatencyMax() {
+        return latencyMax;
+    }
+
+    public String toString() {
+        return clientId + "/" + operation + ": calls=" + calls + ", errors=" + errors + ", inFlight=" + inFlight +
+            ", in=" + bytesIn + "B, out=" + bytesOut + "B, p50=" + latencyP50 + "ms, p99=" + latencyP99 + "ms, max=" + latencyMax + "ms";
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection leased from a {@link WsliteConnectionPool}.<p>
+ * Requests for {@code Connection: close} are ignored while keep-alive is enabled.
+ * The lease returns to the pool on {@code disconnect()}, when the response stream is
+ * closed or as soon as the exchange fails, whichever comes first; the response body is
+ * drained instead of closing the socket so that it may be reused by the next request
+ * to the same host. HTTPS connections are exposed through {@link WslitePooledHttpsConnection}.
+ *
+ * @author Andres Almiray
+ */
+class WslitePooledConnection extends HttpURLConnection {
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    private final HttpURLConnection delegate;
+    private final WsliteConnectionPool pool;
+    private final WsliteConnectionPool.Route route;
+    private final boolean keepAlive;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private TrackingInputStream input;
+    private TrackingInputStream error;
+    private boolean failed;
+
+    WslitePooledConnection(HttpURLConnection delegate, WsliteConnectionPool pool, WsliteConnectionPool.Route route, boolean keepAlive) {
+        super(delegate.getURL());
+        this.delegate = delegate;
+        this.pool = pool;
+        this.route = route;
+        this.keepAlive = keepAlive;
+        delegate.setRequestProperty("Connection", keepAlive ? "keep-alive" : "close");
+    }
+
+    HttpURLConnection getDelegate() {
+        return delegate;
+    }
+
+    public void disconnect() {
+        release();
+    }
+
+    private void release() {
+        if (!released.compareAndSet(false, true)) return;
+        boolean reusable = keepAlive && !failed && drain(input) && drain(error);
+        if (!reusable) delegate.disconnect();
+        pool.release(route, failed);
+    }
+
+    private boolean drain(TrackingInputStream stream) {
+        // a stream closed by the caller already went back to the JDK's keep-alive cache
+        if (stream == null || stream.done || stream.closed) return true;
+        try {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            int read;
+            while (drained < MAX_DRAIN && (read = stream.read(buffer)) != -1) {
+                drained += read;
+            }
+            boolean done = stream.done;
+            stream.close();
+            return done;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void connect() throws IOException {
+        try {
+            delegate.connect();
+        } catch (IOException e) {
+            fail();
+            throw e;
+        }
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (input == null) {
+            try {
+                input = new TrackingInputStream(delegate.getInputStream());
+            } catch (IOException e) {
+                // error responses surface here as well; only flag transport failures
+                if (delegate.getErrorStream() == null) fail();
+                throw e;
+            }
+        }
+        return input;
+    }
+
+    public InputStream getErrorStream() {
+        if (error == null) {
+            InputStream stream = delegate.getErrorStream();
+            if (stream == null) return null;
+            error = new TrackingInputStream(stream);
+        }
+        return error;
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        try {
+            return delegate.getOutputStream();
+        } catch (IOException e) {
+            fail();
+            throw e;
+        }
+    }
+
+    public int getResponseCode() throws IOException {
+        try {
+            return delegate.getResponseCode();
+        } catch (IOException e) {
+            fail();
+            throw e;
+        }
+    }
+
+    private void fail() {
+        failed = true;
+        release();
+    }
+
+    public void setRequestProperty(String key, String value) {
+        if ("Connection".equalsIgnoreCase(key) && keepAlive) return;
+        delegate.setRequestProperty(key, value);
+    }
+
+    public void addRequestProperty(String key, String value) {
+        if ("Connection".equalsIgnoreCase(key) && keepAlive) return;
+        delegate.addRequestProperty(key, value);
+    }
+
+    // -- plain delegation
+
+    public boolean usingProxy() {
+        return delegate.usingProxy();
+    }
+
+    public String getResponseMessage() throws IOException {
+        return delegate.getResponseMessage();
+    }
+
+    public void setRequestMethod(String method) throws ProtocolException {
+        delegate.setRequestMethod(method);
+    }
+
+    public String getRequestMethod() {
+        return delegate.getRequestMethod();
+    }
+
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        delegate.setInstanceFollowRedirects(followRedirects);
+    }
+
+    public boolean getInstanceFollowRedirects() {
+        return delegate.getInstanceFollowRedirects();
+    }
+
+    public void setFixedLengthStreamingMode(int contentLength) {
+        delegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    public void setFixedLengthStreamingMode(long contentLength) {
+        if (contentLength <= Integer.MAX_VALUE) {
+            delegate.setFixedLengthStreamingMode((int) contentLength);
+            return;
+        }
+        try {
+            // only available since Java 7
+            HttpURLConnection.class.getMethod("setFixedLengthStreamingMode", long.class).invoke(delegate, contentLength);
+        } catch (Exception e) {
+            // bodies of 2GB or more can't announce their length on Java 6, they are sent in chunks instead
+            delegate.setChunkedStreamingMode(0);
+        }
+    }
+
+    public void setChunkedStreamingMode(int chunkLength) {
+        delegate.setChunkedStreamingMode(chunkLength);
+    }
+
+    public String getHeaderFieldKey(int n) {
+        return delegate.getHeaderFieldKey(n);
+    }
+
+    public String getHeaderField(int n) {
+        return delegate.getHeaderField(n);
+    }
+
+    public String getHeaderField(String name) {
+        return delegate.getHeaderField(name);
+    }
+
+    public Map<String, List<String>> getHeaderFields() {
+        return delegate.getHeaderFields();
+    }
+
+    public long getHeaderFieldDate(String name, long defaultValue) {
+        return delegate.getHeaderFieldDate(name, defaultValue);
+    }
+
+    public int getHeaderFieldInt(String name, int defaultValue) {
+        return delegate.getHeaderFieldInt(name, defaultValue);
+    }
+
+    public Permission getPermission() throws IOException {
+        return delegate.getPermission();
+    }
+
+    public URL getURL() {
+        return delegate.getURL();
+    }
+
+    public int getContentLength() {
+        return delegate.getContentLength();
+    }
+
+    public String getContentType() {
+        return delegate.getContentType();
+    }
+
+    public String getContentEncoding() {
+        return delegate.getContentEncoding();
+    }
+
+    public long getExpiration() {
+        return delegate.getExpiration();
+    }
+
+    public long getDate() {
+        return delegate.getDate();
+    }
+
+    public long getLastModified() {
+        return delegate.getLastModified();
+    }
+
+    public Object getContent() throws IOException {
+        return delegate.getContent();
+    }
+
+    public void setDoInput(boolean doInput) {
+        delegate.setDoInput(doInput);
+    }
+
+    public boolean getDoInput() {
+        return delegate.getDoInput();
+    }
+
+    public void setDoOutput(boolean doOutput) {
+        delegate.setDoOutput(doOutput);
+    }
+
+    public boolean getDoOutput() {
+        return delegate.getDoOutput();
+    }
+
+    public void setAllowUserInteraction(boolean allowUserInteraction) {
+        delegate.setAllowUserInteraction(allowUserInteraction);
+    }
+
+    public boolean getAllowUserInteraction() {
+        return delegate.getAllowUserInteraction();
+    }
+
+    public void setUseCaches(boolean useCaches) {
+        delegate.setUseCaches(useCaches);
+    }
+
+    public boolean getUseCaches() {
+        return delegate.getUseCaches();
+    }
+
+    public void setIfModifiedSince(long ifModifiedSince) {
+        delegate.setIfModifiedSince(ifModifiedSince);
+    }
+
+    public long getIfModifiedSince() {
+        return delegate.getIfModifiedSince();
+    }
+
+    public void setConnectTimeout(int timeout) {
+        delegate.setConnectTimeout(timeout);
+    }
+
+    public int getConnectTimeout() {
+        return delegate.getConnectTimeout();
+    }
+
+    public void setReadTimeout(int timeout) {
+        delegate.setReadTimeout(timeout);
+    }
+
+    public int getReadTimeout() {
+        return delegate.getReadTimeout();
+    }
+
+    public String getRequestProperty(String key) {
+        return delegate.getRequestProperty(key);
+    }
+
+    public Map<String, List<String>> getRequestProperties() {
+        return delegate.getRequestProperties();
+    }
+
+    public String toString() {
+        return "WslitePooledConnection[" + delegate + "]";
+    }
+
+    private class TrackingInputStream extends FilterInputStream {
+        private boolean done;
+        private boolean closed;
+
+        private TrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            try {
+                return track(super.read());
+            } catch (IOException e) {
+                fail();
+                throw e;
+            }
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return track(super.read(b, off, len));
+            } catch (IOException e) {
+                fail();
+                throw e;
+            }
+        }
+
+        public int read(byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+
+        private int track(int result) {
+            if (result == -1) done = true;
+            return result;
+        }
+    }
+}
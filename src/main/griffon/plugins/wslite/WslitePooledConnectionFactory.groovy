@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+/**
+ * Connection factory that leases every connection from a {@link WsliteConnectionPool}.
+ * HTTPS connections use the shared SSL contexts of {@link WsliteSSLConnectionFactory}.
+ *
+ * @author Andres Almiray
+ */
+class WslitePooledConnectionFactory extends WsliteSSLConnectionFactory {
+    final WsliteConnectionPool pool
+
+    WslitePooledConnectionFactory(WsliteConnectionPool pool) {
+        this.pool = pool
+    }
+
+    @Override
+    HttpURLConnection getConnection(URL url) {
+        pool.lease(super.getConnection(url))
+    }
+
+    @Override
+    HttpURLConnection getConnection(URL url, Proxy proxy) {
+        pool.lease(super.getConnection(url, proxy))
+    }
+
+    @Override
+    HttpURLConnection getConnectionTrustAllSSLCerts(URL url, Proxy proxy) {
+        pool.lease(super.getConnectionTrustAllSSLCerts(url, proxy))
+    }
+
+    @Override
+    HttpURLConnection getConnectionUsingTrustStore(URL url, String trustStoreFile, String trustStorePassword, Proxy proxy) {
+        pool.lease(super.getConnectionUsingTrustStore(url, trustStoreFile, trustStorePassword, proxy))
+    }
+
+    String toString() {
+        "WslitePooledConnectionFactory[${pool.name}]"
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTPS connection leased from a {@link WsliteConnectionPool}.<p>
+ * Lease handling is left to a {@link WslitePooledConnection}, while SSL settings
+ * and session details are read from and applied to the underlying HTTPS connection,
+ * so that callers checking for {@code HttpsURLConnection} keep working with pools.
+ *
+ * @author Andres Almiray
+ */
+class WslitePooledHttpsConnection extends HttpsURLConnection {
+    private final WslitePooledConnection pooled;
+    private final HttpsURLConnection https;
+
+    WslitePooledHttpsConnection(WslitePooledConnection pooled, HttpsURLConnection https) {
+        super(https.getURL());
+        this.pooled = pooled;
+        this.https = https;
+    }
+
+    // -- SSL settings and session
+
+    public String getCipherSuite() {
+        return https.getCipherSuite();
+    }
+
+    public Certificate[] getLocalCertificates() {
+        return https.getLocalCertificates();
+    }
+
+    public Certificate[] getServerCertificates() throws SSLPeerUnverifiedException {
+        return https.getServerCertificates();
+    }
+
+    public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+        return https.getPeerPrincipal();
+    }
+
+    public Principal getLocalPrincipal() {
+        return https.getLocalPrincipal();
+    }
+
+    public void setHostnameVerifier(HostnameVerifier verifier) {
+        https.setHostnameVerifier(verifier);
+    }
+
+    public HostnameVerifier getHostnameVerifier() {
+        return https.getHostnameVerifier();
+    }
+
+    public void setSSLSocketFactory(SSLSocketFactory factory) {
+        https.setSSLSocketFactory(factory);
+    }
+
+    public SSLSocketFactory getSSLSocketFactory() {
+        return https.getSSLSocketFactory();
+    }
+
+    // -- leased exchange
+
+    public void disconnect() {
+        pooled.disconnect();
+    }
+
+    public void connect() throws IOException {
+        pooled.connect();
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return pooled.getInputStream();
+    }
+
+    public InputStream getErrorStream() {
+        return pooled.getErrorStream();
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        return pooled.getOutputStream();
+    }
+
+    public int getResponseCode() throws IOException {
+        return pooled.getResponseCode();
+    }
+
+    public void setRequestProperty(String key, String value) {
+        pooled.setRequestProperty(key, value);
+    }
+
+    public void addRequestProperty(String key, String value) {
+        pooled.addRequestProperty(key, value);
+    }
+
+    public void setFixedLengthStreamingMode(int contentLength) {
+        pooled.setFixedLengthStreamingMode(contentLength);
+    }
+
+    public void setFixedLengthStreamingMode(long contentLength) {
+        pooled.setFixedLengthStreamingMode(contentLength);
+    }
+
+    public void setChunkedStreamingMode(int chunkLength) {
+        pooled.setChunkedStreamingMode(chunkLength);
+    }
+
+    // -- plain delegation
+
+    public boolean usingProxy() {
+        return https.usingProxy();
+    }
+
+    public String getResponseMessage() throws IOException {
+        return https.getResponseMessage();
+    }
+
+    public void setRequestMethod(String method) throws ProtocolException {
+        https.setRequestMethod(method);
+    }
+
+    public String getRequestMethod() {
+        return https.getRequestMethod();
+    }
+
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        https.setInstanceFollowRedirects(followRedirects);
+    }
+
+    public boolean getInstanceFollowRedirects() {
+        return https.getInstanceFollowRedirects();
+    }
+
+    public String getHeaderFieldKey(int n) {
+        return https.getHeaderFieldKey(n);
+    }
+
+    public String getHeaderField(int n) {
+        return https.getHeaderField(n);
+    }
+
+    public String getHeaderField(String name) {
+        return https.getHeaderField(name);
+    }
+
+    public Map<String, List<String>> getHeaderFields() {
+        return https.getHeaderFields();
+    }
+
+    public long getHeaderFieldDate(String name, long defaultValue) {
+        return https.getHeaderFieldDate(name, defaultValue);
+    }
+
+    public int getHeaderFieldInt(String name, int defaultValue) {
+        return https.getHeaderFieldInt(name, defaultValue);
+    }
+
+    public Permission getPermission() throws IOException {
+        return https.getPermission();
+    }
+
+    public URL getURL() {
+        return https.getURL();
+    }
+
+    public int getContentLength() {
+        return https.getContentLength();
+    }
+
+    public String getContentType() {
+        return https.getContentType();
+    }
+
+    public String getContentEncoding() {
+        return https.getContentEncoding();
+    }
+
+    public long getExpiration() {
+        return https.getExpiration();
+    }
+
+    public long getDate() {
+        return https.getDate();
+    }
+
+    public long getLastModified() {
+        return https.getLastModified();
+    }
+
+    public Object getContent() throws IOException {
+        return https.getContent();
+    }
+
+    public void setDoInput(boolean doInput) {
+        https.setDoInput(doInput);
+    }
+
+    public boolean getDoInput() {
+        return https.getDoInput();
+    }
+
+    public void setDoOutput(boolean doOutput) {
+        https.setDoOutput(doOutput);
+    }
+
+    public boolean getDoOutput() {
+        return https.getDoOutput();
+    }
+
+    public void setAllowUserInteraction(boolean allowUserInteraction) {
+        https.setAllowUserInteraction(allowUserInteraction);
+    }
+
+    public boolean getAllowUserInteraction() {
+        return https.getAllowUserInteraction();
+    }
+
+    public void setUseCaches(boolean useCaches) {
+        https.setUseCaches(useCaches);
+    }
+
+    public boolean getUseCaches() {
+        return https.getUseCaches();
+    }
+
+    public void setIfModifiedSince(long ifModifiedSince) {
+        https.setIfModifiedSince(ifModifiedSince);
+    }
+
+    public long getIfModifiedSince() {
+        return https.getIfModifiedSince();
+    }
+
+    public void setConnectTimeout(int timeout) {
+        https.setConnectTimeout(timeout);
+    }
+
+    public int getConnectTimeout() {
+        return https.getConnectTimeout();
+    }
+
+    public void setReadTimeout(int timeout) {
+        https.setReadTimeout(timeout);
+    }
+
+    public int getReadTimeout() {
+        return https.getReadTimeout();
+    }
+
+    public String getRequestProperty(String key) {
+        return https.getRequestProperty(key);
+    }
+
+    public Map<String, List<String>> getRequestProperties() {
+        return https.getRequestProperties();
+    }
+
+    public String toString() {
+        return "WslitePooledHttpsConnection[" + https + "]";
+    }
+}
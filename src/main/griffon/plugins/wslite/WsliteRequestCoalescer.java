@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import wslite.http.HTTPClient;
+import wslite.http.HTTPClientException;
+import wslite.http.HTTPMethod;
+import wslite.http.HTTPRequest;
+import wslite.http.HTTPResponse;
+
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent identical GET requests share a single network call.<p>
+ * Requests are identical when they agree on method, URL (including the query string)
+ * and request headers. The first request of a burst is sent; requests arriving while
+ * it is in flight wait for it and receive their own copy of its response, or an
+ * exception of their own when it fails. Waiting requests give up once their read
+ * timeout elapses, or when their thread is interrupted. Nothing is kept once the call
+ * completes, coalescing is not a cache.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteRequestCoalescer implements WsliteHTTPInterceptor {
+    private final String id;
+    private final HTTPClient client;
+    private final ConcurrentMap<String, Call> inFlight = new ConcurrentHashMap<String, Call>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param client the client whose read timeout applies to requests that do not set their own
+     */
+    public WsliteRequestCoalescer(String id, HTTPClient client) {
+        this.id = id;
+        this.client = client;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return requests that were sent over the network
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return requests that were answered by a call already in flight
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain) {
+        if (!isCoalescable(request)) return chain.proceed(request);
+        String key = keyOf(request);
+        Call call = new Call();
+        Call existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.join(request, readTimeoutOf(request));
+        }
+
+        sent.incrementAndGet();
+        HTTPResponse response = null;
+        Throwable failure = null;
+        try {
+            response = chain.proceed(request);
+            return response;
+        } catch (Throwable t) {
+            failure = t;
+            throw WsliteRequestCoalescer.<RuntimeException>rethrow(t);
+        } finally {
+            inFlight.remove(key, call);
+            call.complete(response, failure);
+        }
+    }
+
+    private int readTimeoutOf(HTTPRequest request) {
+        if (request.getIsReadTimeoutSet()) return request.getReadTimeout();
+        return client != null ? client.getReadTimeout() : 0;
+    }
+
+    private static boolean isCoalescable(HTTPRequest request) {
+        if (request instanceof WsliteHTTPRequest && ((WsliteHTTPRequest) request).isStreaming()) return false;
+        HTTPMethod method = request.getMethod();
+        return (method == null || method == HTTPMethod.GET) && request.getUrl() != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    static String keyOf(HTTPRequest request) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(request.getMethod() != null ? request.getMethod() : HTTPMethod.GET).append(' ').append(request.getUrl());
+        Map<Object, Object> headers = request.getHeaders();
+        if (headers != null && !headers.isEmpty()) {
+            Map<String, String> sorted = new TreeMap<String, String>();
+            for (Map.Entry<Object, Object> header : headers.entrySet()) {
+                if (header.getKey() == null) continue;
+                sorted.put(header.getKey().toString().toLowerCase(), String.valueOf(header.getValue()));
+            }
+            for (Map.Entry<String, String> header : sorted.entrySet()) {
+                key.append('\n').append(header.getKey()).append(": ").append(header.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static HTTPResponse copyOf(HTTPResponse response, HTTPRequest request) {
+        if (response == null) return null;
+        HTTPResponse copy = new HTTPResponse();
+        copy.setUrl(request.getUrl());
+        copy.setStatusCode(response.getStatusCode());
+        copy.setStatusMessage(response.getStatusMessage());
+        copy.setContentType(response.getContentType());
+        copy.setCharset(response.getCharset());
+        copy.setContentEncoding(response.getContentEncoding());
+        copy.setContentLength(response.getContentLength());
+        copy.setDate(response.getDate());
+        copy.setExpiration(response.getExpiration());
+        copy.setLastModified(response.getLastModified());
+        copy.setHeaders(response.getHeaders() != null ? new LinkedHashMap<Object, Object>(response.getHeaders()) : null);
+        // response bodies are never modified once received, the array can be shared
+        copy.setData(response.getData());
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T rethrow(Throwable t) throws T {
+        throw (T) t;
+    }
+
+    private static class Call {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile HTTPResponse response;
+        private volatile Throwable failure;
+
+        private void complete(HTTPResponse response, Throwable failure) {
+            this.response = response;
+            this.failure = failure;
+            done.countDown();
+        }
+
+        /**
+         * @param readTimeout milliseconds to wait for the call, zero waits until it completes
+         */
+        private HTTPResponse join(HTTPRequest request, int readTimeout) {
+            try {
+                if (readTimeout > 0) {
+                    if (!done.await(readTimeout, TimeUnit.MILLISECONDS)) {
+                        SocketTimeoutException timeout = new SocketTimeoutException("Read timed out");
+                        throw WsliteRequestCoalescer.<RuntimeException>rethrow(
+                            new HTTPClientException(timeout.getMessage(), timeout, request, null));
+                    }
+                } else {
+                    done.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw WsliteRequestCoalescer.<RuntimeException>rethrow(
+                    new HTTPClientException("Interrupted while waiting for " + request.getUrl(), e, request, null));
+            }
+
+            if (failure == null) return copyOf(response, request);
+            // every caller gets an exception of its own, sharing one instance across threads
+            // would mix up their stack traces and suppressed exceptions
+            if (failure instanceof Error) throw (Error) failure;
+            HTTPResponse failedResponse = failure instanceof HTTPClientException ?
+                copyOf(((HTTPClientException) failure).getResponse(), request) : null;
+            throw WsliteRequestCoalescer.<RuntimeException>rethrow(
+                new HTTPClientException(failure.getMessage(), failure, request, failedResponse));
+        }
+    }
+}
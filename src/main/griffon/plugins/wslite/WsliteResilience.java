@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import wslite.http.HTTPClientException;
+import wslite.http.HTTPMethod;
+import wslite.http.HTTPRequest;
+import wslite.http.HTTPResponse;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Protects a backend from the requests of a single client.<p>
+ * Every request goes through a {@link WsliteCircuitBreaker} and a {@link WsliteConcurrencyLimit};
+ * requests refused by either fail right away with a {@code RejectedExecutionException}.
+ * Requests that fail because of the network, a 5xx or a 429 response are retried when
+ * their method is listed in the policy's {@code retryMethods}, after a random delay of up
+ * to {@code retryBackoff * 2^retry} milliseconds. Retries are paid from a budget that every
+ * request replenishes by {@code retryRatio}, so that retries never add more than that share
+ * of load to a struggling backend.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteResilience implements WsliteHTTPInterceptor {
+    private static final Random RANDOM = new Random();
+
+    private final String id;
+    private final WsliteResiliencePolicy policy;
+    private final WsliteConcurrencyLimit limit;
+    private final WsliteCircuitBreaker circuitBreaker;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesDenied = new AtomicLong();
+    private double retryTokens;
+
+    public WsliteResilience(String id, WsliteResiliencePolicy policy, List<WsliteResilienceListener> listeners) {
+        this.id = id;
+        this.policy = policy;
+        this.limit = new WsliteConcurrencyLimit(policy.getInitialConcurrency(), policy.getMinConcurrency(),
+            policy.getMaxConcurrency(), policy.getLatencyTolerance());
+        this.circuitBreaker = new WsliteCircuitBreaker(id, policy, listeners);
+        this.retryTokens = policy.getRetryBudget();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public WsliteResiliencePolicy getPolicy() {
+        return policy;
+    }
+
+    public WsliteConcurrencyLimit getConcurrencyLimit() {
+        return limit;
+    }
+
+    public WsliteCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return requests refused because the concurrency limit was reached
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return requests refused because the circuit was open
+     */
+    public long getShortCircuited() {
+        return shortCircuited.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return retries that were not attempted because the retry budget was spent
+     */
+    public long getRetriesDenied() {
+        return retriesDenied.get();
+    }
+
+    public synchronized double getRetryTokens() {
+        return retryTokens;
+    }
+
+    public HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain) {
+        earnRetry();
+        boolean retryable = isRetryable(request);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return attempt(request, chain);
+            } catch (RejectedExecutionException e) {
+                throw e;
+            } catch (Throwable t) {
+                if (!retryable || !isFailure(t) || attempt >= policy.getMaxRetries()) throw WsliteResilience.<RuntimeException>rethrow(t);
+                if (!spendRetry()) {
+                    retriesDenied.incrementAndGet();
+                    throw WsliteResilience.<RuntimeException>rethrow(t);
+                }
+                if (!backoff(attempt)) throw WsliteResilience.<RuntimeException>rethrow(t);
+                retries.incrementAndGet();
+            }
+        }
+    }
+
+    private HTTPResponse attempt(HTTPRequest request, WsliteHTTPChain chain) {
+        if (!limit.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Client '" + id + "' reached its concurrency limit of " + limit.getLimit());
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            limit.cancel();
+            shortCircuited.incrementAndGet();
+            throw new RejectedExecutionException("Circuit of client '" + id + "' is open");
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            HTTPResponse response = chain.proceed(request);
+            failed = false;
+            return response;
+        } catch (Throwable t) {
+            failed = isFailure(t);
+            throw WsliteResilience.<RuntimeException>rethrow(t);
+        } finally {
+            limit.release(System.nanoTime() - start, failed);
+            if (failed) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        }
+    }
+
+    private boolean isRetryable(HTTPRequest request) {
+        if (request instanceof WsliteHTTPRequest && ((WsliteHTTPRequest) request).isStreaming()) return false;
+        HTTPMethod method = request.getMethod();
+        return policy.getMaxRetries() > 0 && policy.getRetryMethods().contains(method != null ? method.name() : "GET");
+    }
+
+    /**
+     * Failures are errors caused by the backend or the network; client errors are a valid answer.
+     */
+    static boolean isFailure(Throwable t) {
+        if (!(t instanceof HTTPClientException)) return true;
+        HTTPResponse response = ((HTTPClientException) t).getResponse();
+        if (response == null) return true;
+        int status = response.getStatusCode();
+        return status >= 500 || status == 429 || status <= 0;
+    }
+
+    private synchronized void earnRetry() {
+        retryTokens = Math.min(policy.getRetryBudget(), retryTokens + policy.getRetryRatio());
+    }
+
+    private synchronized boolean spendRetry() {
+        if (retryTokens < 1.0d) return false;
+        retryTokens -= 1.0d;
+        return true;
+    }
+
+    private boolean backoff(int attempt) {
+        long ceiling = Math.min(policy.getMaxRetryBackoff(), policy.getRetryBackoff() << Math.min(attempt, 20));
+        if (ceiling <= 0L) return true;
+        try {
+            Thread.sleep((long) (RANDOM.nextDouble() * ceiling));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T rethrow(Throwable t) throws T {
+        throw (T) t;
+    }
+
+    public String toString() {
+        return "WsliteResilience[" + id + ", " + circuitBreaker.getState() + ", limit=" + limit.getLimit() + "]";
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Settings shared by the clients that use the same resilience policy.<p>
+ * Each client applies them on its own: limits, circuit state and retry budgets
+ * are never shared between clients.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteResiliencePolicy {
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(
+        new LinkedHashSet<String>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE")));
+
+    private final String name;
+    private int initialConcurrency = 20;
+    private int minConcurrency = 1;
+    private int maxConcurrency = 200;
+    private double latencyTolerance = 2.0d;
+    private double failureRateThreshold = 0.5d;
+    private int slidingWindow = 20;
+    private int minimumCalls = 10;
+    private long openTimeout = 30000L;
+    private int halfOpenCalls = 3;
+    private int maxRetries = 2;
+    private long retryBackoff = 100L;
+    private long maxRetryBackoff = 2000L;
+    private double retryRatio = 0.2d;
+    private int retryBudget = 20;
+    private Set<String> retryMethods = IDEMPOTENT_METHODS;
+
+    public WsliteResiliencePolicy(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getInitialConcurrency() {
+        return initialConcurrency;
+    }
+
+    public WsliteResiliencePolicy setInitialConcurrency(int initialConcurrency) {
+        this.initialConcurrency = initialConcurrency;
+        return this;
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public WsliteResiliencePolicy setMinConcurrency(int minConcurrency) {
+        this.minConcurrency = Math.max(1, minConcurrency);
+        return this;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public WsliteResiliencePolicy setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * @return how many times slower than usual responses may get before the concurrency limit shrinks
+     */
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public WsliteResiliencePolicy setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = Math.max(1.0d, latencyTolerance);
+        return this;
+    }
+
+    /**
+     * @return share of failed calls, between 0 and 1, that opens the circuit
+     */
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public WsliteResiliencePolicy setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * @return number of most recent calls the failure rate is computed from
+     */
+    public int getSlidingWindow() {
+        return slidingWindow;
+    }
+
+    public WsliteResiliencePolicy setSlidingWindow(int slidingWindow) {
+        this.slidingWindow = Math.max(1, slidingWindow);
+        return this;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public WsliteResiliencePolicy setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * @return milliseconds an open circuit waits before letting trial calls through
+     */
+    public long getOpenTimeout() {
+        return openTimeout;
+    }
+
+    public WsliteResiliencePolicy setOpenTimeout(long openTimeout) {
+        this.openTimeout = openTimeout;
+        return this;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public WsliteResiliencePolicy setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public WsliteResiliencePolicy setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+        return this;
+    }
+
+    /**
+     * @return upper bound, in milliseconds, of the delay before the first retry; it doubles on every retry
+     */
+    public long getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public WsliteResiliencePolicy setRetryBackoff(long retryBackoff) {
+        this.retryBackoff = retryBackoff;
+        return this;
+    }
+
+    public long getMaxRetryBackoff() {
+        return maxRetryBackoff;
+    }
+
+    public WsliteResiliencePolicy setMaxRetryBackoff(long maxRetryBackoff) {
+        this.maxRetryBackoff = maxRetryBackoff;
+        return this;
+    }
+
+    /**
+     * @return retries earned by every request sent
+     */
+    public double getRetryRatio() {
+        return retryRatio;
+    }
+
+    public WsliteResiliencePolicy setRetryRatio(double retryRatio) {
+        this.retryRatio = retryRatio;
+        return this;
+    }
+
+    /**
+     * @return the most retries that can be saved up and spent in a burst
+     */
+    public int getRetryBudget() {
+        return retryBudget;
+    }
+
+    public WsliteResiliencePolicy setRetryBudget(int retryBudget) {
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    public Set<String> getRetryMethods() {
+        return retryMethods;
+    }
+
+    public WsliteResiliencePolicy setRetryMethods(Set<String> retryMethods) {
+        Set<String> methods = new LinkedHashSet<String>();
+        for (String method : retryMethods) methods.add(method.toUpperCase());
+        this.retryMethods = Collections.unmodifiableSet(methods);
+        return this;
+    }
+
+    public String toString() {
+        return "WsliteResiliencePolicy[" + name + "]";
+    }
+}
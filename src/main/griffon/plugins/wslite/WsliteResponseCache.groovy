@@ -0,0 +1,489 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import wslite.http.HTTPClient
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+import java.security.MessageDigest
+import java.text.SimpleDateFormat
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Caches GET responses following their {@code Cache-Control}, {@code Expires},
+ * {@code ETag} and {@code Last-Modified} headers.<p>
+ * Fresh entries are served without contacting the server. Stale entries carrying a
+ * validator are revalidated with {@code If-None-Match}/{@code If-Modified-Since};
+ * a {@code 304} answer is served from the stored body. Entries live in a memory
+ * LRU bounded by entry count and total body size. When a directory is configured,
+ * entries evicted from memory are kept on disk, bounded by {@code maxDiskBytes}.<p>
+ * A cache may be shared by several clients, each one attached through {@link #forClient}.
+ * Entries are partitioned by the credentials of the client and of the request, responses
+ * marked {@code private} are never stored, and clients whose authorization can't be
+ * identified by value bypass the cache.
+ *
+ * @author Andres Almiray
+ */
+class WsliteResponseCache {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteResponseCache)
+    private static final List<String> UNSAFE_METHODS = ['POST', 'PUT', 'DELETE', 'PATCH']
+    private static final List<String> KEY_HEADERS = ['Accept', 'Accept-Encoding']
+    // disk entries start with this marker, followed by the format version
+    private static final int DISK_MAGIC = 0x57534c43
+    private static final int DISK_VERSION = 1
+    // only files ending with this suffix are read, trimmed or cleared
+    private static final String DISK_SUFFIX = '.wslc'
+
+    final String name
+    final int maxEntries
+    final long maxBytes
+    final File directory
+    final long maxDiskBytes
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+    private long memoryBytes
+    private final AtomicLong hits = new AtomicLong()
+    private final AtomicLong diskHits = new AtomicLong()
+    private final AtomicLong misses = new AtomicLong()
+    private final AtomicLong revalidations = new AtomicLong()
+    private final AtomicLong stores = new AtomicLong()
+    private final AtomicLong evictions = new AtomicLong()
+
+    WsliteResponseCache(String name, int maxEntries, long maxBytes, File directory = null, long maxDiskBytes = 0L) {
+        this.name = name
+        this.maxEntries = maxEntries > 0 ? maxEntries : Integer.MAX_VALUE
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE
+        this.directory = directory
+        this.maxDiskBytes = maxDiskBytes > 0 ? maxDiskBytes : Long.MAX_VALUE
+        directory?.mkdirs()
+    }
+
+    long getHitCount() { hits.get() }
+
+    long getDiskHitCount() { diskHits.get() }
+
+    long getMissCount() { misses.get() }
+
+    long getRevalidationCount() { revalidations.get() }
+
+    long getStoreCount() { stores.get() }
+
+    long getEvictionCount() { evictions.get() }
+
+    synchronized int getSize() { memory.size() }
+
+    synchronized long getMemoryBytes() { memoryBytes }
+
+    synchronized void clear() {
+        memory.clear()
+        memoryBytes = 0L
+        diskFiles().each { it.delete() }
+    }
+
+    /**
+     * Returns an interceptor serving the requests of {@code client} from this cache.
+     */
+    WsliteHTTPInterceptor forClient(HTTPClient client) {
+        new ClientView(this, client)
+    }
+
+    HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain, HTTPClient client) {
+        String method = request.method?.toString()
+        if (method in UNSAFE_METHODS) {
+            invalidate(request.url.toString())
+            return chain.proceed(request)
+        }
+        List<String> requestDirectives = directives(header(request.headers, 'Cache-Control'))
+        String partition = partitionOf(client, request)
+        if (method != HTTPMethod.GET.toString() || 'no-store' in requestDirectives || partition == null) {
+            return chain.proceed(request)
+        }
+
+        String key = keyOf(request, partition)
+        Entry entry = lookup(key)
+        boolean forceRevalidation = 'no-cache' in requestDirectives || header(request.headers, 'Pragma') == 'no-cache'
+        if (entry != null && !forceRevalidation && entry.isFresh()) {
+            hits.incrementAndGet()
+            return entry.toResponse(request)
+        }
+
+        if (entry?.etag) request.headers['If-None-Match'] = entry.etag
+        if (entry?.lastModified) request.headers['If-Modified-Since'] = entry.lastModified
+        HTTPResponse response = chain.proceed(request)
+
+        if (entry != null && response.statusCode == 304) {
+            revalidations.incrementAndGet()
+            if (entry.refresh(response)) {
+                store(key, entry)
+            } else {
+                remove(key)
+            }
+            return entry.toResponse(request)
+        }
+
+        misses.incrementAndGet()
+        Entry fresh = Entry.of(response)
+        if (fresh != null) {
+            store(key, fresh)
+        } else if (entry != null) {
+            remove(key)
+        }
+        response
+    }
+
+    private static String keyOf(HTTPRequest request, String partition) {
+        StringBuilder key = new StringBuilder(request.url.toString())
+        KEY_HEADERS.each { key.append('|').append(header(request.headers, it) ?: '') }
+        key.append('|').append(partition)
+        key.toString()
+    }
+
+    /**
+     * Identifies whose credentials a request is sent with. Returns an empty string for
+     * anonymous requests and {@code null} when the credentials can't be told apart by value,
+     * in which case the request is not cached.
+     */
+    private static String partitionOf(HTTPClient client, HTTPRequest request) {
+        StringBuilder partition = new StringBuilder()
+        def authorization = client?.authorization
+        if (authorization != null) {
+            if (!authorization.hasProperty('username') || !authorization.hasProperty('password')) return null
+            partition.append(authorization.getClass().name).append(':').append(authorization.username)
+                .append(':').append(digest(String.valueOf(authorization.password)))
+        }
+        String header = header(request.headers, 'Authorization')
+        if (header) partition.append('|').append(digest(header))
+        partition.toString()
+    }
+
+    private static String digest(String value) {
+        MessageDigest.getInstance('SHA-1').digest(value.getBytes('UTF-8')).encodeHex().toString()
+    }
+
+    private Entry lookup(String key) {
+        synchronized (this) {
+            Entry entry = memory[key]
+            if (entry != null) return entry
+        }
+        Entry entry = readFromDisk(key)
+        if (entry != null) {
+            diskHits.incrementAndGet()
+            store(key, entry)
+        }
+        entry
+    }
+
+    private void store(String key, Entry entry) {
+        List<Map.Entry<String, Entry>> spilled = []
+        synchronized (this) {
+            Entry previous = memory.put(key, entry)
+            if (previous != null) memoryBytes -= previous.size
+            memoryBytes += entry.size
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator()
+            while ((memory.size() > maxEntries || memoryBytes > maxBytes) && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next()
+                if (eldest.key == key) continue
+                it.remove()
+                memoryBytes -= eldest.value.size
+                evictions.incrementAndGet()
+                spilled << eldest
+            }
+        }
+        stores.incrementAndGet()
+        spilled.each { writeToDisk(it.key, it.value) }
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Entry previous = memory.remove(key)
+            if (previous != null) memoryBytes -= previous.size
+        }
+        fileOf(key)?.delete()
+    }
+
+    private void invalidate(String url) {
+        Collection<String> keys
+        synchronized (this) {
+            keys = memory.keySet().findAll { it.startsWith(url + '|') }
+        }
+        keys.each { remove(it) }
+    }
+
+    private File fileOf(String key) {
+        if (directory == null) return null
+        new File(directory, digest(key) + DISK_SUFFIX)
+    }
+
+    private List<File> diskFiles() {
+        if (directory == null) return []
+        (directory.listFiles({ File file -> file.file && file.name.endsWith(DISK_SUFFIX) } as FileFilter) ?: []).toList()
+    }
+
+    // entries are stored as plain data (no Java serialization), so that a tampered
+    // file can at worst yield a wrong response, never run code
+    private Entry readFromDisk(String key) {
+        File file = fileOf(key)
+        if (file == null || !file.exists()) return null
+        try {
+            Entry entry = file.withDataInputStream { DataInputStream input -> Entry.read(input, key, maxDiskBytes) }
+            file.delete()
+            entry
+        } catch (Exception e) {
+            LOG.debug("Discarding unreadable cache entry $file", e)
+            file.delete()
+            null
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        File file = fileOf(key)
+        if (file == null || entry.size > maxDiskBytes) return
+        try {
+            file.withDataOutputStream { DataOutputStream output -> entry.write(output, key) }
+            trimDisk()
+        } catch (IOException e) {
+            LOG.warn("Could not write cache entry to $file", e)
+            file.delete()
+        }
+    }
+
+    private synchronized void trimDisk() {
+        if (maxDiskBytes == Long.MAX_VALUE) return
+        List<File> files = diskFiles().sort { it.lastModified() }
+        long total = files.sum(0L) { it.length() }
+        for (File file : files) {
+            if (total <= maxDiskBytes) break
+            total -= file.length()
+            file.delete()
+        }
+    }
+
+    private static String header(Map headers, String name) {
+        def value = headers?.find { it.key?.toString()?.equalsIgnoreCase(name) }?.value
+        value instanceof List ? (value ? value[0]?.toString() : null) : value?.toString()
+    }
+
+    private static List<String> directives(String value) {
+        value ? value.split(',')*.trim()*.toLowerCase() : []
+    }
+
+    String toString() {
+        "WsliteResponseCache[$name, hits=${hits.get()}, misses=${misses.get()}, revalidations=${revalidations.get()}]"
+    }
+
+    private static class ClientView implements WsliteHTTPInterceptor {
+        private final WsliteResponseCache cache
+        private final HTTPClient client
+
+        ClientView(WsliteResponseCache cache, HTTPClient client) {
+            this.cache = cache
+            this.client = client
+        }
+
+        HTTPResponse intercept(HTTPRequest request, WsliteHTTPChain chain) {
+            cache.intercept(request, chain, client)
+        }
+
+        String toString() {
+            cache.toString()
+        }
+    }
+
+    private static class Entry {
+        int statusCode
+        String statusMessage
+        String contentType
+        String charset
+        String contentEncoding
+        Map<String, Object> headers
+        byte[] data
+        String etag
+        String lastModified
+        long expiresAt
+
+        long getSize() { data?.length ?: 0 }
+
+        boolean isFresh() { System.currentTimeMillis() < expiresAt }
+
+        static Entry of(HTTPResponse response) {
+            if (response.statusCode != 200) return null
+            List<String> cacheControl = WsliteResponseCache.directives(WsliteResponseCache.header(response.headers, 'Cache-Control'))
+            // the cache may be shared by several users
+            if ('no-store' in cacheControl || cacheControl.any { it == 'private' || it.startsWith('private=') }) return null
+            String vary = WsliteResponseCache.header(response.headers, 'Vary')
+            if (vary && vary.split(',')*.trim().any { !WsliteResponseCache.KEY_HEADERS*.toLowerCase().contains(it.toLowerCase()) }) return null
+
+            Entry entry = new Entry(
+                statusCode: response.statusCode,
+                statusMessage: response.statusMessage,
+                contentType: response.contentType,
+                charset: response.charset,
+                contentEncoding: response.contentEncoding,
+                headers: new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER),
+                data: response.data?.clone())
+            response.headers?.each { k, v -> if (k != null) entry.headers[k.toString()] = v }
+            entry.etag = WsliteResponseCache.header(response.headers, 'ETag')
+            entry.lastModified = WsliteResponseCache.header(response.headers, 'Last-Modified')
+            Long expiresAt = expirationOf(response.headers, cacheControl)
+            if (expiresAt == null) return null
+            entry.expiresAt = expiresAt
+            if (!entry.etag && !entry.lastModified && !entry.isFresh()) return null
+            entry
+        }
+
+        /**
+         * @return {@code false} when the updated headers make the entry no longer cacheable
+         */
+        boolean refresh(HTTPResponse notModified) {
+            notModified.headers?.each { k, v ->
+                if (k != null && !(k.toString().toLowerCase() in ['content-length', 'transfer-encoding'])) headers[k.toString()] = v
+            }
+            etag = WsliteResponseCache.header(notModified.headers, 'ETag') ?: etag
+            lastModified = WsliteResponseCache.header(notModified.headers, 'Last-Modified') ?: lastModified
+            List<String> cacheControl = WsliteResponseCache.directives(WsliteResponseCache.header(headers, 'Cache-Control'))
+            Long refreshed = expirationOf(headers, cacheControl)
+            expiresAt = refreshed ?: System.currentTimeMillis()
+            refreshed != null && !('no-store' in cacheControl) && !cacheControl.any { it == 'private' || it.startsWith('private=') }
+        }
+
+        void write(DataOutputStream output, String key) {
+            output.writeInt(WsliteResponseCache.DISK_MAGIC)
+            output.writeInt(WsliteResponseCache.DISK_VERSION)
+            writeString(output, key)
+            output.writeInt(statusCode)
+            [statusMessage, contentType, charset, contentEncoding, etag, lastModified].each { writeString(output, it) }
+            output.writeLong(expiresAt)
+            output.writeInt(headers.size())
+            headers.each { String name, value ->
+                List values = value instanceof List ? value : [value]
+                writeString(output, name)
+                output.writeInt(values.size())
+                values.each { writeString(output, it?.toString()) }
+            }
+            output.writeInt(data?.length ?: 0)
+            if (data) output.write(data)
+        }
+
+        /**
+         * Reads an entry written by {@link #write}, returning {@code null} when the file
+         * belongs to another key or was written in another format.
+         */
+        static Entry read(DataInputStream input, String key, long maxBytes) {
+            if (input.readInt() != WsliteResponseCache.DISK_MAGIC || input.readInt() != WsliteResponseCache.DISK_VERSION) return null
+            if (readString(input) != key) return null
+            Entry entry = new Entry(statusCode: input.readInt())
+            entry.statusMessage = readString(input)
+            entry.contentType = readString(input)
+            entry.charset = readString(input)
+            entry.contentEncoding = readString(input)
+            entry.etag = readString(input)
+            entry.lastModified = readString(input)
+            entry.expiresAt = input.readLong()
+            entry.headers = new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER)
+            int headerCount = input.readInt()
+            if (headerCount < 0 || headerCount > 1024) return null
+            // plain loops, closures in this static method could not call readString()
+            for (int i = 0; i < headerCount; i++) {
+                String name = readString(input)
+                int valueCount = input.readInt()
+                if (name == null || valueCount < 0 || valueCount > 1024) throw new IOException("Malformed header in cache entry")
+                List<String> values = []
+                for (int j = 0; j < valueCount; j++) values << readString(input)
+                entry.headers[name] = values.size() == 1 ? values[0] : values
+            }
+            int length = input.readInt()
+            if (length < 0 || length > maxBytes) return null
+            entry.data = new byte[length]
+            input.readFully(entry.data)
+            entry
+        }
+
+        private static void writeString(DataOutputStream output, String value) {
+            output.writeBoolean(value != null)
+            if (value != null) output.writeUTF(value)
+        }
+
+        private static String readString(DataInputStream input) {
+            input.readBoolean() ? input.readUTF() : null
+        }
+
+        HTTPResponse toResponse(HTTPRequest request) {
+            new HTTPResponse(
+                url: request.url,
+                statusCode: statusCode,
+                statusMessage: statusMessage,
+                contentType: contentType,
+                charset: charset,
+                contentEncoding: contentEncoding,
+                contentLength: data?.length ?: 0,
+                headers: new TreeMap<String, Object>(headers),
+                data: data?.clone())
+        }
+
+        /**
+         * @return when the entry goes stale, {@code null} when {@code max-age} or {@code Age}
+         *         is malformed and the response must not be cached
+         */
+        private static Long expirationOf(Map headers, List<String> cacheControl) {
+            long now = System.currentTimeMillis()
+            if ('no-cache' in cacheControl || 'must-revalidate' in cacheControl && 'max-age=0' in cacheControl) return now
+            String maxAge = cacheControl.find { it.startsWith('max-age=') }
+            if (maxAge) {
+                Long seconds = secondsOf(maxAge.substring(8))
+                String ageHeader = WsliteResponseCache.header(headers, 'Age')
+                Long age = ageHeader != null ? secondsOf(ageHeader) : 0L
+                if (seconds == null || age == null) return null
+                return now + Math.max(0L, seconds - age) * 1000L
+            }
+            Date expires = parseDate(WsliteResponseCache.header(headers, 'Expires'))
+            if (expires != null) {
+                Date date = parseDate(WsliteResponseCache.header(headers, 'Date'))
+                return now + expires.time - (date?.time ?: now)
+            }
+            Date lastModified = parseDate(WsliteResponseCache.header(headers, 'Last-Modified'))
+            if (lastModified != null) {
+                // heuristic freshness, a tenth of the time since the last modification
+                return now + Math.max(0L, now - lastModified.time) / 10L
+            }
+            now
+        }
+
+        // delta-seconds as defined by RFC 7234, quotes tolerated; values beyond a
+        // hundred years are capped so that the arithmetic can't overflow
+        private static Long secondsOf(String value) {
+            String digits = value?.trim()
+            if (digits?.length() > 1 && digits.startsWith('"') && digits.endsWith('"')) digits = digits[1..-2]
+            if (!digits || !(digits ==~ /\d+/)) return null
+            digits.length() > 10 ? 3153600000L : Math.min(digits.toLong(), 3153600000L)
+        }
+
+        private static Date parseDate(String value) {
+            if (!value) return null
+            try {
+                SimpleDateFormat format = new SimpleDateFormat('EEE, dd MMM yyyy HH:mm:ss zzz', Locale.US)
+                format.timeZone = TimeZone.getTimeZone('GMT')
+                format.parse(value)
+            } catch (java.text.ParseException e) {
+                null
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import wslite.rest.RESTClient;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Handle on a RESTClient, see {@link WsliteClientHandle}.
+ * <pre>
+ * def github = WsliteRestHandle.create(url: 'https://api.github.com', id: 'github')
+ * github.rest { ... }
+ * </pre>
+ *
+ * @author Andres Almiray
+ */
+public class WsliteRestHandle extends WsliteClientHandle<RESTClient> {
+    /**
+     * Creates a handle from the same parameters {@code withRest} accepts.
+     */
+    public static WsliteRestHandle create(Map<String, Object> params) {
+        if (params == null) throw new IllegalArgumentException("Client parameters are required");
+        return new WsliteRestHandle(null, params);
+    }
+
+    /**
+     * Creates a handle on the RESTClient registered with the given id, or declared
+     * under that id in {@code griffon.wslite.clients}.
+     */
+    public static WsliteRestHandle forId(String id) {
+        return new WsliteRestHandle(id, null);
+    }
+
+    private WsliteRestHandle(String id, Map<String, Object> params) {
+        super(WsliteMetrics.REST, id, params);
+    }
+
+    public <R> R rest(Closure<R> closure) {
+        return call(closure);
+    }
+
+    public <R> R rest(CallableWithArgs<R> callable) {
+        return call(callable);
+    }
+
+    protected RESTClient fetch(Map<String, Object> params) {
+        return WsliteClientHolder.getInstance().fetchRestClient(params);
+    }
+
+    protected RESTClient lookup(String id) {
+        return WsliteClientHolder.getInstance().lookupRestClient(id);
+    }
+
+    protected Closeable streamingClientOf(RESTClient client) {
+        return new WsliteStreamingRESTClient(client);
+    }
+}
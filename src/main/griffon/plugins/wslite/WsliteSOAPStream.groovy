@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import groovy.util.slurpersupport.GPathResult
+
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLOutputFactory
+import javax.xml.stream.XMLStreamReader
+import javax.xml.stream.XMLStreamWriter
+
+import static javax.xml.stream.XMLStreamConstants.*
+
+/**
+ * SOAP response read with a StAX pull parser.<p>
+ * The envelope is never held in memory as a whole. Either walk the body with
+ * {@link #getReader()}, which is positioned on the first element inside
+ * {@code Body}, or let {@code eachElement} hand over elements one at a time as
+ * {@code GPathResult}s; memory is then bounded by the size of a single element.
+ *
+ * @author Andres Almiray
+ */
+class WsliteSOAPStream implements Closeable {
+    private static final XMLInputFactory INPUT_FACTORY
+    private static final XMLOutputFactory OUTPUT_FACTORY
+
+    static {
+        INPUT_FACTORY = XMLInputFactory.newInstance()
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true)
+        OUTPUT_FACTORY = XMLOutputFactory.newInstance()
+        OUTPUT_FACTORY.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true)
+    }
+
+    final WsliteStreamingResponse response
+    private final XMLStreamReader reader
+    private GPathResult fault
+    // number of elements open inside Body, its children sit at level 1
+    private int level
+    private boolean done
+
+    WsliteSOAPStream(WsliteStreamingResponse response) {
+        this.response = response
+        String charset = response.getCharset(null)
+        reader = charset ? INPUT_FACTORY.createXMLStreamReader(response.inputStream, charset) :
+            INPUT_FACTORY.createXMLStreamReader(response.inputStream)
+        while (reader.hasNext() && !(reader.next() == START_ELEMENT && reader.localName == 'Body')) {
+            // skip the envelope and its headers
+        }
+        if (reader.eventType != START_ELEMENT) throw new IllegalStateException("Response from ${response.url} is not a SOAP envelope")
+        if (reader.nextTag() == START_ELEMENT) {
+            level = 1
+            if (reader.localName == 'Fault') {
+                fault = materialize()
+                done = true
+            }
+        } else {
+            done = true
+        }
+    }
+
+    int getStatusCode() {
+        response.statusCode
+    }
+
+    // not isFault(), which Groovy would pick over getFault() for the fault property
+    boolean hasFault() {
+        fault != null
+    }
+
+    /**
+     * @return the {@code Fault} element when the server answered with a SOAP fault, {@code null} otherwise
+     */
+    GPathResult getFault() {
+        fault
+    }
+
+    /**
+     * @return the pull parser reading the body, positioned on the first element inside {@code Body}
+     * (or on the end of {@code Body} when it is empty)
+     */
+    XMLStreamReader getReader() {
+        reader
+    }
+
+    /**
+     * Calls {@code closure} with each child of the first element inside {@code Body},
+     * typically the records of an operation response.
+     */
+    void eachElement(Closure closure) {
+        walk { level == 2 } { closure.call(it) }
+    }
+
+    /**
+     * Calls {@code closure} with every element named {@code localName} found inside {@code Body}.
+     * Matches nested inside a matched element are not visited separately.
+     */
+    void eachElement(String localName, Closure closure) {
+        walk { reader.localName == localName } { closure.call(it) }
+    }
+
+    private void walk(Closure<Boolean> matches, Closure handler) {
+        if (done) return
+        int event = reader.eventType
+        while (true) {
+            if (event == START_ELEMENT) {
+                if (matches()) {
+                    handler(materialize())
+                    level--
+                }
+            } else if (event == END_ELEMENT) {
+                if (level == 0) break
+                level--
+            }
+            event = reader.next()
+            if (event == START_ELEMENT) level++
+        }
+        done = true
+    }
+
+    private GPathResult materialize() {
+        StringWriter buffer = new StringWriter()
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(buffer)
+        int open = 0
+        while (true) {
+            switch (reader.eventType) {
+                case START_ELEMENT:
+                    open++
+                    writer.writeStartElement(reader.prefix ?: '', reader.localName, reader.namespaceURI ?: '')
+                    for (int i = 0; i < reader.namespaceCount; i++) {
+                        String prefix = reader.getNamespacePrefix(i)
+                        if (prefix) {
+                            writer.writeNamespace(prefix, reader.getNamespaceURI(i))
+                        } else {
+                            writer.writeDefaultNamespace(reader.getNamespaceURI(i))
+                        }
+                    }
+                    for (int i = 0; i < reader.attributeCount; i++) {
+                        String namespace = reader.getAttributeNamespace(i)
+                        if (namespace) {
+                            writer.writeAttribute(reader.getAttributePrefix(i) ?: '', namespace, reader.getAttributeLocalName(i), reader.getAttributeValue(i))
+                        } else {
+                            writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i))
+                        }
+                    }
+                    break
+                case CHARACTERS:
+                case CDATA:
+                case SPACE:
+                    writer.writeCharacters(reader.text)
+                    break
+                case END_ELEMENT:
+                    writer.writeEndElement()
+                    open--
+                    break
+            }
+            if (open == 0) break
+            reader.next()
+        }
+        writer.close()
+        new XmlSlurper().parseText(buffer.toString())
+    }
+
+    void close() {
+        try {
+            reader.close()
+        } finally {
+            response.close()
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import wslite.http.HTTPConnectionFactory
+
+import javax.net.ssl.HttpsURLConnection
+
+/**
+ * Connection factory whose HTTPS connections use the SSL contexts shared by
+ * {@link WsliteSSLContextCache}, instead of building a new context per connection.
+ * Every connection opened is reported to {@link WsliteHedging}, so that a hedged
+ * copy that lost can be aborted.
+ *
+ * @author Andres Almiray
+ */
+class WsliteSSLConnectionFactory extends HTTPConnectionFactory {
+    // all methods open the connection through super so that subclasses overriding
+    // getConnection() wrap the result only once
+
+    @Override
+    HttpURLConnection getConnection(URL url) {
+        opened(super.getConnection(url))
+    }
+
+    @Override
+    HttpURLConnection getConnection(URL url, Proxy proxy) {
+        opened(super.getConnection(url, proxy))
+    }
+
+    @Override
+    HttpURLConnection getConnectionTrustAllSSLCerts(URL url, Proxy proxy) {
+        HttpURLConnection conn = opened(super.getConnection(url, proxy))
+        if (conn instanceof HttpsURLConnection) {
+            conn.setSSLSocketFactory(WsliteSSLContextCache.instance.trustAllSocketFactory)
+            conn.setHostnameVerifier(WsliteSSLContextCache.TRUST_ALL_HOSTNAMES)
+        }
+        conn
+    }
+
+    @Override
+    HttpURLConnection getConnectionUsingTrustStore(URL url, String trustStoreFile, String trustStorePassword, Proxy proxy) {
+        HttpURLConnection conn = opened(super.getConnection(url, proxy))
+        if (conn instanceof HttpsURLConnection) {
+            conn.setSSLSocketFactory(WsliteSSLContextCache.instance.getSocketFactory(trustStoreFile, trustStorePassword))
+        }
+        conn
+    }
+
+    private static HttpURLConnection opened(HttpURLConnection conn) {
+        WsliteHedging.connectionOpened(conn)
+        conn
+    }
+
+    String toString() {
+        'WsliteSSLConnectionFactory'
+    }
+}
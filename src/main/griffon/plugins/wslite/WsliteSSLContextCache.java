@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares {@code SSLContext}s between clients with the same SSL settings.<p>
+ * Contexts are keyed by truststore identity (canonical path and password digest), plus
+ * a single context for clients that trust every certificate. Sharing a context shares
+ * its TLS session cache, so new connections to a known host resume the previous session
+ * with an abbreviated handshake. It also shares its socket factory, which
+ * {@code HttpURLConnection} requires before it reuses a kept-alive connection.
+ * Truststore files are checked for changes at most once per reload interval; a modified
+ * file replaces the cached context. When the modified file cannot be loaded the previous
+ * context is kept, and loading is attempted again after the next reload interval.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteSSLContextCache {
+    private static final Logger LOG = LoggerFactory.getLogger(WsliteSSLContextCache.class);
+    private static final WsliteSSLContextCache INSTANCE;
+    private static final String TRUST_ALL = "(trust-all)";
+
+    public static final HostnameVerifier TRUST_ALL_HOSTNAMES = new HostnameVerifier() {
+        public boolean verify(String hostname, SSLSession session) {
+            return true;
+        }
+    };
+
+    static {
+        INSTANCE = new WsliteSSLContextCache();
+    }
+
+    public static WsliteSSLContextCache getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, Entry> contexts = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private volatile boolean enabled = true;
+    private volatile String protocol = "TLS";
+    private volatile int sessionCacheSize = 0;
+    private volatile int sessionTimeout = 86400;
+    private volatile long reloadInterval = 5000L;
+
+    private WsliteSSLContextCache() {
+    }
+
+    /**
+     * @param enabled          whether contexts are shared, when disabled every connection gets a new one
+     * @param protocol         protocol requested from {@code SSLContext.getInstance()}
+     * @param sessionCacheSize maximum number of cached TLS sessions per context, 0 means no limit
+     * @param sessionTimeout   seconds a cached TLS session may be resumed
+     * @param reloadInterval   milliseconds between checks for modified truststore files, 0 checks on every use
+     */
+    public void configure(boolean enabled, String protocol, int sessionCacheSize, int sessionTimeout, long reloadInterval) {
+        this.enabled = enabled;
+        this.protocol = protocol != null && protocol.length() > 0 ? protocol : "TLS";
+        this.sessionCacheSize = Math.max(0, sessionCacheSize);
+        this.sessionTimeout = Math.max(0, sessionTimeout);
+        this.reloadInterval = Math.max(0L, reloadInterval);
+        clear();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a socket factory that accepts every server certificate
+     */
+    public SSLSocketFactory getTrustAllSocketFactory() {
+        return trustAllEntry().socketFactory;
+    }
+
+    /**
+     * @return a context that accepts every server certificate
+     */
+    public SSLContext getTrustAllContext() {
+        return trustAllEntry().context;
+    }
+
+    /**
+     * @return a socket factory validating server certificates against the given truststore
+     */
+    public SSLSocketFactory getSocketFactory(String trustStoreFile, String trustStorePassword) {
+        return entryOf(trustStoreFile, trustStorePassword).socketFactory;
+    }
+
+    /**
+     * @return a context validating server certificates against the given truststore
+     */
+    public SSLContext getContext(String trustStoreFile, String trustStorePassword) {
+        return entryOf(trustStoreFile, trustStorePassword).context;
+    }
+
+    private Entry trustAllEntry() {
+        if (!enabled) return new Entry(createTrustAll());
+        Entry entry = contexts.get(TRUST_ALL);
+        if (entry != null) return entry;
+        entry = new Entry(createTrustAll());
+        Entry existing = contexts.putIfAbsent(TRUST_ALL, entry);
+        return existing != null ? existing : entry;
+    }
+
+    private Entry entryOf(String trustStoreFile, String trustStorePassword) {
+        File file = canonical(new File(trustStoreFile));
+        if (!enabled) return load(file, trustStorePassword);
+        String key = keyOf(file, trustStorePassword);
+        Entry entry = contexts.get(key);
+        if (entry != null && entry.isCurrent(reloadInterval)) return entry;
+        synchronized (this) {
+            entry = contexts.get(key);
+            // reloaded by another thread, or a failed reload waiting for the next interval
+            if (entry != null && (entry.isUnchanged() || System.nanoTime() < entry.retryAt)) return entry;
+            if (entry == null) {
+                entry = load(file, trustStorePassword);
+                contexts.put(key, entry);
+                return entry;
+            }
+            if (LOG.isInfoEnabled()) LOG.info("Truststore " + file + " changed, reloading it");
+            try {
+                Entry reloaded = load(file, trustStorePassword);
+                reloads.incrementAndGet();
+                contexts.put(key, reloaded);
+                return reloaded;
+            } catch (IllegalStateException e) {
+                // the file may be halfway through being replaced, keep trusting what was trusted so far
+                LOG.warn("Could not reload truststore " + file + ", keeping the previous one until the next check", e);
+                entry.retryAt = System.nanoTime() + reloadInterval * 1000000L;
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * @return the identity of a truststore, under which its context is shared: the canonical
+     * path of the file and a digest of its password
+     */
+    static String keyOf(String trustStoreFile, String trustStorePassword) {
+        return keyOf(canonical(new File(trustStoreFile)), trustStorePassword);
+    }
+
+    private static String keyOf(File file, String trustStorePassword) {
+        return file.getPath() + "|" + digest(trustStorePassword);
+    }
+
+    private Entry load(File file, String password) {
+        // read before loading, so that a file replaced meanwhile is seen as changed at the next check
+        long lastModified = file.lastModified();
+        long length = file.length();
+        return new Entry(createFromTrustStore(file, password), file, lastModified, length);
+    }
+
+    /**
+     * @return number of truststores loaded, including reloads
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    public int size() {
+        return contexts.size();
+    }
+
+    public void clear() {
+        contexts.clear();
+    }
+
+    private SSLContext createTrustAll() {
+        X509TrustManager trustAll = new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        try {
+            SSLContext context = SSLContext.getInstance(protocol);
+            context.init(null, new TrustManager[]{trustAll}, null);
+            return tune(context);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create an SSL context trusting all certificates", e);
+        }
+    }
+
+    private SSLContext createFromTrustStore(File file, String password) {
+        loads.incrementAndGet();
+        InputStream input = null;
+        try {
+            KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            input = new FileInputStream(file);
+            trustStore.load(input, password != null ? password.toCharArray() : null);
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init(trustStore);
+            SSLContext context = SSLContext.getInstance(protocol);
+            context.init(null, factory.getTrustManagers(), null);
+            return tune(context);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create an SSL context from truststore " + file, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read truststore " + file, e);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private SSLContext tune(SSLContext context) {
+        SSLSessionContext sessions = context.getClientSessionContext();
+        if (sessions != null) {
+            sessions.setSessionCacheSize(sessionCacheSize);
+            sessions.setSessionTimeout(sessionTimeout);
+        }
+        return context;
+    }
+
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private static String digest(String value) {
+        if (value == null) return "";
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final SSLContext context;
+        private final SSLSocketFactory socketFactory;
+        private final File file;
+        private final long lastModified;
+        private final long length;
+        private volatile long checkedAt;
+        private volatile long retryAt;
+
+        private Entry(SSLContext context) {
+            this(context, null, 0L, 0L);
+        }
+
+        private Entry(SSLContext context, File file, long lastModified, long length) {
+            this.context = context;
+            this.socketFactory = context.getSocketFactory();
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.checkedAt = System.nanoTime();
+        }
+
+        private boolean isCurrent(long reloadInterval) {
+            if (file == null) return true;
+            long now = System.nanoTime();
+            if (now - checkedAt < reloadInterval * 1000000L) return true;
+            checkedAt = now;
+            return isUnchanged();
+        }
+
+        private boolean isUnchanged() {
+            return file == null || (file.lastModified() == lastModified && file.length() == length);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import wslite.soap.SOAPClient;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Handle on a SOAPClient, see {@link WsliteClientHandle}.
+ * <pre>
+ * def weather = WsliteSoapHandle.create(url: 'http://www.webservicex.net/WeatherForecast.asmx', id: 'weather')
+ * weather.soap { ... }
+ * </pre>
+ *
+ * @author Andres Almiray
+ */
+public class WsliteSoapHandle extends WsliteClientHandle<SOAPClient> {
+    /**
+     * Creates a handle from the same parameters {@code withSoap} accepts.
+     */
+    public static WsliteSoapHandle create(Map<String, Object> params) {
+        if (params == null) throw new IllegalArgumentException("Client parameters are required");
+        return new WsliteSoapHandle(null, params);
+    }
+
+    /**
+     * Creates a handle on the SOAPClient registered with the given id, or declared
+     * under that id in {@code griffon.wslite.clients}.
+     */
+    public static WsliteSoapHandle forId(String id) {
+        return new WsliteSoapHandle(id, null);
+    }
+
+    private WsliteSoapHandle(String id, Map<String, Object> params) {
+        super(WsliteMetrics.SOAP, id, params);
+    }
+
+    public <R> R soap(Closure<R> closure) {
+        return call(closure);
+    }
+
+    public <R> R soap(CallableWithArgs<R> callable) {
+        return call(callable);
+    }
+
+    protected SOAPClient fetch(Map<String, Object> params) {
+        return WsliteClientHolder.getInstance().fetchSoapClient(params);
+    }
+
+    protected SOAPClient lookup(String id) {
+        return WsliteClientHolder.getInstance().lookupSoapClient(id);
+    }
+
+    protected Closeable streamingClientOf(SOAPClient client) {
+        return new WsliteStreamingSOAPClient(client);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.rest.RESTClient
+import wslite.rest.RESTClientException
+
+/**
+ * Stands in for a RESTClient when a call runs in streaming mode.<p>
+ * {@code get()} accepts the same arguments as {@code RESTClient.get()}, plus an optional
+ * {@code root:} path locating the array to stream, and returns a {@link WsliteJsonStream}
+ * instead of a fully parsed response. Every stream opened through this client is
+ * closed when the call completes. Any other property or method is resolved against
+ * the wrapped client.
+ *
+ * @author Andres Almiray
+ */
+class WsliteStreamingRESTClient implements Closeable {
+    private static final int MAX_ERROR_BODY = 64 * 1024
+    private static final List<String> REQUEST_PROPERTIES = [
+        'connectTimeout', 'readTimeout', 'followRedirects', 'useCaches',
+        'sslTrustAllCerts', 'sslTrustStoreFile', 'sslTrustStorePassword', 'proxy'
+    ]
+
+    final RESTClient client
+    private final List<WsliteJsonStream> streams = []
+
+    WsliteStreamingRESTClient(RESTClient client) {
+        this.client = client
+    }
+
+    WsliteJsonStream get(Map params = [:]) {
+        HTTPRequest request = new HTTPRequest(url: buildURL(params), method: HTTPMethod.GET)
+        REQUEST_PROPERTIES.each { name ->
+            if (params.containsKey(name)) request[name] = params[name]
+        }
+        request.headers['Accept'] = params.accept?.toString() ?: 'application/json'
+        params.headers?.each { k, v -> request.headers[k] = v }
+
+        WsliteStreamingResponse response = WsliteHTTPClient.of(client.httpClient).openStream(request)
+        if (response.statusCode >= 400) {
+            String body = response.readText(MAX_ERROR_BODY)
+            throw new RESTClientException("${response.statusCode} ${response.statusMessage}: $body", null, request, null)
+        }
+        WsliteJsonStream stream = new WsliteJsonStream(response, params.root?.toString())
+        synchronized (streams) {
+            streams << stream
+        }
+        stream
+    }
+
+    private URL buildURL(Map params) {
+        String base = client.url ?: ''
+        String path = params.path?.toString() ?: ''
+        if (base.endsWith('/') && path.startsWith('/')) {
+            path = path.substring(1)
+        } else if (base && path && !base.endsWith('/') && !path.startsWith('/')) {
+            path = '/' + path
+        }
+        String query = params.query?.collect { k, v ->
+            URLEncoder.encode(k.toString(), 'UTF-8') + '=' + URLEncoder.encode(v?.toString() ?: '', 'UTF-8')
+        }?.join('&')
+        new URL(base + path + (query ? (base.contains('?') ? '&' : '?') + query : ''))
+    }
+
+    def propertyMissing(String name) {
+        client."$name"
+    }
+
+    def propertyMissing(String name, value) {
+        client."$name" = value
+    }
+
+    def methodMissing(String name, args) {
+        client.invokeMethod(name, args)
+    }
+
+    void close() {
+        synchronized (streams) {
+            streams*.close()
+            streams.clear()
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response whose body is read straight from the connection instead of being buffered.<p>
+ * The connection stays open until {@link #close()} is called; closing a response
+ * before its body has been fully read aborts the transfer.
+ *
+ * @author Andres Almiray
+ */
+public class WsliteStreamingResponse implements Closeable {
+    private final HttpURLConnection connection;
+    private final int statusCode;
+    private final String statusMessage;
+    private final InputStream inputStream;
+    private boolean closed;
+
+    public WsliteStreamingResponse(HttpURLConnection connection, int statusCode, String statusMessage, InputStream inputStream) {
+        this.connection = connection;
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        this.inputStream = inputStream;
+    }
+
+    public URL getUrl() {
+        return connection.getURL();
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    public String getContentType() {
+        return connection.getContentType();
+    }
+
+    /**
+     * @return the charset declared by the {@code Content-Type} header, {@code defaultCharset} when none is declared
+     */
+    public String getCharset(String defaultCharset) {
+        String contentType = getContentType();
+        if (contentType != null) {
+            for (String part : contentType.split(";")) {
+                part = part.trim();
+                if (part.toLowerCase().startsWith("charset=")) {
+                    return part.substring(8).replace("\"", "").trim();
+                }
+            }
+        }
+        return defaultCharset;
+    }
+
+    public String getHeader(String name) {
+        return connection.getHeaderField(name);
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return connection.getHeaderFields();
+    }
+
+    /**
+     * @return the body as sent by the server, or an empty stream when there is none
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Reads at most {@code maxBytes} of the body as text, then closes this response.
+     * Meant for short bodies such as error descriptions.
+     */
+    public String readText(int maxBytes) throws IOException {
+        try {
+            byte[] buffer = new byte[maxBytes];
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            return new String(buffer, 0, length, getCharset("UTF-8"));
+        } finally {
+            close();
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            if (inputStream != null) inputStream.close();
+        } catch (IOException e) {
+            // the connection is discarded below anyway
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public String toString() {
+        return "WsliteStreamingResponse[" + statusCode + " " + getUrl() + "]";
+    }
+}
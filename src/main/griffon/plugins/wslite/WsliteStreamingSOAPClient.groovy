@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import wslite.http.HTTPClientException
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.soap.SOAPClient
+import wslite.soap.SOAPMessageBuilder
+import wslite.soap.SOAPVersion
+
+/**
+ * Stands in for a SOAPClient when a call runs in streaming mode.<p>
+ * {@code send()} accepts the same arguments as {@code SOAPClient.send()} but returns a
+ * {@link WsliteSOAPStream} instead of a fully parsed response. Every stream opened
+ * through this client is closed when the call completes. Any other property or
+ * method is resolved against the wrapped client.
+ *
+ * @author Andres Almiray
+ */
+class WsliteStreamingSOAPClient implements Closeable {
+    private static final int MAX_ERROR_BODY = 64 * 1024
+    private static final List<String> REQUEST_PROPERTIES = [
+        'connectTimeout', 'readTimeout', 'followRedirects', 'useCaches',
+        'sslTrustAllCerts', 'sslTrustStoreFile', 'sslTrustStorePassword', 'proxy'
+    ]
+
+    final SOAPClient client
+    private final List<WsliteSOAPStream> streams = []
+
+    WsliteStreamingSOAPClient(SOAPClient client) {
+        this.client = client
+    }
+
+    WsliteSOAPStream send(Map requestParams = [:], Closure content) {
+        def message = new SOAPMessageBuilder().build(content)
+        send(requestParams, message.version, message.toString())
+    }
+
+    WsliteSOAPStream send(Map requestParams = [:], String content) {
+        send(requestParams, SOAPVersion.V1_1, content)
+    }
+
+    WsliteSOAPStream send(Map requestParams = [:], SOAPVersion soapVersion, String content) {
+        HTTPRequest request = new HTTPRequest(
+            url: new URL(requestParams.url ?: client.serviceURL),
+            method: HTTPMethod.POST,
+            data: content.getBytes('UTF-8'))
+        REQUEST_PROPERTIES.each { name ->
+            if (requestParams.containsKey(name)) request[name] = requestParams[name]
+        }
+        String action = requestParams.SOAPAction ?: ''
+        if (soapVersion == SOAPVersion.V1_2) {
+            request.headers['Content-Type'] = 'application/soap+xml; charset=UTF-8' + (action ? "; action=\"$action\"" : '')
+        } else {
+            request.headers['Content-Type'] = 'text/xml; charset=UTF-8'
+            request.headers['SOAPAction'] = action
+        }
+        requestParams.headers?.each { k, v -> request.headers[k] = v }
+
+        WsliteStreamingResponse response = WsliteHTTPClient.of(client.httpClient).openStream(request)
+        if (response.statusCode >= 400 && !(response.contentType =~ /xml/)) {
+            String body = response.readText(MAX_ERROR_BODY)
+            throw new HTTPClientException("${response.statusCode} ${response.statusMessage}: $body", request, null)
+        }
+        WsliteSOAPStream stream
+        try {
+            stream = new WsliteSOAPStream(response)
+        } catch (Exception e) {
+            response.close()
+            throw e
+        }
+        synchronized (streams) {
+            streams << stream
+        }
+        stream
+    }
+
+    def propertyMissing(String name) {
+        client."$name"
+    }
+
+    def propertyMissing(String name, value) {
+        client."$name" = value
+    }
+
+    def methodMissing(String name, args) {
+        client.invokeMethod(name, args)
+    }
+
+    void close() {
+        synchronized (streams) {
+            streams*.close()
+            streams.clear()
+        }
+    }
+}
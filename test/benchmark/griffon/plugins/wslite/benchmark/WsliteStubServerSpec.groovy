@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite.benchmark
+
+import spock.lang.Specification
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteStubServerSpec extends Specification {
+    WsliteStubServer server = new WsliteStubServer(0, 4).start()
+
+    def cleanup() {
+        server.stop()
+    }
+
+    private HttpURLConnection get(String path) {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.url + path).openConnection()
+        connection.readTimeout = 5000
+        connection
+    }
+
+    def "Canned bodies are served per path"() {
+        when:
+        HttpURLConnection connection = get(path)
+
+        then:
+        connection.responseCode == 200
+        connection.contentType.startsWith(contentType)
+        connection.inputStream.getText('UTF-8').contains(content)
+
+        where:
+        path                       | contentType        | content
+        WsliteStubServer.REST_PATH | 'application/json' | '"name":"wslite"'
+        WsliteStubServer.SOAP_PATH | 'text/xml'         | '<result>wslite</result>'
+        WsliteStubServer.HTTP_PATH | 'text/plain'       | 'wslite'
+    }
+
+    def "Bodies are padded to the configured size"() {
+        given:
+        server.responseSize = 4096
+
+        expect:
+        get(WsliteStubServer.REST_PATH).inputStream.bytes.length == 4096
+        get(WsliteStubServer.HTTP_PATH).inputStream.bytes.length == 4096
+    }
+
+    def "Responses are delayed by the configured latency"() {
+        given:
+        server.latency = 200L
+        long start = System.currentTimeMillis()
+
+        when:
+        get(WsliteStubServer.HTTP_PATH).inputStream.bytes
+
+        then:
+        System.currentTimeMillis() - start >= 200L
+    }
+
+    def "Errors are injected at the configured rate"() {
+        given:
+        server.errorRate = 1.0d
+        server.errorStatus = 503
+
+        expect:
+        get(WsliteStubServer.HTTP_PATH).responseCode == 503
+
+        when:
+        server.errorRate = 0.0d
+
+        then:
+        get(WsliteStubServer.HTTP_PATH).responseCode == 200
+    }
+
+    def "Error statuses must be 4xx or 5xx"() {
+        when:
+        server.errorStatus = 302
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
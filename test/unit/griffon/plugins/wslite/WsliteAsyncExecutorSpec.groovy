@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteAsyncExecutorSpec extends Specification {
+    WsliteAsyncExecutor asyncExecutor = WsliteAsyncExecutor.instance
+    ExecutorService executor = Executors.newSingleThreadExecutor()
+    CountDownLatch started = new CountDownLatch(1)
+    CountDownLatch interrupted = new CountDownLatch(1)
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    private Callable<String> blocking() {
+        return {
+            started.countDown()
+            try {
+                Thread.sleep(10000L)
+                'done'
+            } catch (InterruptedException e) {
+                interrupted.countDown()
+                throw e
+            }
+        } as Callable<String>
+    }
+
+    def "A call completing in time returns its result"() {
+        when:
+        Future<String> future = asyncExecutor.submit(executor, { 'books' } as Callable<String>, 1000L)
+
+        then:
+        future.get(5L, TimeUnit.SECONDS) == 'books'
+    }
+
+    def "A call running past its timeout fails and its thread is interrupted"() {
+        when:
+        Future<String> future = asyncExecutor.submit(executor, blocking(), 100L)
+        future.get(5L, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown()
+        e.cause instanceof TimeoutException
+        interrupted.await(5L, TimeUnit.SECONDS)
+    }
+
+    def "The thread of a timed out call runs later calls uninterrupted"() {
+        given:
+        Future<String> timedOut = asyncExecutor.submit(executor, blocking(), 100L)
+        interrupted.await(5L, TimeUnit.SECONDS)
+
+        when:
+        Future<Boolean> next = asyncExecutor.submit(executor, {
+            Thread.sleep(200L)
+            Thread.currentThread().isInterrupted()
+        } as Callable<Boolean>, 1000L)
+
+        then:
+        timedOut.done
+        !next.get(5L, TimeUnit.SECONDS)
+    }
+
+    def "Cancelling a running call interrupts it"() {
+        given:
+        Future<String> future = asyncExecutor.submit(executor, blocking(), -1L)
+        started.await(5L, TimeUnit.SECONDS)
+
+        when:
+        future.cancel(true)
+        future.get()
+
+        then:
+        thrown(CancellationException)
+        interrupted.await(5L, TimeUnit.SECONDS)
+    }
+
+    def "A negative timeout disables the default one"() {
+        given:
+        asyncExecutor.configure(0, 0, 50L)
+
+        when:
+        Future<String> future = asyncExecutor.submit(executor, {
+            Thread.sleep(300L)
+            'late'
+        } as Callable<String>, -1L)
+
+        then:
+        future.get(5L, TimeUnit.SECONDS) == 'late'
+
+        cleanup:
+        asyncExecutor.configure(0, 0, 0L)
+    }
+
+    def "A rejected call is reported to the caller"() {
+        given:
+        Executor rejecting = { Runnable r -> throw new RejectedExecutionException('full') } as Executor
+
+        when:
+        asyncExecutor.submit(rejecting, { 'books' } as Callable<String>, 1000L)
+
+        then:
+        thrown(RejectedExecutionException)
+    }
+}
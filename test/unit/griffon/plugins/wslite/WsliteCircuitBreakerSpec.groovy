@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+
+import static griffon.plugins.wslite.WsliteCircuitBreaker.State.*
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteCircuitBreakerSpec extends Specification {
+    List transitions = []
+    WsliteResilienceListener listener = { String id, from, to -> transitions << [from, to] } as WsliteResilienceListener
+    WsliteCircuitBreaker breaker = new WsliteCircuitBreaker('test', new WsliteResiliencePolicy('test')
+        .setSlidingWindow(4)
+        .setMinimumCalls(4)
+        .setFailureRateThreshold(0.5d)
+        .setOpenTimeout(50L)
+        .setHalfOpenCalls(2), [listener])
+
+    private void open() {
+        2.times { breaker.onSuccess() }
+        2.times { breaker.onFailure() }
+    }
+
+    def "The circuit stays closed until the minimum number of calls was recorded"() {
+        when:
+        3.times { breaker.onFailure() }
+
+        then:
+        breaker.state == CLOSED
+        breaker.failureRate == 1.0d
+        breaker.tryAcquire()
+    }
+
+    def "The circuit opens once the failure rate reaches the threshold and refuses calls"() {
+        when:
+        open()
+
+        then:
+        breaker.state == OPEN
+        !breaker.tryAcquire()
+        transitions == [[CLOSED, OPEN]]
+    }
+
+    def "Only the most recent calls count towards the failure rate"() {
+        when:
+        breaker.onFailure()
+        4.times { breaker.onSuccess() }
+        breaker.onFailure()
+
+        then:
+        breaker.state == CLOSED
+        breaker.failureRate == 0.25d
+    }
+
+    def "Trial calls close the circuit once all of them succeed"() {
+        given:
+        open()
+        Thread.sleep(100L)
+
+        when:
+        boolean first = breaker.tryAcquire()
+        boolean second = breaker.tryAcquire()
+        boolean third = breaker.tryAcquire()
+
+        then:
+        first && second && !third
+        breaker.state == HALF_OPEN
+
+        when:
+        2.times { breaker.onSuccess() }
+
+        then:
+        breaker.state == CLOSED
+        breaker.failureRate == 0.0d
+        transitions == [[CLOSED, OPEN], [OPEN, HALF_OPEN], [HALF_OPEN, CLOSED]]
+    }
+
+    def "A failed trial call opens the circuit again"() {
+        given:
+        open()
+        Thread.sleep(100L)
+        breaker.tryAcquire()
+
+        when:
+        breaker.onFailure()
+
+        then:
+        breaker.state == OPEN
+        !breaker.tryAcquire()
+        transitions == [[CLOSED, OPEN], [OPEN, HALF_OPEN], [HALF_OPEN, OPEN]]
+    }
+
+    def "A failing listener does not break the circuit"() {
+        given:
+        WsliteCircuitBreaker breaker = new WsliteCircuitBreaker('test', new WsliteResiliencePolicy('test')
+            .setSlidingWindow(2).setMinimumCalls(2), [{ id, from, to -> throw new IllegalStateException() } as WsliteResilienceListener])
+
+        when:
+        2.times { breaker.onFailure() }
+
+        then:
+        breaker.state == OPEN
+    }
+}
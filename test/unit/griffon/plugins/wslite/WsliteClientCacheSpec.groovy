@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static griffon.plugins.wslite.WsliteClientCache.Policy.LFU
+import static griffon.plugins.wslite.WsliteClientCache.Policy.LRU
+import static griffon.plugins.wslite.WsliteClientCache.RemovalCause.*
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteClientCacheSpec extends Specification {
+    List removals = []
+    WsliteClientCacheListener listener = { String id, client, cause -> removals << [id, cause] } as WsliteClientCacheListener
+
+    def "LRU evicts the least recently used client"() {
+        given:
+        WsliteClientCache<String> cache = new WsliteClientCache<String>(2, LRU, 0L, 0L)
+        cache.addListener(listener)
+
+        when:
+        cache.put('a', 'A')
+        cache.put('b', 'B')
+        cache.get('a')
+        cache.put('c', 'C')
+
+        then:
+        cache.keySet() == ['a', 'c'] as Set
+        removals == [['b', SIZE]]
+    }
+
+    def "LFU evicts the least frequently used client, sparing the one just added"() {
+        given:
+        WsliteClientCache<String> cache = new WsliteClientCache<String>(2, LFU, 0L, 0L)
+        cache.addListener(listener)
+
+        when:
+        cache.put('a', 'A')
+        cache.put('b', 'B')
+        3.times { cache.get('b') }
+        cache.get('a')
+        cache.put('c', 'C')
+
+        then:
+        cache.keySet() == ['b', 'c'] as Set
+        removals == [['a', SIZE]]
+    }
+
+    def "Clients expire once their ttl elapses"() {
+        given:
+        WsliteClientCache<String> cache = new WsliteClientCache<String>(0, LRU, 50L, 0L)
+        cache.addListener(listener)
+        cache.put('a', 'A')
+
+        when:
+        Thread.sleep(100L)
+
+        then:
+        cache.get('a') == null
+        removals == [['a', EXPIRED]]
+    }
+
+    def "Clients that are not accessed are dropped once idle"() {
+        given:
+        WsliteClientCache<String> cache = new WsliteClientCache<String>(0, LRU, 0L, 50L)
+        cache.addListener(listener)
+        cache.put('a', 'A')
+        cache.put('b', 'B')
+
+        when:
+        4.times {
+            Thread.sleep(20L)
+            cache.get('a')
+        }
+        cache.cleanUp()
+
+        then:
+        cache.keySet() == ['a'] as Set
+        removals == [['b', IDLE]]
+    }
+
+    def "Replacing and removing clients notifies listeners"() {
+        given:
+        WsliteClientCache<String> cache = new WsliteClientCache<String>()
+        cache.addListener(listener)
+
+        when:
+        cache.put('a', 'A1')
+        cache.put('a', 'A2')
+        cache.remove('a')
+
+        then:
+        removals == [['a', REPLACED], ['a', EXPLICIT]]
+        cache.size() == 0
+    }
+
+    def "Concurrent callers share a single creation of a missing client"() {
+        given:
+        WsliteClientCache<String> cache = new WsliteClientCache<String>()
+        AtomicInteger created = new AtomicInteger()
+        CountDownLatch start = new CountDownLatch(1)
+        Callable<String> factory = {
+            created.incrementAndGet()
+            Thread.sleep(50L)
+            'A'
+        } as Callable<String>
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        def futures = (1..8).collect {
+            executor.submit({
+                start.await()
+                cache.get('a', factory)
+            } as Callable<String>)
+        }
+        start.countDown()
+        List<String> clients = futures*.get(5L, TimeUnit.SECONDS)
+
+        then:
+        clients == ['A'] * 8
+        created.get() == 1
+
+        cleanup:
+        executor.shutdownNow()
+    }
+}
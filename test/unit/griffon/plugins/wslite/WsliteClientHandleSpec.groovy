@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import griffon.util.CallableWithArgs
+import spock.lang.Specification
+import wslite.rest.RESTClient
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteClientHandleSpec extends Specification {
+    WsliteClientHolder holder = WsliteClientHolder.instance
+
+    def "A handle for an id calls the registered client"() {
+        given:
+        RESTClient client = new RESTClient('http://localhost:8080')
+        holder.setRestClient('spec-handle', client)
+        WsliteRestHandle handle = WsliteRestHandle.forId('spec-handle')
+
+        expect:
+        handle.rest { delegate }.is(client)
+        handle.rest { url } == 'http://localhost:8080'
+
+        cleanup:
+        holder.removeRestClient('spec-handle')
+    }
+
+    def "A handle resolves its client again once the registered one is replaced"() {
+        given:
+        RESTClient first = new RESTClient('http://localhost:8080')
+        RESTClient second = new RESTClient('http://localhost:9090')
+        holder.setRestClient('spec-replaced', first)
+        WsliteRestHandle handle = WsliteRestHandle.forId('spec-replaced')
+
+        when:
+        handle.rest { url }
+        holder.removeRestClient('spec-replaced')
+        holder.setRestClient('spec-replaced', second)
+
+        then:
+        handle.rest { url } == 'http://localhost:9090'
+        handle.client.is(second)
+
+        cleanup:
+        holder.removeRestClient('spec-replaced')
+    }
+
+    def "A handle for an unknown id fails when called"() {
+        given:
+        WsliteRestHandle handle = WsliteRestHandle.forId('spec-unknown')
+
+        when:
+        handle.rest { url }
+
+        then:
+        IllegalStateException e = thrown()
+        e.message.contains("'spec-unknown'")
+    }
+
+    def "A handle created from parameters keeps its own copy of them"() {
+        given:
+        Map<String, Object> params = [url: 'http://localhost:8080', readTimeout: 1000]
+        WsliteRestHandle handle = WsliteRestHandle.create(params)
+
+        when:
+        params.url = 'http://localhost:9090'
+
+        then:
+        handle.id == null
+        handle.rest { url } == 'http://localhost:8080'
+        handle.rest { httpClient.readTimeout } == 1000
+    }
+
+    def "Callables receive the client in an array of their own"() {
+        given:
+        WsliteHttpHandle handle = WsliteHttpHandle.create(readTimeout: 1000)
+        List<Object[]> received = []
+        CallableWithArgs<Object> callable = new CallableWithArgs<Object>() {
+            Object call(Object[] args) {
+                received << args
+                args[0]
+            }
+        }
+
+        when:
+        def first = handle.http(callable)
+        def second = handle.http(callable)
+
+        then:
+        first.is(handle.client)
+        second.is(handle.client)
+        !received[0].is(received[1])
+        callable.args == null
+    }
+}
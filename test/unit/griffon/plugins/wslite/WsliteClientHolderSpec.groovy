@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+import wslite.http.HTTPClient
+import wslite.http.auth.HTTPBasicAuthorization
+import wslite.rest.RESTClient
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteClientHolderSpec extends Specification {
+    WsliteClientHolder holder = WsliteClientHolder.instance
+
+    static class CloseableHTTPClient extends HTTPClient implements Closeable {
+        int closed
+
+        void close() {
+            closed++
+        }
+    }
+
+    def "A removed client is closed once its last call ends"() {
+        given:
+        CloseableHTTPClient httpClient = new CloseableHTTPClient()
+        RESTClient client = new RESTClient('http://localhost:8080', httpClient)
+        holder.setRestClient('spec-in-use', client)
+
+        when:
+        holder.acquire(client)
+        holder.acquire(client)
+        holder.removeRestClient('spec-in-use')
+        holder.release(client)
+
+        then:
+        httpClient.closed == 0
+
+        when:
+        holder.release(client)
+
+        then:
+        httpClient.closed == 1
+        !holder.acquire(client)
+    }
+
+    def "An unused client is closed as soon as it is removed"() {
+        given:
+        CloseableHTTPClient client = new CloseableHTTPClient()
+        holder.setHttpClient('spec-unused', client)
+
+        when:
+        holder.removeHttpClient('spec-unused')
+
+        then:
+        client.closed == 1
+    }
+
+    def "Evicted clients are closed as well"() {
+        given:
+        holder.configureClientCaches(http: [maxSize: 1])
+        CloseableHTTPClient first = new CloseableHTTPClient()
+        CloseableHTTPClient second = new CloseableHTTPClient()
+
+        when:
+        holder.setHttpClient('spec-first', first)
+        holder.setHttpClient('spec-second', second)
+
+        then:
+        first.closed == 1
+        second.closed == 0
+
+        cleanup:
+        holder.removeHttpClient('spec-second')
+        holder.configureClientCaches([:])
+    }
+
+    def "Expired clients are swept without any cache access"() {
+        given:
+        holder.configureClientCaches(http: [idleTimeout: 100L])
+        CloseableHTTPClient client = new CloseableHTTPClient()
+        holder.setHttpClient('spec-idle', client)
+
+        when:
+        Thread.sleep(2500L)
+
+        then:
+        client.closed == 1
+
+        cleanup:
+        holder.configureClientCaches([:])
+    }
+
+    def "The caller's parameters are left untouched"() {
+        given:
+        Map<String, Object> params = [id: 'spec-params', url: 'http://localhost:8080', readTimeout: 1000]
+
+        when:
+        RESTClient first = holder.fetchRestClient(params)
+        RESTClient second = holder.fetchRestClient(params)
+
+        then:
+        params == [id: 'spec-params', url: 'http://localhost:8080', readTimeout: 1000]
+        first.is(second)
+        first.httpClient.readTimeout == 1000
+
+        cleanup:
+        holder.removeRestClient('spec-params')
+    }
+
+    def "Anonymous clients are only shared when fingerprinting is enabled"() {
+        when:
+        RESTClient first = holder.fetchRestClient(url: 'http://localhost:8080', readTimeout: 1000)
+        RESTClient second = holder.fetchRestClient(url: 'http://localhost:8080', readTimeout: 1000)
+
+        then:
+        !first.is(second)
+
+        when:
+        holder.configureClientCaches(fingerprint: true)
+        first = holder.fetchRestClient(url: 'http://localhost:8080', readTimeout: 1000)
+        second = holder.fetchRestClient(readTimeout: 1000, url: 'http://localhost:8080')
+        RESTClient other = holder.fetchRestClient(url: 'http://localhost:8080', readTimeout: 2000)
+
+        then:
+        first.is(second)
+        !first.is(other)
+        other.httpClient.readTimeout == 2000
+
+        cleanup:
+        holder.configureClientCaches([:])
+    }
+
+    def "Anonymous clients with parameters lacking value semantics are never shared"() {
+        given:
+        holder.configureClientCaches(fingerprint: true)
+        HTTPBasicAuthorization authorization = new HTTPBasicAuthorization('user', 'secret')
+
+        when:
+        RESTClient first = holder.fetchRestClient(url: 'http://localhost:8080', authorization: authorization)
+        RESTClient second = holder.fetchRestClient(url: 'http://localhost:8080', authorization: authorization)
+
+        then:
+        !first.is(second)
+
+        cleanup:
+        holder.configureClientCaches([:])
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpHandler
+import com.sun.net.httpserver.HttpServer
+import spock.lang.Specification
+import wslite.http.HTTPClient
+import wslite.http.HTTPClientException
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteCompressionSpec extends Specification {
+    static final String BODY = 'books ' * 200
+
+    HttpServer server
+    WsliteCompressionStats stats = new WsliteCompressionStats('test')
+    WsliteCompression compression = new WsliteCompression(stats, 100)
+    byte[] received
+
+    def setup() {
+        server = HttpServer.create(new InetSocketAddress('localhost', 0), 0)
+        server.createContext('/', new HttpHandler() {
+            void handle(HttpExchange exchange) {
+                respond(exchange)
+            }
+        })
+        server.start()
+    }
+
+    def cleanup() {
+        server.stop(0)
+    }
+
+    void respond(HttpExchange exchange) {
+        try {
+            received = exchange.requestBody.bytes
+            String encoding = exchange.requestURI.path.substring(1)
+            byte[] body = encode(BODY.getBytes('UTF-8'), encoding)
+            if (encoding != 'identity') exchange.responseHeaders.add('Content-Encoding', encoding)
+            exchange.responseHeaders.add('Content-Type', 'text/plain')
+            exchange.responseHeaders.add('X-Accept-Encoding', exchange.requestHeaders.getFirst('Accept-Encoding'))
+            exchange.responseHeaders.add('X-Content-Encoding', String.valueOf(exchange.requestHeaders.getFirst('Content-Encoding')))
+            exchange.sendResponseHeaders(exchange.requestURI.query == 'fail' ? 500 : 200, body.length)
+            exchange.responseBody.write(body)
+        } finally {
+            exchange.close()
+        }
+    }
+
+    private static byte[] encode(byte[] data, String encoding) {
+        if (encoding == 'identity') return data
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        OutputStream output = encoding == 'gzip' ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)
+        output.write(data)
+        output.close()
+        bytes.toByteArray()
+    }
+
+    /**
+     * Chains are Groovy classes in the plugin, a closure coerced to the interface
+     * would wrap the checked HTTPClientException
+     */
+    private static WsliteHTTPChain chainOf(Closure body) {
+        new WsliteHTTPChain() {
+            HTTPResponse proceed(HTTPRequest request) {
+                body(request)
+            }
+        }
+    }
+
+    private HTTPResponse send(String path, byte[] data = null) {
+        HTTPRequest request = new HTTPRequest(
+            url: new URL("http://localhost:${server.address.port}$path"),
+            method: data != null ? HTTPMethod.POST : HTTPMethod.GET,
+            headers: [:],
+            data: data)
+        compression.intercept(request, chainOf { HTTPRequest r -> new HTTPClient().execute(r) })
+    }
+
+    def "Compressed responses reach the caller decoded, without their encoding"() {
+        when:
+        HTTPResponse response = send("/$encoding")
+
+        then:
+        response.contentAsString == BODY
+        response.contentEncoding == null
+        response.headers['Content-Encoding'] == 'identity'
+        response.headers['Content-Length'] == String.valueOf(BODY.length())
+        response.headers['content-type'] == 'text/plain'
+        response.headers['X-Accept-Encoding'] == 'gzip, deflate'
+        stats.compressedResponses == 1L
+        stats.responseBytes == BODY.length()
+        stats.responseWireBytes < BODY.length()
+
+        where:
+        encoding << ['gzip', 'deflate']
+    }
+
+    def "Plain responses are recorded as uncompressed"() {
+        when:
+        HTTPResponse response = send('/identity')
+
+        then:
+        response.contentAsString == BODY
+        stats.compressedResponses == 0L
+        stats.responseWireBytes == BODY.length()
+    }
+
+    def "Error responses are decoded as well"() {
+        when:
+        send("/$encoding?fail")
+
+        then:
+        HTTPClientException e = thrown()
+        e.response.statusCode == 500
+        e.response.contentAsString == BODY
+        e.response.contentEncoding == null
+
+        where:
+        encoding << ['gzip', 'deflate']
+    }
+
+    def "Request bodies above the threshold are sent gzipped"() {
+        when:
+        HTTPResponse response = send('/identity', BODY.getBytes('UTF-8'))
+
+        then:
+        response.headers['X-Content-Encoding'] == 'gzip'
+        new GZIPInputStream(new ByteArrayInputStream(received)).text == BODY
+        stats.compressedRequests == 1L
+        stats.requestWireBytes == received.length
+
+        when:
+        response = send('/identity', 'small'.getBytes('UTF-8'))
+
+        then:
+        response.headers['X-Content-Encoding'] == 'null'
+        new String(received, 'UTF-8') == 'small'
+    }
+}
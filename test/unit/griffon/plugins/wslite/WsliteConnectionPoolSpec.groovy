@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+
+import javax.net.ssl.HttpsURLConnection
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteConnectionPoolSpec extends Specification {
+    WsliteConnectionPool pool = new WsliteConnectionPool('test', 2, 3, 100L, 0L, false)
+
+    private static HttpURLConnection connectionTo(String url) {
+        (HttpURLConnection) new URL(url).openConnection()
+    }
+
+    def "Leases are bounded per host and wait until they time out"() {
+        given:
+        2.times { pool.lease(connectionTo('http://localhost:8080/a')) }
+
+        when:
+        pool.lease(connectionTo('http://localhost:8080/b'))
+
+        then:
+        IOException e = thrown()
+        e.message.contains('http://localhost:8080')
+        pool.timeoutCount == 1L
+        pool.waitCount == 1L
+        pool.leasedCount == 2
+    }
+
+    def "Leases are bounded across hosts"() {
+        given:
+        pool.lease(connectionTo('http://localhost:8080/'))
+        pool.lease(connectionTo('http://localhost:8081/'))
+        pool.lease(connectionTo('http://localhost:8082/'))
+
+        when:
+        pool.lease(connectionTo('http://localhost:8083/'))
+
+        then:
+        thrown(IOException)
+        pool.leasedPerHost == ['http://localhost:8080': 1, 'http://localhost:8081': 1, 'http://localhost:8082': 1, 'http://localhost:8083': 0]
+    }
+
+    def "Disconnecting returns the lease once"() {
+        given:
+        HttpURLConnection first = pool.lease(connectionTo('http://localhost:8080/'))
+        pool.lease(connectionTo('http://localhost:8080/'))
+
+        when:
+        first.disconnect()
+        first.disconnect()
+        pool.lease(connectionTo('http://localhost:8080/'))
+
+        then:
+        pool.leaseCount == 3L
+        pool.leasedCount == 2
+        pool.timeoutCount == 0L
+    }
+
+    def "A waiting caller gets the lease that is returned"() {
+        given:
+        WsliteConnectionPool pool = new WsliteConnectionPool('test', 1, 1, 5000L, 0L, false)
+        HttpURLConnection leased = pool.lease(connectionTo('http://localhost:8080/'))
+        Thread.start {
+            Thread.sleep(50L)
+            leased.disconnect()
+        }
+
+        when:
+        pool.lease(connectionTo('http://localhost:8080/'))
+
+        then:
+        pool.waitCount == 1L
+        pool.timeoutCount == 0L
+        pool.leasedCount == 1
+    }
+
+    def "HTTPS connections stay HTTPS connections"() {
+        expect:
+        pool.lease(connectionTo('https://localhost:8443/')) instanceof HttpsURLConnection
+    }
+
+    def "Idle routes are evicted"() {
+        given:
+        WsliteConnectionPool pool = new WsliteConnectionPool('test', 1, 0, 100L, 20L, false)
+        pool.lease(connectionTo('http://localhost:8080/')).disconnect()
+
+        when:
+        Thread.sleep(50L)
+        pool.lease(connectionTo('http://localhost:8081/'))
+
+        then:
+        pool.evictionCount == 1L
+        pool.leasedPerHost.keySet() == ['http://localhost:8081'] as Set
+    }
+
+    def "A route evicted after its lookup can no longer be leased"() {
+        given:
+        WsliteConnectionPool.Route route = new WsliteConnectionPool.Route(2)
+
+        expect:
+        route.evict()
+        !route.retain()
+        route.leasedCount() == 0
+    }
+
+    def "A leased route is not evicted"() {
+        given:
+        WsliteConnectionPool.Route route = new WsliteConnectionPool.Route(2)
+
+        expect:
+        route.retain()
+        !route.evict()
+        route.leasedCount() == 1
+    }
+
+    def "A pool that was shut down refuses leases"() {
+        given:
+        pool.shutdown()
+
+        when:
+        pool.lease(connectionTo('http://localhost:8080/'))
+
+        then:
+        thrown(IOException)
+        pool.shutdown
+    }
+}
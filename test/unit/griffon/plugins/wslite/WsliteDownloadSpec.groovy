@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpHandler
+import com.sun.net.httpserver.HttpServer
+import spock.lang.Specification
+import wslite.http.HTTPClientException
+
+import java.security.MessageDigest
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteDownloadSpec extends Specification {
+    static final byte[] BODY = (0..<200000).collect { (byte) (it % 251) } as byte[]
+    static final String SHA256 = MessageDigest.getInstance('SHA-256').digest(BODY).encodeHex().toString()
+
+    HttpServer server
+    WsliteHTTPClient client = new WsliteHTTPClient()
+    File target = File.createTempFile('wslite-download', '.bin')
+    List<String> ranges = []
+
+    def setup() {
+        server = HttpServer.create(new InetSocketAddress('localhost', 0), 0)
+        server.createContext('/', new HttpHandler() {
+            void handle(HttpExchange exchange) {
+                respond(exchange)
+            }
+        })
+        server.start()
+    }
+
+    def cleanup() {
+        server.stop(0)
+        target.delete()
+    }
+
+    void respond(HttpExchange exchange) {
+        try {
+            String path = exchange.requestURI.path
+            String range = exchange.requestHeaders.getFirst('Range')
+            ranges << range
+            if (path == '/missing') {
+                exchange.sendResponseHeaders(404, -1)
+                return
+            }
+            int from = range && path != '/norange' ? range.substring(6, range.indexOf('-')).toInteger() : 0
+            if (from >= BODY.length) {
+                exchange.responseHeaders.add('Content-Range', "bytes */${BODY.length}".toString())
+                exchange.sendResponseHeaders(416, -1)
+                return
+            }
+            exchange.responseHeaders.add('Content-Type', 'application/octet-stream')
+            if (from > 0) exchange.responseHeaders.add('Content-Range', "bytes ${from}-${BODY.length - 1}/${BODY.length}".toString())
+            exchange.sendResponseHeaders(from > 0 ? 206 : 200, BODY.length - from)
+            exchange.responseBody.write(BODY, from, BODY.length - from)
+        } finally {
+            exchange.close()
+        }
+    }
+
+    private String url(String path) {
+        "http://localhost:${server.address.port}$path"
+    }
+
+    private void partial(int length) {
+        target.bytes = Arrays.copyOf(BODY, length)
+    }
+
+    def "A full download is written to the file with its checksum and progress"() {
+        given:
+        target.delete()
+        List<Long> progress = []
+
+        when:
+        WsliteDownload download = client.download(url: url('/file'), to: target, checksum: 'SHA-256', chunkSize: 16384,
+            progress: { long received, long length -> progress << received; assert length == BODY.length })
+
+        then:
+        download.statusCode == 200
+        !download.resumed
+        download.length == BODY.length
+        target.bytes == BODY
+        download.checksum == SHA256
+        progress.size() > 1
+        progress.last() == BODY.length
+    }
+
+    def "A partial file is completed with a range request"() {
+        given:
+        partial(50000)
+
+        when:
+        WsliteDownload download = client.download(url: url('/file'), to: target, resume: true, checksum: 'SHA-256')
+
+        then:
+        ranges == ['bytes=50000-']
+        download.statusCode == 206
+        download.resumed
+        download.offset == 50000L
+        download.bytesTransferred == BODY.length - 50000L
+        target.bytes == BODY
+        download.checksum == SHA256
+    }
+
+    def "The file is downloaded again when the server ignores the range"() {
+        given:
+        partial(50000)
+
+        when:
+        WsliteDownload download = client.download(url: url('/norange'), to: target, resume: true, checksum: 'SHA-256')
+
+        then:
+        download.statusCode == 200
+        !download.resumed
+        download.bytesTransferred == BODY.length
+        target.bytes == BODY
+        download.checksum == SHA256
+    }
+
+    def "A complete file is not transferred again"() {
+        given:
+        partial(BODY.length)
+
+        when:
+        WsliteDownload download = client.download(url: url('/file'), to: target, resume: true, checksum: 'SHA-256')
+
+        then:
+        download.statusCode == 416
+        download.bytesTransferred == 0L
+        download.length == BODY.length
+        download.checksum == SHA256
+    }
+
+    def "Without resume an existing file is replaced"() {
+        given:
+        target.bytes = new byte[300000]
+
+        when:
+        client.download(url: url('/file'), to: target)
+
+        then:
+        ranges == [null]
+        target.bytes == BODY
+    }
+
+    def "Error statuses fail the download"() {
+        when:
+        client.download(url: url('/missing'), to: target)
+
+        then:
+        HTTPClientException e = thrown()
+        e.response.statusCode == 404
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+import wslite.http.HTTPClientException
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteHedgingSpec extends Specification {
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor()
+    ExecutorService executor = Executors.newCachedThreadPool()
+    AtomicInteger calls = new AtomicInteger()
+
+    def cleanup() {
+        timer.shutdownNow()
+        executor.shutdownNow()
+    }
+
+    private WsliteHedging hedging(Map settings = [:]) {
+        new WsliteHedging('test', [delay: 20L, minDelay: 10L, maxDelay: 100L] + settings, timer, executor)
+    }
+
+    /**
+     * Chains are Groovy classes in the plugin, a closure coerced to the interface
+     * would wrap the checked HTTPClientException
+     */
+    private static WsliteHTTPChain chainOf(Closure body) {
+        new WsliteHTTPChain() {
+            HTTPResponse proceed(HTTPRequest request) {
+                body(request)
+            }
+        }
+    }
+
+    private static HTTPRequest request(HTTPMethod method = HTTPMethod.GET) {
+        new HTTPRequest(url: new URL('http://localhost:8080/books'), method: method, headers: [Accept: 'text/plain'])
+    }
+
+    private static HTTPResponse response(String body) {
+        new HTTPResponse(statusCode: 200, data: body.bytes)
+    }
+
+    private static void waitFor(Closure condition) {
+        long deadline = System.currentTimeMillis() + 5000L
+        while (!condition()) {
+            assert System.currentTimeMillis() < deadline
+            Thread.sleep(5L)
+        }
+    }
+
+    def "A fast request is not hedged"() {
+        given:
+        WsliteHedging hedging = hedging(delay: 500L, maxDelay: 1000L)
+        WsliteHTTPChain chain = chainOf { HTTPRequest r -> calls.incrementAndGet(); response('primary') }
+
+        when:
+        HTTPResponse response = hedging.intercept(request(), chain)
+        Thread.sleep(50L)
+
+        then:
+        new String(response.data) == 'primary'
+        calls.get() == 1
+        hedging.requests == 1L
+        hedging.hedged == 0L
+    }
+
+    def "A slow request is hedged and the first copy to answer wins"() {
+        given:
+        WsliteHedging hedging = hedging()
+        List<HTTPRequest> sent = [].asSynchronized()
+        WsliteHTTPChain chain = chainOf { HTTPRequest r ->
+            sent << r
+            if (calls.incrementAndGet() == 1) {
+                waitFor { hedging.hedgesWon == 1L }
+                return response('primary')
+            }
+            response('hedge')
+        }
+
+        when:
+        HTTPResponse response = hedging.intercept(request(), chain)
+
+        then:
+        new String(response.data) == 'hedge'
+        calls.get() == 2
+        hedging.hedged == 1L
+        hedging.hedgesWon == 1L
+        !sent[0].is(sent[1])
+        !sent[0].headers.is(sent[1].headers)
+        sent[1].headers == [Accept: 'text/plain']
+    }
+
+    def "A failed copy does not win when the other one answers"() {
+        given:
+        WsliteHedging hedging = hedging()
+        WsliteHTTPChain chain = chainOf { HTTPRequest r ->
+            if (calls.incrementAndGet() == 1) {
+                waitFor { calls.get() == 2 }
+                throw new HTTPClientException('Connection reset', new IOException(), r, null)
+            }
+            Thread.sleep(50L)
+            response('hedge')
+        }
+
+        when:
+        HTTPResponse response = hedging.intercept(request(), chain)
+
+        then:
+        new String(response.data) == 'hedge'
+        calls.get() == 2
+    }
+
+    def "The failure is reported when both copies failed"() {
+        given:
+        WsliteHedging hedging = hedging()
+        WsliteHTTPChain chain = chainOf { HTTPRequest r ->
+            if (calls.incrementAndGet() == 1) waitFor { calls.get() == 2 }
+            throw new HTTPClientException('Connection reset', new IOException(), r, null)
+        }
+
+        when:
+        hedging.intercept(request(), chain)
+
+        then:
+        thrown(HTTPClientException)
+        calls.get() == 2
+    }
+
+    def "Hedges are capped by the budget"() {
+        given:
+        WsliteHedging hedging = hedging(budget: 1, budgetRatio: 0.01d)
+        WsliteHTTPChain chain = chainOf { HTTPRequest r ->
+            calls.incrementAndGet()
+            Thread.sleep(60L)
+            response('slow')
+        }
+
+        when:
+        2.times { hedging.intercept(request(), chain) }
+        waitFor { calls.get() == 3 }
+
+        then:
+        hedging.hedged == 1L
+        hedging.budgetDenied == 1L
+    }
+
+    def "A hedge that cannot get a thread is not sent"() {
+        given:
+        executor.shutdown()
+        WsliteHedging hedging = hedging()
+        WsliteHTTPChain chain = chainOf { HTTPRequest r ->
+            calls.incrementAndGet()
+            Thread.sleep(60L)
+            response('primary')
+        }
+
+        when:
+        HTTPResponse response = hedging.intercept(request(), chain)
+
+        then:
+        new String(response.data) == 'primary'
+        calls.get() == 1
+        hedging.rejected == 1L
+        hedging.hedged == 0L
+    }
+
+    def "Requests with side effects are never hedged"() {
+        given:
+        WsliteHedging hedging = hedging()
+        WsliteHTTPChain chain = chainOf { HTTPRequest r ->
+            calls.incrementAndGet()
+            Thread.sleep(60L)
+            response('created')
+        }
+
+        when:
+        hedging.intercept(request(HTTPMethod.POST), chain)
+
+        then:
+        calls.get() == 1
+        hedging.requests == 0L
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteJsonStreamSpec extends Specification {
+    static class StubConnection extends HttpURLConnection {
+        boolean disconnected
+
+        StubConnection() {
+            super(new URL('http://localhost:8080/books'))
+        }
+
+        String getHeaderField(String name) {
+            name.equalsIgnoreCase('Content-Type') ? 'application/json; charset=UTF-8' : null
+        }
+
+        void disconnect() {
+            disconnected = true
+        }
+
+        boolean usingProxy() {
+            false
+        }
+
+        void connect() {
+        }
+    }
+
+    StubConnection connection = new StubConnection()
+
+    private WsliteJsonStream stream(String json, String root = null) {
+        new WsliteJsonStream(new WsliteStreamingResponse(connection, 200, 'OK', new ByteArrayInputStream(json.getBytes('UTF-8'))), root)
+    }
+
+    def "Elements of the array found at the root path are returned one at a time"() {
+        given:
+        WsliteJsonStream stream = stream('''{
+            "meta": {"items": "not this one", "pages": [9, 9]},
+            "data": {"items": [
+                {"id": 1, "tags": ["a", "b"], "price": 10.5},
+                {"id": 2, "title": "Caf\\u00e9 \\"Noir\\"", "stock": null, "used": false}
+            ]}
+        }''', 'data.items')
+
+        when:
+        List elements = stream.collect { it }
+
+        then:
+        elements.size() == 2
+        elements[0] == [id: 1, tags: ['a', 'b'], price: 10.5]
+        elements[1] == [id: 2, title: 'Caf\u00e9 "Noir"', stock: null, used: false]
+        stream.count == 2
+        connection.disconnected
+    }
+
+    def "Without a root path the first array in the document is streamed"() {
+        expect:
+        stream('{"total": 3, "results": [1, 2.5, "three"]}').collect { it } == [1, 2.5, 'three']
+        stream('[]').collect { it } == []
+    }
+
+    def "Returning false from eachElement stops reading and closes the stream"() {
+        given:
+        WsliteJsonStream stream = stream('[1, 2, 3, 4]')
+        List seen = []
+
+        when:
+        stream.eachElement { seen << it; it < 2 }
+
+        then:
+        seen == [1, 2]
+        !stream.hasNext()
+        connection.disconnected
+    }
+
+    def "Malformed documents fail and close the stream"() {
+        given:
+        WsliteJsonStream stream = stream(json, root)
+
+        when:
+        stream.collect { it }
+
+        then:
+        IllegalStateException e = thrown()
+        e.message.contains(message)
+        connection.disconnected
+
+        where:
+        json                 | root   | message
+        '{"data": {"x": 1}}' | 'data' | "no array found at 'data'"
+        '[1 2]'              | null   | "expected ',' or ']'"
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+import wslite.http.HTTPClientException
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+import static griffon.plugins.wslite.WsliteLoadBalancer.Strategy.*
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteLoadBalancerSpec extends Specification {
+    static final List<String> URLS = ['http://alpha:8080/', 'http://beta:8080', 'http://gamma:8080']
+
+    List<String> sent = []
+
+    /**
+     * Chains are Groovy classes in the plugin, a closure coerced to the interface
+     * would wrap the checked HTTPClientException
+     */
+    private WsliteHTTPChain chainOf(Closure body) {
+        new WsliteHTTPChain() {
+            HTTPResponse proceed(HTTPRequest request) {
+                sent << request.url.toString()
+                body(request)
+            }
+        }
+    }
+
+    private WsliteHTTPChain ok = chainOf { new HTTPResponse(statusCode: 200) }
+
+    private static HTTPRequest request(String url) {
+        new HTTPRequest(url: new URL(url), method: HTTPMethod.GET, headers: [:])
+    }
+
+    def "Round robin sends requests to every endpoint in turn and restores the url"() {
+        given:
+        WsliteLoadBalancer balancer = new WsliteLoadBalancer('spec', URLS, ROUND_ROBIN, 0, 0L)
+        HTTPRequest request = request('http://alpha:8080/books?page=1')
+
+        when:
+        4.times { balancer.intercept(request, ok) }
+
+        then:
+        sent == ['http://alpha:8080/books?page=1', 'http://beta:8080/books?page=1',
+                 'http://gamma:8080/books?page=1', 'http://alpha:8080/books?page=1']
+        request.url.toString() == 'http://alpha:8080/books?page=1'
+        balancer.endpoints*.requests == [2L, 1L, 1L]
+    }
+
+    def "Requests outside the first base url are left alone"() {
+        given:
+        WsliteLoadBalancer balancer = new WsliteLoadBalancer('spec', URLS, ROUND_ROBIN, 0, 0L)
+
+        when:
+        ['http://other:8080/books', 'http://alpha:80801/books'].each { balancer.intercept(request(it), ok) }
+
+        then:
+        sent == ['http://other:8080/books', 'http://alpha:80801/books']
+        balancer.endpoints*.requests == [0L, 0L, 0L]
+    }
+
+    def "Least outstanding picks the endpoint with the fewest requests in flight"() {
+        given:
+        WsliteLoadBalancer balancer = new WsliteLoadBalancer('spec', URLS, LEAST_OUTSTANDING, 0, 0L)
+        balancer.endpoints[0].@outstanding.set(2)
+        balancer.endpoints[2].@outstanding.set(1)
+
+        expect:
+        (1..10).collect { balancer.choose().url }.every { it == 'http://beta:8080' }
+    }
+
+    def "Latency favors the fastest endpoint"() {
+        given:
+        WsliteLoadBalancer balancer = new WsliteLoadBalancer('spec', URLS[0..1], LATENCY, 0, 0L)
+        balancer.endpoints[0].@latency = 1000000.0d
+        balancer.endpoints[1].@latency = 100000000.0d
+
+        when:
+        int fast = (1..1000).count { balancer.choose().is(balancer.endpoints[0]) }
+
+        then:
+        fast > 900
+    }
+
+    def "An endpoint failing in a row is ejected until every endpoint is"() {
+        given:
+        WsliteLoadBalancer balancer = new WsliteLoadBalancer('spec', URLS[0..1], ROUND_ROBIN, 2, 60000L)
+        WsliteHTTPChain failing = chainOf { HTTPRequest r ->
+            if (r.url.host == 'alpha') throw new HTTPClientException('Unavailable', null, r, new HTTPResponse(statusCode: 503))
+            new HTTPResponse(statusCode: 200)
+        }
+
+        when:
+        4.times {
+            try {
+                balancer.intercept(request('http://alpha:8080/books'), failing)
+            } catch (HTTPClientException ignored) {
+            }
+        }
+        sent.clear()
+        3.times { balancer.intercept(request('http://alpha:8080/books'), ok) }
+
+        then:
+        balancer.endpoints[0].ejected
+        balancer.endpoints[0].ejections == 1L
+        sent.every { it.startsWith('http://beta:8080') }
+
+        when:
+        balancer.endpoints[1].@ejectedUntil = Long.MAX_VALUE
+        sent.clear()
+        2.times { balancer.intercept(request('http://alpha:8080/books'), ok) }
+
+        then:
+        sent*.substring(0, 12).sort() == ['http://alpha', 'http://beta:']
+    }
+
+    def "Client errors do not count as failures"() {
+        given:
+        WsliteLoadBalancer balancer = new WsliteLoadBalancer('spec', URLS[0..0], ROUND_ROBIN, 1, 60000L)
+        WsliteHTTPChain notFound = chainOf { HTTPRequest r ->
+            throw new HTTPClientException('Not Found', null, r, new HTTPResponse(statusCode: 404))
+        }
+
+        when:
+        balancer.intercept(request('http://alpha:8080/books'), notFound)
+
+        then:
+        thrown(HTTPClientException)
+        !balancer.endpoints[0].ejected
+    }
+
+    def "Strategies are parsed ignoring case and dashes"() {
+        expect:
+        WsliteLoadBalancer.Strategy.of(name) == strategy
+
+        where:
+        name                | strategy
+        null                | ROUND_ROBIN
+        'roundRobin'        | ROUND_ROBIN
+        'least-outstanding' | LEAST_OUTSTANDING
+        'LATENCY'           | LATENCY
+    }
+}
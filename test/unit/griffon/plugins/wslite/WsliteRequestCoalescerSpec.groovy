@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+import wslite.http.HTTPClient
+import wslite.http.HTTPClientException
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteRequestCoalescerSpec extends Specification {
+    WsliteRequestCoalescer coalescer = new WsliteRequestCoalescer('test', new HTTPClient())
+    def executor = Executors.newCachedThreadPool()
+    AtomicInteger calls = new AtomicInteger()
+    CountDownLatch release = new CountDownLatch(1)
+
+    def cleanup() {
+        release.countDown()
+        executor.shutdownNow()
+    }
+
+    /**
+     * Chains are Groovy classes in the plugin, a closure coerced to the interface
+     * would wrap the checked HTTPClientException
+     */
+    private static WsliteHTTPChain chainOf(Closure body) {
+        new WsliteHTTPChain() {
+            HTTPResponse proceed(HTTPRequest request) {
+                body(request)
+            }
+        }
+    }
+
+    private static HTTPRequest request(HTTPMethod method = HTTPMethod.GET, Map headers = [:]) {
+        new HTTPRequest(url: new URL('http://localhost:8080/books?page=1'), method: method, headers: headers)
+    }
+
+    private WsliteHTTPChain blockingChain(Closure answer) {
+        chainOf { HTTPRequest request ->
+            calls.incrementAndGet()
+            release.await(5L, TimeUnit.SECONDS)
+            answer(request)
+        }
+    }
+
+    private static HTTPResponse response(String body) {
+        new HTTPResponse(statusCode: 200, data: body.bytes, headers: ['Content-Type': 'text/plain'])
+    }
+
+    private send(HTTPRequest request, WsliteHTTPChain chain) {
+        executor.submit({
+            try {
+                coalescer.intercept(request, chain)
+            } catch (HTTPClientException e) {
+                e
+            }
+        } as Callable)
+    }
+
+    private static void waitFor(Closure condition) {
+        long deadline = System.currentTimeMillis() + 5000L
+        while (!condition()) {
+            assert System.currentTimeMillis() < deadline
+            Thread.sleep(5L)
+        }
+    }
+
+    def "Concurrent identical GETs share one call and receive copies of its response"() {
+        given:
+        WsliteHTTPChain chain = blockingChain { response('books') }
+
+        when:
+        def first = send(request(), chain)
+        waitFor { coalescer.inFlight == 1 }
+        def others = (1..3).collect { send(request(), chain) }
+        waitFor { coalescer.coalesced == 3L }
+        release.countDown()
+        List<HTTPResponse> responses = ([first] + others)*.get(5L, TimeUnit.SECONDS)
+
+        then:
+        calls.get() == 1
+        coalescer.sent == 1L
+        responses.every { new String(it.data) == 'books' }
+        responses.unique(false) { System.identityHashCode(it) }.size() == 4
+        coalescer.inFlight == 0
+    }
+
+    def "Requests with different headers are sent separately"() {
+        given:
+        WsliteHTTPChain chain = blockingChain { response('books') }
+
+        when:
+        def plain = send(request(), chain)
+        waitFor { coalescer.inFlight == 1 }
+        def json = send(request(HTTPMethod.GET, [Accept: 'application/json']), chain)
+        waitFor { coalescer.inFlight == 2 }
+        release.countDown()
+        [plain, json]*.get(5L, TimeUnit.SECONDS)
+
+        then:
+        calls.get() == 2
+        coalescer.sent == 2L
+        coalescer.coalesced == 0L
+    }
+
+    def "Requests with side effects are never coalesced"() {
+        given:
+        WsliteHTTPChain chain = chainOf { HTTPRequest request ->
+            calls.incrementAndGet()
+            response('created')
+        }
+
+        when:
+        2.times { coalescer.intercept(request(HTTPMethod.POST), chain) }
+
+        then:
+        calls.get() == 2
+        coalescer.sent == 0L
+        coalescer.coalesced == 0L
+    }
+
+    def "Every waiting caller receives a failure of its own"() {
+        given:
+        WsliteHTTPChain chain = blockingChain { HTTPRequest r ->
+            throw new HTTPClientException('Service unavailable', null, r, new HTTPResponse(statusCode: 503))
+        }
+
+        when:
+        def first = send(request(), chain)
+        waitFor { coalescer.inFlight == 1 }
+        def others = (1..2).collect { send(request(), chain) }
+        waitFor { coalescer.coalesced == 2L }
+        release.countDown()
+        List<HTTPClientException> failures = ([first] + others)*.get(5L, TimeUnit.SECONDS)
+
+        then:
+        calls.get() == 1
+        failures.every { it instanceof HTTPClientException && it.response.statusCode == 503 }
+        failures.unique(false) { System.identityHashCode(it) }.size() == 3
+    }
+
+    def "A waiting caller gives up once its read timeout elapses"() {
+        given:
+        WsliteHTTPChain chain = blockingChain { response('books') }
+        HTTPRequest impatient = request()
+        impatient.readTimeout = 50
+
+        when:
+        def first = send(request(), chain)
+        waitFor { coalescer.inFlight == 1 }
+        HTTPClientException failure = send(impatient, chain).get(5L, TimeUnit.SECONDS)
+
+        then:
+        failure.cause instanceof SocketTimeoutException
+        !first.done
+
+        when:
+        release.countDown()
+
+        then:
+        new String(first.get(5L, TimeUnit.SECONDS).data) == 'books'
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+import wslite.http.HTTPClient
+import wslite.http.HTTPMethod
+import wslite.http.HTTPRequest
+import wslite.http.HTTPResponse
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteResponseCacheSpec extends Specification {
+    File directory = File.createTempFile('wslite-cache', '')
+    List<HTTPRequest> sent = []
+
+    def setup() {
+        directory.delete()
+        directory.mkdirs()
+    }
+
+    def cleanup() {
+        directory.deleteDir()
+    }
+
+    /**
+     * Chains are Groovy classes in the plugin, a closure coerced to the interface
+     * would wrap the checked HTTPClientException
+     */
+    private WsliteHTTPChain chainOf(Closure body) {
+        new WsliteHTTPChain() {
+            HTTPResponse proceed(HTTPRequest request) {
+                sent << request
+                body(request)
+            }
+        }
+    }
+
+    private static HTTPRequest request(String path = 'books', HTTPMethod method = HTTPMethod.GET) {
+        new HTTPRequest(url: new URL("http://localhost:8080/$path"), method: method, headers: [:])
+    }
+
+    private static HTTPResponse response(String body, Map headers, int statusCode = 200) {
+        new HTTPResponse(statusCode: statusCode, data: body.bytes, headers: headers)
+    }
+
+    private HTTPResponse get(WsliteHTTPInterceptor interceptor, WsliteHTTPChain chain, String path = 'books') {
+        interceptor.intercept(request(path), chain)
+    }
+
+    def "Fresh responses are served from memory as copies"() {
+        given:
+        WsliteHTTPInterceptor interceptor = new WsliteResponseCache('test', 10, 0L).forClient(new HTTPClient())
+        WsliteHTTPChain chain = chainOf { response('books', ['Cache-Control': 'max-age=60']) }
+
+        when:
+        get(interceptor, chain).data[0] = (byte) 'X'
+        HTTPResponse first = get(interceptor, chain)
+        first.data[0] = (byte) 'Y'
+        HTTPResponse second = get(interceptor, chain)
+
+        then:
+        sent.size() == 1
+        new String(second.data) == 'books'
+    }
+
+    def "Stale responses are revalidated and a 304 is answered from the stored body"() {
+        given:
+        WsliteResponseCache cache = new WsliteResponseCache('test', 10, 0L)
+        WsliteHTTPInterceptor interceptor = cache.forClient(new HTTPClient())
+        WsliteHTTPChain chain = chainOf { HTTPRequest r ->
+            r.headers['If-None-Match'] == '"v1"' ?
+                response('', [ETag: '"v1"'], 304) :
+                response('books', ['Cache-Control': 'no-cache', ETag: '"v1"'])
+        }
+
+        when:
+        get(interceptor, chain)
+        HTTPResponse revalidated = get(interceptor, chain)
+
+        then:
+        sent.size() == 2
+        sent[1].headers['If-None-Match'] == '"v1"'
+        revalidated.statusCode == 200
+        new String(revalidated.data) == 'books'
+        cache.revalidationCount == 1L
+    }
+
+    def "Unsafe requests invalidate the stored entry"() {
+        given:
+        WsliteHTTPInterceptor interceptor = new WsliteResponseCache('test', 10, 0L).forClient(new HTTPClient())
+        WsliteHTTPChain chain = chainOf { response('books', ['Cache-Control': 'max-age=60']) }
+
+        when:
+        get(interceptor, chain)
+        interceptor.intercept(request('books', HTTPMethod.POST), chain)
+        get(interceptor, chain)
+
+        then:
+        sent*.method == [HTTPMethod.GET, HTTPMethod.POST, HTTPMethod.GET]
+    }
+
+    def "Entries evicted from memory are served from disk"() {
+        given:
+        WsliteResponseCache cache = new WsliteResponseCache('test', 1, 0L, directory)
+        WsliteHTTPInterceptor interceptor = cache.forClient(new HTTPClient())
+        WsliteHTTPChain chain = chainOf { HTTPRequest r -> response(r.url.path, ['Cache-Control': 'max-age=60']) }
+
+        when:
+        get(interceptor, chain, 'books')
+        get(interceptor, chain, 'authors')
+        HTTPResponse fromDisk = get(interceptor, chain, 'books')
+
+        then:
+        sent.size() == 2
+        new String(fromDisk.data) == '/books'
+        cache.diskHitCount == 1L
+        cache.evictionCount == 2L
+    }
+
+    def "Disk trimming and clearing only touch the files of the cache"() {
+        given:
+        File foreign = new File(directory, 'notes.txt')
+        foreign.text = 'keep me'
+        WsliteResponseCache cache = new WsliteResponseCache('test', 1, 0L, directory, 2048L)
+        WsliteHTTPInterceptor interceptor = cache.forClient(new HTTPClient())
+        WsliteHTTPChain chain = chainOf { response('x' * 600, ['Cache-Control': 'max-age=60']) }
+
+        when:
+        (1..10).each { get(interceptor, chain, "books/$it") }
+        List<File> entries = directory.listFiles().findAll { it.name.endsWith('.wslc') }
+
+        then:
+        entries.size() in 1..3
+        entries.sum { it.length() } <= 2048L
+        foreign.text == 'keep me'
+
+        when:
+        cache.clear()
+
+        then:
+        directory.listFiles()*.name == ['notes.txt']
+        cache.size == 0
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+
+import javax.xml.stream.XMLStreamConstants
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteSOAPStreamSpec extends Specification {
+    static final String ENVELOPE = '''<?xml version="1.0" encoding="UTF-8"?>
+<soap:Envelope xmlns:soap="http://schemas.xmlsoap.org/soap/envelope/">
+  <soap:Header><session>42</session></soap:Header>
+  <soap:Body>
+    <ns:ListBooksResponse xmlns:ns="urn:books">
+      <ns:book isbn="1"><ns:title>Griffon in Action</ns:title></ns:book>
+      <ns:book isbn="2"><ns:title>Groovy in Action</ns:title><ns:related><ns:book isbn="3"/></ns:related></ns:book>
+    </ns:ListBooksResponse>
+  </soap:Body>
+</soap:Envelope>'''
+
+    WsliteJsonStreamSpec.StubConnection connection = new WsliteJsonStreamSpec.StubConnection()
+
+    private WsliteSOAPStream stream(String xml) {
+        new WsliteSOAPStream(new WsliteStreamingResponse(connection, 200, 'OK', new ByteArrayInputStream(xml.getBytes('UTF-8'))))
+    }
+
+    def "Children of the operation response are handed over one at a time"() {
+        given:
+        WsliteSOAPStream stream = stream(ENVELOPE)
+        List<String> titles = []
+        List<String> isbns = []
+
+        when:
+        stream.eachElement {
+            titles << it.title.text()
+            isbns << it.@isbn.text()
+        }
+
+        then:
+        !stream.hasFault()
+        stream.fault == null
+        titles == ['Griffon in Action', 'Groovy in Action']
+        isbns == ['1', '2']
+    }
+
+    def "Elements may be selected by name, nested matches are not visited separately"() {
+        given:
+        WsliteSOAPStream stream = stream(ENVELOPE)
+        List<String> isbns = []
+
+        when:
+        stream.eachElement('book') { isbns << it.@isbn.text() }
+
+        then:
+        isbns == ['1', '2']
+    }
+
+    def "The reader starts on the first element inside Body"() {
+        expect:
+        stream(ENVELOPE).reader.with {
+            eventType == XMLStreamConstants.START_ELEMENT && localName == 'ListBooksResponse'
+        }
+    }
+
+    def "Faults are read upfront"() {
+        given:
+        WsliteSOAPStream stream = stream('''<soap:Envelope xmlns:soap="http://schemas.xmlsoap.org/soap/envelope/">
+  <soap:Body><soap:Fault><faultcode>soap:Server</faultcode><faultstring>No such book</faultstring></soap:Fault></soap:Body>
+</soap:Envelope>''')
+        int calls = 0
+
+        when:
+        stream.eachElement { calls++ }
+
+        then:
+        stream.hasFault()
+        stream.fault.faultstring.text() == 'No such book'
+        calls == 0
+    }
+
+    def "Closing the stream releases the connection"() {
+        when:
+        stream(ENVELOPE).close()
+
+        then:
+        connection.disconnected
+    }
+
+    def "Documents without an envelope are rejected"() {
+        when:
+        stream('<books/>')
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.wslite
+
+import spock.lang.Specification
+
+import javax.net.ssl.SSLContext
+import java.security.KeyStore
+
+/**
+ * @author Andres Almiray
+ */
+class WsliteSSLContextCacheSpec extends Specification {
+    WsliteSSLContextCache cache = WsliteSSLContextCache.instance
+    File trustStore = File.createTempFile('wslite-truststore', '.jks')
+
+    def setup() {
+        // check the file on every use
+        cache.configure(true, 'TLS', 0, 86400, 0L)
+        writeTrustStore('changeit')
+    }
+
+    def cleanup() {
+        cache.configure(true, 'TLS', 0, 86400, 5000L)
+        trustStore.delete()
+    }
+
+    private void writeTrustStore(String password) {
+        KeyStore store = KeyStore.getInstance(KeyStore.getDefaultType())
+        store.load(null, null)
+        trustStore.withOutputStream { store.store(it, password.toCharArray()) }
+    }
+
+    private void touch() {
+        trustStore.lastModified = trustStore.lastModified() + 10000L
+    }
+
+    private SSLContext context(String password = 'changeit') {
+        cache.getContext(trustStore.path, password)
+    }
+
+    def "Clients with the same truststore share one context"() {
+        given:
+        long loads = cache.loads
+
+        when:
+        SSLContext first = context()
+        SSLContext second = context()
+
+        then:
+        first.is(second)
+        cache.getSocketFactory(trustStore.path, 'changeit').is(cache.getSocketFactory(trustStore.path, 'changeit'))
+        cache.loads == loads + 1
+        cache.size() == 1
+    }
+
+    def "A truststore that can't be loaded fails the first use"() {
+        when:
+        context('wrong')
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "A modified truststore replaces the cached context"() {
+        given:
+        SSLContext first = context()
+        long reloads = cache.reloads
+
+        when:
+        writeTrustStore('changeit')
+        touch()
+        SSLContext reloaded = context()
+
+        then:
+        !reloaded.is(first)
+        cache.reloads == reloads + 1
+        context().is(reloaded)
+    }
+
+    def "The previous context is kept while a modified truststore can't be loaded"() {
+        given:
+        SSLContext first = context()
+        long reloads = cache.reloads
+
+        when:
+        trustStore.text = 'halfway through being replaced'
+        touch()
+
+        then:
+        context().is(first)
+        cache.reloads == reloads
+
+        when:
+        writeTrustStore('changeit')
+        touch()
+        SSLContext reloaded = context()
+
+        then:
+        !reloaded.is(first)
+        cache.reloads == reloads + 1
+    }
+
+    def "Without sharing every use gets a new context"() {
+        given:
+        cache.configure(false, 'TLS', 0, 86400, 0L)
+
+        expect:
+        !context().is(context())
+        cache.size() == 0
+    }
+}